@@ -1,5 +1,5 @@
 /*
- * Copyright (C) 2014-2014 Alfresco Software Limited.
+ * Copyright (C) 2014-2024 Alfresco Software Limited.
  *
  * This file is part of Alfresco
  *
@@ -20,6 +20,7 @@ package org.alfresco.util.transaction;
 
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -58,6 +59,7 @@ public abstract class TransactionSupportUtil
     private static final String RESOURCE_KEY_TXN_SYNCH = "AlfrescoTransactionSupport.txnSynch";
     /** resource key to store the transaction id, it needs to live even if the synchronization was cleared */
     private static final String RESOURCE_KEY_TXN_ID = "AlfrescoTransactionSupport.txnId";
+    private static final Object[] EMPTY_SLOTS = new Object[0];
     /**
      *  <p>
      *      As in Spring 5 the synchronisations are cleared after the transaction is committed or rolled back,
@@ -123,11 +125,7 @@ public abstract class TransactionSupportUtil
         // The resources might be requested outside of the active txn (post completion)
         // The resource requested might be the txn synchronization itself or txn id,
         // which might be not created and registered yet
-        if (TransactionSynchronizationManager.isSynchronizationActive())
-        {
-            TransactionSupportUtil.getSynchronization();
-        }
-        Object resource = txnResources.get().resources.get(key);
+        Object resource = getResourcesHolder().resources.get(key);
         if (logger.isTraceEnabled())
         {
             logger.trace("Fetched resource in " + TransactionSynchronizationManager.getCurrentTransactionName() +
@@ -138,6 +136,68 @@ public abstract class TransactionSupportUtil
         return (R) resource;
     }
 
+    /**
+     * Gets the value of a resource slot in the current transaction
+     * 
+     * @param index the index of the slot
+     * @return Returns the value or null if not present
+     * @see TransactionalResourceSlot#get()
+     */
+    @SuppressWarnings("unchecked")
+    static <R> R getSlotValue(int index)
+    {
+        Object[] slots = getResourcesHolder().slots;
+        return index < slots.length ? (R) slots[index] : null;
+    }
+
+    /**
+     * Binds a value to a resource slot of the current transaction
+     * 
+     * @param index the index of the slot
+     * @param value the value or null to unbind the slot
+     * @see TransactionalResourceSlot#set(Object)
+     */
+    static void bindSlotValue(int index, Object value)
+    {
+        ResourcesHolder resourcesHolder = getResourcesHolder();
+        Object[] slots = resourcesHolder.slots;
+        if (index >= slots.length)
+        {
+            if (value == null)
+            {
+                return;
+            }
+            // Make room for all slots created so far to avoid growing one slot at a time
+            slots = Arrays.copyOf(slots, Math.max(index + 1, TransactionalResourceSlot.getSlotCount()));
+            resourcesHolder.slots = slots;
+        }
+        Object previous = slots[index];
+        slots[index] = value;
+        if (previous == null && value != null)
+        {
+            resourcesHolder.boundSlots++;
+        }
+        else if (previous != null && value == null)
+        {
+            resourcesHolder.boundSlots--;
+        }
+    }
+
+    /**
+     * Gets the resources of the current transaction, registering the synchronization if the transaction
+     * is active but the synchronization is not registered yet.
+     */
+    private static ResourcesHolder getResourcesHolder()
+    {
+        ResourcesHolder resourcesHolder = txnResources.get();
+        if (resourcesHolder.synchronization == null && TransactionSynchronizationManager.isSynchronizationActive())
+        {
+            TransactionSupportUtil.registerSynchronization();
+            resourcesHolder = txnResources.get();
+        }
+        return resourcesHolder;
+    }
+
     /**
      * Registers new transaction synchronization instance in {@link TransactionSynchronizationManager} and
      * creates necessary resources, see {@link #txnResources}
@@ -159,12 +219,13 @@ public abstract class TransactionSupportUtil
         // save the synchronization to ensure we don't duplicate it
         // it might be required to create a nested resource holder
         ResourcesHolder resourcesHolder = txnResources.get();
-        if (!resourcesHolder.resources.isEmpty())
+        if (!resourcesHolder.isEmpty())
         {
-            ResourcesHolder newResourcesHolder = new ResourcesHolder(resourcesHolder, new HashMap<>(3));
-            txnResources.set(newResourcesHolder);
+            resourcesHolder = new ResourcesHolder(resourcesHolder, new HashMap<>(3));
+            txnResources.set(resourcesHolder);
         }
-        Map<Object, Object> data = txnResources.get().resources;
+        resourcesHolder.synchronization = txnSynch;
+        Map<Object, Object> data = resourcesHolder.resources;
         data.put(RESOURCE_KEY_TXN_SYNCH, txnSynch);
         data.put(RESOURCE_KEY_TXN_ID, txnId);
         // done
@@ -183,10 +244,10 @@ public abstract class TransactionSupportUtil
      */
     private static TransactionSynchronizationImpl getSynchronization()
     {
-        Map<Object, Object> data = txnResources.get().resources;
-        if (data.get(RESOURCE_KEY_TXN_SYNCH) != null)
+        TransactionSynchronizationImpl txnSynch = txnResources.get().synchronization;
+        if (txnSynch != null)
         {
-            return (TransactionSynchronizationImpl) data.get(RESOURCE_KEY_TXN_SYNCH);
+            return txnSynch;
         }
         else
         {
@@ -212,7 +273,7 @@ public abstract class TransactionSupportUtil
     {
         ResourcesHolder currentResourcesHolder = txnResources.get();
         ResourcesHolder previousResourcesHolder = currentResourcesHolder.previousResourceHolder;
-        if (currentResourcesHolder.resources.isEmpty() &&
+        if (currentResourcesHolder.isEmpty() &&
                 previousResourcesHolder != null)
         {
             txnResources.set(previousResourcesHolder);
@@ -225,8 +286,7 @@ public abstract class TransactionSupportUtil
     private static void clearResources()
     {
         ResourcesHolder currentResourcesHolder = txnResources.get();
-        Map<Object, Object> txnData = currentResourcesHolder.resources;
-        txnData.clear();
+        currentResourcesHolder.clear();
         if (logger.isDebugEnabled())
         {
             logger.debug("Clear txn resources for " + Thread.currentThread().getName());
@@ -250,11 +310,7 @@ public abstract class TransactionSupportUtil
     {
         // The resources should be still available outside of active txn (post completion)
         // If the txn is active the synchronization must be created and registered if it doesn't exist yet
-        if (TransactionSynchronizationManager.isSynchronizationActive())
-        {
-            TransactionSupportUtil.getSynchronization();
-        }
-        txnResources.get().resources.put(key, resource);
+        getResourcesHolder().resources.put(key, resource);
         // done
         if (logger.isTraceEnabled())
         {
@@ -270,7 +326,12 @@ public abstract class TransactionSupportUtil
      */
     public static void unbindResource(Object key)
     {
-        txnResources.get().resources.remove(key);
+        ResourcesHolder resourcesHolder = txnResources.get();
+        resourcesHolder.resources.remove(key);
+        if (RESOURCE_KEY_TXN_SYNCH.equals(key))
+        {
+            resourcesHolder.synchronization = null;
+        }
         if (logger.isTraceEnabled())
         {
             logger.trace("Unbound resource from " + TransactionSynchronizationManager.getCurrentTransactionName()
@@ -323,6 +384,13 @@ public abstract class TransactionSupportUtil
         private ResourcesHolder previousResourceHolder;
         @NonNull
         private Map<Object, Object> resources;
+        /** values of {@link TransactionalResourceSlot}s by slot index, grown on demand */
+        @NonNull
+        private Object[] slots = EMPTY_SLOTS;
+        private int boundSlots;
+        /** the synchronization, also held in the resources, for quick access */
+        @Nullable
+        private TransactionSynchronizationImpl synchronization;
 
         ResourcesHolder(ResourcesHolder previousResourceHolder, Map<Object, Object> resources)
         {
@@ -334,6 +402,25 @@ public abstract class TransactionSupportUtil
         {
             this(null, resources);
         }
+
+        boolean isEmpty()
+        {
+            return resources.isEmpty() && boundSlots == 0;
+        }
+
+        /**
+         * Clears all resources, keeping the slot array for the next transaction on the thread
+         */
+        void clear()
+        {
+            resources.clear();
+            if (boundSlots > 0)
+            {
+                Arrays.fill(slots, null);
+                boundSlots = 0;
+            }
+            synchronization = null;
+        }
     }
 
     /**
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2005-2024 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.alfresco.util.transaction;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A typed, transaction-local value.
+ * <p>
+ * Slots are the indexed counterpart of the keyed resources of {@link TransactionSupportUtil#getResource(Object)} for
+ * state that is looked up on hot paths.  Each slot owns a fixed position in an array held with the resources of the
+ * current transaction, so reading or binding a value involves no hashing, key construction or casting at the call
+ * site.  Values have the same lifecycle as keyed resources: they are hidden while the transaction is suspended, remain
+ * available to <tt>afterCommit</tt> and <tt>afterRollback</tt> listeners and are cleared when the transaction
+ * completes.
+ * <p>
+ * Slots are interned by key: {@link #forKey(String)} hands out the same slot, and so the same index, for the same key,
+ * just as keyed resources with the same key share a value.  A component that is initialised again, such as a bean in
+ * a restarted application context, gets its slot back, so the per-transaction array only grows with the number of
+ * distinct keys.  Keys must therefore be stable and never built per call.
+ * 
+ * @param <T> the type of the value
+ * 
+ * @since 23.3
+ */
+public final class TransactionalResourceSlot<T>
+{
+    private static final AtomicInteger slotCount = new AtomicInteger();
+    private static final ConcurrentMap<String, TransactionalResourceSlot<?>> slotsByKey = new ConcurrentHashMap<String, TransactionalResourceSlot<?>>();
+
+    private final String key;
+    private final int index;
+
+    private TransactionalResourceSlot(String key)
+    {
+        this.key = key;
+        this.index = slotCount.getAndIncrement();
+    }
+
+    /**
+     * Get the slot for a key, creating it the first time the key is used.
+     * 
+     * @param key the key identifying the slot, as would be used for a keyed resource
+     * @return the slot for the key
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> TransactionalResourceSlot<T> forKey(String key)
+    {
+        return (TransactionalResourceSlot<T>) slotsByKey.computeIfAbsent(key, TransactionalResourceSlot::new);
+    }
+
+    /**
+     * @return the number of slots created so far
+     */
+    static int getSlotCount()
+    {
+        return slotCount.get();
+    }
+
+    /**
+     * @return Returns the value bound to the current transaction or <tt>null</tt> if there is none
+     */
+    public T get()
+    {
+        return TransactionSupportUtil.getSlotValue(index);
+    }
+
+    /**
+     * Bind a value to the current transaction, registering the transaction synchronization if required.
+     * 
+     * @param value the value, or <tt>null</tt> to unbind it
+     */
+    public void set(T value)
+    {
+        TransactionSupportUtil.bindSlotValue(index, value);
+    }
+
+    /**
+     * Unbind the value from the current transaction.
+     */
+    public void remove()
+    {
+        TransactionSupportUtil.bindSlotValue(index, null);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "TransactionalResourceSlot[key=" + key + ", index=" + index + "]";
+    }
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright (C) 2005-2023 Alfresco Software Limited.
+ * Copyright (C) 2005-2024 Alfresco Software Limited.
  *
  * This file is part of Alfresco
  *
@@ -27,6 +27,9 @@ import jakarta.transaction.UserTransaction;
 
 import junit.framework.TestCase;
 
+import org.alfresco.util.GUID;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.springframework.transaction.CannotCreateTransactionException;
 import org.springframework.transaction.NoTransactionException;
 import org.springframework.transaction.TransactionDefinition;
@@ -41,6 +44,8 @@ import org.springframework.transaction.support.DefaultTransactionStatus;
  */
 public class SpringAwareUserTransactionTest extends TestCase
 {
+    private static final Log logger = LogFactory.getLog(SpringAwareUserTransactionTest.class);
+
     private DummyTransactionManager transactionManager;
     private FailingTransactionManager failingTransactionManager;
     private UserTransaction txn;
@@ -361,6 +366,105 @@ public class SpringAwareUserTransactionTest extends TestCase
         checkNoStatusOnThread();
     }
     
+    public void testResourceSlots() throws Throwable
+    {
+        final TransactionalResourceSlot<String> slot = TransactionalResourceSlot.forKey("SpringAwareUserTransactionTest.slot");
+        final StringBuffer afterCommit = new StringBuffer();
+        assertNull(slot.get());
+        try
+        {
+            txn.begin();
+            assertNull(slot.get());
+            slot.set("value");
+            assertEquals("value", slot.get());
+            TransactionSupportUtil.bindListener(new TransactionListenerAdapter()
+            {
+                @Override
+                public void afterCommit()
+                {
+                    afterCommit.append(slot.get());
+                }
+            }, 0);
+            txn.commit();
+        }
+        catch (Exception e)
+        {
+            try
+            {
+                txn.rollback();
+            }
+            catch (Exception ee)
+            {
+                e.addSuppressed(ee);
+            }
+            throw e;
+        }
+        // Still visible to afterCommit listeners, but cleared with the transaction
+        assertEquals("value", afterCommit.toString());
+        assertNull(slot.get());
+        checkNoStatusOnThread();
+    }
+
+    public void testResourceSlotsAreInternedByKey()
+    {
+        TransactionalResourceSlot<String> slot = TransactionalResourceSlot.forKey("SpringAwareUserTransactionTest.interned");
+        int slotCount = TransactionalResourceSlot.getSlotCount();
+        for (int i = 0; i < 10; i++)
+        {
+            // As a component initialised again would do
+            assertSame(slot, TransactionalResourceSlot.forKey("SpringAwareUserTransactionTest.interned"));
+        }
+        assertEquals("No slot should be added for a key already in use", slotCount, TransactionalResourceSlot.getSlotCount());
+        assertNotSame(slot, TransactionalResourceSlot.forKey("SpringAwareUserTransactionTest.other"));
+    }
+
+    /**
+     * Compares the per-call cost of slots against keyed resources.
+     */
+    public void testResourceSlotPerformance() throws Throwable
+    {
+        TransactionalResourceSlot<Object> slot = TransactionalResourceSlot.forKey("SpringAwareUserTransactionTest.performance");
+        String key = "SpringAwareUserTransactionTest.performance." + GUID.generate();
+        Object value = new Object();
+        txn.begin();
+        try
+        {
+            slot.set(value);
+            TransactionSupportUtil.bindResource(key, value);
+            for (int i = 0; i < 5; i++)
+            {
+                int count = (int) Math.pow(10D, (double) (i + 2));
+
+                long start = System.nanoTime();
+                for (int j = 0; j < count; j++)
+                {
+                    assertSame(value, TransactionSupportUtil.getResource(key));
+                }
+                long timeKeyed = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                for (int j = 0; j < count; j++)
+                {
+                    assertSame(value, slot.get());
+                }
+                long timeSlot = System.nanoTime() - start;
+
+                if (logger.isDebugEnabled())
+                {
+                    logger.debug("Transaction resource performance test: \n" +
+                            "   count: " + count + "\n" +
+                            "   keyed: " + timeKeyed/((long)count) + " ns\\count \n" +
+                            "   slot: " + timeSlot/((long)count) + " ns\\count");
+                }
+            }
+        }
+        finally
+        {
+            txn.rollback();
+        }
+        checkNoStatusOnThread();
+    }
+
     private static class TestTransactionListener extends TransactionListenerAdapter
     {
         private final String name;
@@ -34,6 +34,7 @@ import org.alfresco.repo.search.adaptor.AnalysisMode;
 import org.alfresco.repo.search.impl.parsers.CMIS_FTSLexer;
 import org.alfresco.repo.search.impl.parsers.CMIS_FTSParser;
 import org.alfresco.repo.search.impl.parsers.FTSQueryException;
+import org.alfresco.repo.search.impl.parsers.ParseTreeCache;
 import org.alfresco.repo.search.impl.querymodel.Argument;
 import org.alfresco.repo.search.impl.querymodel.Column;
 import org.alfresco.repo.search.impl.querymodel.Constraint;
@@ -72,7 +73,9 @@ public class CMISFTSQueryParser
             CMIS_FTSLexer lexer = new CMIS_FTSLexer(cs);
             CommonTokenStream tokens = new CommonTokenStream(lexer);
             parser = new CMIS_FTSParser(tokens);
-            CommonTree ftsNode = (CommonTree) parser.cmisFtsQuery().getTree();
+            CMIS_FTSParser cmisFtsParser = parser;
+            CommonTree ftsNode = ParseTreeCache.getDefault().getTree("CMIS_FTS.cmisFtsQuery", ftsExpression, tokens, parser.getTokenNames(),
+                    () -> (CommonTree) cmisFtsParser.cmisFtsQuery().getTree());
             return buildFTSConnective(ftsNode, factory, functionEvaluationContext, selector, columnMap, defaultField);
         }
         catch (RecognitionException e)
@@ -45,6 +45,7 @@ import org.alfresco.repo.search.impl.parsers.CMISParser;
 import org.alfresco.repo.search.impl.parsers.FTSParser;
 import org.alfresco.repo.search.impl.parsers.FTSQueryException;
 import org.alfresco.repo.search.impl.parsers.FTSQueryParser;
+import org.alfresco.repo.search.impl.parsers.ParseTreeCache;
 import org.alfresco.repo.search.impl.querymodel.Argument;
 import org.alfresco.repo.search.impl.querymodel.ArgumentDefinition;
 import org.alfresco.repo.search.impl.querymodel.Column;
@@ -140,7 +141,9 @@ public class CMISQueryParser
             CommonTokenStream tokens = new CommonTokenStream(lexer);
             parser = new CMISParser(tokens);
             parser.setStrict(options.getQueryMode() == CMISQueryMode.CMS_STRICT);
-            CommonTree queryNode = (CommonTree) parser.query().getTree();
+            CMISParser cmisParser = parser;
+            CommonTree queryNode = ParseTreeCache.getDefault().getTree("CMIS.query:" + parser.strict(), options.getQuery(), tokens,
+                    parser.getTokenNames(), () -> (CommonTree) cmisParser.query().getTree());
 
             CommonTree sourceNode = (CommonTree) queryNode.getFirstChildWithType(CMISParser.SOURCE);
             Source source = buildSource(sourceNode, joinSupport, factory, JoinType.NONE);
@@ -108,7 +108,7 @@ public class FTSQueryParser
                 parser = new FTSParser(tokens);
                 parser.setMode(mode);
                 parser.setDefaultFieldConjunction(defaultFieldConnective == Connective.AND ? true : false);
-                CommonTree ftsNode = (CommonTree) parser.ftsQuery().getTree();
+                CommonTree ftsNode = parseFTS(parser, tokens, templateDefinition);
                 //Check for duplicate template of properties e.g. NAME, name and NaMe.
                 if (templateTrees.containsKey(name.toLowerCase()))
                 {
@@ -139,7 +139,7 @@ public class FTSQueryParser
             parser = new FTSParser(tokens);
             parser.setMode(mode);
             parser.setDefaultFieldConjunction(defaultFieldConnective == Connective.AND ? true : false);
-            CommonTree ftsNode = (CommonTree) parser.ftsQuery().getTree();
+            CommonTree ftsNode = parseFTS(parser, tokens, ftsExpression);
             // Rewrite for auto phrase
             if(rerankPhase != RerankPhase.RERANK_PHASE.SINGLE_PASS)
             {
@@ -161,6 +161,44 @@ public class FTSQueryParser
 
     }
 
+    /**
+     * Parse an FTS expression without building a query from it, for callers that only need to inspect its structure.
+     *
+     * @return the tree for the expression, which belongs to the caller
+     * @since 23.3
+     */
+    public static CommonTree parseFTS(String ftsExpression, FTSParser.Mode mode, Connective defaultFieldConnective)
+    {
+        FTSParser parser = null;
+        try
+        {
+            CharStream cs = new ANTLRStringStream(ftsExpression);
+            FTSLexer lexer = new FTSLexer(cs);
+            CommonTokenStream tokens = new CommonTokenStream(lexer);
+            parser = new FTSParser(tokens);
+            parser.setMode(mode);
+            parser.setDefaultFieldConjunction(defaultFieldConnective == Connective.AND ? true : false);
+            return parseFTS(parser, tokens, ftsExpression);
+        }
+        catch (RecognitionException e)
+        {
+            String[] tokenNames = parser.getTokenNames();
+            String hdr = parser.getErrorHeader(e);
+            String msg = parser.getErrorMessage(e, tokenNames);
+            throw new FTSQueryException(hdr + "\n" + msg, e);
+        }
+    }
+
+    /**
+     * Parse an FTS expression, reusing the tree for an earlier parse of the same expression if there is one.
+     */
+    private static CommonTree parseFTS(FTSParser parser, CommonTokenStream tokens, String ftsExpression) throws RecognitionException
+    {
+        String settings = "FTS.ftsQuery:" + parser.getMode() + ":" + parser.defaultFieldConjunction();
+        return ParseTreeCache.getDefault().getTree(settings, ftsExpression, tokens, parser.getTokenNames(),
+                () -> (CommonTree) parser.ftsQuery().getTree());
+    }
+
     private static CommonTree autoPhraseReWrite(CommonTree node, boolean defaultConjunction, RerankPhase rerankPhase) {
     	if(node == null)
     	{
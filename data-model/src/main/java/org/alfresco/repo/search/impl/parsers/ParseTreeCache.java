@@ -0,0 +1,298 @@
+/*
+ * #%L
+ * Alfresco Data model classes
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.search.impl.parsers;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.alfresco.util.MaxSizeMap;
+import org.antlr.runtime.CommonToken;
+import org.antlr.runtime.CommonTokenStream;
+import org.antlr.runtime.RecognitionException;
+import org.antlr.runtime.Token;
+import org.antlr.runtime.tree.CommonTree;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A bounded cache of the trees produced by the ANTLR query parsers (FTS, CMIS FTS and CMIS SQL).
+ * <p>
+ * Trees are keyed by the grammar and parser settings given by the caller together with the query
+ * string.  Callers always get their own copy of the cached tree, so they are free to modify it.
+ * <p>
+ * When literals are parameterized the query string is replaced in the key by the sequence of token
+ * types produced by the lexer, including hidden tokens.  Queries that differ only in the text of
+ * their literals then share one cached tree, which is instantiated by copying it and taking the
+ * text and position of each token from the new query.  The parsers' decisions depend only on the
+ * token types and on the settings in the key, so the copy is the tree the parser would have built.
+ * Trees containing tokens whose text was made up by the parser, rather than taken from the query,
+ * cannot be shared in this way and are cached against the full query string instead.
+ *
+ * @since 23.3
+ */
+public class ParseTreeCache
+{
+    private static final Log logger = LogFactory.getLog(ParseTreeCache.class);
+
+    public static final int DEFAULT_MAX_ITEMS = 500;
+
+    private static volatile ParseTreeCache defaultCache = new ParseTreeCache(DEFAULT_MAX_ITEMS, false);
+
+    /**
+     * Parse the query held by a token stream.
+     */
+    public interface TreeParser
+    {
+        CommonTree parse() throws RecognitionException;
+    }
+
+    private final int maxItems;
+    private final boolean parameterizeLiterals;
+    private final Map<String, CachedTree> trees;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param maxItems                  the maximum number of trees to keep.  Zero or less disables the cache.
+     * @param parameterizeLiterals      <tt>true</tt> to share cached trees between queries that differ only in their literals
+     */
+    public ParseTreeCache(int maxItems, boolean parameterizeLiterals)
+    {
+        this.maxItems = maxItems;
+        this.parameterizeLiterals = parameterizeLiterals;
+        this.trees = new MaxSizeMap<String, CachedTree>(Math.max(maxItems, 1), true);
+    }
+
+    /**
+     * @return              Returns the cache used by the query parsers
+     */
+    public static ParseTreeCache getDefault()
+    {
+        return defaultCache;
+    }
+
+    /**
+     * Set the cache used by the query parsers.
+     */
+    public static void setDefault(ParseTreeCache cache)
+    {
+        defaultCache = cache;
+    }
+
+    /**
+     * Make this the cache used by the query parsers.
+     */
+    public void register()
+    {
+        setDefault(this);
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Using parse tree cache: maxItems=" + maxItems + ", parameterizeLiterals=" + parameterizeLiterals);
+        }
+    }
+
+    public int getMaxItems()
+    {
+        return maxItems;
+    }
+
+    public boolean isParameterizeLiterals()
+    {
+        return parameterizeLiterals;
+    }
+
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    public void clear()
+    {
+        synchronized (trees)
+        {
+            trees.clear();
+        }
+    }
+
+    /**
+     * Get the tree for a query, parsing it only if there is no suitable tree in the cache.
+     *
+     * @param settings          identifies the grammar, start rule and every parser setting that affects the tree
+     * @param query             the query string
+     * @param tokens            the token stream the parser reads, not yet consumed
+     * @param tokenNames        the token names of the parser
+     * @param parser            parses the token stream
+     * @return                  Returns a tree that belongs to the caller
+     */
+    public CommonTree getTree(String settings, String query, CommonTokenStream tokens, String[] tokenNames, TreeParser parser) throws RecognitionException
+    {
+        if (maxItems <= 0)
+        {
+            return parser.parse();
+        }
+
+        String queryKey = settings + "\u0000" + query;
+        String shapeKey = null;
+        if (parameterizeLiterals)
+        {
+            // Lexing is cheap compared to parsing and is needed anyway for the parameterized key
+            tokens.fill();
+            shapeKey = getShapeKey(settings, tokens.getTokens());
+        }
+
+        CachedTree cached;
+        synchronized (trees)
+        {
+            cached = (shapeKey == null) ? null : trees.get(shapeKey);
+            if (cached == null)
+            {
+                cached = trees.get(queryKey);
+            }
+        }
+        if (cached != null)
+        {
+            hits.incrementAndGet();
+            return copy(cached.tree, cached.parameterized ? tokens.getTokens() : null);
+        }
+
+        misses.incrementAndGet();
+        CommonTree tree = parser.parse();
+        boolean parameterized = (shapeKey != null) && isParameterizable(tree, tokens.getTokens(), tokenNames);
+        CachedTree entry = new CachedTree(copy(tree, null), parameterized);
+        synchronized (trees)
+        {
+            trees.put(parameterized ? shapeKey : queryKey, entry);
+        }
+        return tree;
+    }
+
+    private static String getShapeKey(String settings, List<? extends Token> tokens)
+    {
+        StringBuilder key = new StringBuilder(settings.length() + tokens.size() * 4);
+        key.append(settings).append("\u0001");
+        for (Token token : tokens)
+        {
+            key.append(token.getType()).append(',');
+        }
+        return key.toString();
+    }
+
+    /**
+     * A tree can be shared between queries of the same shape if the text of every token in it either comes
+     * straight from the query or is the name of an imaginary token.
+     */
+    private static boolean isParameterizable(CommonTree node, List<? extends Token> tokens, String[] tokenNames)
+    {
+        Token token = node.getToken();
+        if (token != null)
+        {
+            int index = token.getTokenIndex();
+            if (index >= 0)
+            {
+                if ((index >= tokens.size()) || !equals(token.getText(), tokens.get(index).getText()))
+                {
+                    return false;
+                }
+            }
+            else if ((token.getText() != null) && !isTokenName(token.getText(), token.getType(), tokenNames))
+            {
+                return false;
+            }
+        }
+        for (int i = 0; i < node.getChildCount(); i++)
+        {
+            if (!isParameterizable((CommonTree) node.getChild(i), tokens, tokenNames))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isTokenName(String text, int type, String[] tokenNames)
+    {
+        return (type >= 0) && (type < tokenNames.length) && text.equals(tokenNames[type]);
+    }
+
+    private static boolean equals(String text, String other)
+    {
+        return (text == null) ? (other == null) : text.equals(other);
+    }
+
+    /**
+     * Deep copy a tree.  If a token stream is given, tokens taken from the query take their text and position
+     * from the token at the same index in the stream.
+     */
+    private static CommonTree copy(CommonTree node, List<? extends Token> tokens)
+    {
+        CommonTree copy;
+        Token token = node.getToken();
+        if (token == null)
+        {
+            copy = new CommonTree();
+        }
+        else
+        {
+            CommonToken newToken;
+            int index = token.getTokenIndex();
+            if ((tokens != null) && (index >= 0))
+            {
+                newToken = new CommonToken(tokens.get(index));
+                newToken.setType(token.getType());
+            }
+            else
+            {
+                newToken = new CommonToken(token);
+            }
+            copy = new CommonTree(newToken);
+        }
+        copy.setTokenStartIndex(node.getTokenStartIndex());
+        copy.setTokenStopIndex(node.getTokenStopIndex());
+        for (int i = 0; i < node.getChildCount(); i++)
+        {
+            copy.addChild(copy((CommonTree) node.getChild(i), tokens));
+        }
+        return copy;
+    }
+
+    private static class CachedTree
+    {
+        private final CommonTree tree;
+        private final boolean parameterized;
+
+        private CachedTree(CommonTree tree, boolean parameterized)
+        {
+            this.tree = tree;
+            this.parameterized = parameterized;
+        }
+    }
+}
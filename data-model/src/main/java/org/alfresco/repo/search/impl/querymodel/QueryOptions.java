@@ -92,6 +92,8 @@ public class QueryOptions
     
     private Long sinceTxId;
 
+    private String continuationToken;
+
     private Map<String, String> queryTemplates = new HashMap<String, String>();
 
     public static QueryOptions create(SearchParameters searchParameters)
@@ -123,6 +125,7 @@ public class QueryOptions
         options.setExcludeTenantFilter(searchParameters.getExcludeTenantFilter());
         options.setQueryConsistency(searchParameters.getQueryConsistency());
         options.setSinceTxId(searchParameters.getSinceTxId());
+        options.setContinuationToken(searchParameters.getContinuationToken());
         for(String name : searchParameters.getQueryTemplates().keySet())
         {
         	String template = searchParameters.getQueryTemplates().get(name);
@@ -517,6 +520,24 @@ public class QueryOptions
     {
         this.sinceTxId = sinceTxId;
     }
+
+    /**
+     * @return the continuation token of the page to fetch (see {@link SearchParameters#setContinuationToken(String)})
+     * @since 23.3
+     */
+    public String getContinuationToken()
+    {
+        return this.continuationToken;
+    }
+
+    /**
+     * @param continuationToken the continuation token to set
+     * @since 23.3
+     */
+    public void setContinuationToken(String continuationToken)
+    {
+        this.continuationToken = continuationToken;
+    }
     
     /**
      * Get the query templates
@@ -584,6 +605,7 @@ public class QueryOptions
         //searchParameters.addTextAttribute()
         searchParameters.setQueryConsistency(this.getQueryConsistency());
         searchParameters.setSinceTxId(getSinceTxId());
+        searchParameters.setContinuationToken(getContinuationToken());
         for(String name : getQueryTemplates().keySet())
         {
         	String template = getQueryTemplates().get(name);
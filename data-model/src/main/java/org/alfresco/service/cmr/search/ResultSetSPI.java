@@ -200,4 +200,16 @@ public interface ResultSetSPI<ROW extends ResultSetRow, MD extends ResultSetMeta
      * @return SpellCheckResult
      */
     public SpellCheckResult getSpellCheckResult();
+
+    /**
+     * Gets the token that fetches the page after this one (see {@link SearchParameters#setContinuationToken(String)}).
+     * 
+     * @return the continuation token, or <tt>null</tt> if there are no more results or the query was not paged with
+     *         continuation tokens
+     * @since 23.3
+     */
+    public default String getContinuationToken()
+    {
+        return null;
+    }
 }
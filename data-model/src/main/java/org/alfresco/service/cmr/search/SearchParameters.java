@@ -185,6 +185,8 @@ public class SearchParameters implements BasicSearchParameters
     
     private Long sinceTxId;
     
+    private String continuationToken;
+    
     private String searchTerm;
     
     private boolean spellCheck;
@@ -246,6 +248,7 @@ public class SearchParameters implements BasicSearchParameters
         sp.excludeTenantFilter = this.excludeTenantFilter;
         sp.queryConsistency = this.queryConsistency;
         sp.sinceTxId = this.sinceTxId;
+        sp.continuationToken = this.continuationToken;
         sp.facetQueries.addAll(this.facetQueries);
         sp.filterQueries.addAll(this.filterQueries);
         sp.pivots.addAll(this.pivots);
@@ -1058,6 +1061,32 @@ public class SearchParameters implements BasicSearchParameters
         this.sinceTxId = sinceTxId;
     }
 
+    /**
+     * @return the continuation token of the page to fetch, or <tt>null</tt> if pages are selected with the skip count
+     * @since 23.3
+     */
+    public String getContinuationToken()
+    {
+        return this.continuationToken;
+    }
+
+    /**
+     * Fetch the page that follows the one that returned the given token (see {@link ResultSetSPI#getContinuationToken()}).
+     * The page starts straight after the last result of the previous page, so deep pages cost no more than the first.
+     * Use an empty token to fetch the first page of a query that will be read in this way.
+     * <p>
+     * Continuation tokens are only supported by the database query engine, for queries that have no sort order; the
+     * skip count is applied relative to the continuation point.
+     *
+     * @param continuationToken the token returned with the previous page, an empty string for the first page, or
+     *            <tt>null</tt> to page with the skip count
+     * @since 23.3
+     */
+    public void setContinuationToken(String continuationToken)
+    {
+        this.continuationToken = continuationToken;
+    }
+
     /**
      * @return the searchTerm
      */
@@ -1167,6 +1196,7 @@ public class SearchParameters implements BasicSearchParameters
         result = prime * result + ((textAttributes == null) ? 0 : textAttributes.hashCode());
         result = prime * result + ((useInMemorySort == null) ? 0 : useInMemorySort.hashCode());
         result = prime * result + ((sinceTxId == null) ? 0 : sinceTxId.hashCode());
+        result = prime * result + ((continuationToken == null) ? 0 : continuationToken.hashCode());
         result = prime * result + ((facetQueries.isEmpty()) ? 0 : facetQueries.hashCode());
         result = prime * result + ((filterQueries.isEmpty()) ? 0 : filterQueries.hashCode());
         result = prime * result + ((pivots.isEmpty()) ? 0 : pivots.hashCode());
@@ -1320,6 +1350,13 @@ public class SearchParameters implements BasicSearchParameters
         }
         else if (!sinceTxId.equals(other.sinceTxId))
             return false;
+        if (continuationToken == null)
+        {
+            if (other.continuationToken != null)
+                return false;
+        }
+        else if (!continuationToken.equals(other.continuationToken))
+            return false;
         if (!facetQueries.equals(other.facetQueries))
             return false;
         if (!filterQueries.equals(other.filterQueries))
@@ -1374,7 +1411,8 @@ public class SearchParameters implements BasicSearchParameters
                     .append(", extraParameters=").append(this.extraParameters).append(", excludeTenantFilter=")
                     .append(this.excludeTenantFilter).append(", isBulkFetchEnabled=").append(this.isBulkFetchEnabled)
                     .append(", queryConsistency=").append(this.queryConsistency).append(", sinceTxId=")
-                    .append(this.sinceTxId).append(", searchTerm=").append(this.searchTerm)
+                    .append(this.sinceTxId).append(", continuationToken=").append(this.continuationToken)
+                    .append(", searchTerm=").append(this.searchTerm)
                     .append(", highlight=").append(this.highlight)
                     .append(", interval=").append(this.interval)
                     .append(", range=").append(this.ranges)
@@ -170,4 +170,70 @@ public class FTSTest extends TestCase
         }
     }
 
+    public void testParseTreeCache() throws RecognitionException
+    {
+        ParseTreeCache cache = new ParseTreeCache(10, true);
+        String[] queries = new String[] {
+                "cm:name:report AND TYPE:\"cm:content\"",
+                "cm:name:budget AND TYPE:\"cm:folder\"",
+                "cm:name:report AND TYPE:\"cm:content\"",
+                "cm:title:[1 TO 10] OR cm:description:(one two)",
+                "cm:title:[100 TO 2000] OR cm:description:(three four)",
+                "a.b:c" };
+        for (String query : queries)
+        {
+            CommonTree expected = parseFTS(query, null);
+            CommonTree cached = parseFTS(query, cache);
+            assertEquals(query, expected.toStringTree(), cached.toStringTree());
+            assertTreesMatch(query, expected, cached);
+        }
+        // The literals differ but the shapes of the second, third and fifth queries have been seen before
+        assertEquals(3, cache.getHits());
+        assertEquals(3, cache.getMisses());
+
+        // Trees are copied, so changes made by one caller are not seen by the next
+        CommonTree first = parseFTS(queries[0], cache);
+        first.deleteChild(0);
+        assertEquals(parseFTS(queries[0], null).toStringTree(), parseFTS(queries[0], cache).toStringTree());
+    }
+
+    public void testParseTreeCacheWithoutParameterizedLiterals() throws RecognitionException
+    {
+        ParseTreeCache cache = new ParseTreeCache(10, false);
+        parseFTS("cm:name:report", cache);
+        parseFTS("cm:name:budget", cache);
+        CommonTree cached = parseFTS("cm:name:report", cache);
+        assertEquals(parseFTS("cm:name:report", null).toStringTree(), cached.toStringTree());
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    private CommonTree parseFTS(String query, ParseTreeCache cache) throws RecognitionException
+    {
+        CharStream cs = new ANTLRStringStream(query);
+        FTSLexer lexer = new FTSLexer(cs);
+        CommonTokenStream tokens = new CommonTokenStream(lexer);
+        FTSParser parser = new FTSParser(tokens);
+        parser.setMode(FTSParser.Mode.DEFAULT_DISJUNCTION);
+        parser.setDefaultFieldConjunction(true);
+        if (cache == null)
+        {
+            return (CommonTree) parser.ftsQuery().getTree();
+        }
+        return cache.getTree("FTS.ftsQuery", query, tokens, parser.getTokenNames(), () -> (CommonTree) parser.ftsQuery().getTree());
+    }
+
+    private void assertTreesMatch(String query, Tree expected, Tree actual)
+    {
+        assertEquals(query, expected.getType(), actual.getType());
+        assertEquals(query, expected.getText(), actual.getText());
+        assertEquals(query, expected.getLine(), actual.getLine());
+        assertEquals(query, expected.getCharPositionInLine(), actual.getCharPositionInLine());
+        assertEquals(query, expected.getChildCount(), actual.getChildCount());
+        for (int i = 0; i < expected.getChildCount(); i++)
+        {
+            assertTreesMatch(query, expected.getChild(i), actual.getChild(i));
+        }
+    }
+
 }
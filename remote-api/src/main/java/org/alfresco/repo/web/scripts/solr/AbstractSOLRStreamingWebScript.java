@@ -0,0 +1,132 @@
+/*
+ * #%L
+ * Alfresco Remote API
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.web.scripts.solr;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.springframework.extensions.surf.util.Content;
+import org.springframework.extensions.webscripts.AbstractWebScript;
+import org.springframework.extensions.webscripts.Format;
+import org.springframework.extensions.webscripts.Status;
+import org.springframework.extensions.webscripts.WebScriptException;
+import org.springframework.extensions.webscripts.WebScriptRequest;
+import org.springframework.extensions.webscripts.WebScriptResponse;
+
+/**
+ * Base class for SOLR tracking web scripts that write their results straight to the response
+ * as they are produced, rather than building a model for a template.  The memory used does not
+ * depend on the number of results.
+ * <p/>
+ * Once writing has started the response is committed.  If a failure occurs part way through,
+ * the JSON is deliberately left unterminated so that the client cannot mistake a partial
+ * result for a complete one.
+ * <p/>
+ * Scripts may also offer the compact encoding of {@link TrackingBinaryWriter}, which is used
+ * when the client {@link #isBinaryRequested(WebScriptRequest) asks for it}.
+ * 
+ * @since 23.3
+ */
+public abstract class AbstractSOLRStreamingWebScript extends AbstractWebScript
+{
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    /**
+     * Read the JSON request body
+     */
+    protected JSONObject readRequest(WebScriptRequest req) throws IOException
+    {
+        Content content = req.getContent();
+        if (content == null)
+        {
+            throw new WebScriptException("Failed to convert request to String");
+        }
+        try
+        {
+            return new JSONObject(content.getContent());
+        }
+        catch (JSONException e)
+        {
+            throw new WebScriptException("Invalid JSON", e);
+        }
+    }
+
+    /**
+     * Start the JSON response.  Any validation of the request must be done before this is called.
+     * The generator must be closed by the caller but the response stream is left open.
+     */
+    protected JsonGenerator createGenerator(WebScriptResponse res) throws IOException
+    {
+        res.setStatus(Status.STATUS_OK);
+        res.setContentType(Format.JSON.mimetype() + ";charset=UTF-8");
+        res.setContentEncoding("UTF-8");
+        res.setHeader("Vary", "Accept");
+        JsonGenerator generator = JSON_FACTORY.createGenerator(res.getOutputStream(), JsonEncoding.UTF8);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        // A failure must not produce a well-formed but incomplete document
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+        return generator;
+    }
+
+    /**
+     * @return              <tt>true</tt> if the client accepts {@link TrackingBinaryWriter#MIMETYPE}
+     */
+    protected boolean isBinaryRequested(WebScriptRequest req)
+    {
+        String accept = req.getHeader("Accept");
+        if (accept == null)
+        {
+            return false;
+        }
+        for (String mediaRange : accept.split(","))
+        {
+            int paramsIndex = mediaRange.indexOf(';');
+            String mediaType = (paramsIndex < 0 ? mediaRange : mediaRange.substring(0, paramsIndex)).trim();
+            if (mediaType.equalsIgnoreCase(TrackingBinaryWriter.MIMETYPE))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Start a binary response.  The writer must be flushed by the caller.
+     * 
+     * @param responseType      one of the <tt>TYPE_</tt> constants of {@link TrackingBinaryWriter}
+     */
+    protected TrackingBinaryWriter createBinaryWriter(WebScriptResponse res, int responseType) throws IOException
+    {
+        res.setStatus(Status.STATUS_OK);
+        res.setContentType(TrackingBinaryWriter.MIMETYPE);
+        res.setHeader("Vary", "Accept");
+        return new TrackingBinaryWriter(res.getOutputStream(), responseType);
+    }
+}
@@ -25,24 +25,28 @@
  */
 package org.alfresco.repo.web.scripts.solr;
 
-import java.util.HashMap;
+import java.io.IOException;
 import java.util.List;
-import java.util.Map;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import org.alfresco.repo.search.SearchTrackingComponent;
 import org.alfresco.repo.solr.AclChangeSet;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.springframework.extensions.webscripts.DeclarativeWebScript;
-import org.springframework.extensions.webscripts.Status;
 import org.springframework.extensions.webscripts.WebScriptRequest;
+import org.springframework.extensions.webscripts.WebScriptResponse;
 
 /**
  * Support for SOLR: Track ACL Change Sets
+ * <p/>
+ * The {@link TrackingBinaryWriter binary} response is the varint number of change sets followed,
+ * for each change set, by the signed varint differences of the ID and commit time from the
+ * previous change set and the varint number of ACLs.  The maximum commit time and the maximum
+ * change set ID on the server follow as nullable longs.
  *
  * @since 4.0
  */
-public class AclChangeSetsGet extends DeclarativeWebScript
+public class AclChangeSetsGet extends AbstractSOLRStreamingWebScript
 {
     protected static final Log logger = LogFactory.getLog(AclChangeSetsGet.class);
 
@@ -53,7 +57,8 @@ public class AclChangeSetsGet extends DeclarativeWebScript
         this.searchTrackingComponent = searchTrackingComponent;
     }
 
-    protected Map<String, Object> executeImpl(WebScriptRequest req, Status status)
+    @Override
+    public void execute(WebScriptRequest req, WebScriptResponse res) throws IOException
     {
         String fromIdParam = req.getParameter("fromId");
         String fromTimeParam = req.getParameter("fromTime");
@@ -68,28 +73,58 @@ public class AclChangeSetsGet extends DeclarativeWebScript
         int maxResults = (maxResultsParam == null ? 1024 : Integer.valueOf(maxResultsParam));
         
         List<AclChangeSet> changesets = searchTrackingComponent.getAclChangeSets(fromId, fromTime, toId, toTime, maxResults);
-        
-        Map<String, Object> model = new HashMap<String, Object>(1, 1.0f);
-        model.put("aclChangeSets", changesets);
-
         Long maxChangeSetCommitTime = searchTrackingComponent.getMaxChangeSetCommitTime();
-        if(maxChangeSetCommitTime != null)
+        Long maxChangeSetId = searchTrackingComponent.getMaxChangeSetId();
+
+        if (isBinaryRequested(req))
         {
-            model.put("maxChangeSetCommitTime", maxChangeSetCommitTime);
+            TrackingBinaryWriter writer = createBinaryWriter(res, TrackingBinaryWriter.TYPE_ACL_CHANGE_SETS);
+            writer.writeVarLong(changesets.size());
+            long previousId = 0L;
+            long previousCommitTimeMs = 0L;
+            for (AclChangeSet changeset : changesets)
+            {
+                writer.writeSignedVarLong(changeset.getId() - previousId);
+                writer.writeSignedVarLong(changeset.getCommitTimeMs() - previousCommitTimeMs);
+                writer.writeVarLong(changeset.getAclCount());
+                previousId = changeset.getId();
+                previousCommitTimeMs = changeset.getCommitTimeMs();
+            }
+            writer.writeNullableLong(maxChangeSetCommitTime);
+            writer.writeNullableLong(maxChangeSetId);
+            writer.flush();
         }
-        
-        Long maxChangeSetId = searchTrackingComponent.getMaxChangeSetId();
-        if(maxChangeSetId != null)
+        else
         {
-            model.put("maxChangeSetId", maxChangeSetId);
+            try (JsonGenerator generator = createGenerator(res))
+            {
+                generator.writeStartObject();
+                generator.writeArrayFieldStart("aclChangeSets");
+                for (AclChangeSet changeset : changesets)
+                {
+                    generator.writeStartObject();
+                    generator.writeNumberField("id", changeset.getId());
+                    generator.writeNumberField("commitTimeMs", changeset.getCommitTimeMs());
+                    generator.writeNumberField("aclCount", changeset.getAclCount());
+                    generator.writeEndObject();
+                }
+                generator.writeEndArray();
+                if (maxChangeSetCommitTime != null)
+                {
+                    generator.writeNumberField("maxChangeSetCommitTime", maxChangeSetCommitTime);
+                }
+                if (maxChangeSetId != null)
+                {
+                    generator.writeNumberField("maxChangeSetId", maxChangeSetId);
+                }
+                generator.writeEndObject();
+            }
         }
 
-        
         if (logger.isDebugEnabled())
         {
-            logger.debug("Result: \n\tRequest: " + req + "\n\tModel: " + model);
+            logger.debug("Result: \n\tRequest: " + req + "\n\tChange sets: " + changesets.size() +
+                    "\n\tMax commit time: " + maxChangeSetCommitTime + "\n\tMax change set ID: " + maxChangeSetId);
         }
-        
-        return model;
     }
 }
@@ -27,10 +27,9 @@ package org.alfresco.repo.web.scripts.solr;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import org.alfresco.repo.search.SearchTrackingComponent;
 import org.alfresco.repo.solr.AclReaders;
 import org.apache.commons.logging.Log;
@@ -38,18 +37,17 @@ import org.apache.commons.logging.LogFactory;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
-import org.springframework.extensions.surf.util.Content;
-import org.springframework.extensions.webscripts.DeclarativeWebScript;
 import org.springframework.extensions.webscripts.Status;
 import org.springframework.extensions.webscripts.WebScriptException;
 import org.springframework.extensions.webscripts.WebScriptRequest;
+import org.springframework.extensions.webscripts.WebScriptResponse;
 
 /**
  * Support for SOLR: Track ACLs
  *
  * @since 4.0
  */
-public class AclsReadersGet extends DeclarativeWebScript
+public class AclsReadersGet extends AbstractSOLRStreamingWebScript
 {
     protected static final Log logger = LogFactory.getLog(AclsReadersGet.class);
 
@@ -60,20 +58,32 @@ public class AclsReadersGet extends DeclarativeWebScript
         this.searchTrackingComponent = searchTrackingComponent;
     }
 
-    protected Map<String, Object> executeImpl(WebScriptRequest req, Status status)
+    @Override
+    public void execute(WebScriptRequest req, WebScriptResponse res) throws IOException
     {
         try
         {
-            Map<String, Object> model = buildModel(req);
+            List<Long> aclIds = getAclIds(readRequest(req));
+
+            // Request according to the paging query style required
+            List<AclReaders> aclsReaders = searchTrackingComponent.getAclsReaders(aclIds);
+
+            try (JsonGenerator generator = createGenerator(res))
+            {
+                generator.writeStartObject();
+                generator.writeArrayFieldStart("aclsReaders");
+                for (AclReaders aclReaders : aclsReaders)
+                {
+                    writeAclReaders(generator, aclReaders);
+                }
+                generator.writeEndArray();
+                generator.writeEndObject();
+            }
+
             if (logger.isDebugEnabled())
             {
-                logger.debug("Result: \n\tRequest: " + req + "\n\tModel: " + model);
+                logger.debug("Result: \n\tRequest: " + req + "\n\tACLs: " + aclsReaders.size());
             }
-            return model;
-        }
-        catch(IOException e)
-        {
-            throw new WebScriptException("IO exception parsing request", e);
         }
         catch(JSONException e)
         {
@@ -81,16 +91,8 @@ public class AclsReadersGet extends DeclarativeWebScript
         }
     }
     
-    private Map<String, Object> buildModel(WebScriptRequest req) throws JSONException, IOException
+    private List<Long> getAclIds(JSONObject o) throws JSONException
     {
-        List<Long> aclIds = null;
-        
-        Content content = req.getContent();
-        if (content == null)
-        {
-            throw new WebScriptException("Request content is empty");
-        }
-        JSONObject o = new JSONObject(content.getContent());
         JSONArray aclIdsJSON = o.has("aclIds") ? o.getJSONArray("aclIds") : null;
         if (aclIdsJSON == null)
         {
@@ -104,23 +106,32 @@ public class AclsReadersGet extends DeclarativeWebScript
                     Status.STATUS_BAD_REQUEST,
                     "Parameter 'aclIds' must hold from 1 or more IDs.");
         }
-        aclIds = new ArrayList<Long>(aclIdsJSON.length());
+        List<Long> aclIds = new ArrayList<Long>(aclIdsJSON.length());
         for (int i = 0; i < aclIdsJSON.length(); i++)
         {
             aclIds.add(aclIdsJSON.getLong(i));
         }
+        return aclIds;
+    }
 
-        // Request according to the paging query style required
-        List<AclReaders> aclsReaders = searchTrackingComponent.getAclsReaders(aclIds);
-        
-        Map<String, Object> model = new HashMap<String, Object>(1, 1.0f);
-        model.put("aclsReaders", aclsReaders);
-
-        if (logger.isDebugEnabled())
+    private void writeAclReaders(JsonGenerator generator, AclReaders aclReaders) throws IOException
+    {
+        generator.writeStartObject();
+        generator.writeNumberField("aclId", aclReaders.getAclId());
+        generator.writeNumberField("aclChangeSetId", aclReaders.getAclChangeSetId());
+        generator.writeStringField("tenantDomain", aclReaders.getTenantDomain());
+        generator.writeArrayFieldStart("readers");
+        for (String reader : aclReaders.getReaders())
+        {
+            generator.writeString(reader);
+        }
+        generator.writeEndArray();
+        generator.writeArrayFieldStart("denied");
+        for (String denied : aclReaders.getDenied())
         {
-            logger.debug("Result: \n\tRequest: " + req + "\n\tModel: " + model);
+            generator.writeString(denied);
         }
-        
-        return model;
+        generator.writeEndArray();
+        generator.writeEndObject();
     }
 }
@@ -27,12 +27,12 @@ package org.alfresco.repo.web.scripts.solr;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.repo.domain.node.Node;
 import org.alfresco.repo.domain.qname.QNameDAO;
 import org.alfresco.repo.search.SearchTrackingComponent;
@@ -47,11 +47,9 @@ import org.apache.commons.logging.LogFactory;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
-import org.springframework.extensions.surf.util.Content;
-import org.springframework.extensions.webscripts.DeclarativeWebScript;
-import org.springframework.extensions.webscripts.Status;
 import org.springframework.extensions.webscripts.WebScriptException;
 import org.springframework.extensions.webscripts.WebScriptRequest;
+import org.springframework.extensions.webscripts.WebScriptResponse;
 
 /**
  * Support for SOLR: Get a list of nodes in the given transactions.
@@ -59,10 +57,12 @@ import org.springframework.extensions.webscripts.WebScriptRequest;
  * Supports fromNodeId, toNodeId, count (all optional) to control the number of nodes returned<br/>
  * e.g. (null, null, 1000) will return at most 1000 nodes starting from the first node in the first transaction.<br/>
  * e.g. (1234, null, 1000) will return at most 1000 nodes starting from the node id 1234.<br/>
+ * <p/>
+ * Each node is written to the response as soon as it has been read.
  * 
  * @since 4.0
  */
-public class NodesGet extends DeclarativeWebScript
+public class NodesGet extends AbstractSOLRStreamingWebScript
 {
     protected static final Log logger = LogFactory.getLog(NodesGet.class);
     
@@ -88,16 +88,11 @@ public class NodesGet extends DeclarativeWebScript
     }
 
     @Override
-    protected Map<String, Object> executeImpl(WebScriptRequest req, Status status)
+    public void execute(WebScriptRequest req, WebScriptResponse res) throws IOException
     {
         try
         {
-            Content content = req.getContent();
-            if(content == null)
-            {
-                throw new WebScriptException("Failed to convert request to String");
-            }
-            JSONObject o = new JSONObject(content.getContent());
+            JSONObject o = readRequest(req);
 
             JSONArray aTxnIds = o.has("txnIds") ? o.getJSONArray("txnIds") : null;
             Long fromTxnId = o.has("fromTxnId") ? o.getLong("fromTxnId") : null;
@@ -199,24 +194,20 @@ public class NodesGet extends DeclarativeWebScript
             
             nodeParameters.setMaxResults(maxResults);
             
-            WebNodeQueryCallback nodeQueryCallback = new WebNodeQueryCallback(maxResults, storeRef, tenantService, qnameDAO);
-
-            searchTrackingComponent.getNodes(nodeParameters, nodeQueryCallback);
-            
-            Map<String, Object> model = new HashMap<String, Object>(1, 1.0f);
-            List<NodeRecord> nodes = nodeQueryCallback.getNodes();
-            model.put("nodes", nodes);
-            
-            if (logger.isDebugEnabled())
+            try (JsonGenerator generator = createGenerator(res))
             {
-                logger.debug("Result: \n\tRequest: " + req + "\n\tModel: " + model);
+                generator.writeStartObject();
+                generator.writeArrayFieldStart("nodes");
+                WebNodeQueryCallback nodeQueryCallback = new WebNodeQueryCallback(generator, storeRef, tenantService, qnameDAO);
+                searchTrackingComponent.getNodes(nodeParameters, nodeQueryCallback);
+                generator.writeEndArray();
+                generator.writeEndObject();
+
+                if (logger.isDebugEnabled())
+                {
+                    logger.debug("Result: \n\tRequest: " + req + "\n\tNodes: " + nodeQueryCallback.getCount());
+                }
             }
-            
-            return model;
-        }
-        catch(IOException e)
-        {
-            throw new WebScriptException("IO exception parsing request", e);
         }
         catch(JSONException e)
         {
@@ -286,14 +277,40 @@ public class NodesGet extends DeclarativeWebScript
         {
             return this.explicitShardId;
         }
+
+        /**
+         * Write the record as a JSON object
+         */
+        public void write(JsonGenerator generator) throws IOException
+        {
+            generator.writeStartObject();
+            generator.writeNumberField("id", id);
+            generator.writeStringField("nodeRef", nodeRef);
+            generator.writeNumberField("txnId", txnId);
+            generator.writeStringField("status", isDeleted ? "d" : "u");
+            if (aclId != null)
+            {
+                generator.writeNumberField("aclId", aclId);
+            }
+            if (shardPropertyValue != null)
+            {
+                generator.writeStringField("shardPropertyValue", shardPropertyValue);
+            }
+            if (explicitShardId != null)
+            {
+                generator.writeStringField("explicitShardId", explicitShardId.toString());
+            }
+            generator.writeStringField("tenant", tenant);
+            generator.writeEndObject();
+        }
     }
 
     /**
-     * Callback for DAO get nodes query
+     * Callback for DAO get nodes query that writes each node as it is found
      */
     private class WebNodeQueryCallback implements NodeQueryCallback
     {
-        private ArrayList<NodeRecord> nodes;
+        private JsonGenerator generator;
         
         private StoreRef storeRef;
         
@@ -301,15 +318,16 @@ public class NodesGet extends DeclarativeWebScript
         
         private QNameDAO qnameDAO;
         
-        public WebNodeQueryCallback(int count, StoreRef storeRef, TenantService tenantService, QNameDAO qnameDAO)
+        private int count;
+        
+        public WebNodeQueryCallback(JsonGenerator generator, StoreRef storeRef, TenantService tenantService, QNameDAO qnameDAO)
         {
             super();
             
+            this.generator = generator;
             this.storeRef = storeRef;
             this.tenantService = tenantService;
             this.qnameDAO = qnameDAO;
-           
-            nodes = new ArrayList<NodeRecord>(count == 0 || count == Integer.MAX_VALUE ? 100 : count);
         }
         
         @Override
@@ -322,21 +340,34 @@ public class NodesGet extends DeclarativeWebScript
                 StoreRef baseStoreRef = new StoreRef(tenantStoreRef.getProtocol(), tenantService.getBaseName(tenantStoreRef.getIdentifier(), true));
                 if (storeRef.equals(baseStoreRef))
                 {
-                    nodes.add(new NodeRecord(node, qnameDAO, tenantService));
+                    write(new NodeRecord(node, qnameDAO, tenantService));
                 }
             }
             else
             {
-                nodes.add(new NodeRecord(node, qnameDAO, tenantService));
+                write(new NodeRecord(node, qnameDAO, tenantService));
             }
             
             // continue - get next node
             return true;
         }
         
-        public List<NodeRecord> getNodes()
+        private void write(NodeRecord nodeRecord)
+        {
+            try
+            {
+                nodeRecord.write(generator);
+                count++;
+            }
+            catch (IOException e)
+            {
+                throw new AlfrescoRuntimeException("Failed to write node " + nodeRecord.getNodeRef(), e);
+            }
+        }
+        
+        public int getCount()
         {
-            return nodes;
+            return count;
         }
     }
 }
\ No newline at end of file
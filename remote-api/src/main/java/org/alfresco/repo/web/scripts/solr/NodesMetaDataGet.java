@@ -2,7 +2,7 @@
  * #%L
  * Alfresco Remote API
  * %%
- * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
  * %%
  * This file is part of the Alfresco software. 
  * If the software was purchased under a paid Alfresco license, the terms of 
@@ -29,13 +29,15 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.repo.search.IndexerException;
 import org.alfresco.repo.search.SearchTrackingComponent;
@@ -55,24 +57,42 @@ import org.apache.commons.logging.LogFactory;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
-import org.springframework.extensions.surf.util.Content;
-import org.springframework.extensions.webscripts.DeclarativeWebScript;
-import org.springframework.extensions.webscripts.Status;
 import org.springframework.extensions.webscripts.WebScriptException;
 import org.springframework.extensions.webscripts.WebScriptRequest;
+import org.springframework.extensions.webscripts.WebScriptResponse;
 
-// todo url parameter to remove whitespace in results - make it the default?
 /**
  * Support for SOLR: Get metadata for nodes given IDs, ranges of IDs, etc.
  * <p/>
+ * Each node is written to the response as soon as it has been read so that large batches
+ * do not have to be held in memory.
+ * <p/>
+ * In the {@link TrackingBinaryWriter binary} response each node is preceded by <tt>true</tt> and
+ * the last node is followed by <tt>false</tt>.  A node is written as:
+ * <ul>
+ *   <li>the signed varint difference of its ID from the previous node's ID</li>
+ *   <li>the tenant domain, the store of the node reference (dictionary strings) and the node's UUID</li>
+ *   <li>the short type QName (dictionary string), ACL ID and transaction ID (nullable longs)</li>
+ *   <li>the properties: the short QName (dictionary string) and JSON value of each</li>
+ *   <li>the aspects: the short QName (dictionary string) of each</li>
+ *   <li>the paths: the path, the category QName and the ancestor ID path (dictionary strings)
+ *       of each.  If the paths were included, they are followed by the number of ancestors and
+ *       each ancestor (dictionary string).</li>
+ *   <li>the name paths: the number of elements and the elements (dictionary strings) of each</li>
+ *   <li>the parent associations (dictionary strings) followed by the association CRC</li>
+ *   <li>the child associations (dictionary strings)</li>
+ *   <li>the child IDs: the signed varint difference of each from the previous one</li>
+ *   <li>the owner (dictionary string)</li>
+ * </ul>
+ * Each list is preceded by its size plus one, or <tt>0</tt> if it was excluded by the request's
+ * filter, so that an excluded list can be told apart from an empty one.  Values without a stated
+ * encoding are strings and counts are varints.
  * 
  * @since 4.0
  */
-public class NodesMetaDataGet extends DeclarativeWebScript
+public class NodesMetaDataGet extends AbstractSOLRStreamingWebScript
 {
     protected static final Log logger = LogFactory.getLog(NodesMetaDataGet.class);
-    private static final int INITIAL_DEFAULT_SIZE = 100;
-    private static final int BATCH_SIZE = 50;
     
     private SearchTrackingComponent searchTrackingComponent;
     private SOLRSerializer solrSerializer;
@@ -88,16 +108,11 @@ public class NodesMetaDataGet extends DeclarativeWebScript
     }
 
     @Override
-    protected Map<String, Object> executeImpl(WebScriptRequest req, Status status)
+    public void execute(WebScriptRequest req, WebScriptResponse res) throws IOException
     {
         try
         {
-            Content content = req.getContent();
-            if(content == null)
-            {
-                throw new WebScriptException("Failed to convert request to String");
-            }
-            JSONObject o = new JSONObject(content.getContent());
+            JSONObject o = readRequest(req);
             
             List<Long> nodeIds = null;
             if(o.has("nodeIds"))
@@ -117,26 +132,6 @@ public class NodesMetaDataGet extends DeclarativeWebScript
             // 0 or Integer.MAX_VALUE => ignore
             int maxResults = o.has("maxResults") ? o.getInt("maxResults") : 0;
 
-            int size = 0;
-            if(maxResults != 0 && maxResults != Integer.MAX_VALUE)
-            {
-                size = maxResults;
-            }
-            else if(nodeIds != null)
-            {
-                size = nodeIds.size();
-            }
-            else if(fromNodeId != null && toNodeId != null)
-            {
-                if((toNodeId.longValue() - fromNodeId.longValue()) > Integer.MAX_VALUE)
-                {
-                    throw new WebScriptException("Too many nodes expected, try changing the criteria");
-                }
-                size = (int)(toNodeId - fromNodeId);
-            }
-
-            final boolean noSizeCalculated = (size == 0);
-
             // filters, defaults are 'true'
             MetaDataResultsFilter filter = new MetaDataResultsFilter();
             if(o.has("includeAclId"))
@@ -184,58 +179,48 @@ public class NodesMetaDataGet extends DeclarativeWebScript
                 filter.setIncludeTxnId(o.getBoolean("includeTxnId"));
             }
             
-            final ArrayList<FreemarkerNodeMetaData> nodesMetaData = 
-                new ArrayList<FreemarkerNodeMetaData>(size > 0 ? size : INITIAL_DEFAULT_SIZE);
             NodeMetaDataParameters params = new NodeMetaDataParameters();
             params.setNodeIds(nodeIds);
             params.setFromNodeId(fromNodeId);
             params.setToNodeId(toNodeId);
             params.setMaxResults(maxResults);
 
-            searchTrackingComponent.getNodesMetadata(params, filter, new NodeMetaDataQueryCallback()
+            if (isBinaryRequested(req))
             {
-                private int counter = BATCH_SIZE;
-                private int numBatches = 0;
+                writeBinary(req, res, params, filter);
+                return;
+            }
 
-                @Override
-                public boolean handleNodeMetaData(NodeMetaData nodeMetaData)
+            try (final JsonGenerator generator = createGenerator(res))
+            {
+                generator.writeStartObject();
+                generator.writeArrayFieldStart("nodes");
+                final int[] count = new int[] {0};
+                searchTrackingComponent.getNodesMetadata(params, filter, new NodeMetaDataQueryCallback()
                 {
-                    // need to perform data structure conversions that are compatible with Freemarker
-                    // e.g. Serializable -> String, QName -> String (because map keys must be string, number)
-                    try
-                    {
-                        FreemarkerNodeMetaData fNodeMetaData = new FreemarkerNodeMetaData(solrSerializer, nodeMetaData);
-                        nodesMetaData.add(fNodeMetaData);
-                    }
-                    catch(Exception e)
+                    @Override
+                    public boolean handleNodeMetaData(NodeMetaData nodeMetaData)
                     {
-                        throw new AlfrescoRuntimeException("Problem converting to Freemarker using node " + nodeMetaData.getNodeRef().toString(), e); 
+                        try
+                        {
+                            writeNodeMetaData(generator, nodeMetaData);
+                        }
+                        catch(Exception e)
+                        {
+                            throw new AlfrescoRuntimeException("Problem serializing metadata for node " + nodeMetaData.getNodeRef(), e);
+                        }
+                        count[0]++;
+                        return true;
                     }
+                });
+                generator.writeEndArray();
+                generator.writeEndObject();
 
-                    if(noSizeCalculated && --counter == 0)
-                    {
-                        counter = BATCH_SIZE;
-                        nodesMetaData.ensureCapacity(++numBatches*BATCH_SIZE);
-                    }
-
-                    return true;
+                if (logger.isDebugEnabled())
+                {
+                    logger.debug("Result: \n\tRequest: " + req + "\n\tNodes: " + count[0]);
                 }
-            });
-
-            Map<String, Object> model = new HashMap<String, Object>(1, 1.0f);
-            model.put("nodes", nodesMetaData);
-            model.put("filter", filter);
-
-            if (logger.isDebugEnabled())
-            {
-                logger.debug("Result: \n\tRequest: " + req + "\n\tModel: " + model);
             }
-            
-            return model;
-        }
-        catch(IOException e)
-        {
-            throw new WebScriptException("IO exception parsing request", e);
         }
         catch(JSONException e)
         {
@@ -243,222 +228,354 @@ public class NodesMetaDataGet extends DeclarativeWebScript
         }
     }
 
-    /**
-     * Bean to store node meta data for use by FreeMarker templates
-     * 
-     * @since 4.0
-     */
-    public static class FreemarkerNodeMetaData
+    private void writeBinary(WebScriptRequest req, WebScriptResponse res, NodeMetaDataParameters params, MetaDataResultsFilter filter) throws IOException
     {
-        private final Long nodeId;
-        private final NodeRef nodeRef;
-        private final QName nodeType;
-        private final Long aclId;
-        private final Map<String, PropertyValue> properties;
-        private final Set<QName> aspects;
-        private final List<String> paths;
-        private final List<String> namePaths;
-        private final List<String> childAssocs;
-        private final List<String> parentAssocs;
-        private final Long parentAssocsCrc;
-        private final List<Long> childIds;
-        private final String owner;
-        private final Long txnId;
-        private final Set<String> ancestors;
-        private final String tenantDomain;
-        
-        public FreemarkerNodeMetaData(final SOLRSerializer solrSerializer, final NodeMetaData nodeMetaData)
-        		throws IOException, JSONException
+        final TrackingBinaryWriter writer = createBinaryWriter(res, TrackingBinaryWriter.TYPE_NODES_METADATA);
+        final long[] previousNodeId = new long[] {0L};
+        final int[] count = new int[] {0};
+        searchTrackingComponent.getNodesMetadata(params, filter, new NodeMetaDataQueryCallback()
         {
-            this.nodeId = nodeMetaData.getNodeId();
-            this.tenantDomain = nodeMetaData.getTenantDomain();
-            this.aclId = nodeMetaData.getAclId();
-            this.nodeRef = nodeMetaData.getNodeRef();
-            this.nodeType = nodeMetaData.getNodeType();
-            this.txnId = nodeMetaData.getTxnId();
-            this.parentAssocs = new ArrayList<>();
-            this.childAssocs = new ArrayList<>();
-
-            // convert Paths to Strings
-            List<String> paths = new ArrayList<String>();
-            List<String> ancestorPaths = new ArrayList<String>();
-            HashSet<String> ancestors = new HashSet<String>();
-            if(nodeMetaData.getPaths() != null)
-            {
-                for(Pair<Path, QName> pair : nodeMetaData.getPaths())
+            @Override
+            public boolean handleNodeMetaData(NodeMetaData nodeMetaData)
+            {
+                try
                 {
-                	StringBuilder ancestorPath = new StringBuilder();
-                    JSONObject o = new JSONObject();
-                    o.put("path", solrSerializer.serializeValue(String.class, pair.getFirst()));
-                    o.put("qname", solrSerializer.serializeValue(String.class, pair.getSecond()));
-                   
-                    
-                    for (NodeRef ancestor : getAncestors(pair.getFirst()))
-                    {
-                        ancestors.add(ancestor.toString());
-                        ancestorPath.insert(0, ancestor.getId()).insert(0, "/");
-                    }
-                   
-                    o.put("apath",  ancestorPath);
-                    paths.add(o.toString(3));
+                    writer.writeBoolean(true);
+                    writeNodeMetaData(writer, nodeMetaData, previousNodeId[0]);
                 }
-            }
-            this.ancestors = ancestors;
-            this.paths = paths;
-
-            
-            // convert name Paths to Strings
-            List<String> namePaths = new ArrayList<String>();
-            if(nodeMetaData.getNamePaths() != null)
-            {
-                for(Collection<String> namePath : nodeMetaData.getNamePaths())
+                catch(Exception e)
                 {
-                    JSONObject o = new JSONObject();
-                    JSONArray array = new JSONArray();
-                    for(String element : namePath)
-                    {
-                        array.put(solrSerializer.serializeValue(String.class, element));
-                    }
-                    o.put("namePath", array);
-                    namePaths.add(o.toString(3));
+                    throw new AlfrescoRuntimeException("Problem serializing metadata for node " + nodeMetaData.getNodeRef(), e);
                 }
+                previousNodeId[0] = nodeMetaData.getNodeId();
+                count[0]++;
+                return true;
             }
-            this.namePaths = namePaths;
+        });
+        writer.writeBoolean(false);
+        writer.flush();
 
-            this.owner = nodeMetaData.getOwner();
-            this.childIds = nodeMetaData.getChildIds();
-            this.parentAssocsCrc = nodeMetaData.getParentAssocsCrc();
-            this.aspects = nodeMetaData.getAspects();
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Result: \n\tRequest: " + req + "\n\tNodes: " + count[0] + " (binary)");
+        }
+    }
 
+    /**
+     * Write one node in the binary encoding described for this class
+     */
+    private void writeNodeMetaData(TrackingBinaryWriter writer, NodeMetaData nodeMetaData, long previousNodeId) throws IOException, JSONException
+    {
+        writer.writeSignedVarLong(nodeMetaData.getNodeId() - previousNodeId);
+        String tenantDomain = nodeMetaData.getTenantDomain();
+        writer.writeDictionaryString(tenantDomain);
+        NodeRef nodeRef = nodeMetaData.getNodeRef();
+        writer.writeDictionaryString(nodeRef == null ? null : nodeRef.getStoreRef().toString());
+        writer.writeString(nodeRef == null ? null : nodeRef.getId());
+        writer.writeDictionaryString(nodeMetaData.getNodeType() == null ? null : solrSerializer.serializeShortQName(nodeMetaData.getNodeType()));
+        writer.writeNullableLong(nodeMetaData.getAclId());
+        writer.writeNullableLong(nodeMetaData.getTxnId());
 
-            if (nodeMetaData.getParentAssocs() != null)
+        Map<String, PropertyValue> properties = serializeProperties(nodeMetaData.getProperties(), tenantDomain);
+        writeSize(writer, properties == null ? null : properties.keySet());
+        if (properties != null)
+        {
+            for (Map.Entry<String, PropertyValue> entry : properties.entrySet())
             {
-                for( ChildAssociationRef assRef : nodeMetaData.getParentAssocs())
-                {
-                    parentAssocs.add("\"" + solrSerializer.serializeToJSONString(assRef) + "\"");
-                }
+                writer.writeDictionaryString(entry.getKey());
+                writer.writeString(entry.getValue().toString());
             }
+        }
 
-            if (nodeMetaData.getChildAssocs() != null)
+        Set<QName> aspects = nodeMetaData.getAspects();
+        writeSize(writer, aspects);
+        if (aspects != null)
+        {
+            for (QName aspect : aspects)
             {
-                for( ChildAssociationRef assRef : nodeMetaData.getChildAssocs() )
+                writer.writeDictionaryString(solrSerializer.serializeShortQName(aspect));
+            }
+        }
+
+        Collection<Pair<Path, QName>> paths = nodeMetaData.getPaths();
+        writeSize(writer, paths);
+        if (paths != null)
+        {
+            Set<String> ancestors = new LinkedHashSet<String>();
+            for (Pair<Path, QName> pair : paths)
+            {
+                StringBuilder ancestorPath = new StringBuilder();
+                for (NodeRef ancestor : getAncestors(pair.getFirst()))
                 {
-                    childAssocs.add("\"" + solrSerializer.serializeToJSONString(assRef) + "\"");
+                    ancestors.add(ancestor.toString());
+                    ancestorPath.insert(0, ancestor.getId()).insert(0, "/");
                 }
+                writer.writeDictionaryString(solrSerializer.serializeValue(String.class, pair.getFirst()));
+                writer.writeDictionaryString(solrSerializer.serializeValue(String.class, pair.getSecond()));
+                writer.writeDictionaryString(ancestorPath.toString());
             }
+            writer.writeVarLong(ancestors.size());
+            for (String ancestor : ancestors)
+            {
+                writer.writeDictionaryString(ancestor);
+            }
+        }
 
-            final Map<QName, Serializable> props = nodeMetaData.getProperties();
-            if (props != null)
+        Collection<Collection<String>> namePaths = nodeMetaData.getNamePaths();
+        writeSize(writer, namePaths);
+        if (namePaths != null)
+        {
+            for (Collection<String> namePath : namePaths)
             {
-                final Map<String, PropertyValue> properties = new HashMap<String, PropertyValue>(props.size());
-                for (final QName propName : props.keySet())
+                writer.writeVarLong(namePath.size());
+                for (String element : namePath)
                 {
-                	// need to run this in tenant context because types may be in a tenant-specific
-                	// dictionary registry
-                    TenantUtil.runAsTenant(new TenantRunAsWork<Void>()
-                    {
-                    	@Override
-                    	public Void doWork() throws Exception 
-                    	{
-                    		Serializable value = props.get(propName);
-                    		properties.put(solrSerializer.serializeValue(String.class, propName),
-                    				solrSerializer.serialize(propName, value));
-                    		return null;
-                    	}
-                    }, tenantDomain);
+                    writer.writeDictionaryString(solrSerializer.serializeValue(String.class, element));
                 }
-                this.properties = properties;
             }
-            else
+        }
+
+        List<ChildAssociationRef> parentAssocs = nodeMetaData.getParentAssocs();
+        writeSize(writer, parentAssocs);
+        if (parentAssocs != null)
+        {
+            for (ChildAssociationRef assocRef : parentAssocs)
+            {
+                writer.writeDictionaryString(solrSerializer.serializeToJSONString(assocRef));
+            }
+        }
+        writer.writeNullableLong(nodeMetaData.getParentAssocsCrc());
+
+        List<ChildAssociationRef> childAssocs = nodeMetaData.getChildAssocs();
+        writeSize(writer, childAssocs);
+        if (childAssocs != null)
+        {
+            for (ChildAssociationRef assocRef : childAssocs)
             {
-                this.properties = null;
+                writer.writeDictionaryString(solrSerializer.serializeToJSONString(assocRef));
             }
         }
-        
-        public NodeRef getNodeRef()
+
+        List<Long> childIds = nodeMetaData.getChildIds();
+        writeSize(writer, childIds);
+        if (childIds != null)
         {
-            return nodeRef;
+            long previousChildId = 0L;
+            for (Long childId : childIds)
+            {
+                writer.writeSignedVarLong(childId - previousChildId);
+                previousChildId = childId;
+            }
         }
-        public List<String> getPaths()
+
+        writer.writeDictionaryString(nodeMetaData.getOwner());
+    }
+
+    /**
+     * Write the size of a list plus one, or <tt>0</tt> if it was excluded
+     */
+    private static void writeSize(TrackingBinaryWriter writer, Collection<?> values) throws IOException
+    {
+        writer.writeVarLong(values == null ? 0 : values.size() + 1L);
+    }
+
+    /**
+     * Write one node.  Values that were excluded by the {@link MetaDataResultsFilter} are
+     * <tt>null</tt> and are left out.
+     */
+    private void writeNodeMetaData(JsonGenerator generator, NodeMetaData nodeMetaData) throws IOException, JSONException
+    {
+        generator.writeStartObject();
+        generator.writeNumberField("id", nodeMetaData.getNodeId());
+        String tenantDomain = nodeMetaData.getTenantDomain();
+        if (tenantDomain != null)
         {
-            return paths;
+            generator.writeStringField("tenantDomain", tenantDomain);
         }
-        public List<String> getNamePaths()
+        if (nodeMetaData.getNodeRef() != null)
         {
-            return namePaths;
+            generator.writeStringField("nodeRef", nodeMetaData.getNodeRef().toString());
         }
-        public QName getNodeType()
+        if (nodeMetaData.getNodeType() != null)
         {
-            return nodeType;
+            generator.writeStringField("type", solrSerializer.serializeShortQName(nodeMetaData.getNodeType()));
         }
-        public Long getNodeId()
+        if (nodeMetaData.getAclId() != null)
         {
-            return nodeId;
+            generator.writeNumberField("aclId", nodeMetaData.getAclId());
         }
-        public Long getAclId()
+        if (nodeMetaData.getTxnId() != null)
         {
-            return aclId;
+            generator.writeNumberField("txnId", nodeMetaData.getTxnId());
         }
-        public Map<String, PropertyValue> getProperties()
+
+        Map<String, PropertyValue> properties = serializeProperties(nodeMetaData.getProperties(), tenantDomain);
+        if (properties != null)
         {
-            return properties;
+            generator.writeObjectFieldStart("properties");
+            for (Map.Entry<String, PropertyValue> entry : properties.entrySet())
+            {
+                generator.writeFieldName(entry.getKey());
+                // The property value is already JSON
+                generator.writeRawValue(entry.getValue().toString());
+            }
+            generator.writeEndObject();
         }
-        public Set<QName> getAspects()
+
+        if (nodeMetaData.getAspects() != null)
         {
-            return aspects;
+            generator.writeArrayFieldStart("aspects");
+            for (QName aspect : nodeMetaData.getAspects())
+            {
+                generator.writeString(solrSerializer.serializeShortQName(aspect));
+            }
+            generator.writeEndArray();
         }
-        public List<String> getChildAssocs()
+
+        Set<String> ancestors = new HashSet<String>();
+        generator.writeArrayFieldStart("paths");
+        if (nodeMetaData.getPaths() != null)
         {
-            return childAssocs;
+            for (Pair<Path, QName> pair : nodeMetaData.getPaths())
+            {
+                StringBuilder ancestorPath = new StringBuilder();
+                for (NodeRef ancestor : getAncestors(pair.getFirst()))
+                {
+                    ancestors.add(ancestor.toString());
+                    ancestorPath.insert(0, ancestor.getId()).insert(0, "/");
+                }
+                generator.writeStartObject();
+                generator.writeStringField("path", solrSerializer.serializeValue(String.class, pair.getFirst()));
+                String qname = solrSerializer.serializeValue(String.class, pair.getSecond());
+                if (qname != null)
+                {
+                    generator.writeStringField("qname", qname);
+                }
+                generator.writeStringField("apath", ancestorPath.toString());
+                generator.writeEndObject();
+            }
         }
-        public List<String> getParentAssocs()
+        generator.writeEndArray();
+        if (ancestors.size() > 0)
         {
-            return parentAssocs;
+            generator.writeArrayFieldStart("ancestors");
+            for (String ancestor : ancestors)
+            {
+                generator.writeString(ancestor);
+            }
+            generator.writeEndArray();
         }
-        public Long getParentAssocsCrc()
+
+        generator.writeArrayFieldStart("namePaths");
+        if (nodeMetaData.getNamePaths() != null)
         {
-            return parentAssocsCrc;
+            for (Collection<String> namePath : nodeMetaData.getNamePaths())
+            {
+                generator.writeStartObject();
+                generator.writeArrayFieldStart("namePath");
+                for (String element : namePath)
+                {
+                    generator.writeString(solrSerializer.serializeValue(String.class, element));
+                }
+                generator.writeEndArray();
+                generator.writeEndObject();
+            }
         }
-        public Set<String> getAncestors()
+        generator.writeEndArray();
+
+        List<ChildAssociationRef> parentAssocs = nodeMetaData.getParentAssocs();
+        if (parentAssocs != null && parentAssocs.size() > 0)
         {
-            return ancestors;
+            generator.writeArrayFieldStart("parentAssocs");
+            for (ChildAssociationRef assocRef : parentAssocs)
+            {
+                generator.writeString(solrSerializer.serializeToJSONString(assocRef));
+            }
+            generator.writeEndArray();
+            if (nodeMetaData.getParentAssocsCrc() != null)
+            {
+                generator.writeNumberField("parentAssocsCrc", nodeMetaData.getParentAssocsCrc());
+            }
+            else
+            {
+                generator.writeNullField("parentAssocsCrc");
+            }
         }
-        public List<Long> getChildIds()
+
+        List<ChildAssociationRef> childAssocs = nodeMetaData.getChildAssocs();
+        if (childAssocs != null && childAssocs.size() > 0)
         {
-            return childIds;
+            generator.writeArrayFieldStart("childAssocs");
+            for (ChildAssociationRef assocRef : childAssocs)
+            {
+                generator.writeString(solrSerializer.serializeToJSONString(assocRef));
+            }
+            generator.writeEndArray();
         }
-        public String getOwner()
+
+        List<Long> childIds = nodeMetaData.getChildIds();
+        if (childIds != null && childIds.size() > 0)
         {
-            return owner;
+            generator.writeArrayFieldStart("childIds");
+            for (Long childId : childIds)
+            {
+                generator.writeNumber(childId);
+            }
+            generator.writeEndArray();
         }
-        public Long getTxnId()
+
+        if (nodeMetaData.getOwner() != null)
         {
-            return txnId;
+            generator.writeStringField("owner", nodeMetaData.getOwner());
         }
-        public String getTenantDomain()
+        generator.writeEndObject();
+    }
+
+    /**
+     * Convert the property values to JSON.  This is done in the context of the node's tenant
+     * because the types may be in a tenant-specific dictionary.
+     * 
+     * @return              the JSON values keyed by property name or <tt>null</tt> if there are no properties
+     */
+    private Map<String, PropertyValue> serializeProperties(final Map<QName, Serializable> props, String tenantDomain)
+    {
+        if (props == null)
         {
-            return tenantDomain;
+            return null;
         }
-        private ArrayList<NodeRef> getAncestors(Path path)
+        return TenantUtil.runAsTenant(new TenantRunAsWork<Map<String, PropertyValue>>()
         {
-            ArrayList<NodeRef> ancestors = new ArrayList<NodeRef>(8);
-            for (Iterator<Path.Element> elit = path.iterator(); elit.hasNext(); /**/)
+            @Override
+            public Map<String, PropertyValue> doWork() throws Exception
             {
-                Path.Element element = elit.next();
-                if (!(element instanceof Path.ChildAssocElement))
-                {
-                    throw new IndexerException("Confused path: " + path);
-                }
-                Path.ChildAssocElement cae = (Path.ChildAssocElement) element;
-                NodeRef parentRef = cae.getRef().getParentRef();
-                if(parentRef != null)
+                Map<String, PropertyValue> properties = new LinkedHashMap<String, PropertyValue>(props.size() * 2);
+                for (Map.Entry<QName, Serializable> entry : props.entrySet())
                 {
-                    ancestors.add(0, parentRef);
+                    properties.put(solrSerializer.serializeValue(String.class, entry.getKey()),
+                            solrSerializer.serialize(entry.getKey(), entry.getValue()));
                 }
+                return properties;
+            }
+        }, tenantDomain);
+    }
 
+    private static List<NodeRef> getAncestors(Path path)
+    {
+        ArrayList<NodeRef> ancestors = new ArrayList<NodeRef>(8);
+        for (Iterator<Path.Element> elit = path.iterator(); elit.hasNext(); /**/)
+        {
+            Path.Element element = elit.next();
+            if (!(element instanceof Path.ChildAssocElement))
+            {
+                throw new IndexerException("Confused path: " + path);
+            }
+            Path.ChildAssocElement cae = (Path.ChildAssocElement) element;
+            NodeRef parentRef = cae.getRef().getParentRef();
+            if(parentRef != null)
+            {
+                ancestors.add(0, parentRef);
             }
-            return ancestors;
         }
+        return ancestors;
     }
-
 }
@@ -26,7 +26,7 @@
 package org.alfresco.repo.web.scripts.solr;
 
 /**
- * Represents a property value to be used by Freemarker
+ * Represents a property value that has been serialized to JSON
  * 
  * @since 4.0
  */
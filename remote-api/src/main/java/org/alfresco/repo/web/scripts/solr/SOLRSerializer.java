@@ -53,6 +53,7 @@ import org.alfresco.service.cmr.repository.datatype.DefaultTypeConverter;
 import org.alfresco.service.cmr.repository.datatype.TypeConversionException;
 import org.alfresco.service.cmr.repository.datatype.TypeConverter;
 import org.alfresco.service.cmr.repository.datatype.TypeConverter.Converter;
+import org.alfresco.service.namespace.NamespaceException;
 import org.alfresco.service.namespace.NamespaceService;
 import org.alfresco.service.namespace.QName;
 import org.alfresco.util.PropertyCheck;
@@ -121,6 +122,22 @@ import org.springframework.extensions.webscripts.json.JSONUtils;
         }
     }
     
+    /**
+     * @return              the prefixed form of the QName or, if the namespace has no prefix,
+     *                      the full form
+     */
+    public String serializeShortQName(QName qname)
+    {
+        try
+        {
+            return qname.toPrefixString(namespaceService);
+        }
+        catch (NamespaceException e)
+        {
+            return qname.toString();
+        }
+    }
+    
     public <T> T serializeValue(Class<T> targetClass, Object value) throws JSONException
     {
         return typeConverter.INSTANCE.convert(targetClass, value);
@@ -0,0 +1,175 @@
+/*
+ * #%L
+ * Alfresco Remote API
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.web.scripts.solr;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads responses written by {@link TrackingBinaryWriter}.  A response that ends early, because
+ * the server failed part way through, results in an {@link EOFException}.
+ * 
+ * @since 23.3
+ */
+public class TrackingBinaryReader
+{
+    private final InputStream in;
+    private final int responseType;
+    private final List<String> dictionary = new ArrayList<String>(256);
+
+    /**
+     * Read the response header
+     * 
+     * @throws IOException          if the stream does not hold a supported response
+     */
+    public TrackingBinaryReader(InputStream in) throws IOException
+    {
+        this.in = new BufferedInputStream(in, 8192);
+        for (byte b : TrackingBinaryWriter.MAGIC)
+        {
+            if (readByte() != b)
+            {
+                throw new IOException("Not a binary tracking response");
+            }
+        }
+        int version = readByte();
+        if (version != TrackingBinaryWriter.VERSION)
+        {
+            throw new IOException("Unsupported binary tracking response version: " + version);
+        }
+        this.responseType = readByte();
+    }
+
+    /**
+     * @return              one of the <tt>TYPE_</tt> constants of {@link TrackingBinaryWriter}
+     */
+    public int getResponseType()
+    {
+        return responseType;
+    }
+
+    public boolean readBoolean() throws IOException
+    {
+        return readByte() != 0;
+    }
+
+    public long readVarLong() throws IOException
+    {
+        long value = 0L;
+        for (int shift = 0; shift < 64; shift += 7)
+        {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+            {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    public long readSignedVarLong() throws IOException
+    {
+        long value = readVarLong();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public Long readNullableLong() throws IOException
+    {
+        long value = readVarLong();
+        if (value == 0L)
+        {
+            return null;
+        }
+        value--;
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public String readString() throws IOException
+    {
+        long length = readVarLong();
+        if (length == 0L)
+        {
+            return null;
+        }
+        if (length - 1 > Integer.MAX_VALUE)
+        {
+            throw new IOException("String is too long: " + (length - 1));
+        }
+        byte[] bytes = new byte[(int) (length - 1)];
+        int offset = 0;
+        while (offset < bytes.length)
+        {
+            int read = in.read(bytes, offset, bytes.length - offset);
+            if (read < 0)
+            {
+                throw new EOFException();
+            }
+            offset += read;
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public String readDictionaryString() throws IOException
+    {
+        long code = readVarLong();
+        if (code == TrackingBinaryWriter.DICTIONARY_NULL)
+        {
+            return null;
+        }
+        else if (code == TrackingBinaryWriter.DICTIONARY_ADD)
+        {
+            String value = readString();
+            dictionary.add(value);
+            return value;
+        }
+        else if (code == TrackingBinaryWriter.DICTIONARY_LITERAL)
+        {
+            return readString();
+        }
+        long id = code - TrackingBinaryWriter.DICTIONARY_REFERENCE;
+        if (id >= dictionary.size())
+        {
+            throw new IOException("Unknown dictionary entry: " + id);
+        }
+        return dictionary.get((int) id);
+    }
+
+    private int readByte() throws IOException
+    {
+        int b = in.read();
+        if (b < 0)
+        {
+            throw new EOFException();
+        }
+        return b;
+    }
+}
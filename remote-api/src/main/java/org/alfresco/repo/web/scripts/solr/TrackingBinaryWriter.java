@@ -0,0 +1,188 @@
+/*
+ * #%L
+ * Alfresco Remote API
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.web.scripts.solr;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes the compact binary encoding of the SOLR tracking responses.  A client asks for it by
+ * sending {@link #MIMETYPE} in the <tt>Accept</tt> header; JSON remains the default.
+ * <p/>
+ * A response starts with the bytes <tt>ATB</tt>, the format version and the response type.
+ * The values that follow use these encodings:
+ * <ul>
+ *   <li><b>varint: </b>an unsigned integer in 7-bit groups, least significant first, with the
+ *       top bit set on all but the last byte</li>
+ *   <li><b>signed varint: </b>a zig-zag encoded varint.  Ascending IDs and commit times are
+ *       written as the difference from the previous value in the list.</li>
+ *   <li><b>nullable long: </b><tt>0</tt> for <tt>null</tt>, otherwise the signed varint of the value
+ *       plus one</li>
+ *   <li><b>string: </b>the varint length of the UTF-8 bytes plus one (<tt>0</tt> for <tt>null</tt>)
+ *       followed by the bytes</li>
+ *   <li><b>dictionary string: </b>used for values that repeat, such as QNames, store references
+ *       and ancestors.  <tt>0</tt> is <tt>null</tt>, <tt>1</tt> is a string that is added to the
+ *       response's dictionary, <tt>2</tt> is a string that is not added and any other value
+ *       <tt>n</tt> refers to dictionary entry <tt>n - 3</tt>.</li>
+ * </ul>
+ * The layout of each response type is described with the web script that produces it.
+ * <p/>
+ * Instances are not thread safe and must be {@link #flush() flushed} once written.
+ * 
+ * @since 23.3
+ */
+public class TrackingBinaryWriter
+{
+    /** The media type of the binary encoding */
+    public static final String MIMETYPE = "application/vnd.alfresco.tracking+binary";
+    
+    static final byte[] MAGIC = new byte[] {'A', 'T', 'B'};
+    static final int VERSION = 1;
+
+    /** Response type of <tt>/api/solr/transactions</tt> */
+    public static final int TYPE_TRANSACTIONS = 1;
+    /** Response type of <tt>/api/solr/aclchangesets</tt> */
+    public static final int TYPE_ACL_CHANGE_SETS = 2;
+    /** Response type of <tt>/api/solr/metadata</tt> */
+    public static final int TYPE_NODES_METADATA = 3;
+
+    static final int DICTIONARY_NULL = 0;
+    static final int DICTIONARY_ADD = 1;
+    static final int DICTIONARY_LITERAL = 2;
+    static final int DICTIONARY_REFERENCE = 3;
+    /** Bounds the memory used by either side for very large responses */
+    static final int MAX_DICTIONARY_SIZE = 65536;
+
+    private final OutputStream out;
+    private final Map<String, Integer> dictionary = new HashMap<String, Integer>(256);
+
+    /**
+     * Write the response header.  The stream is buffered but will not be closed.
+     * 
+     * @param out               the stream to write to
+     * @param responseType      one of the <tt>TYPE_</tt> constants
+     */
+    public TrackingBinaryWriter(OutputStream out, int responseType) throws IOException
+    {
+        this.out = new BufferedOutputStream(out, 8192);
+        this.out.write(MAGIC);
+        this.out.write(VERSION);
+        this.out.write(responseType);
+    }
+
+    public void writeBoolean(boolean value) throws IOException
+    {
+        out.write(value ? 1 : 0);
+    }
+
+    /**
+     * @param value             a value that must not be negative
+     */
+    public void writeVarLong(long value) throws IOException
+    {
+        if (value < 0)
+        {
+            throw new IllegalArgumentException("Negative value can't be written as a varint: " + value);
+        }
+        writeUnsigned(value);
+    }
+
+    public void writeSignedVarLong(long value) throws IOException
+    {
+        writeUnsigned((value << 1) ^ (value >> 63));
+    }
+
+    public void writeNullableLong(Long value) throws IOException
+    {
+        if (value == null)
+        {
+            out.write(0);
+        }
+        else
+        {
+            writeUnsigned(((value << 1) ^ (value >> 63)) + 1);
+        }
+    }
+
+    public void writeString(String value) throws IOException
+    {
+        if (value == null)
+        {
+            out.write(0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeUnsigned(bytes.length + 1L);
+        out.write(bytes);
+    }
+
+    public void writeDictionaryString(String value) throws IOException
+    {
+        if (value == null)
+        {
+            writeUnsigned(DICTIONARY_NULL);
+            return;
+        }
+        Integer id = dictionary.get(value);
+        if (id != null)
+        {
+            writeUnsigned(DICTIONARY_REFERENCE + (long) id);
+        }
+        else if (dictionary.size() < MAX_DICTIONARY_SIZE)
+        {
+            dictionary.put(value, dictionary.size());
+            writeUnsigned(DICTIONARY_ADD);
+            writeString(value);
+        }
+        else
+        {
+            writeUnsigned(DICTIONARY_LITERAL);
+            writeString(value);
+        }
+    }
+
+    /**
+     * Push buffered data to the underlying stream
+     */
+    public void flush() throws IOException
+    {
+        out.flush();
+    }
+
+    private void writeUnsigned(long value) throws IOException
+    {
+        while ((value & ~0x7FL) != 0)
+        {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+}
@@ -25,10 +25,10 @@
  */
 package org.alfresco.repo.web.scripts.solr;
 
-import java.util.HashMap;
+import java.io.IOException;
 import java.util.List;
-import java.util.Map;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import org.alfresco.repo.index.shard.ShardMethodEnum;
 import org.alfresco.repo.index.shard.ShardState;
 import org.alfresco.repo.index.shard.ShardStateBuilder;
@@ -37,16 +37,20 @@ import org.alfresco.repo.solr.Transaction;
 import org.alfresco.service.cmr.repository.StoreRef;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.springframework.extensions.webscripts.DeclarativeWebScript;
-import org.springframework.extensions.webscripts.Status;
 import org.springframework.extensions.webscripts.WebScriptRequest;
+import org.springframework.extensions.webscripts.WebScriptResponse;
 
 /**
  * Support for SOLR: Get a list of transactions with a commit time greater than or equal to the given parameter.
+ * <p/>
+ * The {@link TrackingBinaryWriter binary} response is the varint number of transactions followed,
+ * for each transaction, by the signed varint differences of the ID and commit time from the
+ * previous transaction and the varint number of updates and deletes.  The maximum commit time and
+ * the maximum transaction ID on the server follow as nullable longs.
  *
  * @since 4.0
  */
-public class TransactionsGet extends DeclarativeWebScript
+public class TransactionsGet extends AbstractSOLRStreamingWebScript
 {
     protected static final Log logger = LogFactory.getLog(TransactionsGet.class);
 
@@ -57,7 +61,8 @@ public class TransactionsGet extends DeclarativeWebScript
         this.searchTrackingComponent = searchTrackingComponent;
     }
 
-    protected Map<String, Object> executeImpl(WebScriptRequest req, Status status)
+    @Override
+    public void execute(WebScriptRequest req, WebScriptResponse res) throws IOException
     {
         String minTxnIdParam = req.getParameter("minTxnId");
         String fromCommitTimeParam = req.getParameter("fromCommitTime");
@@ -140,27 +145,60 @@ public class TransactionsGet extends DeclarativeWebScript
         int maxResults = (maxResultsParam == null ? 1024 : Integer.valueOf(maxResultsParam));
         
         List<Transaction> transactions = searchTrackingComponent.getTransactions(minTxnId, fromCommitTime, maxTxnId, toCommitTime, maxResults);
-        
-        Map<String, Object> model = new HashMap<String, Object>(1, 1.0f);
-        model.put("transactions", transactions);
-        
         Long maxTxnCommitTime = searchTrackingComponent.getMaxTxnCommitTime();
-        if(maxTxnCommitTime != null)
+        Long maxTxnIdOnServer = searchTrackingComponent.getMaxTxnId();
+
+        if (isBinaryRequested(req))
         {
-            model.put("maxTxnCommitTime", maxTxnCommitTime);
+            TrackingBinaryWriter writer = createBinaryWriter(res, TrackingBinaryWriter.TYPE_TRANSACTIONS);
+            writer.writeVarLong(transactions.size());
+            long previousId = 0L;
+            long previousCommitTimeMs = 0L;
+            for (Transaction txn : transactions)
+            {
+                writer.writeSignedVarLong(txn.getId() - previousId);
+                writer.writeSignedVarLong(txn.getCommitTimeMs() - previousCommitTimeMs);
+                writer.writeVarLong(txn.getUpdates());
+                writer.writeVarLong(txn.getDeletes());
+                previousId = txn.getId();
+                previousCommitTimeMs = txn.getCommitTimeMs();
+            }
+            writer.writeNullableLong(maxTxnCommitTime);
+            writer.writeNullableLong(maxTxnIdOnServer);
+            writer.flush();
         }
-        
-        Long maxTxnIdOnServer = searchTrackingComponent.getMaxTxnId();
-        if(maxTxnIdOnServer != null)
+        else
         {
-            model.put("maxTxnId", maxTxnIdOnServer);
+            try (JsonGenerator generator = createGenerator(res))
+            {
+                generator.writeStartObject();
+                generator.writeArrayFieldStart("transactions");
+                for (Transaction txn : transactions)
+                {
+                    generator.writeStartObject();
+                    generator.writeNumberField("id", txn.getId());
+                    generator.writeNumberField("commitTimeMs", txn.getCommitTimeMs());
+                    generator.writeNumberField("updates", txn.getUpdates());
+                    generator.writeNumberField("deletes", txn.getDeletes());
+                    generator.writeEndObject();
+                }
+                generator.writeEndArray();
+                if (maxTxnCommitTime != null)
+                {
+                    generator.writeNumberField("maxTxnCommitTime", maxTxnCommitTime);
+                }
+                if (maxTxnIdOnServer != null)
+                {
+                    generator.writeNumberField("maxTxnId", maxTxnIdOnServer);
+                }
+                generator.writeEndObject();
+            }
         }
 
         if (logger.isDebugEnabled())
         {
-            logger.debug("Result: \n\tRequest: " + req + "\n\tModel: " + model);
+            logger.debug("Result: \n\tRequest: " + req + "\n\tTransactions: " + transactions.size() +
+                    "\n\tMax commit time: " + maxTxnCommitTime + "\n\tMax txn ID: " + maxTxnIdOnServer);
         }
-        
-        return model;
     }
 }
@@ -41,10 +41,18 @@ public class SearchContext
     private final List<FacetFieldContext> facetsFields;
     private final List<GenericFacetResponse> facets;
     private final SearchQuery request;
+    private final String continuationToken;
 
     public SearchContext(long lastTxId, List<GenericFacetResponse> facets, List<FacetQueryContext> facetResults, List<FacetFieldContext> facetsFields, SpellCheckContext spellCheck,
                 SearchQuery request)
     {
+        this(lastTxId, facets, facetResults, facetsFields, spellCheck, request, null);
+    }
+
+    public SearchContext(long lastTxId, List<GenericFacetResponse> facets, List<FacetQueryContext> facetResults, List<FacetFieldContext> facetsFields, SpellCheckContext spellCheck,
+                SearchQuery request, String continuationToken)
+    {
+        this.continuationToken = continuationToken;
         this.spellCheck = spellCheck;
         this.request = request;
         if (lastTxId > 0)
@@ -90,6 +98,15 @@ public class SearchContext
         return request;
     }
 
+    /**
+     * @return the token that fetches the next page of results, if the query was paged with continuation tokens
+     * @since 23.3
+     */
+    public String getContinuationToken()
+    {
+        return continuationToken;
+    }
+
     public class Consistency
     {
         private final long lastTxId;
@@ -191,10 +191,11 @@ public class ResultMapper
             }
         }
 
+        String continuationToken = results.getContinuationToken();
         SearchContext context =
                 toSearchEngineResultSet(results)
                     .map(resultSet -> toSearchContext(resultSet, searchRequestContext, searchQuery))
-                    .orElse(null);
+                    .orElse(continuationToken == null ? null : new SearchContext(-1, null, null, null, null, null, continuationToken));
 
         return CollectionWithPagingInfo.asPaged(params.getPaging(), noderesults, results.hasMore(), setTotal(results), null, context);
     }
@@ -364,7 +365,8 @@ public class ResultMapper
         }
 
         //Put it all together
-        context = new SearchContext(resultSet.getLastIndexedTxId(), facets, facetResults, ffcs, spellCheckContext, searchRequestContext.includeRequest()?searchQuery:null);
+        context = new SearchContext(resultSet.getLastIndexedTxId(), facets, facetResults, ffcs, spellCheckContext, searchRequestContext.includeRequest()?searchQuery:null,
+                    resultSet.getContinuationToken());
         return isNullContext(context)?null:context;
     }
 
@@ -620,7 +622,8 @@ public class ResultMapper
                     && context.getConsistency() == null
                     && context.getSpellCheck() == null
                     && context.getFacetsFields() == null
-                    && context.getFacets() == null);
+                    && context.getFacets() == null
+                    && context.getContinuationToken() == null);
     }
 
     /**
@@ -120,6 +120,7 @@ public class SearchMapper
         fromLocalization(sp, searchQuery.getLocalization());
         fromQuery(sp,  searchQuery.getQuery());
         fromPaging(sp, params.getPaging());
+        fromContinuationToken(sp, searchQuery.getContinuationToken());
         fromSort(sp, searchQuery.getSort());
         fromTemplate(sp, searchQuery.getTemplates());
         validateInclude(searchQuery.getInclude());
@@ -192,6 +193,19 @@ public class SearchMapper
         }
     }
 
+    /**
+     * SearchParameters from the continuation token
+     * @param sp SearchParameters
+     * @param continuationToken String
+     */
+    public void fromContinuationToken(SearchParameters sp, String continuationToken)
+    {
+        if (continuationToken != null)
+        {
+            sp.setContinuationToken(continuationToken);
+        }
+    }
+
     /**
      * SearchParameters from List<SortDef>
      * @param sp SearchParameters
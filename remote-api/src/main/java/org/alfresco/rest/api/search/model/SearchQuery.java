@@ -65,11 +65,24 @@ public class SearchQuery
     private final List<RangeParameters> ranges;
     private final Localization localization;
     private final FacetFormat facetFormat;
+    private final String continuationToken;
 
     public static final SearchQuery EMPTY = new SearchQuery(null, null, null, null, null, null,
                 null,null, null, null, null,null, null, null, null,
                 null, null, null,null, null,null);
 
+    public SearchQuery(Query query, Paging paging, Boolean includeRequest, List<String> include, List<String> fields,
+                List<SortDef> sort, List<Template> templates, Default defaults, List<FilterQuery> filterQueries,
+                FacetFields facetFields, List<FacetQuery> facetQueries, Spelling spellcheck, Scope scope, Limits limits,
+                GeneralHighlightParameters highlight, IntervalParameters facetIntervals, List<Pivot> pivots,
+                List<StatsRequestParameters> stats, List<RangeParameters> ranges, Localization localization,
+                FacetFormat facetFormat)
+    {
+        this(query, paging, includeRequest, include, fields, sort, templates, defaults, filterQueries, facetFields,
+                    facetQueries, spellcheck, scope, limits, highlight, facetIntervals, pivots, stats, ranges,
+                    localization, facetFormat, null);
+    }
+
     @JsonCreator
     public SearchQuery(@JsonProperty("query") Query query,
                 @JsonProperty("paging") Paging paging,
@@ -91,7 +104,8 @@ public class SearchQuery
                 @JsonProperty("stats") List<StatsRequestParameters> stats,
                 @JsonProperty("ranges") List<RangeParameters> ranges,
                 @JsonProperty("localization") Localization localization,
-                @JsonProperty("facetFormat") FacetFormat facetFormat)
+                @JsonProperty("facetFormat") FacetFormat facetFormat,
+                @JsonProperty("continuationToken") String continuationToken)
     {
         this.query = query;
         this.includeRequest = includeRequest==null?false:includeRequest;
@@ -114,6 +128,7 @@ public class SearchQuery
         this.ranges = ranges;
         this.localization = localization;
         this.facetFormat = facetFormat;
+        this.continuationToken = continuationToken;
     }
 
     public Query getQuery()
@@ -220,4 +235,13 @@ public class SearchQuery
         return facetFormat;
     }
 
+    /**
+     * @return the token of the page to fetch, as returned in the context of the previous page
+     * @since 23.3
+     */
+    public String getContinuationToken()
+    {
+        return continuationToken;
+    }
+
 }
@@ -2,7 +2,7 @@
  * #%L
  * Alfresco Remote API
  * %%
- * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
  * %%
  * This file is part of the Alfresco software. 
  * If the software was purchased under a paid Alfresco license, the terms of 
@@ -25,6 +25,7 @@
  */
 package org.alfresco.repo.web.scripts.solr;
 
+import java.io.ByteArrayInputStream;
 import java.io.PrintWriter;
 import java.io.Serializable;
 import java.util.ArrayList;
@@ -144,6 +145,41 @@ public class SOLRWebScriptTest extends BaseWebScriptTest
         return transactions;
     }
 
+    public void testTransactionsGetBinary() throws Exception
+    {
+        String url = "/api/solr/transactions?fromCommitTime=0&maxResults=50";
+        Response jsonResponse = sendRequest(new TestWebScriptServer.GetRequest(url), Status.STATUS_OK, admin);
+        JSONObject json = new JSONObject(jsonResponse.getContentAsString());
+        JSONArray transactions = json.getJSONArray("transactions");
+
+        TestWebScriptServer.GetRequest req = new TestWebScriptServer.GetRequest(url);
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put("Accept", TrackingBinaryWriter.MIMETYPE);
+        req.setHeaders(headers);
+        Response response = sendRequest(req, Status.STATUS_OK, admin);
+
+        TrackingBinaryReader reader = new TrackingBinaryReader(new ByteArrayInputStream(response.getContentAsByteArray()));
+        assertEquals(TrackingBinaryWriter.TYPE_TRANSACTIONS, reader.getResponseType());
+        assertEquals(transactions.length(), reader.readVarLong());
+        long id = 0L;
+        long commitTimeMs = 0L;
+        for (int i = 0; i < transactions.length(); i++)
+        {
+            JSONObject txn = transactions.getJSONObject(i);
+            id += reader.readSignedVarLong();
+            commitTimeMs += reader.readSignedVarLong();
+            assertEquals(txn.getLong("id"), id);
+            assertEquals(txn.getLong("commitTimeMs"), commitTimeMs);
+            assertEquals(txn.getLong("updates"), reader.readVarLong());
+            assertEquals(txn.getLong("deletes"), reader.readVarLong());
+        }
+        Long maxTxnCommitTime = reader.readNullableLong();
+        Long maxTxnId = reader.readNullableLong();
+        assertNotNull(maxTxnCommitTime);
+        assertNotNull(maxTxnId);
+        assertTrue("Binary response should be smaller", response.getContentAsByteArray().length < jsonResponse.getContentAsString().length());
+    }
+
     public void testAclChangeSetsGet() throws Exception
     {
         String url = "/api/solr/aclchangesets?fromTime=" + 0L + "&fromId=" + 0L;
@@ -623,6 +659,94 @@ public class SOLRWebScriptTest extends BaseWebScriptTest
         }
     }
 
+    /**
+     * Excluded lists must be distinguishable from empty ones in the binary encoding
+     */
+    public void testNodeMetaDataBinary() throws Exception
+    {
+        long fromCommitTime = System.currentTimeMillis();
+
+        buildTransactions5();
+
+        List<Long> transactionIds = getTransactionIds(getTransactions(fromCommitTime));
+        GetNodesParameters params = new GetNodesParameters();
+        params.setTransactionIds(transactionIds);
+        params.setStoreProtocol(storeRef.getProtocol());
+        params.setStoreIdentifier(storeRef.getIdentifier());
+        JSONArray nodes = getNodes(params, 0, 2);
+
+        JSONObject json = new JSONObject();
+        JSONArray array = new JSONArray();
+        for (int i = 0; i < nodes.length(); i++)
+        {
+            array.put(nodes.getJSONObject(i).getLong("id"));
+        }
+        json.put("nodeIds", array);
+        json.put("includePaths", false);
+        TestWebScriptServer.PostRequest req = new TestWebScriptServer.PostRequest("/api/solr/metadata", json.toString(), "application/json");
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put("Accept", TrackingBinaryWriter.MIMETYPE);
+        req.setHeaders(headers);
+        Response response = sendRequest(req, Status.STATUS_OK, admin);
+
+        TrackingBinaryReader reader = new TrackingBinaryReader(new ByteArrayInputStream(response.getContentAsByteArray()));
+        assertEquals(TrackingBinaryWriter.TYPE_NODES_METADATA, reader.getResponseType());
+        long nodeId = 0L;
+        int count = 0;
+        while (reader.readBoolean())
+        {
+            nodeId += reader.readSignedVarLong();
+            assertEquals(array.getLong(count), nodeId);
+            reader.readDictionaryString();
+            assertEquals(storeRef.toString(), reader.readDictionaryString());
+            assertNotNull(reader.readString());
+            assertNotNull(reader.readDictionaryString());
+            assertNotNull(reader.readNullableLong());
+            assertNotNull(reader.readNullableLong());
+            // Properties and aspects were included
+            long properties = reader.readVarLong() - 1;
+            assertTrue("Expected properties", properties > 0);
+            for (long i = 0; i < properties; i++)
+            {
+                assertNotNull(reader.readDictionaryString());
+                reader.readString();
+            }
+            long aspects = reader.readVarLong() - 1;
+            assertTrue("Expected aspects", aspects >= 0);
+            for (long i = 0; i < aspects; i++)
+            {
+                assertNotNull(reader.readDictionaryString());
+            }
+            // Paths and name paths were excluded
+            assertEquals("Paths were excluded", 0L, reader.readVarLong());
+            assertEquals("Name paths were excluded", 0L, reader.readVarLong());
+            // Parent associations were included
+            long parentAssocs = reader.readVarLong() - 1;
+            assertTrue("Parent associations were included", parentAssocs > 0);
+            for (long i = 0; i < parentAssocs; i++)
+            {
+                assertNotNull(reader.readDictionaryString());
+            }
+            reader.readNullableLong();
+            // Child associations were included but may be empty
+            long childAssocs = reader.readVarLong() - 1;
+            assertTrue("Child associations were included", childAssocs >= 0);
+            for (long i = 0; i < childAssocs; i++)
+            {
+                assertNotNull(reader.readDictionaryString());
+            }
+            long childIds = reader.readVarLong() - 1;
+            assertTrue("Child IDs were included", childIds >= 0);
+            for (long i = 0; i < childIds; i++)
+            {
+                reader.readSignedVarLong();
+            }
+            reader.readDictionaryString();
+            count++;
+        }
+        assertEquals(2, count);
+    }
+
     private NodeRef container7;
     
     private void buildTransactions7()
@@ -0,0 +1,134 @@
+/*
+ * #%L
+ * Alfresco Remote API
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.web.scripts.solr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Tests the binary encoding of {@link TrackingBinaryWriter} and {@link TrackingBinaryReader}
+ *
+ * @since 23.3
+ */
+public class TrackingBinaryFormatTest
+{
+    @Test
+    public void testRoundTrip() throws IOException
+    {
+        long[] values = new long[] {0L, 1L, 127L, 128L, 16384L, 1715000000000L, Long.MAX_VALUE};
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        TrackingBinaryWriter writer = new TrackingBinaryWriter(bytes, TrackingBinaryWriter.TYPE_TRANSACTIONS);
+        for (long value : values)
+        {
+            writer.writeVarLong(value);
+            writer.writeSignedVarLong(-value);
+            writer.writeNullableLong(value);
+        }
+        writer.writeNullableLong(null);
+        writer.writeNullableLong(Long.MIN_VALUE);
+        writer.writeBoolean(true);
+        writer.writeString(null);
+        writer.writeString("");
+        writer.writeString("\u00e9t\u00e9 \u6587\u4ef6");
+        writer.flush();
+
+        TrackingBinaryReader reader = new TrackingBinaryReader(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(TrackingBinaryWriter.TYPE_TRANSACTIONS, reader.getResponseType());
+        for (long value : values)
+        {
+            assertEquals(value, reader.readVarLong());
+            assertEquals(-value, reader.readSignedVarLong());
+            assertEquals(Long.valueOf(value), reader.readNullableLong());
+        }
+        assertNull(reader.readNullableLong());
+        assertEquals(Long.valueOf(Long.MIN_VALUE), reader.readNullableLong());
+        assertTrue(reader.readBoolean());
+        assertNull(reader.readString());
+        assertEquals("", reader.readString());
+        assertEquals("\u00e9t\u00e9 \u6587\u4ef6", reader.readString());
+    }
+
+    @Test
+    public void testDictionaryStringsAreWrittenOnce() throws IOException
+    {
+        String qname = "{http://www.alfresco.org/model/content/1.0}content";
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        TrackingBinaryWriter writer = new TrackingBinaryWriter(bytes, TrackingBinaryWriter.TYPE_NODES_METADATA);
+        for (int i = 0; i < 100; i++)
+        {
+            writer.writeDictionaryString(qname);
+            writer.writeDictionaryString(null);
+            writer.writeDictionaryString("cm:name");
+        }
+        writer.flush();
+        assertTrue("Repeated strings should be references: " + bytes.size(), bytes.size() < 400);
+
+        TrackingBinaryReader reader = new TrackingBinaryReader(new ByteArrayInputStream(bytes.toByteArray()));
+        for (int i = 0; i < 100; i++)
+        {
+            assertEquals(qname, reader.readDictionaryString());
+            assertNull(reader.readDictionaryString());
+            assertEquals("cm:name", reader.readDictionaryString());
+        }
+    }
+
+    @Test
+    public void testTruncatedResponse() throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        TrackingBinaryWriter writer = new TrackingBinaryWriter(bytes, TrackingBinaryWriter.TYPE_ACL_CHANGE_SETS);
+        writer.writeString("incomplete");
+        writer.flush();
+        byte[] truncated = Arrays.copyOf(bytes.toByteArray(), bytes.size() - 3);
+
+        TrackingBinaryReader reader = new TrackingBinaryReader(new ByteArrayInputStream(truncated));
+        try
+        {
+            reader.readString();
+            fail("A truncated response must not be read as complete");
+        }
+        catch (EOFException e)
+        {
+            // Expected
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testJsonIsRejected() throws IOException
+    {
+        new TrackingBinaryReader(new ByteArrayInputStream("{\"transactions\":[]}".getBytes("UTF-8")));
+    }
+}
@@ -391,6 +391,7 @@ public class ResultMapperTests
         assertFalse(mapper.isNullContext(new SearchContext(0l,null, asList(new FacetQueryContext(null, null, 0)),null,null, null)));
         assertFalse(mapper.isNullContext(new SearchContext(0l,null,null, asList(new FacetFieldContext(null, null)),null, null)));
         assertFalse(mapper.isNullContext(new SearchContext(0l, asList(new GenericFacetResponse(null,null, null)),null,null, null, null)));
+        assertFalse(mapper.isNullContext(new SearchContext(0l,null,null,null,null, null, "MTo0Mjo1")));
     }
 
     @Test
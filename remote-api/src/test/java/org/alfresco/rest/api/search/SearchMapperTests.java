@@ -189,6 +189,18 @@ public class SearchMapperTests
         assertEquals(searchParameters.getSkipCount(),paging.getSkipCount());
     }
 
+    @Test
+    public void fromContinuationToken() throws Exception
+    {
+        SearchParameters searchParameters = new SearchParameters();
+        //Doesn't error
+        searchMapper.fromContinuationToken(searchParameters, null);
+        assertNull(searchParameters.getContinuationToken());
+
+        searchMapper.fromContinuationToken(searchParameters, "MTo0Mjo1");
+        assertEquals("MTo0Mjo1", searchParameters.getContinuationToken());
+    }
+
 
     @Test
     public void fromSort() throws Exception
@@ -2,7 +2,7 @@
  * #%L
  * Alfresco Repository
  * %%
- * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
  * %%
  * This file is part of the Alfresco software. 
  * If the software was purchased under a paid Alfresco license, the terms of 
@@ -40,6 +40,7 @@ import org.springframework.context.ApplicationEventPublisher;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.lang.reflect.Method;
 import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -52,8 +53,15 @@ import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * A <code>BatchProcessor</code> manages the running and monitoring of a potentially long-running transactional batch
@@ -64,6 +72,11 @@ import java.util.concurrent.TimeUnit;
  * ERROR level. Each individual error is logged at WARN level and progress information is logged at INFO level. Through
  * the {@link BatchMonitor} interface, it also supports the real-time monitoring of batch metrics (e.g. over JMX in the
  * Enterprise Edition).
+ * <p>
+ * By default batches are queued to a fixed pool of threads and the work provider is polled by the calling thread.
+ * Optionally, work can be {@link #setPrefetchDepth(int) prefetched} from the provider on a background thread and the
+ * batches can be run by a work-stealing pool or on virtual threads, see {@link ExecutorType}. Progress counters are
+ * lock-free, so monitoring does not contend with the workers.
  * 
  * @author dward
  */
@@ -94,8 +107,14 @@ public class BatchProcessor<T> implements BatchMonitor
     /** The number of entries we process at a time in a transaction. */
     private final int batchSize;
     
+    /** How batches are run when transactions are split across worker threads. */
+    private ExecutorType executorType = ExecutorType.THREAD_POOL;
+
+    /** The number of collections of work to fetch ahead from the provider, or 0 to fetch on demand. */
+    private int prefetchDepth;
+
     /** The current entry id. */
-    private String currentEntryId;
+    private volatile String currentEntryId;
 
     /** The number of batches currently executing. */
     private int executingCount;
@@ -103,23 +122,41 @@ public class BatchProcessor<T> implements BatchMonitor
     /** What transactions need to be retried?. We do these single-threaded in order to avoid cross-dependency issues */
     private SortedSet<Integer> retryTxns = new TreeSet<Integer>();
 
-    /** The last error. */
-    private Throwable lastError;
-
-    /** The last error entry id. */
-    private String lastErrorEntryId;
+    /** The last error, together with the id of the entry that caused it. */
+    private volatile LastError lastError;
 
     /** The total number of errors. */
-    private long totalErrors;
+    private final LongAdder totalErrors = new LongAdder();
 
     /** The number of successfully processed entries. */
-    private long successfullyProcessedEntries;
+    private final LongAdder successfullyProcessedEntries = new LongAdder();
+
+    /** The number of processed entries, successful or not, used to report progress. */
+    private final AtomicLong processedEntries = new AtomicLong();
 
     /** The start time. */
-    private Date startTime;
+    private volatile Date startTime;
 
     /** The end time. */
-    private Date endTime;
+    private volatile Date endTime;
+
+    /**
+     * The ways in which batches can be run in parallel.
+     * 
+     * @since 23.3
+     */
+    public enum ExecutorType
+    {
+        /** A fixed pool of threads fed from a single bounded queue. */
+        THREAD_POOL,
+        /** A fixed pool of threads that steal queued batches from each other. */
+        WORK_STEALING,
+        /**
+         * A virtual thread per batch, with at most <b>workerThreads</b> batches running at once. Suited to I/O-bound
+         * workers. Falls back to {@link #THREAD_POOL} when the JVM does not support virtual threads.
+         */
+        VIRTUAL_THREADS
+    }
 
     /**
      * Instantiates a new batch processor.
@@ -247,7 +284,7 @@ public class BatchProcessor<T> implements BatchMonitor
     /**
      * {@inheritDoc}
      */
-    public synchronized String getCurrentEntryId()
+    public String getCurrentEntryId()
     {
         return this.currentEntryId;
     }
@@ -255,15 +292,16 @@ public class BatchProcessor<T> implements BatchMonitor
     /**
      * {@inheritDoc}
      */
-    public synchronized String getLastError()
+    public String getLastError()
     {
-        if (this.lastError == null)
+        LastError lastError = this.lastError;
+        if (lastError == null)
         {
             return null;
         }
         Writer buff = new StringWriter(1024);
         PrintWriter out = new PrintWriter(buff);
-        this.lastError.printStackTrace(out);
+        lastError.error.printStackTrace(out);
         out.close();
         return buff.toString();
     }
@@ -271,15 +309,16 @@ public class BatchProcessor<T> implements BatchMonitor
     /**
      * {@inheritDoc}
      */
-    public synchronized String getLastErrorEntryId()
+    public String getLastErrorEntryId()
     {
-        return this.lastErrorEntryId;
+        LastError lastError = this.lastError;
+        return lastError == null ? null : lastError.entryId;
     }
 
     /**
      * {@inheritDoc}
      */
-    public synchronized String getProcessName()
+    public String getProcessName()
     {
         return this.processName;
     }
@@ -287,26 +326,26 @@ public class BatchProcessor<T> implements BatchMonitor
     /**
      * {@inheritDoc}
      */
-    @Deprecated public synchronized int getSuccessfullyProcessedEntries()
+    @Deprecated public int getSuccessfullyProcessedEntries()
     {
-        return Math.toIntExact(this.successfullyProcessedEntries);
+        return Math.toIntExact(this.successfullyProcessedEntries.sum());
     }
 
     /**
      * {@inheritDoc}
      */
-    public synchronized long getSuccessfullyProcessedEntriesLong()
+    public long getSuccessfullyProcessedEntriesLong()
     {
-        return this.successfullyProcessedEntries;
+        return this.successfullyProcessedEntries.sum();
     }
 
     /**
      * {@inheritDoc}
      */
-    public synchronized String getPercentComplete()
+    public String getPercentComplete()
     {
         long totalResults = this.workProvider.getTotalEstimatedWorkSizeLong();
-        long processed = this.successfullyProcessedEntries + this.totalErrors;
+        long processed = this.processedEntries.get();
         return processed <= totalResults ? NumberFormat.getPercentInstance().format(
                 totalResults == 0 ? 1.0F : (float) processed / totalResults) : "Unknown";
     }
@@ -314,9 +353,9 @@ public class BatchProcessor<T> implements BatchMonitor
     /**
      * {@inheritDoc}
      */
-    @Deprecated public synchronized int getTotalErrors()
+    @Deprecated public int getTotalErrors()
     {
-        return Math.toIntExact(this.totalErrors);
+        return Math.toIntExact(this.totalErrors.sum());
     }
 
     /**
@@ -330,9 +369,9 @@ public class BatchProcessor<T> implements BatchMonitor
     /**
      * {@inheritDoc}
      */
-    public synchronized long getTotalErrorsLong()
+    public long getTotalErrorsLong()
     {
-        return this.totalErrors;
+        return this.totalErrors.sum();
     }
 
     /**
@@ -346,7 +385,7 @@ public class BatchProcessor<T> implements BatchMonitor
     /**
      * {@inheritDoc}
      */
-    public synchronized Date getEndTime()
+    public Date getEndTime()
     {
         return this.endTime;
     }
@@ -354,11 +393,34 @@ public class BatchProcessor<T> implements BatchMonitor
     /**
      * {@inheritDoc}
      */
-    public synchronized Date getStartTime()
+    public Date getStartTime()
     {
         return this.startTime;
     }
 
+    /**
+     * Set how batches are run when transactions are split across more than one worker thread. The default is
+     * {@link ExecutorType#THREAD_POOL}.
+     * 
+     * @since 23.3
+     */
+    public void setExecutorType(ExecutorType executorType)
+    {
+        this.executorType = executorType == null ? ExecutorType.THREAD_POOL : executorType;
+    }
+
+    /**
+     * Set the number of collections of work to fetch ahead from the {@link BatchProcessWorkProvider} on a background
+     * thread. Prefetching only applies when transactions are split; the default of 0 fetches work on demand from the
+     * calling thread.
+     * 
+     * @since 23.3
+     */
+    public void setPrefetchDepth(int prefetchDepth)
+    {
+        this.prefetchDepth = prefetchDepth;
+    }
+
     /**
      * Invokes the worker for each entry in the collection, managing transactions and collating success / failure
      * information.
@@ -407,49 +469,49 @@ public class BatchProcessor<T> implements BatchMonitor
 
     private long process(final BatchProcessWorker<T> worker, final boolean splitTxns, long count)
     {
-        synchronized (this)
+        this.startTime = new Date();
+        if (this.logger.isInfoEnabled())
         {
-            this.startTime = new Date();
-            if (this.logger.isInfoEnabled())
+            if (count >= 0)
             {
-                if (count >= 0)
-                {
-                    this.logger.info(getProcessName() + ": Commencing batch of " + count + " entries");
-                }
-                else
-                {
-                    this.logger.info(getProcessName() + ": Commencing batch");
+                this.logger.info(getProcessName() + ": Commencing batch of " + count + " entries");
+            }
+            else
+            {
+                this.logger.info(getProcessName() + ": Commencing batch");
 
-                }
             }
         }
 
-        // Create a thread pool executor with the specified number of threads and a finite blocking queue of jobs
-        ExecutorService executorService = splitTxns && this.workerThreads > 1 ?
-                    new ThreadPoolExecutor(
-                                this.workerThreads, this.workerThreads, 0L, TimeUnit.MILLISECONDS,
-                                new ArrayBlockingQueue<Runnable>(this.workerThreads * this.batchSize * 10)
-                                {
-                                    // Add blocking behaviour to work queue
-                                    @Override
-                                    public boolean offer(Runnable o)
-                                    {
-                                        try
-                                        {
-                                            put(o);
-                                        }
-                                        catch (InterruptedException e)
-                                        {
-                                            return false;
-                                        }
-                                        return true;
-                                    }
-
-                                },
-                                threadFactory) : null;
+        ExecutorService executorService = null;
+        Semaphore permits = null;
+        if (splitTxns && this.workerThreads > 1)
+        {
+            if (this.executorType == ExecutorType.VIRTUAL_THREADS)
+            {
+                executorService = newVirtualThreadExecutor();
+                // Every batch gets its own thread, so limit how many run at once
+                permits = new Semaphore(this.workerThreads);
+            }
+            else if (this.executorType == ExecutorType.WORK_STEALING)
+            {
+                executorService = newWorkStealingPool();
+                // Bound the number of queued batches as for the thread pool
+                permits = new Semaphore(this.workerThreads * this.batchSize * 10);
+            }
+            if (executorService == null)
+            {
+                executorService = newThreadPool();
+                permits = null;
+            }
+        }
+        PrefetchingWorkProvider<T> prefetchingWorkProvider = splitTxns && this.prefetchDepth > 0 ?
+                    new PrefetchingWorkProvider<T>(this.workProvider, this.prefetchDepth, threadFactory,
+                                this.retryingTransactionHelper) : null;
         try
         {
-            Iterator<T> iterator = new WorkProviderIterator<T>(this.workProvider);
+            Iterator<T> iterator = new WorkProviderIterator<T>(
+                        prefetchingWorkProvider == null ? this.workProvider : prefetchingWorkProvider);
             int id=0;
             List<T> batch = new ArrayList<T>(this.batchSize);
             while (iterator.hasNext())
@@ -468,16 +530,44 @@ public class BatchProcessor<T> implements BatchMonitor
                     {
                         callback.run();
                     }
-                    else
+                    else if (permits == null)
                     {
                         executorService.execute(callback);
                     }
+                    else
+                    {
+                        try
+                        {
+                            permits.acquire();
+                        }
+                        catch (InterruptedException e)
+                        {
+                            Thread.currentThread().interrupt();
+                            throw new AlfrescoRuntimeException(getProcessName() + ": Interrupted while queuing batches");
+                        }
+                        final Semaphore batchPermits = permits;
+                        executorService.execute(() ->
+                        {
+                            try
+                            {
+                                callback.run();
+                            }
+                            finally
+                            {
+                                batchPermits.release();
+                            }
+                        });
+                    }
                 }
             }
             return count;
         }
         finally
         {
+            if (prefetchingWorkProvider != null)
+            {
+                prefetchingWorkProvider.close();
+            }
             if (executorService != null)
             {
                 executorService.shutdown();
@@ -489,31 +579,106 @@ public class BatchProcessor<T> implements BatchMonitor
                 {
                 }
             }
-            synchronized (this)
+            reportProgress(this.processedEntries.get(), true);
+            this.endTime = new Date();
+            if (this.logger.isInfoEnabled())
             {
-                reportProgress(true);
-                this.endTime = new Date();
-                if (this.logger.isInfoEnabled())
+                if (count >= 0)
                 {
-                    if (count >= 0)
-                    {
-                        this.logger.info(getProcessName() + ": Completed batch of " + count + " entries");
-                    }
-                    else
-                    {
-                        this.logger.info(getProcessName() + ": Completed batch");
-
-                    }
+                    this.logger.info(getProcessName() + ": Completed batch of " + count + " entries");
                 }
-                if (this.totalErrors > 0 && this.logger.isErrorEnabled())
+                else
                 {
-                    this.logger.error(getProcessName() + ": " + this.totalErrors
-                                            + " error(s) detected. Last error from entry \"" + this.lastErrorEntryId + "\"",
-                                this.lastError);
+                    this.logger.info(getProcessName() + ": Completed batch");
+
                 }
             }
+            LastError lastError = this.lastError;
+            long totalErrors = this.totalErrors.sum();
+            if (totalErrors > 0 && lastError != null && this.logger.isErrorEnabled())
+            {
+                this.logger.error(getProcessName() + ": " + totalErrors
+                                        + " error(s) detected. Last error from entry \"" + lastError.entryId + "\"",
+                            lastError.error);
+            }
         }
     }
+
+    /**
+     * Create a thread pool executor with the specified number of threads and a finite blocking queue of jobs
+     */
+    private ExecutorService newThreadPool()
+    {
+        return new ThreadPoolExecutor(
+                this.workerThreads, this.workerThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(this.workerThreads * this.batchSize * 10)
+                {
+                    // Add blocking behaviour to work queue
+                    @Override
+                    public boolean offer(Runnable o)
+                    {
+                        try
+                        {
+                            put(o);
+                        }
+                        catch (InterruptedException e)
+                        {
+                            return false;
+                        }
+                        return true;
+                    }
+
+                },
+                threadFactory);
+    }
+
+    /**
+     * Create a work-stealing pool with the specified number of threads. The threads are named after the process and
+     * use the context class loader of the calling thread.
+     */
+    private ExecutorService newWorkStealingPool()
+    {
+        final ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        ForkJoinPool.ForkJoinWorkerThreadFactory factory = pool ->
+        {
+            ForkJoinWorkerThread thread = new ForkJoinWorkerThread(pool)
+            {
+            };
+            thread.setName(getProcessName() + "-worker-" + thread.getPoolIndex());
+            thread.setContextClassLoader(contextClassLoader);
+            return thread;
+        };
+        return new ForkJoinPool(this.workerThreads, factory, null, true);
+    }
+
+    /**
+     * Create an executor that starts a virtual thread for each batch, if the JVM supports virtual threads. The threads
+     * are named after the process, as the threads of the thread pool are.
+     * 
+     * @return the executor or <tt>null</tt> if virtual threads are not available
+     */
+    private ExecutorService newVirtualThreadExecutor()
+    {
+        try
+        {
+            // Thread.ofVirtual().name(prefix, 0).factory()
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, threadFactory.getNamePrefix(), 0L);
+            ThreadFactory virtualThreadFactory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            Method executor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService) executor.invoke(null, virtualThreadFactory);
+        }
+        catch (ReflectiveOperationException e)
+        {
+            if (this.logger.isWarnEnabled())
+            {
+                this.logger.warn(getProcessName() + ": Virtual threads are not supported by this JVM; using a thread pool");
+            }
+            return null;
+        }
+    }
+
     /**
      * Reports the current progress.
      * 
@@ -522,21 +687,24 @@ public class BatchProcessor<T> implements BatchMonitor
      *            entries indicated by {@link #loggingInterval}. If <code>true</code> then progress is reported if this
      *            is not one of the entries indicated by {@link #loggingInterval}.
      */
-    private synchronized void reportProgress(boolean last)
+    private void reportProgress(long processed, boolean last)
     {
-        long processed = this.successfullyProcessedEntries + this.totalErrors;
         if (processed % this.loggingInterval == 0 ^ last)
         {
             StringBuilder message = new StringBuilder(100).append(getProcessName()).append(": Processed ").append(
                     processed).append(" entries");
             long totalResults = 0;
-            try
-            {
-                 totalResults = this.workProvider.getTotalEstimatedWorkSizeLong();
-            }
-            catch (UnsupportedOperationException uoe)
+            // Work may be being prefetched, which is serialized on the provider
+            synchronized (this.workProvider)
             {
-                totalResults = this.workProvider.getTotalEstimatedWorkSize();
+                try
+                {
+                     totalResults = this.workProvider.getTotalEstimatedWorkSizeLong();
+                }
+                catch (UnsupportedOperationException uoe)
+                {
+                    totalResults = this.workProvider.getTotalEstimatedWorkSize();
+                }
             }
             if (totalResults >= processed)
             {
@@ -549,7 +717,7 @@ public class BatchProcessor<T> implements BatchMonitor
             {
                 message.append(". Rate: ").append(processed * 1000L / duration).append(" per second");
             }
-            message.append(". " + this.totalErrors + " failures detected.");
+            message.append(". " + this.totalErrors.sum() + " failures detected.");
             this.logger.info(message);
         }
     }
@@ -620,6 +788,21 @@ public class BatchProcessor<T> implements BatchMonitor
         }
     }
     
+    /**
+     * The last error and the id of the entry that caused it, published together.
+     */
+    private static class LastError
+    {
+        private final Throwable error;
+        private final String entryId;
+
+        private LastError(Throwable error, String entryId)
+        {
+            this.error = error;
+            this.entryId = entryId;
+        }
+    }
+
     /**
      * Small iterator that repeatedly gets the next batch of work from a {@link BatchProcessWorkProvider}
 
@@ -894,60 +1077,38 @@ public class BatchProcessor<T> implements BatchMonitor
          */
         private void commitProgress()
         {
-            synchronized (BatchProcessor.this)
+            if (this.txnErrors > 0)
+            {
+                BatchProcessor.this.totalErrors.add(this.txnErrors);
+            }
+            if (this.txnSuccesses > 0)
+            {
+                BatchProcessor.this.successfullyProcessedEntries.add(this.txnSuccesses);
+            }
+            long txnProcessed = this.txnErrors + this.txnSuccesses;
+            if (txnProcessed > 0)
             {
-                if (this.txnErrors > 0)
+                long processed = BatchProcessor.this.processedEntries.addAndGet(txnProcessed);
+                // Report each of the logging intervals we crossed
+                long interval = BatchProcessor.this.loggingInterval;
+                for (long reported = ((processed - txnProcessed) / interval + 1) * interval; reported <= processed; reported += interval)
                 {
-                    long processed = BatchProcessor.this.successfullyProcessedEntries + BatchProcessor.this.totalErrors;
-                    long currentIncrement = processed % BatchProcessor.this.loggingInterval;
-                    long newErrors = BatchProcessor.this.totalErrors + this.txnErrors;
-                    // Work out the number of logging intervals we will cross and report them
-                    long intervals = (this.txnErrors + currentIncrement) / BatchProcessor.this.loggingInterval;
-                    if (intervals > 0)
-                    {
-                        BatchProcessor.this.totalErrors += BatchProcessor.this.loggingInterval - currentIncrement;
-                        reportProgress(false);
-                        while (--intervals > 0)
-                        {
-                            BatchProcessor.this.totalErrors += BatchProcessor.this.loggingInterval;
-                            reportProgress(false);
-                        }
-                    }
-                    BatchProcessor.this.totalErrors = newErrors;
+                    reportProgress(reported, false);
                 }
+            }
 
-                if (this.txnSuccesses > 0)
-                {
-                    long processed = BatchProcessor.this.successfullyProcessedEntries + BatchProcessor.this.totalErrors;
-                    long currentIncrement = processed % BatchProcessor.this.loggingInterval;
-                    long newSuccess = BatchProcessor.this.successfullyProcessedEntries + this.txnSuccesses;
-                    // Work out the number of logging intervals we will cross and report them
-                    long intervals = (this.txnSuccesses + currentIncrement) / BatchProcessor.this.loggingInterval;
-                    if (intervals > 0)
-                    {
-                        BatchProcessor.this.successfullyProcessedEntries += BatchProcessor.this.loggingInterval
-                                - currentIncrement;
-                        reportProgress(false);
-                        while (--intervals > 0)
-                        {
-                            BatchProcessor.this.successfullyProcessedEntries += BatchProcessor.this.loggingInterval;
-                            reportProgress(false);
-                        }
-                    }
-                    BatchProcessor.this.successfullyProcessedEntries = newSuccess;
-                }
+            if (this.txnLastError != null)
+            {
+                BatchProcessor.this.lastError = new LastError(this.txnLastError, this.txnLastErrorEntryId);
+            }
 
-                if (this.txnLastError != null)
-                {
-                    BatchProcessor.this.lastError = this.txnLastError;
-                    BatchProcessor.this.lastErrorEntryId = this.txnLastErrorEntryId;
-                }
-                
-                reset();
-                
+            reset();
+
+            synchronized (BatchProcessor.this)
+            {
                 // Make sure we don't wait for a failing transaction
                 BatchProcessor.this.retryTxns.remove(this.id);
-                BatchProcessor.this.notifyAll();                
+                BatchProcessor.this.notifyAll();
             }
         }
 
@@ -0,0 +1,226 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.batch;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+
+import net.sf.acegisecurity.Authentication;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.tenant.TenantUtil;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport.TxnReadState;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+
+/**
+ * Wraps a {@link BatchProcessWorkProvider} so that work is fetched ahead on a background thread, keeping up to
+ * <b>depth</b> collections of work ready for the {@link BatchProcessor}.  A slow provider then no longer holds up
+ * the queuing of batches for the workers.
+ * <p>
+ * The background thread fetches with the authentication and tenant of the thread that created the wrapper.  If that
+ * thread was in a transaction, each fetch runs in a new transaction of the same kind, as the transaction itself
+ * cannot be shared.  Calls to the provider are serialized on the provider, so the estimates of the work size may be
+ * asked for while work is being fetched.  Each collection of work is copied before it is handed over, so providers
+ * that reuse their result collections are safe.
+ * 
+ * @author Alfresco
+ * @since 23.3
+ */
+class PrefetchingWorkProvider<T> implements BatchProcessWorkProvider<T>
+{
+    private static final Object END_OF_WORK = new Object();
+
+    private final BatchProcessWorkProvider<T> workProvider;
+    private final BlockingQueue<Object> queue;
+    private final RetryingTransactionHelper retryingTransactionHelper;
+    private final Authentication authentication;
+    private final String tenantDomain;
+    private final TxnReadState txnReadState;
+    private final Thread thread;
+    private volatile boolean closed;
+    private boolean exhausted;
+
+    /**
+     * @param retryingTransactionHelper runs the fetches in transactions if the calling thread is in a transaction
+     */
+    PrefetchingWorkProvider(BatchProcessWorkProvider<T> workProvider, int depth, ThreadFactory threadFactory,
+                RetryingTransactionHelper retryingTransactionHelper)
+    {
+        if (depth <= 0)
+        {
+            throw new IllegalArgumentException("The prefetch depth must be a positive integer.");
+        }
+        this.workProvider = workProvider;
+        this.queue = new ArrayBlockingQueue<Object>(depth);
+        this.retryingTransactionHelper = retryingTransactionHelper;
+        this.authentication = AuthenticationUtil.getFullAuthentication();
+        this.tenantDomain = TenantUtil.getCurrentDomain();
+        this.txnReadState = AlfrescoTransactionSupport.getTransactionReadState();
+        this.thread = threadFactory.newThread(this::fetch);
+        this.thread.start();
+    }
+
+    @Override
+    public int getTotalEstimatedWorkSize()
+    {
+        synchronized (workProvider)
+        {
+            return workProvider.getTotalEstimatedWorkSize();
+        }
+    }
+
+    @Override
+    public long getTotalEstimatedWorkSizeLong()
+    {
+        synchronized (workProvider)
+        {
+            return workProvider.getTotalEstimatedWorkSizeLong();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Collection<T> getNextWork()
+    {
+        if (exhausted)
+        {
+            return Collections.emptyList();
+        }
+        Object next;
+        try
+        {
+            next = queue.take();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new AlfrescoRuntimeException("Interrupted while waiting for work from " + workProvider, e);
+        }
+        if (next == END_OF_WORK)
+        {
+            exhausted = true;
+            return Collections.emptyList();
+        }
+        else if (next instanceof Throwable)
+        {
+            exhausted = true;
+            throw AlfrescoRuntimeException.makeRuntimeException((Throwable) next, "Failed to get work from " + workProvider);
+        }
+        return (Collection<T>) next;
+    }
+
+    /**
+     * Stop fetching work and wait for the background thread to finish any fetch in progress.  Any work already
+     * fetched is discarded.
+     */
+    void close()
+    {
+        closed = true;
+        thread.interrupt();
+        boolean interrupted = false;
+        while (thread.isAlive())
+        {
+            try
+            {
+                thread.join();
+            }
+            catch (InterruptedException e)
+            {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void fetch()
+    {
+        AuthenticationUtil.setFullAuthentication(authentication);
+        try
+        {
+            while (!closed)
+            {
+                Collection<T> work = TenantUtil.runAsTenant(this::fetchNextWork, tenantDomain);
+                if (work == null)
+                {
+                    queue.put(new AlfrescoRuntimeException("BatchProcessWorkProvider returned 'null' work: " + workProvider));
+                    return;
+                }
+                if (work.isEmpty())
+                {
+                    queue.put(END_OF_WORK);
+                    return;
+                }
+                queue.put(new ArrayList<T>(work));
+            }
+        }
+        catch (InterruptedException e)
+        {
+            // Closed
+        }
+        catch (Throwable e)
+        {
+            try
+            {
+                queue.put(e);
+            }
+            catch (InterruptedException ie)
+            {
+                // Closed
+            }
+        }
+        finally
+        {
+            AuthenticationUtil.clearCurrentSecurityContext();
+        }
+    }
+
+    private Collection<T> fetchNextWork()
+    {
+        if (txnReadState == TxnReadState.TXN_NONE)
+        {
+            return getNextWorkFromProvider();
+        }
+        boolean readOnly = txnReadState == TxnReadState.TXN_READ_ONLY;
+        return retryingTransactionHelper.doInTransaction(this::getNextWorkFromProvider, readOnly, true);
+    }
+
+    private Collection<T> getNextWorkFromProvider()
+    {
+        synchronized (workProvider)
+        {
+            return workProvider.getNextWork();
+        }
+    }
+}
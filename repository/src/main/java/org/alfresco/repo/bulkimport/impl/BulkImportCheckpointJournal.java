@@ -0,0 +1,268 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.bulkimport.impl;
+
+import java.io.Serializable;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.alfresco.repo.bulkimport.ImportableItem;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.service.cmr.attributes.AttributeService;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.util.transaction.TransactionListenerAdapter;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Persistent journal of the source directories whose whole subtree has been imported, allowing an interrupted bulk
+ * import to be resumed.
+ * <p>
+ * Entries are kept by the {@link AttributeService}, keyed by the import target and source folder and then by the path
+ * of the directory relative to the source folder; the value is the node the directory was imported to.  A directory is
+ * recorded once the transactions importing all of its files and subdirectories have committed and all of its
+ * subdirectories have been recorded in turn, so the journal is written at batch granularity and never claims work that
+ * was rolled back.  When an import is rerun against the same source and target, completed subtrees are neither listed
+ * nor imported again.
+ * <p>
+ * Every entry stands on its own, so losing some of them only means that more work is checked again on a rerun.  If an
+ * entry cannot be written no further entries are recorded for the rest of the import.
+ * <p>
+ * The journal assumes that the imported nodes are not moved or deleted between runs.  It is cleared once the import
+ * completes successfully.
+ * 
+ * @since 23.3
+ */
+public class BulkImportCheckpointJournal
+{
+    private static final Log logger = LogFactory.getLog(BulkImportCheckpointJournal.class);
+
+    private static final String KEY_CHECKPOINTS = ".bulkImportCheckpoints";
+
+    private final AttributeService attributeService;
+    private final RetryingTransactionHelper transactionHelper;
+    private final Path sourceFolder;
+    private final String importKey;
+
+    /** Completed directories by relative path */
+    private final Map<String, NodeRef> completedDirectories = new ConcurrentHashMap<String, NodeRef>();
+    /** Number of items not yet committed and subdirectories not yet completed, by directory */
+    private final Map<ImportableItem, AtomicInteger> pendingItems = new ConcurrentHashMap<ImportableItem, AtomicInteger>();
+    /** Set once an entry could not be written */
+    private volatile boolean failed;
+
+    public BulkImportCheckpointJournal(AttributeService attributeService, RetryingTransactionHelper transactionHelper,
+            Path sourceFolder, NodeRef target)
+    {
+        this.attributeService = attributeService;
+        this.transactionHelper = transactionHelper;
+        this.sourceFolder = sourceFolder.toAbsolutePath().normalize();
+        this.importKey = target.toString() + "|" + this.sourceFolder.toString();
+    }
+
+    /**
+     * Load the directories completed by previous runs of this import.
+     */
+    public void load()
+    {
+        completedDirectories.clear();
+        transactionHelper.doInTransaction(() ->
+        {
+            attributeService.getAttributes((Long id, Serializable value, Serializable[] keys) ->
+            {
+                completedDirectories.put((String) keys[2], (NodeRef) value);
+                return true;
+            }, KEY_CHECKPOINTS, importKey);
+            return null;
+        }, true, true);
+
+        if (logger.isInfoEnabled() && !completedDirectories.isEmpty())
+        {
+            logger.info("Resuming bulk import from '" + sourceFolder + "' with " + completedDirectories.size() + " completed directories.");
+        }
+    }
+
+    /**
+     * Remove all entries of this import.
+     */
+    public void clear()
+    {
+        transactionHelper.doInTransaction(() ->
+        {
+            attributeService.removeAttributes(KEY_CHECKPOINTS, importKey);
+            return null;
+        }, false, true);
+        completedDirectories.clear();
+        pendingItems.clear();
+    }
+
+    /**
+     * @return <tt>true</tt> if a previous run imported the directory and everything below it
+     */
+    public boolean isCompleted(ImportableItem directory)
+    {
+        return completedDirectories.containsKey(getKey(directory));
+    }
+
+    public int getNumberOfCompletedDirectories()
+    {
+        return completedDirectories.size();
+    }
+
+    /**
+     * Start tracking the items of a directory that is about to be imported.
+     * 
+     * @param directory         the analysed directory, which must already have been imported
+     * @param numFiles          the number of files that will be imported
+     * @param numSubdirectories the number of subdirectories that will be imported, leaving out completed ones
+     */
+    public void directoryAnalysed(ImportableItem directory, int numFiles, int numSubdirectories)
+    {
+        // A subdirectory is counted when it is imported and again when its own subtree is complete
+        int numPending = numFiles + 2 * numSubdirectories;
+        if (numPending == 0)
+        {
+            List<ImportableItem> completed = new ArrayList<ImportableItem>();
+            directoryCompleted(directory, completed);
+            persist(completed);
+        }
+        else
+        {
+            pendingItems.put(directory, new AtomicInteger(numPending));
+        }
+    }
+
+    /**
+     * Record that an item has been imported by the current transaction.  The item counts towards the completion of its
+     * directory once the transaction commits.
+     */
+    public void itemImported(ImportableItem importableItem)
+    {
+        BatchListener listener = AlfrescoTransactionSupport.getResource(this);
+        if (listener == null)
+        {
+            listener = new BatchListener();
+            AlfrescoTransactionSupport.bindResource(this, listener);
+            AlfrescoTransactionSupport.bindListener(listener);
+        }
+        listener.items.add(importableItem);
+    }
+
+    private void itemsCommitted(List<ImportableItem> items)
+    {
+        List<ImportableItem> completed = new ArrayList<ImportableItem>();
+        for (ImportableItem item : items)
+        {
+            countDown(item.getParent(), completed);
+        }
+        persist(completed);
+    }
+
+    /**
+     * Count down the pending items of a directory, completing it and then its ancestors as they run out.
+     */
+    private void countDown(ImportableItem directory, List<ImportableItem> completed)
+    {
+        AtomicInteger pending = directory == null ? null : pendingItems.get(directory);
+        if (pending != null && pending.decrementAndGet() == 0)
+        {
+            pendingItems.remove(directory);
+            directoryCompleted(directory, completed);
+        }
+    }
+
+    private void directoryCompleted(ImportableItem directory, List<ImportableItem> completed)
+    {
+        if (directory.getNodeRef() == null)
+        {
+            // The directory itself was not imported, so neither it nor its ancestors are complete
+            return;
+        }
+        completed.add(directory);
+        countDown(directory.getParent(), completed);
+    }
+
+    private void persist(final List<ImportableItem> directories)
+    {
+        if (directories.isEmpty() || failed)
+        {
+            return;
+        }
+        try
+        {
+            transactionHelper.doInTransaction(() ->
+            {
+                for (ImportableItem directory : directories)
+                {
+                    attributeService.setAttribute(directory.getNodeRef(), KEY_CHECKPOINTS, importKey, getKey(directory));
+                }
+                return null;
+            }, false, true);
+        }
+        catch (RuntimeException e)
+        {
+            failed = true;
+            logger.error("Failed to record bulk import checkpoint for " + directories.size() + " directories.  " +
+                    "No further checkpoints are recorded for the import from '" + sourceFolder + "' and a rerun will check the remaining items again.", e);
+            return;
+        }
+
+        for (ImportableItem directory : directories)
+        {
+            completedDirectories.put(getKey(directory), directory.getNodeRef());
+        }
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Recorded " + directories.size() + " completed directories");
+        }
+    }
+
+    private String getKey(ImportableItem directory)
+    {
+        Path path = directory.getHeadRevision().getContentFile().toAbsolutePath().normalize();
+        // Prefixed so that the source folder itself does not have an empty key
+        return "/" + sourceFolder.relativize(path).toString();
+    }
+
+    /**
+     * Collects the items imported by a batch transaction.
+     */
+    private class BatchListener extends TransactionListenerAdapter
+    {
+        private final List<ImportableItem> items = new ArrayList<ImportableItem>();
+
+        @Override
+        public void afterCommit()
+        {
+            itemsCommitted(items);
+        }
+    }
+}
@@ -2,7 +2,7 @@
  * #%L
  * Alfresco Repository
  * %%
- * Copyright (C) 2005 - 2023 Alfresco Software Limited
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
  * %%
  * This file is part of the Alfresco software. 
  * If the software was purchased under a paid Alfresco license, the terms of 
@@ -71,6 +71,8 @@ public class BulkImportStatusImpl implements BulkImportStatus
     private AtomicLong    numberOfFoldersScanned                  = new AtomicLong();
     private AtomicLong    numberOfFilesScanned                    = new AtomicLong();
     private AtomicLong    numberOfUnreadableEntries               = new AtomicLong(); 
+    private AtomicLong    numberOfDirectoriesAnalysed             = new AtomicLong();
+    private AtomicLong    directoryAnalysisTimeNs                 = new AtomicLong();
     
     private AtomicLong    numberOfContentFilesRead                = new AtomicLong();
     private AtomicLong    numberOfContentBytesRead                = new AtomicLong();
@@ -209,6 +211,26 @@ public class BulkImportStatusImpl implements BulkImportStatus
     {
     	numberOfBatchesCompleted.incrementAndGet();
     }
+
+    /**
+     * @since 23.3
+     */
+    public long getNumberOfDirectoriesAnalysed()
+    {
+    	return(numberOfDirectoriesAnalysed.get());
+    }
+
+    /**
+     * Record the analysis of a directory.
+     * 
+     * @param durationNs the time spent listing and analysing the directory
+     * @since 23.3
+     */
+    public void incrementNumberOfDirectoriesAnalysed(long durationNs)
+    {
+    	numberOfDirectoriesAnalysed.incrementAndGet();
+    	directoryAnalysisTimeNs.addAndGet(durationNs);
+    }
     
     public void startImport(final String sourceDirectory, final String targetSpace)
     {
@@ -229,6 +251,8 @@ public class BulkImportStatusImpl implements BulkImportStatus
         this.numberOfFoldersScanned.set(1);   // We set this to one to count the initial starting directory (which doesn't otherwise get counted)
         this.numberOfFilesScanned.set(0);
         this.numberOfUnreadableEntries.set(0);
+        this.numberOfDirectoriesAnalysed.set(0);
+        this.directoryAnalysisTimeNs.set(0);
         
         this.numberOfContentFilesRead.set(0);
         this.numberOfContentBytesRead.set(0);
@@ -517,6 +541,39 @@ public class BulkImportStatusImpl implements BulkImportStatus
     	}
     }
     
+    /**
+     * @since 23.3
+     */
+    public Long getDirectoriesAnalysedPerSecond()
+    {
+    	Long duration = getDuration();
+    	if(duration != null && duration > 0)
+    	{
+	    	return numberOfDirectoriesAnalysed.longValue() / duration;
+    	}
+    	else
+    	{
+    		return null;
+    	}
+    }
+
+    /**
+     * @return the average time spent analysing a directory, in milliseconds, summed over all analyser threads
+     * @since 23.3
+     */
+    public Long getAverageDirectoryAnalysisTimeMs()
+    {
+    	long directories = numberOfDirectoriesAnalysed.longValue();
+    	if(directories > 0)
+    	{
+	    	return directoryAnalysisTimeNs.longValue() / directories / 1000000L;
+    	}
+    	else
+    	{
+    		return null;
+    	}
+    }
+
     public Long getBytesWrittenPerSecond()
     {
     	Long duration = getDuration();
@@ -616,6 +673,10 @@ public class BulkImportStatusImpl implements BulkImportStatus
     	sb.append(getBytesReadPerSecond());
     	sb.append("\nEntries scanned/sec : ");
     	sb.append(getEntriesScannedPerSecond());
+    	sb.append("\nDirectories analysed/sec : ");
+    	sb.append(getDirectoriesAnalysedPerSecond());
+    	sb.append("\nAverage directory analysis time (ms) : ");
+    	sb.append(getAverageDirectoryAnalysisTimeMs());
     	sb.append("\nFiles read/sec : ");
     	sb.append(getFilesReadPerSecond());
     	sb.append("\nNodes created/sec : ");
@@ -624,6 +685,8 @@ public class BulkImportStatusImpl implements BulkImportStatus
     	sb.append(getNumberOfFilesScanned());
     	sb.append("\nNumber of folders scanned : ");
     	sb.append(getNumberOfFoldersScanned());
+    	sb.append("\nNumber of directories analysed : ");
+    	sb.append(getNumberOfDirectoriesAnalysed());
     	sb.append("\nNumber of content files read : ");
     	sb.append(getNumberOfContentFilesRead());
     	sb.append("\nNumber of content version files read : ");
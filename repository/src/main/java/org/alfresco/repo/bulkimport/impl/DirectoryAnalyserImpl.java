@@ -2,7 +2,7 @@
  * #%L
  * Alfresco Repository
  * %%
- * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
  * %%
  * This file is part of the Alfresco software. 
  * If the software was purchased under a paid Alfresco license, the terms of 
@@ -147,6 +147,7 @@ public class DirectoryAnalyserImpl implements DirectoryAnalyser
      */
     public AnalysedDirectory analyseDirectory(ImportableItem directory, DirectoryStream.Filter<Path> filter)
     {
+        long startNs = System.nanoTime();
     	Path directoryFile = directory.getHeadRevision().getContentFile();
     	AnalysedDirectory result = new AnalysedDirectory(listFiles(directoryFile, filter));
         
@@ -260,6 +261,7 @@ public class DirectoryAnalyserImpl implements DirectoryAnalyser
         	log.debug("Finished analysing directory " + FileUtils.getFileName(directoryFile) + ".");
         }
 
+        importStatus.incrementNumberOfDirectoriesAnalysed(System.nanoTime() - startNs);
         return result;
     }
     
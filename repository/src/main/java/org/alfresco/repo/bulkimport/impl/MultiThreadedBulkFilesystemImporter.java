@@ -2,7 +2,7 @@
  * #%L
  * Alfresco Repository
  * %%
- * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
  * %%
  * This file is part of the Alfresco software. 
  * If the software was purchased under a paid Alfresco license, the terms of 
@@ -25,6 +25,8 @@
  */
 package org.alfresco.repo.bulkimport.impl;
 
+import java.io.File;
+
 import org.alfresco.model.ContentModel;
 import org.alfresco.repo.batch.BatchProcessWorkProvider;
 import org.alfresco.repo.batch.BatchProcessor;
@@ -37,6 +39,7 @@ import org.alfresco.repo.node.integrity.IntegrityException;
 import org.alfresco.repo.security.authentication.AuthenticationUtil;
 import org.alfresco.repo.tenant.TenantUtil;
 import org.alfresco.repo.tenant.TenantUtil.TenantRunAsWork;
+import org.alfresco.service.cmr.attributes.AttributeService;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -54,6 +57,39 @@ public abstract class MultiThreadedBulkFilesystemImporter extends AbstractBulkFi
     protected int defaultBatchSize;
     protected int defaultNumThreads;
     protected int defaultLoggingInterval = 100;
+    protected AttributeService attributeService;
+    protected boolean checkpointsEnabled;
+
+    public void setAttributeService(AttributeService attributeService)
+    {
+        this.attributeService = attributeService;
+    }
+
+    /**
+     * Record completed directories so that a failed or interrupted import of the same source into the same target
+     * resumes where it stopped, see {@link BulkImportCheckpointJournal}.
+     * 
+     * @since 23.3
+     */
+    public void setCheckpointsEnabled(boolean checkpointsEnabled)
+    {
+        this.checkpointsEnabled = checkpointsEnabled;
+    }
+
+    /**
+     * @return the loaded checkpoint journal for the import, or <tt>null</tt> if checkpoints are disabled
+     * @since 23.3
+     */
+    protected BulkImportCheckpointJournal getCheckpointJournal(File sourceFolder, NodeRef target)
+    {
+        if (!checkpointsEnabled || attributeService == null)
+        {
+            return null;
+        }
+        BulkImportCheckpointJournal checkpointJournal = new BulkImportCheckpointJournal(attributeService, transactionHelper, sourceFolder.toPath(), target);
+        checkpointJournal.load();
+        return checkpointJournal;
+    }
 
     protected int getLoggingInterval(BulkImportParameters bulkImportParameters)
     {
@@ -72,6 +108,16 @@ public abstract class MultiThreadedBulkFilesystemImporter extends AbstractBulkFi
 
     protected BatchProcessor.BatchProcessWorker<ImportableItem> getWorker(final BulkImportParameters bulkImportParameters, final String lockToken,
     		final NodeImporter nodeImporter, final FilesystemTracker filesystemTracker)
+    {
+        return getWorker(bulkImportParameters, lockToken, nodeImporter, filesystemTracker, null);
+    }
+
+    /**
+     * @param checkpointJournal the journal recording imported items, or <tt>null</tt>
+     * @since 23.3
+     */
+    protected BatchProcessor.BatchProcessWorker<ImportableItem> getWorker(final BulkImportParameters bulkImportParameters, final String lockToken,
+    		final NodeImporter nodeImporter, final FilesystemTracker filesystemTracker, final BulkImportCheckpointJournal checkpointJournal)
     {
         final int batchSize = bulkImportParameters.getBatchSize() != null ? bulkImportParameters.getBatchSize() : defaultBatchSize;
         final boolean rulesEnabled = ruleService.isEnabled();
@@ -128,6 +174,10 @@ public abstract class MultiThreadedBulkFilesystemImporter extends AbstractBulkFi
 
 		                    NodeRef nodeRef = nodeImporter.importImportableItem(importableItem, bulkImportParameters.getExistingFileMode());
 		                    filesystemTracker.itemImported(nodeRef, importableItem);
+		                    if (checkpointJournal != null)
+		                    {
+		                        checkpointJournal.itemImported(importableItem);
+		                    }
 		                }
 		                finally
 		                {
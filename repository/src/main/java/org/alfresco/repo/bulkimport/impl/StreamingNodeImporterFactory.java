@@ -2,7 +2,7 @@
  * #%L
  * Alfresco Repository
  * %%
- * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
  * %%
  * This file is part of the Alfresco software. 
  * If the software was purchased under a paid Alfresco license, the terms of 
@@ -27,29 +27,100 @@ package org.alfresco.repo.bulkimport.impl;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
 import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.model.ContentModel;
 import org.alfresco.repo.bulkimport.BulkImportParameters;
 import org.alfresco.repo.bulkimport.ImportableItem;
 import org.alfresco.repo.bulkimport.MetadataLoader;
 import org.alfresco.repo.bulkimport.NodeImporter;
 import org.alfresco.repo.bulkimport.impl.BulkImportStatusImpl.NodeState;
+import org.alfresco.repo.content.cleanup.EagerContentStoreCleaner;
+import org.alfresco.service.cmr.repository.ContentData;
 import org.alfresco.service.cmr.repository.ContentIOException;
+import org.alfresco.service.cmr.repository.ContentService;
 import org.alfresco.service.cmr.repository.ContentWriter;
+import org.alfresco.service.cmr.repository.DuplicateChildNodeNameException;
 import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.namespace.NamespaceService;
+import org.alfresco.service.namespace.QName;
 import org.alfresco.util.Triple;
 
 /**
+ * Creates node importers that stream the content of each file into the repository.
+ * <p>
+ * When the <b>fastPath</b> is enabled, new files and folders are created with a single
+ * <tt>createNode</tt> call carrying all their properties and content, instead of being created
+ * empty and then updated with content, aspects and properties one after the other.  Items that
+ * already exist in the repository or have version history go through the standard path, and
+ * the existence check is skipped for children of folders created by the same import.
+ * Optionally all behaviours can be disabled while fast path nodes are created.
  * 
  * @since 4.0
  *
  */
 public class StreamingNodeImporterFactory extends AbstractNodeImporterFactory
 {
+	private ContentService contentService;
+	private EagerContentStoreCleaner eagerContentStoreCleaner;
+	private boolean fastPath;
+	private boolean disableAllBehaviours;
+
+	public void setContentService(ContentService contentService)
+	{
+		this.contentService = contentService;
+	}
+
+	/**
+	 * Set the cleaner that removes content written by the fast path for nodes that could not be created.
+	 * 
+	 * @since 23.3
+	 */
+	public void setEagerContentStoreCleaner(EagerContentStoreCleaner eagerContentStoreCleaner)
+	{
+		this.eagerContentStoreCleaner = eagerContentStoreCleaner;
+	}
+
+	/**
+	 * Set whether new items are created through the fast path.
+	 * 
+	 * @since 23.3
+	 */
+	public void setFastPath(boolean fastPath)
+	{
+		this.fastPath = fastPath;
+	}
+
+	/**
+	 * Set whether all behaviours are disabled while fast path nodes are created.  This avoids
+	 * running the policies for every node but also suppresses anything driven by them, such as
+	 * usage (quota) updates and repository events for the imported nodes.
+	 * 
+	 * @since 23.3
+	 */
+	public void setDisableAllBehaviours(boolean disableAllBehaviours)
+	{
+		this.disableAllBehaviours = disableAllBehaviours;
+	}
+
 	public NodeImporter getNodeImporter(File sourceFolder)
 	{
-		StreamingNodeImporter nodeImporter = new StreamingNodeImporter();
+		StreamingNodeImporter nodeImporter;
+		if (fastPath)
+		{
+			nodeImporter = new FastPathNodeImporter(contentService, eagerContentStoreCleaner, disableAllBehaviours);
+		}
+		else
+		{
+			nodeImporter = new StreamingNodeImporter();
+		}
 		nodeImporter.setNodeService(nodeService);
 		nodeImporter.setBehaviourFilter(behaviourFilter);
 		nodeImporter.setFileFolderService(fileFolderService);
@@ -176,4 +247,134 @@ public class StreamingNodeImporterFactory extends AbstractNodeImporterFactory
 			return sourceFolder;
 		}
 	}
+
+	/**
+	 * Creates new items with a single <tt>createNode</tt> call, falling back to the standard
+	 * streaming import for anything that already exists or has versions.
+	 * 
+	 * @since 23.3
+	 */
+	private static class FastPathNodeImporter extends StreamingNodeImporter
+	{
+		/** Limit on the number of created folders remembered to skip existence checks */
+		private static final int MAX_CREATED_FOLDERS = 100000;
+
+		private final ContentService contentService;
+		private final EagerContentStoreCleaner eagerContentStoreCleaner;
+		private final boolean disableAllBehaviours;
+		/** Folders created by this import, whose children cannot exist yet */
+		private final Set<NodeRef> createdFolders = ConcurrentHashMap.newKeySet();
+
+		public FastPathNodeImporter(ContentService contentService, EagerContentStoreCleaner eagerContentStoreCleaner, boolean disableAllBehaviours)
+		{
+			this.contentService = contentService;
+			this.eagerContentStoreCleaner = eagerContentStoreCleaner;
+			this.disableAllBehaviours = disableAllBehaviours;
+		}
+
+		@Override
+		protected NodeRef importImportableItemImpl(ImportableItem importableItem, BulkImportParameters.ExistingFileMode existingFileMode)
+		{
+			NodeRef target = importableItem.getParent().getNodeRef();
+			ImportableItem.ContentAndMetadata headRevision = importableItem.getHeadRevision();
+			if (target == null || importableItem.hasVersionEntries() || !headRevision.contentFileExists())
+			{
+				return super.importImportableItemImpl(importableItem, existingFileMode);
+			}
+			MetadataLoader.Metadata metadata = loadMetadata(headRevision);
+			String nodeName = getImportableItemName(importableItem, metadata);
+			if (nodeName == null || (!createdFolders.contains(target) && fileFolderService.searchSimple(target, nodeName) != null))
+			{
+				// Existing items are skipped, replaced or versioned as usual
+				return super.importImportableItemImpl(importableItem, existingFileMode);
+			}
+
+			boolean isDirectory = ImportableItem.FileType.DIRECTORY.equals(headRevision.getContentFileType());
+			Map<QName, Serializable> properties = new HashMap<QName, Serializable>(metadata.getProperties());
+			properties.put(ContentModel.PROP_NAME, nodeName);
+			ContentData contentData = null;
+			if (!isDirectory)
+			{
+				contentData = writeContent(headRevision, nodeName);
+				properties.put(ContentModel.PROP_CONTENT, contentData);
+			}
+
+			NodeRef nodeRef;
+			if (disableAllBehaviours)
+			{
+				behaviourFilter.disableBehaviour();
+			}
+			try
+			{
+				if (logger.isDebugEnabled()) logger.debug("Creating new node of type '" + metadata.getType() + "' with name '" + nodeName + "' within node '" + target + "' (fast path).");
+				nodeRef = nodeService.createNode(
+						target,
+						ContentModel.ASSOC_CONTAINS,
+						QName.createQName(NamespaceService.CONTENT_MODEL_1_0_URI, QName.createValidLocalName(nodeName)),
+						metadata.getType(),
+						properties).getChildRef();
+				// Aspects without properties are not implied by the properties set above
+				if (metadata.getAspects() != null)
+				{
+					for (QName aspect : metadata.getAspects())
+					{
+						nodeService.addAspect(nodeRef, aspect, null);
+					}
+				}
+			}
+			catch (DuplicateChildNodeNameException e)
+			{
+				if (logger.isWarnEnabled()) logger.warn("Node with name '" + nodeName + "' within node '" + target + "' was created concurrently to the bulk import.  Skipping importing it.", e);
+				if (isDirectory)
+				{
+					skipImportableDirectory(importableItem);
+				}
+				else
+				{
+					// The content was written for this node only, so it is removed once the transaction commits
+					eagerContentStoreCleaner.registerOrphanedContentUrl(contentData.getContentUrl(), true);
+					skipImportableFile(importableItem);
+				}
+				return null;
+			}
+			finally
+			{
+				if (disableAllBehaviours)
+				{
+					behaviourFilter.enableBehaviour();
+				}
+			}
+
+			if (isDirectory && createdFolders.size() < MAX_CREATED_FOLDERS)
+			{
+				createdFolders.add(nodeRef);
+			}
+			importStatus.incrementImportableItemsRead(importableItem, isDirectory);
+			importStatus.incrementNodesWritten(importableItem, isDirectory, NodeState.CREATED, metadata.getProperties().size() + 4, 0);
+			importStatus.incrementContentBytesWritten(importableItem, isDirectory, NodeState.CREATED);
+			return nodeRef;
+		}
+
+		/**
+		 * Write the content to a new location in the content store, ready to be set on the node
+		 * when it is created.  The mimetype is guessed from the name and the content once it is written.
+		 */
+		private ContentData writeContent(ImportableItem.ContentAndMetadata contentAndMetadata, String nodeName)
+		{
+			ContentWriter writer = contentService.getWriter(null, null, false);
+			writer.guessMimetype(nodeName);
+			try (InputStream is = Files.newInputStream(contentAndMetadata.getContentFile()))
+			{
+				writer.putContent(is);
+			}
+			catch (IOException e)
+			{
+				throw new ContentIOException("Failed to copy content from file: \n" +
+						"   writer: " + writer + "\n" +
+						"   file: " + contentAndMetadata.getContentFile(),
+						e);
+			}
+			return writer.getContentData();
+		}
+	}
 }
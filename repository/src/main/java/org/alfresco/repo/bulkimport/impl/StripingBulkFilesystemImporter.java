@@ -2,7 +2,7 @@
  * #%L
  * Alfresco Repository
  * %%
- * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
  * %%
  * This file is part of the Alfresco software. 
  * If the software was purchased under a paid Alfresco license, the terms of 
@@ -41,6 +41,30 @@ import org.alfresco.repo.bulkimport.NodeImporter;
  */
 public class StripingBulkFilesystemImporter extends MultiThreadedBulkFilesystemImporter
 {
+    private int analyserThreads = 1;
+    private int prefetchDepth;
+
+    /**
+     * Set the number of threads listing and analysing the directories of a level concurrently.
+     * 
+     * @since 23.3
+     */
+    public void setAnalyserThreads(int analyserThreads)
+    {
+        this.analyserThreads = analyserThreads;
+    }
+
+    /**
+     * Set the number of collections of importable items prepared ahead of the import workers, see
+     * {@link BatchProcessor#setPrefetchDepth(int)}.
+     * 
+     * @since 23.3
+     */
+    public void setPrefetchDepth(int prefetchDepth)
+    {
+        this.prefetchDepth = prefetchDepth;
+    }
+
 	/**
      * Method that does the work of importing a filesystem using the BatchProcessor.
      * 
@@ -56,18 +80,33 @@ public class StripingBulkFilesystemImporter extends MultiThreadedBulkFilesystemI
     	final File sourceFolder = nodeImporter.getSourceFolder();
         final int batchSize = getBatchSize(bulkImportParameters);
         final int loggingInterval = getLoggingInterval(bulkImportParameters);
-    	final StripingFilesystemTracker tracker = new StripingFilesystemTracker(directoryAnalyser, bulkImportParameters.getTarget(), sourceFolder, batchSize);
+    	final StripingFilesystemTracker tracker = new StripingFilesystemTracker(directoryAnalyser, bulkImportParameters.getTarget(), sourceFolder, batchSize, analyserThreads);
         final BatchProcessor<ImportableItem> batchProcessor = getBatchProcessor(bulkImportParameters, tracker.getWorkProvider(), loggingInterval);
-        final BatchProcessor.BatchProcessWorker<ImportableItem> worker = getWorker(bulkImportParameters, lockToken, nodeImporter, tracker);
+        final BulkImportCheckpointJournal checkpointJournal = getCheckpointJournal(sourceFolder, bulkImportParameters.getTarget());
+        tracker.setCheckpointJournal(checkpointJournal);
+        final BatchProcessor.BatchProcessWorker<ImportableItem> worker = getWorker(bulkImportParameters, lockToken, nodeImporter, tracker, checkpointJournal);
+        batchProcessor.setPrefetchDepth(prefetchDepth);
+
+        try
+        {
+            do
+            {
+                batchProcessor.process(worker, true);
+                if(batchProcessor.getLastError() != null)
+                {
+                    throw new AlfrescoRuntimeException(batchProcessor.getLastError());
+                }
+            }
+            while(tracker.moreLevels());
 
-		do
-		{
-			batchProcessor.process(worker, true);
-			if(batchProcessor.getLastError() != null)
-			{
-				throw new AlfrescoRuntimeException(batchProcessor.getLastError());
-			}
-		}
-		while(tracker.moreLevels());
+            if (checkpointJournal != null)
+            {
+                checkpointJournal.clear();
+            }
+        }
+        finally
+        {
+            tracker.close();
+        }
     }
 }
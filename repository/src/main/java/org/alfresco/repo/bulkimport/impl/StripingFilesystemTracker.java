@@ -2,7 +2,7 @@
  * #%L
  * Alfresco Repository
  * %%
- * Copyright (C) 2005 - 2023 Alfresco Software Limited
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
  * %%
  * This file is part of the Alfresco software. 
  * If the software was purchased under a paid Alfresco license, the terms of 
@@ -26,21 +26,38 @@
 package org.alfresco.repo.bulkimport.impl;
 
 import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import net.sf.acegisecurity.Authentication;
+
+import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.repo.batch.BatchProcessWorkProvider;
 import org.alfresco.repo.bulkimport.AnalysedDirectory;
 import org.alfresco.repo.bulkimport.DirectoryAnalyser;
 import org.alfresco.repo.bulkimport.ImportableItem;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
 import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.util.TraceableThreadFactory;
 
 /**
  * A filesystem walker that returns all files and directories in subsequent levels of a filesystem tree; it returns all directories
  * and files in a given level, at which point it moves on to the next level and starts returning directories and files in that level.
+ * <p>
+ * Directories within a level are independent of each other, so with more than one analyser thread they are listed and analysed
+ * concurrently, including the parsing and validation of their metadata files.  Up to twice as many directories as there are
+ * analyser threads are analysed ahead of the importer; results are still consumed in order.  {@link #close()} must be called
+ * once the import is over.
  * 
  * @since 4.0
  *
@@ -55,10 +72,39 @@ public class StripingFilesystemTracker extends AbstractFilesystemTracker
 	private Map<Integer, List<ImportableItem>> directoriesToProcess = new HashMap<Integer, List<ImportableItem>>(10);
 	private List<ImportableItem> toProcess = new ArrayList<ImportableItem>();
 
+	/** Pool analysing directories ahead of the importer, or <tt>null</tt> to analyse on demand */
+	private ExecutorService analyserPool;
+	private int maxPendingAnalyses;
+	/** Analyses of directories in the current level, in the order they were submitted */
+	private Deque<Future<AnalysedDirectory>> pendingAnalyses = new ArrayDeque<Future<AnalysedDirectory>>();
+	private Authentication authentication;
+
+	private BulkImportCheckpointJournal checkpointJournal;
+
 	public StripingFilesystemTracker(DirectoryAnalyser directoryAnalyser, NodeRef target, File sourceFolder, int batchSize)
+	{
+		this(directoryAnalyser, target, sourceFolder, batchSize, 1);
+	}
+
+	/**
+	 * @param analyserThreads the number of threads analysing directories concurrently; 1 analyses directories on demand
+	 * 
+	 * @since 23.3
+	 */
+	public StripingFilesystemTracker(DirectoryAnalyser directoryAnalyser, NodeRef target, File sourceFolder, int batchSize, int analyserThreads)
 	{
 		this.directoryAnalyser = directoryAnalyser;
 		this.batchSize = batchSize;
+		if (analyserThreads > 1)
+		{
+			TraceableThreadFactory threadFactory = new TraceableThreadFactory();
+			threadFactory.setNamePrefix("BulkImportAnalyser");
+			threadFactory.setThreadDaemon(true);
+			this.analyserPool = Executors.newFixedThreadPool(analyserThreads, threadFactory);
+			this.maxPendingAnalyses = analyserThreads * 2;
+			// Metadata conversion may need the caller's tenant
+			this.authentication = AuthenticationUtil.getFullAuthentication();
+		}
 
 		// not really an importable item but the interface requires it to be in this form
 		rootFolder = new ImportableItem();
@@ -67,6 +113,16 @@ public class StripingFilesystemTracker extends AbstractFilesystemTracker
 
 		addDirectoryToProcess(rootFolder, currentLevel);
 	}
+
+	/**
+	 * Resume from, and record progress in, the given journal.
+	 * 
+	 * @since 23.3
+	 */
+	public void setCheckpointJournal(BulkImportCheckpointJournal checkpointJournal)
+	{
+		this.checkpointJournal = checkpointJournal;
+	}
 	
 	protected void addDirectoriesToProcess(Collection<ImportableItem> dirsToAdd, int level)
 	{
@@ -137,14 +193,107 @@ public class StripingFilesystemTracker extends AbstractFilesystemTracker
 		return getDirectoriesToProcess(currentLevel).size();
 	}
 
+	/**
+	 * Analyse a directory.  Subdirectories that a previous run completed are dropped, so that their subtrees are
+	 * neither listed nor imported again.
+	 */
+	private AnalysedDirectory analyse(ImportableItem directory)
+	{
+		if (checkpointJournal != null && checkpointJournal.isCompleted(directory))
+		{
+			// Only the source folder gets here, completed subdirectories are never queued
+			return new AnalysedDirectory(new ArrayList<Path>());
+		}
+		AnalysedDirectory analysedDirectory = getImportableItemsInDirectory(directory);
+		if (checkpointJournal != null)
+		{
+			analysedDirectory.getImportableDirectories().removeIf(checkpointJournal::isCompleted);
+			checkpointJournal.directoryAnalysed(directory,
+					analysedDirectory.getImportableItems().size(), analysedDirectory.getImportableDirectories().size());
+		}
+		return analysedDirectory;
+	}
+
+	/**
+	 * Submit directories of the current level for analysis until the pending queue is full.
+	 */
+	private void submitAnalyses()
+	{
+		while (pendingAnalyses.size() < maxPendingAnalyses)
+		{
+			final ImportableItem directory = getDirectoryToProcess();
+			if (directory == null)
+			{
+				break;
+			}
+			pendingAnalyses.add(analyserPool.submit(() ->
+			{
+				AuthenticationUtil.setFullAuthentication(authentication);
+				try
+				{
+					return analyse(directory);
+				}
+				finally
+				{
+					AuthenticationUtil.clearCurrentSecurityContext();
+				}
+			}));
+		}
+	}
+
+	/**
+	 * Get the next analysed directory of the current level.
+	 * 
+	 * @return the analysed directory or <tt>null</tt> if there are no more directories in the level
+	 */
+	private AnalysedDirectory getNextAnalysedDirectory()
+	{
+		if (analyserPool == null)
+		{
+			ImportableItem directory = getDirectoryToProcess();
+			return directory == null ? null : analyse(directory);
+		}
+		submitAnalyses();
+		Future<AnalysedDirectory> next = pendingAnalyses.poll();
+		if (next == null)
+		{
+			return null;
+		}
+		try
+		{
+			return next.get();
+		}
+		catch (ExecutionException e)
+		{
+			throw AlfrescoRuntimeException.makeRuntimeException(e.getCause(), "Failed to analyse directory");
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new AlfrescoRuntimeException("Interrupted while analysing directories", e);
+		}
+	}
+
+	/**
+	 * Stop any directory analysis still in progress.
+	 * 
+	 * @since 23.3
+	 */
+	public void close()
+	{
+		if (analyserPool != null)
+		{
+			analyserPool.shutdownNow();
+		}
+	}
+
 	protected List<ImportableItem> getImportableItems(int count)
 	{
 		while(toProcess.size() < count)
 		{
-			ImportableItem directory = getDirectoryToProcess();
-			if(directory != null)
+			AnalysedDirectory analysedDirectory = getNextAnalysedDirectory();
+			if(analysedDirectory != null)
 			{
-				AnalysedDirectory analysedDirectory = getImportableItemsInDirectory(directory);
 				addItemsToProcess(analysedDirectory.getImportableDirectories());
 				addItemsToProcess(analysedDirectory.getImportableItems());
 
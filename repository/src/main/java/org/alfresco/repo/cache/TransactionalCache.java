@@ -2,7 +2,7 @@
  * #%L
  * Alfresco Repository
  * %%
- * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
  * %%
  * This file is part of the Alfresco software. 
  * If the software was purchased under a paid Alfresco license, the terms of 
@@ -42,6 +42,7 @@ import org.alfresco.repo.transaction.AlfrescoTransactionSupport.TxnReadState;
 import org.alfresco.repo.transaction.TransactionListener;
 import org.alfresco.util.EqualsHelper;
 import org.alfresco.util.PropertyCheck;
+import org.alfresco.util.transaction.TransactionalResourceSlot;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.beans.factory.InitializingBean;
@@ -99,8 +100,8 @@ public class TransactionalCache<K extends Serializable, V extends Object>
     private boolean allowEqualsChecks;
     /** the maximum number of elements to be contained in the cache */
     private int maxCacheSize = 500;
-    /** a unique string identifying this instance when binding resources */
-    private String resourceKeyTxnData;
+    /** the transaction-local slot holding this instance's transaction data */
+    private TransactionalResourceSlot<TransactionData> txnDataSlot;
     /** Use of cacheStats is guarded by the cacheStatsEnabled flag */
     private CacheStatistics cacheStats;
     /** Enable collection of statistics? */
@@ -242,8 +243,8 @@ public class TransactionalCache<K extends Serializable, V extends Object>
         PropertyCheck.mandatory(this, "name", name);
         PropertyCheck.mandatory(this, "sharedCache", sharedCache);
         
-        // generate the resource binding key
-        resourceKeyTxnData = RESOURCE_KEY_TXN_DATA + "." + name;
+        // get the transaction resource slot, shared by instances with the same name as the resource key was
+        txnDataSlot = TransactionalResourceSlot.forKey(RESOURCE_KEY_TXN_DATA + "." + name);
         // Refine the log category
         logger = LogFactory.getLog(TransactionalCache.class.getName() + "." + name);
         isDebugEnabled = logger.isDebugEnabled();
@@ -260,8 +261,7 @@ public class TransactionalCache<K extends Serializable, V extends Object>
      */
     private TransactionData getTransactionData()
     {
-        @SuppressWarnings("unchecked")
-        TransactionData data = (TransactionData) AlfrescoTransactionSupport.getResource(resourceKeyTxnData);
+        TransactionData data = txnDataSlot.get();
         if (data == null)
         {
             data = new TransactionData();
@@ -280,7 +280,7 @@ public class TransactionalCache<K extends Serializable, V extends Object>
             {
                 AlfrescoTransactionSupport.bindListener(this);
             }
-            AlfrescoTransactionSupport.bindResource(resourceKeyTxnData, data);
+            txnDataSlot.set(data);
         }
         return data;
     }
@@ -609,6 +609,11 @@ public class EntityLookupCache<K extends Serializable, V extends Object, VK exte
     @SuppressWarnings("unchecked")
     public V getValue(K key)
     {
+        // Handle missing cache
+        if (cache == null)
+        {
+            return null;
+        }
         CacheRegionKey keyCacheKey = new CacheRegionKey(cacheRegion, key);
         // Look in the cache
         V value = (V) cache.get(keyCacheKey);
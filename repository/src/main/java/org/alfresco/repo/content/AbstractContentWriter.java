@@ -32,13 +32,17 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.alfresco.api.AlfrescoPublicApi; 
 import org.alfresco.error.AlfrescoRuntimeException;
@@ -73,6 +77,7 @@ public abstract class AbstractContentWriter extends AbstractContentAccessor impl
     private static final Log logger = LogFactory.getLog(AbstractContentWriter.class);
     
     private List<ContentStreamListener> listeners;
+    private List<ContentStreamProcessor> streamProcessors;
     private WritableByteChannel channel;
     private ContentReader existingContentReader;
     private MimetypeService mimetypeService;
@@ -138,6 +143,45 @@ public abstract class AbstractContentWriter extends AbstractContentAccessor impl
         listeners.add(listener);
     }
 
+    /**
+     * Adds a processor that will see all the content as it is written.  The processor
+     * results are available to the listeners once the channel has been closed.
+     * 
+     * @see #getStreamProcessorResults()
+     * @since 23.3
+     */
+    public synchronized void addStreamProcessor(ContentStreamProcessor processor)
+    {
+        if (channel != null)
+        {
+            throw new RuntimeException("Channel is already in use");
+        }
+        if (streamProcessors == null)
+        {
+            streamProcessors = new ArrayList<ContentStreamProcessor>(2);
+        }
+        streamProcessors.add(processor);
+    }
+
+    /**
+     * @return Returns the results of the {@link #addStreamProcessor(ContentStreamProcessor) stream processors}
+     *         keyed by processor name, or an empty map if the content has not been written
+     * @since 23.3
+     */
+    public synchronized Map<String, String> getStreamProcessorResults()
+    {
+        if (streamProcessors == null || !isClosed())
+        {
+            return Collections.emptyMap();
+        }
+        Map<String, String> results = new LinkedHashMap<String, String>(streamProcessors.size() * 2);
+        for (ContentStreamProcessor processor : streamProcessors)
+        {
+            results.put(processor.getName(), processor.getResult());
+        }
+        return results;
+    }
+
     /**
      * A factory method for subclasses to implement that will ensure the proper
      * implementation of the {@link ContentWriter#getReader()} method.
@@ -285,6 +329,12 @@ public abstract class AbstractContentWriter extends AbstractContentAccessor impl
             throw new ContentIOException("A channel has already been opened");
         }
         WritableByteChannel directChannel = getDirectWritableChannel();
+        if (streamProcessors != null)
+        {
+            // The processors see the content before the listeners are called.  Random access
+            // is then provided by the temporary file in getFileChannel, which writes sequentially.
+            directChannel = new StreamProcessingChannel(directChannel, streamProcessors);
+        }
         channel = getCallbackWritableChannel(directChannel, listeners);
 
         // notify that the channel was opened
@@ -635,6 +685,45 @@ public abstract class AbstractContentWriter extends AbstractContentAccessor impl
         setMimetype(mimetype);
     }
     
+    /**
+     * Passes everything written to the stream processors before writing it to the
+     * underlying channel.
+     */
+    private static class StreamProcessingChannel implements WritableByteChannel
+    {
+        private final WritableByteChannel delegate;
+        private final List<ContentStreamProcessor> processors;
+
+        private StreamProcessingChannel(WritableByteChannel delegate, List<ContentStreamProcessor> processors)
+        {
+            this.delegate = delegate;
+            this.processors = processors;
+        }
+
+        public int write(ByteBuffer src) throws IOException
+        {
+            ByteBuffer written = src.duplicate();
+            int count = delegate.write(src);
+            // Only process what was actually written
+            written.limit(written.position() + count);
+            for (ContentStreamProcessor processor : processors)
+            {
+                processor.update(written.duplicate());
+            }
+            return count;
+        }
+
+        public boolean isOpen()
+        {
+            return delegate.isOpen();
+        }
+
+        public void close() throws IOException
+        {
+            delegate.close();
+        }
+    }
+
     /**
      * Our own listener that is always the first on the list,
      *  which lets us perform guessing operations when the
@@ -38,6 +38,7 @@ import org.alfresco.repo.content.ContentServicePolicies.OnContentPropertyUpdateP
 import org.alfresco.repo.content.ContentServicePolicies.OnContentReadPolicy;
 import org.alfresco.repo.content.ContentServicePolicies.OnContentUpdatePolicy;
 import org.alfresco.repo.content.cleanup.EagerContentStoreCleaner;
+import org.alfresco.repo.content.digest.ContentDigestRecorder;
 import org.alfresco.repo.content.directurl.DirectAccessUrlDisabledException;
 import org.alfresco.repo.content.directurl.SystemWideDirectUrlConfig;
 import org.alfresco.repo.content.filestore.FileContentStore;
@@ -96,6 +97,8 @@ public class ContentServiceImpl implements ContentService, ApplicationContextAwa
 
     /** The cleaner that will ensure that rollbacks clean up after themselves */
     private EagerContentStoreCleaner eagerContentStoreCleaner;
+    /** records digests of new content (optional) */
+    private ContentDigestRecorder contentDigestRecorder;
     /** the store to use.  Any multi-store support is provided by the store implementation. */
     private ContentStore store;
     /** the store for all temporarily created content */
@@ -145,6 +148,15 @@ public class ContentServiceImpl implements ContentService, ApplicationContextAwa
         this.eagerContentStoreCleaner = eagerContentStoreCleaner;
     }
 
+    /**
+     * @param contentDigestRecorder     computes and records digests of new content as it is written
+     * @since 23.3
+     */
+    public void setContentDigestRecorder(ContentDigestRecorder contentDigestRecorder)
+    {
+        this.contentDigestRecorder = contentDigestRecorder;
+    }
+
     public void setStore(ContentStore store)
     {
         this.store = store;
@@ -478,6 +490,10 @@ public class ContentServiceImpl implements ContentService, ApplicationContextAwa
             ContentWriter writer = store.getWriter(ctx);
             // Register the new URL for rollback cleanup
             eagerContentStoreCleaner.registerNewContentUrl(writer.getContentUrl());
+            if (contentDigestRecorder != null)
+            {
+                contentDigestRecorder.attach(writer);
+            }
             // done
             return writer;
         }
@@ -503,6 +519,12 @@ public class ContentServiceImpl implements ContentService, ApplicationContextAwa
             writer.setLocale(contentData.getLocale());
         }
         
+        // compute digests while the content is written
+        if (contentDigestRecorder != null)
+        {
+            contentDigestRecorder.attach(writer);
+        }
+        
         // attach a listener if required
         if (update)
         {
@@ -0,0 +1,61 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A stage that sees every byte of content as it is written, allowing values such as digests
+ * to be computed without reading the content back.
+ * <p>
+ * Processors are attached with {@link AbstractContentWriter#addStreamProcessor(ContentStreamProcessor)}
+ * before the channel is opened.  Their results are available once the content has been
+ * written and, in particular, to any
+ * {@link org.alfresco.service.cmr.repository.ContentStreamListener listeners} on the writer.
+ * Instances are used for a single stream only.
+ *
+ * @since 23.3
+ */
+public interface ContentStreamProcessor
+{
+    /**
+     * @return          Returns the name of the value computed, e.g. the digest algorithm
+     */
+    String getName();
+
+    /**
+     * Process the next bytes of the content.  The buffer's position must be left unchanged
+     * by the processor.
+     *
+     * @param buffer    the bytes between the buffer's position and limit
+     */
+    void update(ByteBuffer buffer);
+
+    /**
+     * @return          Returns the computed value; called after all the content has been seen
+     */
+    String getResult();
+}
@@ -0,0 +1,288 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.List;
+
+import org.alfresco.repo.content.filestore.FileContentStore;
+import org.alfresco.service.cmr.repository.ContentIOException;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.service.cmr.repository.ContentWriter;
+import org.alfresco.util.PropertyCheck;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Routes content to one of two stores depending on its size.  Content below the
+ * {@link #setSizeThreshold(long) threshold} goes to the <b>small store</b>, typically a
+ * {@link org.alfresco.repo.content.filestore.PackedContentStore}; everything else goes to
+ * the <b>large store</b>, typically a {@link FileContentStore}.
+ * <p>
+ * When the size is known up front, i.e. when the context carries existing content, the store
+ * is selected directly.  Otherwise the writer buffers up to the threshold in memory: if the
+ * content is closed before reaching the threshold it is written to the small store, else the
+ * buffered bytes are flushed to a large store writer and the rest of the content is streamed
+ * straight through.  In both cases the same {@link FileContentStore#STORE_PROTOCOL store} URL
+ * is used, so both stores must accept explicitly-supplied <b>store://</b> URLs.
+ *
+ * @since 23.3
+ */
+public class SizeRoutingContentStore extends AbstractRoutingContentStore
+{
+    private static final Log logger = LogFactory.getLog(SizeRoutingContentStore.class);
+
+    private ContentStore smallStore;
+    private ContentStore largeStore;
+    private long sizeThreshold = 8L * 1024L;
+
+    public SizeRoutingContentStore()
+    {
+    }
+
+    /**
+     * @param smallStore        the store receiving content below the size threshold
+     */
+    public void setSmallStore(ContentStore smallStore)
+    {
+        this.smallStore = smallStore;
+    }
+
+    /**
+     * @param largeStore        the store receiving content at or above the size threshold
+     */
+    public void setLargeStore(ContentStore largeStore)
+    {
+        this.largeStore = largeStore;
+    }
+
+    /**
+     * @param sizeThreshold     the size in bytes below which content is sent to the small store
+     *                          (default 8KB)
+     */
+    public void setSizeThreshold(long sizeThreshold)
+    {
+        this.sizeThreshold = sizeThreshold;
+    }
+
+    public void init()
+    {
+        PropertyCheck.mandatory(this, "smallStore", smallStore);
+        PropertyCheck.mandatory(this, "largeStore", largeStore);
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder(128);
+        sb.append("SizeRoutingContentStore")
+          .append("[ threshold=").append(sizeThreshold)
+          .append(", small=").append(smallStore)
+          .append(", large=").append(largeStore)
+          .append("]");
+        return sb.toString();
+    }
+
+    /**
+     * @return          Returns the small store followed by the large store; lookups in the
+     *                  small store are expected to be cheaper
+     */
+    @Override
+    protected List<ContentStore> getAllStores()
+    {
+        return Arrays.asList(smallStore, largeStore);
+    }
+
+    /**
+     * Selects on the size of the existing content, falling back to the large store when the
+     * size is not known.
+     */
+    @Override
+    protected ContentStore selectWriteStore(ContentContext ctx)
+    {
+        ContentReader existingContentReader = ctx.getExistingContentReader();
+        if (existingContentReader != null && existingContentReader.exists() && existingContentReader.getSize() < sizeThreshold)
+        {
+            return smallStore;
+        }
+        return largeStore;
+    }
+
+    /**
+     * Defers the choice of store until the size is known for new content without an existing
+     * content reader or a specific content URL.
+     */
+    @Override
+    public ContentWriter getWriter(ContentContext context) throws ContentIOException
+    {
+        if (context.getContentUrl() != null || context.getExistingContentReader() != null)
+        {
+            return super.getWriter(context);
+        }
+        String contentUrl = FileContentStore.createNewFileStoreUrl();
+        ContentWriter writer = new SizeRoutingContentWriter(contentUrl);
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Created size-routing writer: \n" +
+                    "   context: " + context + "\n" +
+                    "   writer: " + writer);
+        }
+        return writer;
+    }
+
+    /**
+     * Writer that chooses the target store once the content size is known.
+     */
+    private class SizeRoutingContentWriter extends AbstractContentWriter
+    {
+        private long size;
+
+        private SizeRoutingContentWriter(String contentUrl)
+        {
+            super(contentUrl, null);
+        }
+
+        @Override
+        public long getSize()
+        {
+            return size;
+        }
+
+        @Override
+        protected ContentReader createReader() throws ContentIOException
+        {
+            return SizeRoutingContentStore.this.getReader(getContentUrl());
+        }
+
+        @Override
+        protected WritableByteChannel getDirectWritableChannel() throws ContentIOException
+        {
+            return new ThresholdChannel();
+        }
+
+        private class ThresholdChannel implements WritableByteChannel
+        {
+            private ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(sizeThreshold, 1024L));
+            private WritableByteChannel target;
+            private boolean open = true;
+
+            @Override
+            public synchronized int write(ByteBuffer src) throws IOException
+            {
+                if (!open)
+                {
+                    throw new ClosedChannelException();
+                }
+                int count = src.remaining();
+                if (target == null && buffer.position() + count >= sizeThreshold)
+                {
+                    // It is large content: switch to streaming to the large store
+                    target = openTarget(largeStore);
+                    buffer.flip();
+                    writeFully(buffer);
+                    buffer = null;
+                }
+                if (target != null)
+                {
+                    writeFully(src);
+                }
+                else
+                {
+                    if (buffer.remaining() < count)
+                    {
+                        int capacity = (int) Math.min(sizeThreshold, Math.max(buffer.capacity() * 2L, buffer.position() + count));
+                        ByteBuffer grown = ByteBuffer.allocate(capacity);
+                        buffer.flip();
+                        grown.put(buffer);
+                        buffer = grown;
+                    }
+                    buffer.put(src);
+                }
+                size += count;
+                return count;
+            }
+
+            private void writeFully(ByteBuffer src) throws IOException
+            {
+                while (src.hasRemaining())
+                {
+                    target.write(src);
+                }
+            }
+
+            private WritableByteChannel openTarget(ContentStore store)
+            {
+                ContentWriter writer = store.getWriter(new ContentContext(null, getContentUrl()));
+                if (logger.isDebugEnabled())
+                {
+                    logger.debug("Routing content to store: \n" +
+                            "   url: " + getContentUrl() + "\n" +
+                            "   store: " + store);
+                }
+                return writer.getWritableChannel();
+            }
+
+            @Override
+            public synchronized boolean isOpen()
+            {
+                return open;
+            }
+
+            @Override
+            public synchronized void close() throws IOException
+            {
+                if (!open)
+                {
+                    return;
+                }
+                open = false;
+                if (target == null)
+                {
+                    // It is small content
+                    target = openTarget(smallStore);
+                    buffer.flip();
+                    try
+                    {
+                        writeFully(buffer);
+                    }
+                    finally
+                    {
+                        buffer = null;
+                        target.close();
+                    }
+                }
+                else
+                {
+                    target.close();
+                }
+            }
+        }
+    }
+}
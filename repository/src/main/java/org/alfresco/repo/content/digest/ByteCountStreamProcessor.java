@@ -0,0 +1,60 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.digest;
+
+import java.nio.ByteBuffer;
+
+import org.alfresco.repo.content.ContentStreamProcessor;
+
+/**
+ * Counts the bytes of content.  Compared with the stored size it detects truncated content.
+ *
+ * @since 23.3
+ */
+public class ByteCountStreamProcessor implements ContentStreamProcessor
+{
+    public static final String NAME = "SIZE";
+
+    private long count;
+
+    @Override
+    public String getName()
+    {
+        return NAME;
+    }
+
+    @Override
+    public void update(ByteBuffer buffer)
+    {
+        count += buffer.remaining();
+    }
+
+    @Override
+    public String getResult()
+    {
+        return Long.toString(count);
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.digest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.alfresco.repo.content.AbstractContentStreamListener;
+import org.alfresco.repo.content.AbstractContentWriter;
+import org.alfresco.repo.content.ContentStreamProcessor;
+import org.alfresco.repo.domain.contentdata.ContentDataDAO;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.repo.transaction.TransactionListenerAdapter;
+import org.alfresco.repo.transaction.TransactionalResourceHelper;
+import org.alfresco.service.cmr.repository.ContentIOException;
+import org.alfresco.service.cmr.repository.ContentWriter;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Computes digests of new content as it is written and records them against the content URL
+ * in the <b>alf_content_url_digest</b> table, where they can be looked up, e.g. to find
+ * duplicate content, and later checked by the {@link ContentDigestScrubber}.
+ * <p>
+ * The content URL is only registered once content data referencing it is saved, which is
+ * usually after the stream has been closed.  Digests are therefore held until the transaction
+ * commits and are discarded if the content URL has not been registered by then.
+ *
+ * @since 23.3
+ */
+public class ContentDigestRecorder
+{
+    private static final Log logger = LogFactory.getLog(ContentDigestRecorder.class);
+    private static final String KEY_PENDING_DIGESTS = "ContentDigestRecorder.pendingDigests";
+
+    private final RecordDigestsTransactionListener transactionListener = new RecordDigestsTransactionListener();
+
+    private ContentDataDAO contentDataDAO;
+    private RetryingTransactionHelper retryingTransactionHelper;
+    private boolean enabled;
+    private List<String> algorithms = Collections.singletonList("SHA-256");
+
+    public void setContentDataDAO(ContentDataDAO contentDataDAO)
+    {
+        this.contentDataDAO = contentDataDAO;
+    }
+
+    /**
+     * @param retryingTransactionHelper     used to record the digests when the content is closed
+     */
+    public void setRetryingTransactionHelper(RetryingTransactionHelper retryingTransactionHelper)
+    {
+        this.retryingTransactionHelper = retryingTransactionHelper;
+    }
+
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * @param algorithms        a comma-separated list of the digests to compute
+     *                          (default <b>SHA-256</b>)
+     * @see ContentDigests#createProcessor(String)
+     */
+    public void setAlgorithms(String algorithms)
+    {
+        List<String> names = new ArrayList<String>(4);
+        for (String name : algorithms.split(","))
+        {
+            name = name.trim();
+            if (name.length() > 0)
+            {
+                // Fail early on unknown algorithms
+                ContentDigests.createProcessor(name);
+                names.add(name);
+            }
+        }
+        this.algorithms = Collections.unmodifiableList(names);
+    }
+
+    /**
+     * @return                  Returns the names of the digests computed
+     */
+    public List<String> getAlgorithms()
+    {
+        return algorithms;
+    }
+
+    /**
+     * Add digest processors to the writer and record the digests once the writer is closed.
+     * Writers that do not support {@link ContentStreamProcessor processors} are ignored.
+     *
+     * @param writer            a writer that has not been used
+     */
+    public void attach(ContentWriter writer)
+    {
+        if (!enabled || algorithms.isEmpty() || !(writer instanceof AbstractContentWriter))
+        {
+            return;
+        }
+        AbstractContentWriter contentWriter = (AbstractContentWriter) writer;
+        for (ContentStreamProcessor processor : ContentDigests.createProcessors(algorithms))
+        {
+            contentWriter.addStreamProcessor(processor);
+        }
+        RecordDigestsListener listener = new RecordDigestsListener(contentWriter);
+        listener.setRetryingTransactionHelper(retryingTransactionHelper);
+        contentWriter.addListener(listener);
+    }
+
+    private class RecordDigestsListener extends AbstractContentStreamListener
+    {
+        private final AbstractContentWriter writer;
+
+        private RecordDigestsListener(AbstractContentWriter writer)
+        {
+            this.writer = writer;
+        }
+
+        @Override
+        public void contentStreamClosedImpl() throws ContentIOException
+        {
+            Map<String, String> digests = writer.getStreamProcessorResults();
+            if (digests.isEmpty())
+            {
+                return;
+            }
+            Map<String, Map<String, String>> pendingDigests = TransactionalResourceHelper.getMap(KEY_PENDING_DIGESTS);
+            pendingDigests.put(writer.getContentUrl(), digests);
+            AlfrescoTransactionSupport.bindListener(transactionListener);
+        }
+    }
+
+    /**
+     * Records the digests of content written during the transaction against the content URLs
+     * that are now registered.
+     */
+    private class RecordDigestsTransactionListener extends TransactionListenerAdapter
+    {
+        @Override
+        public void beforeCommit(boolean readOnly)
+        {
+            Map<String, Map<String, String>> pendingDigests = TransactionalResourceHelper.getMap(KEY_PENDING_DIGESTS);
+            for (Map.Entry<String, Map<String, String>> entry : pendingDigests.entrySet())
+            {
+                String contentUrl = entry.getKey();
+                boolean recorded = contentDataDAO.updateContentUrlDigests(contentUrl, entry.getValue());
+                if (logger.isDebugEnabled())
+                {
+                    if (recorded)
+                    {
+                        logger.debug("Recorded digests for " + contentUrl + ": " + entry.getValue());
+                    }
+                    else
+                    {
+                        logger.debug("Discarded digests for unreferenced content: " + contentUrl);
+                    }
+                }
+            }
+            pendingDigests.clear();
+        }
+    }
+}
@@ -0,0 +1,305 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.digest;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.alfresco.repo.domain.contentdata.ContentDataDAO;
+import org.alfresco.repo.domain.contentdata.ContentUrlDigestEntity;
+import org.alfresco.repo.lock.JobLockService;
+import org.alfresco.repo.lock.JobLockService.JobLockRefreshCallback;
+import org.alfresco.repo.lock.LockAcquisitionException;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.service.cmr.repository.ContentService;
+import org.alfresco.service.namespace.NamespaceService;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.service.transaction.TransactionService;
+import org.alfresco.util.PropertyCheck;
+import org.alfresco.util.VmShutdownListener;
+import org.alfresco.util.VmShutdownListener.VmShutdownException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Background job that reads content back and checks it against the digests recorded by the
+ * {@link ContentDigestRecorder}.  Content that is missing or no longer matches is reported
+ * in the log.
+ * <p>
+ * Reads are limited to {@link #setMaxBytesPerSecond(long) a rate} and
+ * {@link #setMaxBytesPerRun(long) an amount per run} so that the job does not compete with
+ * normal use of the content stores.  Each run carries on from where the last run stopped and
+ * starts again from the beginning once all the digests have been checked.
+ *
+ * @since 23.3
+ */
+public class ContentDigestScrubber
+{
+    private static final Log logger = LogFactory.getLog(ContentDigestScrubber.class);
+
+    private static final QName LOCK_QNAME = QName.createQName(NamespaceService.SYSTEM_MODEL_1_0_URI, "ContentDigestScrubber");
+    private static final long LOCK_TTL = 30000L;
+
+    private static VmShutdownListener vmShutdownListener = new VmShutdownListener(ContentDigestScrubber.class.getName());
+
+    private ContentDataDAO contentDataDAO;
+    private ContentService contentService;
+    private TransactionService transactionService;
+    private JobLockService jobLockService;
+    private int batchSize = 100;
+    private long maxBytesPerSecond = 10L * 1024L * 1024L;
+    private long maxBytesPerRun = 10L * 1024L * 1024L * 1024L;
+
+    private volatile long lastDigestId;
+
+    public void setContentDataDAO(ContentDataDAO contentDataDAO)
+    {
+        this.contentDataDAO = contentDataDAO;
+    }
+
+    public void setContentService(ContentService contentService)
+    {
+        this.contentService = contentService;
+    }
+
+    public void setTransactionService(TransactionService transactionService)
+    {
+        this.transactionService = transactionService;
+    }
+
+    public void setJobLockService(JobLockService jobLockService)
+    {
+        this.jobLockService = jobLockService;
+    }
+
+    /**
+     * @param batchSize             the number of digests to fetch at a time (default 100)
+     */
+    public void setBatchSize(int batchSize)
+    {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param maxBytesPerSecond     the maximum read rate, or 0 for no limit (default 10MB/s)
+     */
+    public void setMaxBytesPerSecond(long maxBytesPerSecond)
+    {
+        this.maxBytesPerSecond = maxBytesPerSecond;
+    }
+
+    /**
+     * @param maxBytesPerRun        the amount of content to read before stopping a run, or 0
+     *                              for no limit (default 10GB)
+     */
+    public void setMaxBytesPerRun(long maxBytesPerRun)
+    {
+        this.maxBytesPerRun = maxBytesPerRun;
+    }
+
+    private void checkProperties()
+    {
+        PropertyCheck.mandatory(this, "contentDataDAO", contentDataDAO);
+        PropertyCheck.mandatory(this, "contentService", contentService);
+        PropertyCheck.mandatory(this, "transactionService", transactionService);
+        PropertyCheck.mandatory(this, "jobLockService", jobLockService);
+    }
+
+    /**
+     * Check the next content URLs, as far as the I/O budget for a run allows
+     *
+     * @return                      Returns the number of content URLs with missing or
+     *                              mismatched content, or -1 if the job is running elsewhere
+     */
+    public int execute()
+    {
+        checkProperties();
+
+        LockCallback lockCallback = new LockCallback();
+        String lockToken = null;
+        try
+        {
+            lockToken = jobLockService.getLock(LOCK_QNAME, LOCK_TTL);
+            jobLockService.refreshLock(lockToken, LOCK_QNAME, LOCK_TTL, lockCallback);
+            return executeInternal(lockCallback);
+        }
+        catch (LockAcquisitionException e)
+        {
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Content digest scrub already underway.");
+            }
+            return -1;
+        }
+        catch (VmShutdownException e)
+        {
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Content digest scrub aborted.");
+            }
+            return 0;
+        }
+        finally
+        {
+            lockCallback.running.set(false);
+            if (lockToken != null)
+            {
+                jobLockService.releaseLock(lockToken, LOCK_QNAME);
+            }
+        }
+    }
+
+    private int executeInternal(LockCallback lockCallback)
+    {
+        RateThrottle throttle = new RateThrottle();
+        int checked = 0;
+        int failed = 0;
+        while (lockCallback.running.get() && (maxBytesPerRun <= 0 || throttle.total < maxBytesPerRun))
+        {
+            final long fromId = lastDigestId;
+            List<ContentUrlDigestEntity> digests = transactionService.getRetryingTransactionHelper().doInTransaction(
+                    new RetryingTransactionCallback<List<ContentUrlDigestEntity>>()
+                    {
+                        public List<ContentUrlDigestEntity> execute() throws Throwable
+                        {
+                            return contentDataDAO.getContentUrlDigests(fromId, batchSize);
+                        }
+                    }, true);
+            if (digests.isEmpty())
+            {
+                // Start again next time
+                lastDigestId = 0L;
+                break;
+            }
+            // Group the digests by content URL so that each content is only read once
+            Map<String, Map<String, String>> digestsByUrl = new LinkedHashMap<String, Map<String, String>>(digests.size() * 2);
+            for (ContentUrlDigestEntity digest : digests)
+            {
+                digestsByUrl.computeIfAbsent(digest.getContentUrl(), url -> new LinkedHashMap<String, String>(4))
+                            .put(digest.getAlgorithm(), digest.getDigest());
+            }
+            for (Map.Entry<String, Map<String, String>> entry : digestsByUrl.entrySet())
+            {
+                if (vmShutdownListener.isVmShuttingDown())
+                {
+                    throw new VmShutdownException();
+                }
+                if (!check(entry.getKey(), entry.getValue(), throttle))
+                {
+                    failed++;
+                }
+                checked++;
+            }
+            lastDigestId = digests.get(digests.size() - 1).getId();
+        }
+        logger.info("Content digest scrub checked " + checked + " content URLs (" + throttle.total + " bytes): " + failed + " failed");
+        return failed;
+    }
+
+    /**
+     * @return                      Returns <tt>true</tt> if the content matches all its digests
+     */
+    private boolean check(String contentUrl, Map<String, String> expected, RateThrottle throttle)
+    {
+        ContentReader reader = contentService.getRawReader(contentUrl);
+        if (!reader.exists())
+        {
+            logger.error("Content digest scrub found missing content: " + contentUrl);
+            return false;
+        }
+        Map<String, String> actual;
+        try
+        {
+            actual = ContentDigests.compute(reader, ContentDigests.createProcessors(List.copyOf(expected.keySet())), throttle);
+        }
+        catch (Exception e)
+        {
+            logger.error("Content digest scrub failed to read content: " + contentUrl, e);
+            return false;
+        }
+        if (!actual.equals(expected))
+        {
+            logger.error("Content digest scrub found corrupt content: \n" +
+                    "   content URL: " + contentUrl + "\n" +
+                    "   expected: " + expected + "\n" +
+                    "   actual: " + actual);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Sleeps as needed to keep the overall read rate below the limit
+     */
+    private class RateThrottle implements ContentDigests.ReadThrottle
+    {
+        private final long startTime = System.nanoTime();
+        private long total;
+
+        @Override
+        public void bytesRead(long count)
+        {
+            total += count;
+            if (maxBytesPerSecond <= 0)
+            {
+                return;
+            }
+            long dueMs = total * 1000L / maxBytesPerSecond;
+            long elapsedMs = (System.nanoTime() - startTime) / 1000000L;
+            if (dueMs > elapsedMs)
+            {
+                try
+                {
+                    Thread.sleep(dueMs - elapsedMs);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    private class LockCallback implements JobLockRefreshCallback
+    {
+        final AtomicBoolean running = new AtomicBoolean(true);
+
+        @Override
+        public boolean isActive()
+        {
+            return running.get();
+        }
+
+        @Override
+        public void lockReleased()
+        {
+            running.set(false);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.digest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.alfresco.repo.content.ContentStreamProcessor;
+import org.alfresco.service.cmr.repository.ContentIOException;
+import org.alfresco.service.cmr.repository.ContentReader;
+
+/**
+ * Helper methods for creating {@link ContentStreamProcessor processors} by name and for
+ * computing the same values from existing content.
+ *
+ * @since 23.3
+ */
+public final class ContentDigests
+{
+    private ContentDigests()
+    {
+    }
+
+    /**
+     * @param name          {@link Crc32cStreamProcessor#NAME CRC32C}, {@link ByteCountStreamProcessor#NAME SIZE}
+     *                      or the name of a {@link java.security.MessageDigest} algorithm, e.g. <b>SHA-256</b>
+     * @return              Returns a new processor
+     */
+    public static ContentStreamProcessor createProcessor(String name)
+    {
+        if (Crc32cStreamProcessor.NAME.equalsIgnoreCase(name))
+        {
+            return new Crc32cStreamProcessor();
+        }
+        else if (ByteCountStreamProcessor.NAME.equalsIgnoreCase(name))
+        {
+            return new ByteCountStreamProcessor();
+        }
+        else
+        {
+            return new MessageDigestStreamProcessor(name);
+        }
+    }
+
+    /**
+     * @return              Returns new processors for each of the names
+     */
+    public static List<ContentStreamProcessor> createProcessors(List<String> names)
+    {
+        List<ContentStreamProcessor> processors = new ArrayList<ContentStreamProcessor>(names.size());
+        for (String name : names)
+        {
+            processors.add(createProcessor(name));
+        }
+        return processors;
+    }
+
+    /**
+     * Read the content, passing it through the given processors
+     *
+     * @param reader        the content to read
+     * @param processors    the processors to update
+     * @param throttle      called with the number of bytes read after each buffer (optional)
+     * @return              Returns the processor results keyed by name
+     */
+    public static Map<String, String> compute(ContentReader reader, List<ContentStreamProcessor> processors, ReadThrottle throttle)
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        try (ReadableByteChannel channel = reader.getReadableChannel())
+        {
+            while (channel.read(buffer) >= 0)
+            {
+                buffer.flip();
+                int count = buffer.remaining();
+                for (ContentStreamProcessor processor : processors)
+                {
+                    processor.update(buffer);
+                }
+                buffer.clear();
+                if (throttle != null && count > 0)
+                {
+                    throttle.bytesRead(count);
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            throw new ContentIOException("Failed to read content: " + reader, e);
+        }
+        Map<String, String> results = new LinkedHashMap<String, String>(processors.size() * 2);
+        for (ContentStreamProcessor processor : processors)
+        {
+            results.put(processor.getName(), processor.getResult());
+        }
+        return results;
+    }
+
+    /**
+     * Callback used to limit the rate at which content is read
+     */
+    public interface ReadThrottle
+    {
+        void bytesRead(long count);
+    }
+}
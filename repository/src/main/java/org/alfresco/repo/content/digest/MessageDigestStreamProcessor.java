@@ -0,0 +1,84 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.digest;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.repo.content.ContentStreamProcessor;
+import org.apache.commons.codec.binary.Hex;
+
+/**
+ * Computes a hex-encoded {@link MessageDigest}, e.g. <b>SHA-256</b>, of the content.
+ *
+ * @since 23.3
+ */
+public class MessageDigestStreamProcessor implements ContentStreamProcessor
+{
+    private final String algorithm;
+    private final MessageDigest digest;
+    private String result;
+
+    /**
+     * @param algorithm         the standard name of the digest algorithm
+     */
+    public MessageDigestStreamProcessor(String algorithm)
+    {
+        this.algorithm = algorithm;
+        try
+        {
+            this.digest = MessageDigest.getInstance(algorithm);
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new AlfrescoRuntimeException("Unsupported content digest algorithm: " + algorithm, e);
+        }
+    }
+
+    @Override
+    public String getName()
+    {
+        return algorithm;
+    }
+
+    @Override
+    public void update(ByteBuffer buffer)
+    {
+        digest.update(buffer.duplicate());
+    }
+
+    @Override
+    public String getResult()
+    {
+        if (result == null)
+        {
+            result = Hex.encodeHexString(digest.digest());
+        }
+        return result;
+    }
+}
@@ -69,6 +69,7 @@ public class FileContentReader extends AbstractContentReader
     
     private File file;
     private boolean allowRandomAccess;
+    private MappedFileRegionCache mappedFileRegionCache;
     
     /**
      * Checks the existing reader provided and replaces it with a reader onto some
@@ -149,6 +150,16 @@ public class FileContentReader extends AbstractContentReader
         this.allowRandomAccess = allow;
     }
     
+    /**
+     * Serve random-access reads from shared memory mappings of the file, where the cache allows it.
+     * 
+     * @param mappedFileRegionCache the cache of mapped files or <tt>null</tt> to use regular file channels
+     */
+    /* package */ void setMappedFileRegionCache(MappedFileRegionCache mappedFileRegionCache)
+    {
+        this.mappedFileRegionCache = mappedFileRegionCache;
+    }
+    
     /**
      * @return Returns the file that this reader accesses
      */
@@ -204,6 +215,7 @@ public class FileContentReader extends AbstractContentReader
     {
         FileContentReader reader = new FileContentReader(this.file, getContentUrl());
         reader.setAllowRandomAccess(this.allowRandomAccess);
+        reader.setMappedFileRegionCache(this.mappedFileRegionCache);
         return reader;
     }
     
@@ -219,7 +231,16 @@ public class FileContentReader extends AbstractContentReader
             }
             // create the channel
             ReadableByteChannel channel = null;
-            if (allowRandomAccess)
+            MappedFileRegionCache.MappedRegion region = null;
+            if (allowRandomAccess && mappedFileRegionCache != null)
+            {
+                region = mappedFileRegionCache.acquire(file);
+            }
+            if (region != null)
+            {
+                channel = new MappedFileRegionCache.MappedFileChannel(mappedFileRegionCache, region);
+            }
+            else if (allowRandomAccess)
             {
                 RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");  // won't create it
                 channel = randomAccessFile.getChannel();
@@ -234,7 +255,8 @@ public class FileContentReader extends AbstractContentReader
             {
                 logger.debug("Opened read channel to file: \n" +
                         "   file: " + file + "\n" +
-                        "   random-access: " + allowRandomAccess);
+                        "   random-access: " + allowRandomAccess + "\n" +
+                        "   mapped: " + (region != null));
             }
             return channel;
         }
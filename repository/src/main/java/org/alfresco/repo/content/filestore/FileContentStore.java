@@ -89,6 +89,7 @@ public class FileContentStore
     private ApplicationContext applicationContext;
     private boolean deleteEmptyDirs = true;
     private FileContentUrlProvider fileContentUrlProvider = new TimeBasedFileContentUrlProvider();
+    private MappedFileRegionCache mappedFileRegionCache;
 
     /**
      * Private: for Spring-constructed instances only.
@@ -211,6 +212,18 @@ public class FileContentStore
         this.fileContentUrlProvider = fileContentUrlProvider;
     }
 
+    /**
+     * Readers may optionally serve random access from memory-mapped files that are shared
+     * between readers of the same content.  This only applies if random access is
+     * {@link #setAllowRandomAccess(boolean) allowed}.
+     * 
+     * @param mappedFileRegionCache the cache of mapped files or <tt>null</tt> to use regular file channels
+     */
+    public void setMappedFileRegionCache(MappedFileRegionCache mappedFileRegionCache)
+    {
+        this.mappedFileRegionCache = mappedFileRegionCache;
+    }
+
     /**
      * Generates a new URL and file appropriate to it.
      * 
@@ -456,6 +469,7 @@ public class FileContentStore
             {
                 FileContentReader fileContentReader = new FileContentReader(file, contentUrl);
                 fileContentReader.setAllowRandomAccess(allowRandomAccess);
+                fileContentReader.setMappedFileRegionCache(mappedFileRegionCache);
                 reader = fileContentReader;
             }
             else
@@ -563,6 +577,10 @@ public class FileContentStore
         }
         else
         {
+            if (mappedFileRegionCache != null)
+            {
+                mappedFileRegionCache.evict(file);
+            }
             deleted = file.delete();
         }
         
@@ -0,0 +1,563 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.filestore;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.FileLock;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Shares read-only memory mappings of content files between {@link FileContentReader readers}.
+ * <p>
+ * Each mapping is reference counted: readers acquire a region when their channel is opened and
+ * release it when the channel is closed.  Unused regions are kept, up to
+ * {@link #setMaxIdleRegions(int) a limit}, so that subsequent readers of the same file reuse
+ * the mapping.  Regions evicted from the cache, or whose file is deleted from the store, are
+ * unmapped immediately rather than waiting for garbage collection.
+ * <p>
+ * Content files are never modified once written, so the file path, length and modification
+ * time identify a mapping.
+ *
+ * @since 23.3
+ */
+public class MappedFileRegionCache
+{
+    private static final Log logger = LogFactory.getLog(MappedFileRegionCache.class);
+
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+    static
+    {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try
+        {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            unsafe = theUnsafe.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        }
+        catch (Throwable e)
+        {
+            logger.info("Mapped content regions will be released by the garbage collector: " + e.getMessage());
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private boolean enabled = false;
+    private long minFileSize = 64L * 1024L;
+    private long maxMappedBytes = 256L * 1024L * 1024L;
+    private int maxIdleRegions = 256;
+
+    /** All mapped regions by file path */
+    private final Map<String, MappedRegion> regions = new HashMap<String, MappedRegion>(64);
+    /** Regions with no readers, in least-recently-used order */
+    private final LinkedHashMap<String, MappedRegion> idleRegions = new LinkedHashMap<String, MappedRegion>(64, 0.75f, true);
+    private long mappedBytes;
+
+    /**
+     * @param enabled           <tt>true</tt> to serve reads from memory-mapped files (default <tt>false</tt>)
+     */
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @param minFileSize       files smaller than this are read with regular channels (default 64KB)
+     */
+    public void setMinFileSize(long minFileSize)
+    {
+        this.minFileSize = minFileSize;
+    }
+
+    /**
+     * @param maxMappedBytes    the total size of all mapped files (default 256MB).  Files that
+     *                          would exceed this are read with regular channels.
+     */
+    public void setMaxMappedBytes(long maxMappedBytes)
+    {
+        this.maxMappedBytes = maxMappedBytes;
+    }
+
+    /**
+     * @param maxIdleRegions    the number of regions without readers to keep mapped (default 256)
+     */
+    public void setMaxIdleRegions(int maxIdleRegions)
+    {
+        this.maxIdleRegions = maxIdleRegions;
+    }
+
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * @return                  Returns the number of files currently mapped
+     */
+    public synchronized int getMappedRegionCount()
+    {
+        return regions.size();
+    }
+
+    /**
+     * @return                  Returns the total size of the files currently mapped
+     */
+    public synchronized long getMappedBytes()
+    {
+        return mappedBytes;
+    }
+
+    /**
+     * Get a mapping of the file, reusing an existing one where possible.  The region must be
+     * {@link #release(MappedRegion) released} when it is no longer required.
+     *
+     * @param file              the content file
+     * @return                  Returns the mapped region or <tt>null</tt> if the file should be read
+     *                          without memory mapping
+     */
+    public synchronized MappedRegion acquire(File file) throws IOException
+    {
+        if (!enabled)
+        {
+            return null;
+        }
+        long length = file.length();
+        if (length < minFileSize || length > Integer.MAX_VALUE || length > maxMappedBytes)
+        {
+            return null;
+        }
+        String key = file.getAbsolutePath();
+        long lastModified = file.lastModified();
+        MappedRegion region = regions.get(key);
+        if (region != null && (region.length != length || region.lastModified != lastModified))
+        {
+            // The file has changed underneath us
+            if (region.refCount == 0)
+            {
+                idleRegions.remove(key);
+                unmap(key, region);
+            }
+            else
+            {
+                regions.remove(key);
+            }
+            region = null;
+        }
+        if (region == null)
+        {
+            if (!makeSpace(length))
+            {
+                return null;
+            }
+            MappedByteBuffer buffer;
+            try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r"))
+            {
+                buffer = randomAccessFile.getChannel().map(MapMode.READ_ONLY, 0L, length);
+            }
+            region = new MappedRegion(file, length, lastModified, buffer);
+            regions.put(key, region);
+            mappedBytes += length;
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Mapped content file: " + file + " (" + length + " bytes)");
+            }
+        }
+        else
+        {
+            idleRegions.remove(key);
+        }
+        region.refCount++;
+        return region;
+    }
+
+    /**
+     * Release a region acquired by a reader.  Once a region has no readers, it becomes idle and
+     * can be reused or evicted.
+     */
+    public synchronized void release(MappedRegion region)
+    {
+        region.refCount--;
+        if (region.refCount > 0)
+        {
+            return;
+        }
+        String key = region.file.getAbsolutePath();
+        if (regions.get(key) != region)
+        {
+            // It was evicted or replaced while in use
+            unmapBuffer(region.buffer);
+            mappedBytes -= region.length;
+            return;
+        }
+        idleRegions.put(key, region);
+        while (idleRegions.size() > maxIdleRegions)
+        {
+            Iterator<Map.Entry<String, MappedRegion>> iterator = idleRegions.entrySet().iterator();
+            Map.Entry<String, MappedRegion> eldest = iterator.next();
+            iterator.remove();
+            unmap(eldest.getKey(), eldest.getValue());
+        }
+    }
+
+    /**
+     * Drop the mapping of a file, e.g. when it is deleted.  A mapping still in use by readers is
+     * released when the last reader closes.
+     */
+    public synchronized void evict(File file)
+    {
+        String key = file.getAbsolutePath();
+        MappedRegion region = regions.get(key);
+        if (region == null)
+        {
+            return;
+        }
+        if (region.refCount == 0)
+        {
+            idleRegions.remove(key);
+            unmap(key, region);
+        }
+        else
+        {
+            regions.remove(key);
+        }
+    }
+
+    /**
+     * Unmap all idle regions.
+     */
+    public synchronized void clear()
+    {
+        for (Map.Entry<String, MappedRegion> entry : idleRegions.entrySet())
+        {
+            unmap(entry.getKey(), entry.getValue());
+        }
+        idleRegions.clear();
+    }
+
+    /**
+     * Evict idle regions until the given number of bytes can be mapped.
+     *
+     * @return                  Returns <tt>true</tt> if there is space for the mapping
+     */
+    private boolean makeSpace(long length)
+    {
+        Iterator<Map.Entry<String, MappedRegion>> iterator = idleRegions.entrySet().iterator();
+        while (mappedBytes + length > maxMappedBytes && iterator.hasNext())
+        {
+            Map.Entry<String, MappedRegion> eldest = iterator.next();
+            iterator.remove();
+            unmap(eldest.getKey(), eldest.getValue());
+        }
+        return mappedBytes + length <= maxMappedBytes;
+    }
+
+    private void unmap(String key, MappedRegion region)
+    {
+        regions.remove(key);
+        mappedBytes -= region.length;
+        unmapBuffer(region.buffer);
+    }
+
+    private static void unmapBuffer(MappedByteBuffer buffer)
+    {
+        if (INVOKE_CLEANER == null)
+        {
+            return;
+        }
+        try
+        {
+            INVOKE_CLEANER.invoke(UNSAFE, buffer);
+        }
+        catch (Throwable e)
+        {
+            logger.warn("Failed to unmap content file buffer", e);
+        }
+    }
+
+    /**
+     * A reference-counted, read-only mapping of a whole content file.
+     */
+    public static final class MappedRegion
+    {
+        private final File file;
+        private final long length;
+        private final long lastModified;
+        private final MappedByteBuffer buffer;
+        private int refCount;
+
+        private MappedRegion(File file, long length, long lastModified, MappedByteBuffer buffer)
+        {
+            this.file = file;
+            this.length = length;
+            this.lastModified = lastModified;
+            this.buffer = buffer;
+        }
+
+        public File getFile()
+        {
+            return file;
+        }
+
+        public long getLength()
+        {
+            return length;
+        }
+
+        /**
+         * @return          Returns the mapping; it may only be used until the region is released
+         */
+        /* package */ ByteBuffer getBuffer()
+        {
+            return buffer;
+        }
+    }
+
+    /**
+     * Read-only {@link FileChannel} over a mapped region.  Reads are served straight from the
+     * mapping; the region is released when the channel is closed.
+     */
+    /* package */ static class MappedFileChannel extends FileChannel
+    {
+        private final MappedFileRegionCache cache;
+        private final MappedRegion region;
+        private final ByteBuffer buffer;
+        private long position;
+        private FileChannel fileChannel;
+
+        /* package */ MappedFileChannel(MappedFileRegionCache cache, MappedRegion region)
+        {
+            this.cache = cache;
+            this.region = region;
+            this.buffer = region.getBuffer();
+        }
+
+        @Override
+        public synchronized int read(ByteBuffer dst) throws IOException
+        {
+            int read = read(dst, position);
+            if (read > 0)
+            {
+                position += read;
+            }
+            return read;
+        }
+
+        @Override
+        public synchronized int read(ByteBuffer dst, long position) throws IOException
+        {
+            ensureOpen();
+            if (position < 0)
+            {
+                throw new IllegalArgumentException("Negative position: " + position);
+            }
+            if (position >= region.length)
+            {
+                return -1;
+            }
+            int count = (int) Math.min(dst.remaining(), region.length - position);
+            dst.put(dst.position(), buffer, (int) position, count);
+            dst.position(dst.position() + count);
+            return count;
+        }
+
+        @Override
+        public synchronized long read(ByteBuffer[] dsts, int offset, int length) throws IOException
+        {
+            ensureOpen();
+            long total = 0L;
+            for (int i = offset; i < offset + length; i++)
+            {
+                int read = read(dsts[i]);
+                if (read < 0)
+                {
+                    return total == 0L ? -1L : total;
+                }
+                total += read;
+            }
+            return total;
+        }
+
+        @Override
+        public synchronized long transferTo(long position, long count, WritableByteChannel target) throws IOException
+        {
+            ensureOpen();
+            if (position >= region.length)
+            {
+                return 0L;
+            }
+            int length = (int) Math.min(count, region.length - position);
+            return target.write(buffer.slice((int) position, length));
+        }
+
+        @Override
+        public synchronized long position() throws IOException
+        {
+            ensureOpen();
+            return position;
+        }
+
+        @Override
+        public synchronized FileChannel position(long newPosition) throws IOException
+        {
+            ensureOpen();
+            if (newPosition < 0)
+            {
+                throw new IllegalArgumentException("Negative position: " + newPosition);
+            }
+            this.position = newPosition;
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException
+        {
+            ensureOpen();
+            return region.length;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException
+        {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public int write(ByteBuffer src, long position) throws IOException
+        {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException
+        {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public FileChannel truncate(long size) throws IOException
+        {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException
+        {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public void force(boolean metaData) throws IOException
+        {
+            ensureOpen();
+        }
+
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException
+        {
+            return getFileChannel().map(mode, position, size);
+        }
+
+        @Override
+        public FileLock lock(long position, long size, boolean shared) throws IOException
+        {
+            return getFileChannel().lock(position, size, shared);
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) throws IOException
+        {
+            return getFileChannel().tryLock(position, size, shared);
+        }
+
+        /**
+         * @return          Returns a regular channel onto the file for the rarely-used operations
+         *                  that a mapping cannot support
+         */
+        @SuppressWarnings("resource")
+        private synchronized FileChannel getFileChannel() throws IOException
+        {
+            ensureOpen();
+            if (fileChannel == null)
+            {
+                fileChannel = new RandomAccessFile(region.getFile(), "r").getChannel();
+            }
+            return fileChannel;
+        }
+
+        private void ensureOpen() throws IOException
+        {
+            if (!isOpen())
+            {
+                throw new ClosedChannelException();
+            }
+        }
+
+        /**
+         * Releases the region while holding the same monitor as the read methods, so that the
+         * mapping cannot be unmapped while a read is still copying from it.
+         */
+        @Override
+        protected void implCloseChannel() throws IOException
+        {
+            synchronized (this)
+            {
+                try
+                {
+                    if (fileChannel != null)
+                    {
+                        fileChannel.close();
+                    }
+                }
+                finally
+                {
+                    cache.release(region);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.filestore;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+
+import org.alfresco.repo.content.AbstractContentReader;
+import org.alfresco.service.cmr.repository.ContentIOException;
+import org.alfresco.service.cmr.repository.ContentReader;
+
+/**
+ * Reads content held in a segment of a {@link PackedContentStore}.  The reader is bound to
+ * the record that was current when it was created.
+ *
+ * @since 23.3
+ */
+public class PackedContentReader extends AbstractContentReader
+{
+    private final PackedContentStore store;
+    private final PackedContentStore.PackedEntry entry;
+
+    /* package */ PackedContentReader(PackedContentStore store, String contentUrl, PackedContentStore.PackedEntry entry)
+    {
+        super(contentUrl);
+        this.store = store;
+        this.entry = entry;
+    }
+
+    @Override
+    protected ContentReader createReader() throws ContentIOException
+    {
+        return store.getReader(getContentUrl());
+    }
+
+    @Override
+    protected ReadableByteChannel getDirectReadableChannel() throws ContentIOException
+    {
+        ByteBuffer data = store.getData(getContentUrl(), entry);
+        if (data == null)
+        {
+            throw new ContentIOException("Content no longer exists: " + this);
+        }
+        return new ByteBufferReadableChannel(data);
+    }
+
+    @Override
+    public boolean exists()
+    {
+        return store.isLive(getContentUrl(), entry);
+    }
+
+    @Override
+    public long getSize()
+    {
+        return exists() ? entry.getLength() : 0L;
+    }
+
+    @Override
+    public long getLastModified()
+    {
+        return exists() ? entry.getLastModified() : 0L;
+    }
+
+    /**
+     * Channel over a (possibly memory-mapped) buffer.
+     */
+    private static class ByteBufferReadableChannel implements ReadableByteChannel
+    {
+        private ByteBuffer buffer;
+
+        private ByteBufferReadableChannel(ByteBuffer buffer)
+        {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException
+        {
+            if (buffer == null)
+            {
+                throw new ClosedChannelException();
+            }
+            if (!buffer.hasRemaining())
+            {
+                return -1;
+            }
+            int count = Math.min(buffer.remaining(), dst.remaining());
+            ByteBuffer slice = buffer.slice();
+            slice.limit(count);
+            dst.put(slice);
+            buffer.position(buffer.position() + count);
+            return count;
+        }
+
+        @Override
+        public boolean isOpen()
+        {
+            return buffer != null;
+        }
+
+        @Override
+        public void close()
+        {
+            buffer = null;
+        }
+    }
+}
@@ -0,0 +1,962 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.filestore;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.alfresco.repo.content.AbstractContentStore;
+import org.alfresco.repo.content.ContentExistsException;
+import org.alfresco.repo.content.ContentStore;
+import org.alfresco.repo.content.EmptyContentReader;
+import org.alfresco.repo.content.UnsupportedContentUrlException;
+import org.alfresco.service.cmr.repository.ContentIOException;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.service.cmr.repository.ContentWriter;
+import org.alfresco.util.GUID;
+import org.alfresco.util.Pair;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A content store that packs small content items into large, append-only segment files
+ * rather than creating a file (and directory entries) per content URL.
+ * <p>
+ * Each segment is a sequence of records.  A record carries the content URL, the time it
+ * was written and either the binary data or a <i>tombstone</i> marking the deletion of
+ * an earlier record.  The offset index of live content is held in memory and is rebuilt
+ * by scanning the record headers when the store starts up.  Once a segment reaches the
+ * {@link #setMaxSegmentSize(long) maximum size} it is sealed and memory-mapped for reading;
+ * sealed segments whose proportion of live data falls below the
+ * {@link #setCompactionThreshold(double) compaction threshold} can be rewritten by
+ * {@link #compact()}.  Compaction is not triggered by the store itself: it is run by the
+ * {@link PackedContentStoreCompactionJob} when that is scheduled or can be invoked manually.
+ * <p>
+ * The whole offset index is held on the heap, costing roughly a hundred bytes plus the
+ * length of the URL per content item, and every segment is scanned when the store starts.
+ * Both memory use and startup time therefore grow with the number of items stored, which
+ * limits the store to some millions of items.
+ * <p>
+ * The store generates URLs with the {@link #PACKED_PROTOCOL packed} protocol but will also
+ * accept writes to explicitly-supplied {@link FileContentStore#STORE_PROTOCOL store} URLs.
+ * This allows it to share a URL space with a {@link FileContentStore} behind a
+ * {@link org.alfresco.repo.content.SizeRoutingContentStore}.
+ * <p>
+ * Content of any size can be written but, as the data of each write is buffered until the
+ * writer is closed, the store is intended for small items such as thumbnails and rendition
+ * metadata.
+ *
+ * @since 23.3
+ */
+public class PackedContentStore extends AbstractContentStore
+{
+    /**
+     * <b>packed</b> is the prefix for content URLs generated by this store
+     * @see ContentStore#PROTOCOL_DELIMITER
+     */
+    public static final String PACKED_PROTOCOL = "packed";
+
+    private static final Log logger = LogFactory.getLog(PackedContentStore.class);
+
+    private static final int RECORD_MAGIC = 0x414C5046;
+    private static final byte RECORD_TYPE_DATA = 1;
+    private static final byte RECORD_TYPE_TOMBSTONE = 2;
+    /** magic + type + timestamp + URL length */
+    private static final int RECORD_FIXED_HEADER_SIZE = 4 + 1 + 8 + 2;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".pack";
+
+    private final File rootDirectory;
+    private final Map<String, PackedEntry> index = new ConcurrentHashMap<String, PackedEntry>(1024);
+    private final TreeMap<Integer, Segment> segments = new TreeMap<Integer, Segment>();
+    /** content URLs with an open writer, mapped to the time the writer was issued */
+    private final Map<String, Long> pendingWrites = new ConcurrentHashMap<String, Long>();
+    private final ReentrantReadWriteLock.ReadLock readLock;
+    private final ReentrantReadWriteLock.WriteLock writeLock;
+    private Segment activeSegment;
+
+    private long maxSegmentSize = 256L * 1024L * 1024L;
+    private double compactionThreshold = 0.5;
+    private int maxInMemoryWriteSize = 64 * 1024;
+    private boolean syncOnWrite = true;
+    private boolean readOnly = false;
+    private long pendingWriteTimeout = 60L * 60L * 1000L;
+
+    /**
+     * @param rootDirectoryStr      the directory in which segment files are kept.  The directory will
+     *                              be created if it does not exist.
+     */
+    public PackedContentStore(String rootDirectoryStr)
+    {
+        this(new File(rootDirectoryStr));
+    }
+
+    /**
+     * @param rootDirectory         the directory in which segment files are kept.  The directory will
+     *                              be created if it does not exist.
+     */
+    public PackedContentStore(File rootDirectory)
+    {
+        if (!rootDirectory.exists())
+        {
+            if (!rootDirectory.mkdirs())
+            {
+                throw new ContentIOException("Failed to create store root: " + rootDirectory, null);
+            }
+        }
+        this.rootDirectory = rootDirectory.getAbsoluteFile();
+
+        ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        readLock = lock.readLock();
+        writeLock = lock.writeLock();
+
+        loadSegments();
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder(64);
+        sb.append("PackedContentStore")
+          .append("[ root=").append(rootDirectory)
+          .append(", segments=").append(segments.size())
+          .append(", entries=").append(index.size())
+          .append(", readOnly=").append(readOnly)
+          .append("]");
+        return sb.toString();
+    }
+
+    /**
+     * @param maxSegmentSize        the size in bytes beyond which a segment is sealed and a new
+     *                              one started (default 256MB, maximum 2GB)
+     */
+    public void setMaxSegmentSize(long maxSegmentSize)
+    {
+        if (maxSegmentSize <= 0 || maxSegmentSize > Integer.MAX_VALUE)
+        {
+            throw new IllegalArgumentException("Segment size must be between 1 byte and 2GB: " + maxSegmentSize);
+        }
+        this.maxSegmentSize = maxSegmentSize;
+    }
+
+    /**
+     * @param compactionThreshold   the live-data ratio below which a sealed segment will be
+     *                              rewritten by {@link #compact()} (default 0.5)
+     */
+    public void setCompactionThreshold(double compactionThreshold)
+    {
+        this.compactionThreshold = compactionThreshold;
+    }
+
+    /**
+     * @param maxInMemoryWriteSize  the number of bytes a writer buffers in memory before spilling
+     *                              to a temporary file (default 64KB)
+     */
+    public void setMaxInMemoryWriteSize(int maxInMemoryWriteSize)
+    {
+        this.maxInMemoryWriteSize = maxInMemoryWriteSize;
+    }
+
+    /**
+     * @param syncOnWrite           <tt>true</tt> (default) to force each appended record to disk
+     *                              before the writer's listeners are called
+     */
+    public void setSyncOnWrite(boolean syncOnWrite)
+    {
+        this.syncOnWrite = syncOnWrite;
+    }
+
+    /**
+     * @param pendingWriteTimeout   the time in milliseconds after which a writer that has been
+     *                              neither closed nor failed is considered abandoned, allowing
+     *                              its URL to be written again (default 1 hour)
+     */
+    public void setPendingWriteTimeout(long pendingWriteTimeout)
+    {
+        this.pendingWriteTimeout = pendingWriteTimeout;
+    }
+
+    /**
+     * @param readOnly              <tt>true</tt> to force the store to only allow reads
+     */
+    public void setReadOnly(boolean readOnly)
+    {
+        this.readOnly = readOnly;
+    }
+
+    @Override
+    public boolean isWriteSupported()
+    {
+        return !readOnly;
+    }
+
+    /**
+     * @return          Returns the path to the directory holding the segment files
+     */
+    @Override
+    public String getRootLocation()
+    {
+        return rootDirectory.getAbsolutePath();
+    }
+
+    @Override
+    public long getSpaceFree()
+    {
+        return rootDirectory.getFreeSpace();
+    }
+
+    @Override
+    public long getSpaceTotal()
+    {
+        return rootDirectory.getTotalSpace();
+    }
+
+    /**
+     * @return          Returns <tt>true</tt> for {@link #PACKED_PROTOCOL packed} and
+     *                  {@link FileContentStore#STORE_PROTOCOL store} URLs
+     */
+    @Override
+    public boolean isContentUrlSupported(String contentUrl)
+    {
+        try
+        {
+            checkContentUrl(contentUrl);
+            return true;
+        }
+        catch (UnsupportedContentUrlException e)
+        {
+            return false;
+        }
+    }
+
+    private void checkContentUrl(String contentUrl)
+    {
+        Pair<String, String> urlParts = getContentUrlParts(contentUrl);
+        String protocol = urlParts.getFirst();
+        if (!protocol.equals(PACKED_PROTOCOL) && !protocol.equals(FileContentStore.STORE_PROTOCOL))
+        {
+            throw new UnsupportedContentUrlException(this, contentUrl);
+        }
+    }
+
+    /**
+     * Checks the in-memory index; no disk access is required.
+     */
+    @Override
+    public boolean exists(String contentUrl)
+    {
+        checkContentUrl(contentUrl);
+        return index.containsKey(contentUrl);
+    }
+
+    /**
+     * @return          Returns the number of content items currently held by the store
+     */
+    public int getEntryCount()
+    {
+        return index.size();
+    }
+
+    /**
+     * @return          Returns the number of segment files currently in use
+     */
+    public int getSegmentCount()
+    {
+        readLock.lock();
+        try
+        {
+            return segments.size();
+        }
+        finally
+        {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public ContentReader getReader(String contentUrl)
+    {
+        checkContentUrl(contentUrl);
+        PackedEntry entry = index.get(contentUrl);
+        ContentReader reader = null;
+        if (entry == null)
+        {
+            reader = new EmptyContentReader(contentUrl);
+        }
+        else
+        {
+            reader = new PackedContentReader(this, contentUrl, entry);
+        }
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Created content reader: \n" +
+                    "   url: " + contentUrl + "\n" +
+                    "   reader: " + reader);
+        }
+        return reader;
+    }
+
+    @Override
+    protected ContentWriter getWriterInternal(ContentReader existingContentReader, String newContentUrl)
+    {
+        if (readOnly)
+        {
+            throw new UnsupportedOperationException("This store is currently read-only: " + this);
+        }
+        String contentUrl = newContentUrl;
+        if (contentUrl == null)
+        {
+            contentUrl = PACKED_PROTOCOL + ContentStore.PROTOCOL_DELIMITER + GUID.generate() + ".bin";
+        }
+        // Only one writer may be issued per URL, unless an earlier writer has been abandoned
+        long now = System.currentTimeMillis();
+        Long issued = pendingWrites.putIfAbsent(contentUrl, now);
+        if (issued != null && (now - issued < pendingWriteTimeout || !pendingWrites.replace(contentUrl, issued, now)))
+        {
+            throw new ContentExistsException(this, contentUrl);
+        }
+        if (index.containsKey(contentUrl))
+        {
+            pendingWrites.remove(contentUrl, now);
+            throw new ContentExistsException(this, contentUrl);
+        }
+        PackedContentWriter writer = new PackedContentWriter(this, contentUrl, existingContentReader, maxInMemoryWriteSize);
+        if (contentLimitProvider != null)
+        {
+            writer.setContentLimitProvider(contentLimitProvider);
+        }
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Created content writer: \n" +
+                    "   writer: " + writer);
+        }
+        return writer;
+    }
+
+    /**
+     * Appends a tombstone for the content and removes it from the index.  The space is only
+     * reclaimed once the segment holding the data is {@link #compact() compacted}.
+     */
+    @Override
+    public boolean delete(String contentUrl)
+    {
+        if (readOnly)
+        {
+            throw new UnsupportedOperationException("This store is currently read-only: " + this);
+        }
+        checkContentUrl(contentUrl);
+        writeLock.lock();
+        try
+        {
+            PackedEntry entry = index.remove(contentUrl);
+            if (entry == null)
+            {
+                // Nothing to do
+                return true;
+            }
+            segments.get(entry.segmentId).liveBytes -= entry.recordSize();
+            ByteBuffer target = ByteBuffer.allocate(4);
+            target.putInt(entry.segmentId).flip();
+            appendRecord(RECORD_TYPE_TOMBSTONE, contentUrl, System.currentTimeMillis(), target, 4L);
+        }
+        catch (IOException e)
+        {
+            throw new ContentIOException("Failed to delete content: " + contentUrl, e);
+        }
+        finally
+        {
+            writeLock.unlock();
+        }
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Deleted content: \n" +
+                    "   store: " + this + "\n" +
+                    "   url: " + contentUrl);
+        }
+        return true;
+    }
+
+    /**
+     * Called by the {@link PackedContentWriter} once its channel has been closed.
+     *
+     * @param contentUrl        the URL of the content
+     * @param data              the data to append, either a {@link ByteBuffer} or a {@link FileChannel}
+     * @param length            the number of bytes to append
+     */
+    /* package */ void commitWrite(String contentUrl, Object data, long length)
+    {
+        if (length > maxSegmentSize)
+        {
+            pendingWrites.remove(contentUrl);
+            throw new ContentIOException("Content is too large to be packed (" + length + " bytes): " + contentUrl);
+        }
+        writeLock.lock();
+        try
+        {
+            long now = System.currentTimeMillis();
+            long offset = appendRecord(RECORD_TYPE_DATA, contentUrl, now, data, length);
+            PackedEntry entry = new PackedEntry(activeSegment.id, offset, length, now, contentUrl.getBytes(StandardCharsets.UTF_8).length);
+            index.put(contentUrl, entry);
+            activeSegment.liveBytes += entry.recordSize();
+        }
+        catch (IOException e)
+        {
+            throw new ContentIOException("Failed to append content to segment: " + contentUrl, e);
+        }
+        finally
+        {
+            pendingWrites.remove(contentUrl);
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Called by the {@link PackedContentWriter} when its channel fails or is closed without the
+     * content having been committed, allowing the URL to be written again.  Calling this after
+     * the content has been committed has no effect.
+     *
+     * @param contentUrl        the URL of the content
+     */
+    /* package */ void abortWrite(String contentUrl)
+    {
+        pendingWrites.remove(contentUrl);
+    }
+
+    /**
+     * Get the data for an entry.  Data in sealed segments is served directly from the mapped
+     * segment; data in the active segment is read into a heap buffer.  If the entry's segment
+     * has since been compacted, the data is found at its new location.
+     *
+     * @param contentUrl        the URL of the content
+     * @param entry             the entry as seen when the reader was created
+     * @return                  Returns a read-only buffer over the data or <tt>null</tt> if the
+     *                          content no longer exists
+     */
+    /* package */ ByteBuffer getData(String contentUrl, PackedEntry entry)
+    {
+        readLock.lock();
+        try
+        {
+            Segment segment = segments.get(entry.segmentId);
+            if (segment == null)
+            {
+                // The segment was compacted - the content is the same if it was only moved
+                if (!isLive(contentUrl, entry))
+                {
+                    return null;
+                }
+                entry = index.get(contentUrl);
+                segment = segments.get(entry.segmentId);
+            }
+            if (segment.mapped != null)
+            {
+                ByteBuffer buffer = segment.mapped.duplicate();
+                buffer.position((int) entry.dataOffset);
+                buffer.limit((int) (entry.dataOffset + entry.length));
+                return buffer.slice().asReadOnlyBuffer();
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) entry.length);
+            long position = entry.dataOffset;
+            while (buffer.hasRemaining())
+            {
+                int read = segment.channel.read(buffer, position);
+                if (read < 0)
+                {
+                    throw new IOException("Unexpected end of segment " + segment.file);
+                }
+                position += read;
+            }
+            buffer.flip();
+            return buffer.asReadOnlyBuffer();
+        }
+        catch (IOException e)
+        {
+            throw new ContentIOException("Failed to read content from segment: " + entry, e);
+        }
+        finally
+        {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * @return          Returns <tt>true</tt> if the content seen by the entry has not been
+     *                  deleted or replaced; it may have been moved by compaction
+     */
+    /* package */ boolean isLive(String contentUrl, PackedEntry entry)
+    {
+        PackedEntry current = index.get(contentUrl);
+        return current != null && current.lastModified == entry.lastModified && current.length == entry.length;
+    }
+
+    /**
+     * Rewrites sealed segments whose live data ratio has fallen below the
+     * {@link #setCompactionThreshold(double) compaction threshold}.  Live records are copied
+     * to the active segment and the old segment files are removed.  Writers that have been
+     * open for longer than the {@link #setPendingWriteTimeout(long) pending write timeout}
+     * are forgotten.
+     *
+     * @return          Returns the number of segments that were compacted
+     */
+    public int compact()
+    {
+        if (readOnly)
+        {
+            return 0;
+        }
+        long expiry = System.currentTimeMillis() - pendingWriteTimeout;
+        pendingWrites.values().removeIf(issued -> issued < expiry);
+        int compacted = 0;
+        writeLock.lock();
+        try
+        {
+            List<Segment> candidates = new ArrayList<Segment>();
+            for (Segment segment : segments.values())
+            {
+                if (segment == activeSegment || segment.size == 0)
+                {
+                    continue;
+                }
+                double liveRatio = (double) segment.liveBytes / (double) segment.size;
+                if (liveRatio < compactionThreshold)
+                {
+                    candidates.add(segment);
+                }
+            }
+            for (Segment segment : candidates)
+            {
+                compactSegment(segment);
+                compacted++;
+            }
+        }
+        catch (IOException e)
+        {
+            throw new ContentIOException("Failed to compact store: " + this, e);
+        }
+        finally
+        {
+            writeLock.unlock();
+        }
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Compacted " + compacted + " segments: " + this);
+        }
+        return compacted;
+    }
+
+    private void compactSegment(Segment segment) throws IOException
+    {
+        // Copy the live data
+        for (Map.Entry<String, PackedEntry> mapEntry : index.entrySet())
+        {
+            PackedEntry entry = mapEntry.getValue();
+            if (entry.segmentId != segment.id)
+            {
+                continue;
+            }
+            String contentUrl = mapEntry.getKey();
+            ByteBuffer data = segment.mapped.duplicate();
+            data.position((int) entry.dataOffset);
+            data.limit((int) (entry.dataOffset + entry.length));
+            long offset = appendRecord(RECORD_TYPE_DATA, contentUrl, entry.lastModified, data.slice(), entry.length);
+            PackedEntry moved = new PackedEntry(activeSegment.id, offset, entry.length, entry.lastModified, entry.urlLength);
+            index.put(contentUrl, moved);
+            activeSegment.liveBytes += moved.recordSize();
+        }
+        // Carry forward tombstones that still mask data in other segments
+        ByteBuffer buffer = segment.mapped.duplicate();
+        long position = 0L;
+        while (position < segment.size)
+        {
+            RecordHeader header = readHeader(buffer, position, segment.size);
+            if (header == null)
+            {
+                break;
+            }
+            if (header.type == RECORD_TYPE_TOMBSTONE)
+            {
+                int targetSegmentId = buffer.getInt((int) header.dataOffset);
+                if (targetSegmentId != segment.id && segments.containsKey(targetSegmentId))
+                {
+                    ByteBuffer target = ByteBuffer.allocate(4);
+                    target.putInt(targetSegmentId).flip();
+                    appendRecord(RECORD_TYPE_TOMBSTONE, header.contentUrl, header.timestamp, target, 4L);
+                }
+            }
+            position = header.dataOffset + header.length;
+        }
+        // Remove the segment
+        segments.remove(segment.id);
+        segment.close();
+        if (!segment.file.delete())
+        {
+            logger.warn("Failed to delete compacted segment: " + segment.file);
+        }
+    }
+
+    /**
+     * Appends a record to the active segment, rolling over to a new segment if required.
+     * Must be called with the write lock held.
+     *
+     * @return          Returns the offset of the record data within the active segment
+     */
+    private long appendRecord(byte type, String contentUrl, long timestamp, Object data, long length) throws IOException
+    {
+        byte[] urlBytes = contentUrl.getBytes(StandardCharsets.UTF_8);
+        if (urlBytes.length > 0xFFFF)
+        {
+            throw new ContentIOException("Content URL is too long to be packed: " + contentUrl);
+        }
+        if (activeSegment.size > 0 && activeSegment.size + length > maxSegmentSize)
+        {
+            rollSegment();
+        }
+        Segment segment = activeSegment;
+        FileChannel channel = segment.channel;
+
+        ByteBuffer header = ByteBuffer.allocate(RECORD_FIXED_HEADER_SIZE + urlBytes.length + 8);
+        header.putInt(RECORD_MAGIC);
+        header.put(type);
+        header.putLong(timestamp);
+        header.putShort((short) urlBytes.length);
+        header.put(urlBytes);
+        header.putLong(length);
+        header.flip();
+
+        long position = segment.size;
+        position += writeFully(channel, header, position);
+        long dataOffset = position;
+        if (data instanceof ByteBuffer)
+        {
+            position += writeFully(channel, (ByteBuffer) data, position);
+        }
+        else
+        {
+            FileChannel source = (FileChannel) data;
+            long transferred = 0L;
+            while (transferred < length)
+            {
+                long count = channel.transferFrom(source, position + transferred, length - transferred);
+                if (count <= 0)
+                {
+                    // The source holds fewer bytes than were written to it
+                    throw new IOException("Unexpected end of data after " + transferred + " of " + length + " bytes: " + contentUrl);
+                }
+                transferred += count;
+            }
+            position += transferred;
+        }
+        if (syncOnWrite)
+        {
+            channel.force(false);
+        }
+        segment.size = position;
+        return dataOffset;
+    }
+
+    private static long writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+    {
+        long written = 0L;
+        while (buffer.hasRemaining())
+        {
+            written += channel.write(buffer, position + written);
+        }
+        return written;
+    }
+
+    /**
+     * Seals the active segment and opens a new one.
+     */
+    private void rollSegment() throws IOException
+    {
+        Segment sealed = activeSegment;
+        sealed.channel.force(true);
+        sealed.seal();
+        activeSegment = openSegment(sealed.id + 1);
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Sealed segment " + sealed.file + " and started " + activeSegment.file);
+        }
+    }
+
+    private Segment openSegment(int id) throws IOException
+    {
+        File file = new File(rootDirectory, String.format("%s%08d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+        Segment segment = new Segment(id, file);
+        segments.put(id, segment);
+        return segment;
+    }
+
+    /**
+     * Opens all existing segments and rebuilds the offset index from the record headers.
+     */
+    private void loadSegments()
+    {
+        File[] files = rootDirectory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        List<Integer> ids = new ArrayList<Integer>();
+        if (files != null)
+        {
+            for (File file : files)
+            {
+                String name = file.getName();
+                ids.add(Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+            }
+        }
+        Collections.sort(ids);
+        try
+        {
+            for (int id : ids)
+            {
+                Segment segment = openSegment(id);
+                scanSegment(segment);
+            }
+            if (segments.isEmpty())
+            {
+                activeSegment = openSegment(0);
+            }
+            else
+            {
+                activeSegment = segments.lastEntry().getValue();
+                for (Segment segment : segments.headMap(activeSegment.id).values())
+                {
+                    segment.seal();
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            throw new ContentIOException("Failed to load segments for store: " + rootDirectory, e);
+        }
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Loaded packed content store: " + this);
+        }
+    }
+
+    private void scanSegment(Segment segment) throws IOException
+    {
+        long fileSize = segment.channel.size();
+        ByteBuffer buffer = segment.channel.map(MapMode.READ_ONLY, 0, fileSize);
+        long position = 0L;
+        while (position < fileSize)
+        {
+            RecordHeader header = readHeader(buffer, position, fileSize);
+            if (header == null)
+            {
+                // A torn write at the end of the segment: discard it
+                logger.warn("Truncating incomplete record at offset " + position + " of segment " + segment.file);
+                segment.channel.truncate(position);
+                break;
+            }
+            if (header.type == RECORD_TYPE_DATA)
+            {
+                PackedEntry entry = new PackedEntry(segment.id, header.dataOffset, header.length, header.timestamp, header.urlLength);
+                PackedEntry previous = index.put(header.contentUrl, entry);
+                if (previous != null)
+                {
+                    segments.get(previous.segmentId).liveBytes -= previous.recordSize();
+                }
+                segment.liveBytes += entry.recordSize();
+            }
+            else
+            {
+                PackedEntry previous = index.get(header.contentUrl);
+                int targetSegmentId = buffer.getInt((int) header.dataOffset);
+                if (previous != null && previous.segmentId == targetSegmentId)
+                {
+                    index.remove(header.contentUrl);
+                    segments.get(previous.segmentId).liveBytes -= previous.recordSize();
+                }
+            }
+            position = header.dataOffset + header.length;
+        }
+        segment.size = position;
+    }
+
+    /**
+     * @return          Returns the header of the record at the given position or <tt>null</tt> if
+     *                  the record is incomplete or corrupt
+     */
+    private static RecordHeader readHeader(ByteBuffer buffer, long position, long limit)
+    {
+        if (position + RECORD_FIXED_HEADER_SIZE > limit)
+        {
+            return null;
+        }
+        int pos = (int) position;
+        if (buffer.getInt(pos) != RECORD_MAGIC)
+        {
+            return null;
+        }
+        RecordHeader header = new RecordHeader();
+        header.type = buffer.get(pos + 4);
+        header.timestamp = buffer.getLong(pos + 5);
+        header.urlLength = buffer.getShort(pos + 13) & 0xFFFF;
+        pos += RECORD_FIXED_HEADER_SIZE;
+        if (pos + header.urlLength + 8 > limit)
+        {
+            return null;
+        }
+        byte[] urlBytes = new byte[header.urlLength];
+        ByteBuffer urlBuffer = buffer.duplicate();
+        urlBuffer.position(pos);
+        urlBuffer.get(urlBytes);
+        header.contentUrl = new String(urlBytes, StandardCharsets.UTF_8);
+        pos += header.urlLength;
+        header.length = buffer.getLong(pos);
+        header.dataOffset = pos + 8;
+        if (header.length < 0 || header.dataOffset + header.length > limit)
+        {
+            return null;
+        }
+        return header;
+    }
+
+    /**
+     * Closes all segment files.  The store may not be used afterwards.
+     */
+    public void close()
+    {
+        writeLock.lock();
+        try
+        {
+            for (Segment segment : segments.values())
+            {
+                segment.close();
+            }
+            segments.clear();
+            index.clear();
+        }
+        finally
+        {
+            writeLock.unlock();
+        }
+    }
+
+    private static class RecordHeader
+    {
+        private byte type;
+        private long timestamp;
+        private int urlLength;
+        private String contentUrl;
+        private long dataOffset;
+        private long length;
+    }
+
+    /**
+     * The location of the data for a content URL.  Entries are immutable.
+     */
+    /* package */ static final class PackedEntry
+    {
+        private final int segmentId;
+        private final long dataOffset;
+        private final long length;
+        private final long lastModified;
+        private final int urlLength;
+
+        private PackedEntry(int segmentId, long dataOffset, long length, long lastModified, int urlLength)
+        {
+            this.segmentId = segmentId;
+            this.dataOffset = dataOffset;
+            this.length = length;
+            this.lastModified = lastModified;
+            this.urlLength = urlLength;
+        }
+
+        /* package */ long getLength()
+        {
+            return length;
+        }
+
+        /* package */ long getLastModified()
+        {
+            return lastModified;
+        }
+
+        private long recordSize()
+        {
+            return RECORD_FIXED_HEADER_SIZE + urlLength + 8 + length;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "PackedEntry[segment=" + segmentId + ", offset=" + dataOffset + ", length=" + length + "]";
+        }
+    }
+
+    private static class Segment
+    {
+        private final int id;
+        private final File file;
+        private final RandomAccessFile randomAccessFile;
+        private final FileChannel channel;
+        private MappedByteBuffer mapped;
+        private long size;
+        private long liveBytes;
+
+        private Segment(int id, File file) throws IOException
+        {
+            this.id = id;
+            this.file = file;
+            this.randomAccessFile = new RandomAccessFile(file, "rw");
+            this.channel = randomAccessFile.getChannel();
+        }
+
+        /**
+         * Maps the whole segment for reading; no further writes will be made to it.
+         */
+        private void seal() throws IOException
+        {
+            mapped = channel.map(MapMode.READ_ONLY, 0, size);
+        }
+
+        private void close()
+        {
+            try
+            {
+                randomAccessFile.close();
+            }
+            catch (IOException e)
+            {
+                logger.warn("Failed to close segment: " + file, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.filestore;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.quartz.Job;
+import org.quartz.JobDataMap;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+
+/**
+ * Triggers {@link PackedContentStore#compact() compaction} of a {@link PackedContentStore}.
+ * <p>
+ * The following parameters are required:
+ * <ul>
+ *   <li><b>packedContentStore</b>: The packed content store to compact</li>
+ * </ul>
+ *
+ * @since 23.3
+ */
+public class PackedContentStoreCompactionJob implements Job
+{
+    public PackedContentStoreCompactionJob()
+    {
+    }
+
+    public void execute(JobExecutionContext context) throws JobExecutionException
+    {
+        JobDataMap jobData = context.getJobDetail().getJobDataMap();
+        Object storeObj = jobData.get("packedContentStore");
+        if (storeObj == null || !(storeObj instanceof PackedContentStore))
+        {
+            throw new AlfrescoRuntimeException(
+                    "PackedContentStoreCompactionJob data must contain valid 'packedContentStore' reference");
+        }
+        ((PackedContentStore) storeObj).compact();
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.filestore;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+import org.alfresco.repo.content.AbstractContentWriter;
+import org.alfresco.service.cmr.repository.ContentIOException;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.util.TempFileProvider;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Writes content to a {@link PackedContentStore}.  The content is buffered, in memory and then
+ * in a temporary file if it grows too large, and is appended to the active segment of the
+ * store when the channel is closed.
+ *
+ * @since 23.3
+ */
+public class PackedContentWriter extends AbstractContentWriter
+{
+    private static final Log logger = LogFactory.getLog(PackedContentWriter.class);
+
+    private final PackedContentStore store;
+    private final int maxInMemorySize;
+    private long size;
+
+    /* package */ PackedContentWriter(PackedContentStore store, String contentUrl, ContentReader existingContentReader, int maxInMemorySize)
+    {
+        super(contentUrl, existingContentReader);
+        this.store = store;
+        this.maxInMemorySize = maxInMemorySize;
+    }
+
+    @Override
+    public long getSize()
+    {
+        return size;
+    }
+
+    @Override
+    protected ContentReader createReader() throws ContentIOException
+    {
+        return store.getReader(getContentUrl());
+    }
+
+    @Override
+    protected WritableByteChannel getDirectWritableChannel() throws ContentIOException
+    {
+        return new BufferingChannel();
+    }
+
+    /**
+     * Collects the written bytes and hands them to the store on {@link #close()}.
+     */
+    private class BufferingChannel implements WritableByteChannel
+    {
+        private ByteBuffer memory = ByteBuffer.allocate(Math.min(4096, maxInMemorySize));
+        private File spillFile;
+        private RandomAccessFile spill;
+        private boolean open = true;
+
+        @Override
+        public synchronized int write(ByteBuffer src) throws IOException
+        {
+            if (!open)
+            {
+                throw new ClosedChannelException();
+            }
+            int count = src.remaining();
+            try
+            {
+                buffer(src, count);
+            }
+            catch (IOException | RuntimeException e)
+            {
+                // The write cannot be completed: release the URL
+                discard();
+                throw e;
+            }
+            size += count;
+            return count;
+        }
+
+        private void buffer(ByteBuffer src, int count) throws IOException
+        {
+            if (spill == null && memory.position() + count > maxInMemorySize)
+            {
+                // Too large to keep in memory
+                spillFile = TempFileProvider.createTempFile("packed_write_", ".bin");
+                spill = new RandomAccessFile(spillFile, "rw");
+                memory.flip();
+                spill.getChannel().write(memory);
+                memory = null;
+                if (logger.isDebugEnabled())
+                {
+                    logger.debug("Spilled packed content write to temporary file: \n" +
+                            "   writer: " + PackedContentWriter.this + "\n" +
+                            "   file: " + spillFile);
+                }
+            }
+            if (spill != null)
+            {
+                FileChannel channel = spill.getChannel();
+                while (src.hasRemaining())
+                {
+                    channel.write(src);
+                }
+            }
+            else
+            {
+                if (memory.remaining() < count)
+                {
+                    int capacity = Math.min(maxInMemorySize, Math.max(memory.capacity() * 2, memory.position() + count));
+                    ByteBuffer grown = ByteBuffer.allocate(capacity);
+                    memory.flip();
+                    grown.put(memory);
+                    memory = grown;
+                }
+                memory.put(src);
+            }
+        }
+
+        private void discard()
+        {
+            open = false;
+            memory = null;
+            try
+            {
+                if (spill != null)
+                {
+                    spill.close();
+                }
+            }
+            catch (IOException e)
+            {
+                logger.debug("Failed to close temporary file: " + spillFile, e);
+            }
+            finally
+            {
+                if (spillFile != null && !spillFile.delete())
+                {
+                    spillFile.deleteOnExit();
+                }
+                store.abortWrite(getContentUrl());
+            }
+        }
+
+        @Override
+        public synchronized boolean isOpen()
+        {
+            return open;
+        }
+
+        @Override
+        public synchronized void close() throws IOException
+        {
+            if (!open)
+            {
+                return;
+            }
+            open = false;
+            try
+            {
+                if (spill == null)
+                {
+                    memory.flip();
+                    store.commitWrite(getContentUrl(), memory, size);
+                    memory = null;
+                    return;
+                }
+                try
+                {
+                    FileChannel channel = spill.getChannel();
+                    channel.position(0L);
+                    store.commitWrite(getContentUrl(), channel, size);
+                }
+                finally
+                {
+                    spill.close();
+                    if (!spillFile.delete())
+                    {
+                        spillFile.deleteOnExit();
+                    }
+                }
+            }
+            finally
+            {
+                // Has no effect if the content was committed
+                store.abortWrite(getContentUrl());
+            }
+        }
+    }
+}
@@ -26,10 +26,13 @@
 package org.alfresco.repo.content.replication;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -44,6 +47,8 @@ import org.alfresco.service.cmr.repository.ContentIOException;
 import org.alfresco.service.cmr.repository.ContentReader;
 import org.alfresco.service.cmr.repository.ContentWriter;
 import org.alfresco.service.cmr.repository.DirectAccessUrl;
+import org.alfresco.util.Pair;
+import org.alfresco.util.TraceableThreadFactory;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
@@ -61,6 +66,15 @@ import org.apache.commons.logging.LogFactory;
  * Content is written to the primary store only.  The other stores are
  * only used to retrieve content and the primary store is not updated with
  * the content.
+ * <p>
+ * If {@link #setReplicateWrites(boolean) write replication} is enabled, new content is
+ * also streamed to all the secondary stores in parallel as it is written to the primary
+ * store.  The writer returns once the primary store has the content or, with
+ * {@link WriteAcknowledgement#QUORUM quorum} acknowledgement, once a majority of the
+ * stores have it.  Failed secondary writes are recorded in the
+ * {@link #setRetryQueue(ReplicationRetryQueue) retry queue} and are repaired by
+ * {@link #retryFailedReplications()}, which is run periodically by the
+ * {@link ReplicationRetryJob} when that is scheduled.
  * 
  * @author Derek Hulley
  * @author Mark Rogers
@@ -73,8 +87,25 @@ public class AggregatingContentStore extends AbstractContentStore
     public static final String SECONDARY_STORE_COULD_NOT_HANDLE_CONTENT_URL = "Secondary store %s could not handle content URL: %s";
     public static final String PRIMARY_STORE_COULD_NOT_HANDLE_CONTENT_URL = "Primary store could not handle content URL: %s";
 
+    /**
+     * When a write to an aggregating store with write replication is considered complete
+     */
+    public enum WriteAcknowledgement
+    {
+        /** The primary store has the content; secondary stores complete in the background */
+        PRIMARY,
+        /** A majority of all the stores, including the primary store, have the content */
+        QUORUM
+    }
+
     private ContentStore primaryStore;
     private List<ContentStore> secondaryStores;
+    private boolean replicateWrites;
+    private WriteAcknowledgement writeAcknowledgement = WriteAcknowledgement.PRIMARY;
+    private volatile ExecutorService replicationExecutor;
+    private ReplicationRetryQueue retryQueue;
+    private int replicationQueueSize = 64;
+    private long replicationTimeoutMs = 30000L;
     
     private Lock readLock;
 
@@ -106,6 +137,108 @@ public class AggregatingContentStore extends AbstractContentStore
     {
         this.secondaryStores = secondaryStores;
     }
+
+    /**
+     * @param replicateWrites       <tt>true</tt> to stream new content to the secondary stores
+     *                              as well as the primary store (default <tt>false</tt>)
+     */
+    public void setReplicateWrites(boolean replicateWrites)
+    {
+        this.replicateWrites = replicateWrites;
+    }
+
+    /**
+     * @param writeAcknowledgement  when a replicated write is considered complete
+     *                              (default {@link WriteAcknowledgement#PRIMARY PRIMARY})
+     */
+    public void setWriteAcknowledgement(WriteAcknowledgement writeAcknowledgement)
+    {
+        this.writeAcknowledgement = writeAcknowledgement;
+    }
+
+    /**
+     * @param replicationExecutor   the executor writing to the secondary stores.  It needs a
+     *                              thread per secondary store for each concurrent write.  If not
+     *                              set, a cached thread pool is created on first use.
+     */
+    public void setReplicationExecutor(ExecutorService replicationExecutor)
+    {
+        this.replicationExecutor = replicationExecutor;
+    }
+
+    /**
+     * @param retryQueue            the queue recording failed writes to secondary stores
+     *                              (optional: failures are only logged if not set)
+     */
+    public void setRetryQueue(ReplicationRetryQueue retryQueue)
+    {
+        this.retryQueue = retryQueue;
+    }
+
+    /**
+     * @param replicationQueueSize  the number of written chunks that may be waiting for a
+     *                              secondary store; a store whose queue is full is abandoned
+     *                              at once (default 64)
+     */
+    public void setReplicationQueueSize(int replicationQueueSize)
+    {
+        this.replicationQueueSize = replicationQueueSize;
+    }
+
+    /**
+     * @param replicationTimeoutMs  the time a secondary store may wait for the next chunk, and
+     *                              the time to wait for a write quorum (default 30s)
+     */
+    public void setReplicationTimeoutMs(long replicationTimeoutMs)
+    {
+        this.replicationTimeoutMs = replicationTimeoutMs;
+    }
+
+    /* package */ List<ContentStore> getSecondaryStores()
+    {
+        return secondaryStores;
+    }
+
+    /* package */ WriteAcknowledgement getWriteAcknowledgement()
+    {
+        return writeAcknowledgement;
+    }
+
+    /* package */ int getReplicationQueueSize()
+    {
+        return replicationQueueSize;
+    }
+
+    /* package */ long getReplicationTimeoutMs()
+    {
+        return replicationTimeoutMs;
+    }
+
+    /* package */ ExecutorService getReplicationExecutor()
+    {
+        if (replicationExecutor == null)
+        {
+            synchronized (this)
+            {
+                if (replicationExecutor == null)
+                {
+                    TraceableThreadFactory threadFactory = new TraceableThreadFactory();
+                    threadFactory.setThreadDaemon(true);
+                    threadFactory.setNamePrefix("ContentReplication");
+                    replicationExecutor = Executors.newCachedThreadPool(threadFactory);
+                }
+            }
+        }
+        return replicationExecutor;
+    }
+
+    /* package */ void queueFailedReplication(int storeIndex, String contentUrl)
+    {
+        if (retryQueue != null)
+        {
+            retryQueue.add(storeIndex, contentUrl);
+        }
+    }
     
     /**
      * @return      Returns <tt>true</tt> if the primary store supports writing
@@ -244,6 +377,10 @@ public class AggregatingContentStore extends AbstractContentStore
         // get the writer
         ContentWriter writer = primaryStore.getWriter(ctx);
 
+        if (replicateWrites && secondaryStores != null && !secondaryStores.isEmpty())
+        {
+            writer = new ReplicatingContentWriter(this, writer, ctx.getExistingContentReader());
+        }
         return writer;
     }
 
@@ -258,6 +395,25 @@ public class AggregatingContentStore extends AbstractContentStore
         // delete on the primary store
         boolean deleted = primaryStore.delete(contentUrl);
         
+        if (replicateWrites && secondaryStores != null)
+        {
+            // The secondary copies are only a convenience so failures are not fatal
+            for (ContentStore store : secondaryStores)
+            {
+                try
+                {
+                    if (store.isWriteSupported())
+                    {
+                        store.delete(contentUrl);
+                    }
+                }
+                catch (Throwable e)
+                {
+                    logger.warn("Failed to delete replicated content from secondary store " + store + ": " + contentUrl, e);
+                }
+            }
+        }
+
         if (logger.isDebugEnabled())
         {
             logger.debug("Deleted content for URL: " + contentUrl);
@@ -554,6 +710,60 @@ public class AggregatingContentStore extends AbstractContentStore
                 store.requestSendContentToArchive(contentUrl, requestParams);
     }
 
+    /**
+     * Copy content that previously failed to replicate from the primary store to the secondary
+     * stores.  Entries are removed from the retry queue once copied, or if the content no longer
+     * exists in the primary store.
+     *
+     * @return          Returns the number of entries that were dealt with
+     */
+    public int retryFailedReplications()
+    {
+        checkPrimaryStore();
+        if (retryQueue == null)
+        {
+            return 0;
+        }
+        List<Pair<Integer, String>> done = new ArrayList<Pair<Integer, String>>();
+        for (Pair<Integer, String> entry : retryQueue.getEntries())
+        {
+            int storeIndex = entry.getFirst();
+            String contentUrl = entry.getSecond();
+            if (storeIndex < 0 || storeIndex >= secondaryStores.size())
+            {
+                // The store configuration has changed
+                done.add(entry);
+                continue;
+            }
+            ContentStore store = secondaryStores.get(storeIndex);
+            try
+            {
+                ContentReader reader = primaryStore.getReader(contentUrl);
+                if (reader.exists())
+                {
+                    if (store.exists(contentUrl))
+                    {
+                        // Possibly partial content
+                        store.delete(contentUrl);
+                    }
+                    ContentWriter writer = store.getWriter(new ContentContext(null, contentUrl));
+                    writer.putContent(reader);
+                }
+                done.add(entry);
+            }
+            catch (Throwable e)
+            {
+                logger.warn("Failed again to replicate content to secondary store " + storeIndex + ": " + contentUrl, e);
+            }
+        }
+        retryQueue.remove(done);
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Retried failed replications: " + done.size() + " done, " + retryQueue.size() + " remaining");
+        }
+        return done.size();
+    }
+
     private void checkPrimaryStore()
     {
         if (primaryStore == null)
@@ -0,0 +1,407 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.replication;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.alfresco.repo.content.AbstractContentWriter;
+import org.alfresco.repo.content.ContentContext;
+import org.alfresco.repo.content.ContentStore;
+import org.alfresco.repo.content.replication.AggregatingContentStore.WriteAcknowledgement;
+import org.alfresco.service.cmr.repository.ContentIOException;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.service.cmr.repository.ContentWriter;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Writer that streams content to the primary store of an {@link AggregatingContentStore} and,
+ * in parallel, to each of its secondary stores.
+ * <p>
+ * The primary store is written on the caller's thread.  Each chunk is copied once and queued
+ * to a worker per secondary store.  A secondary store that fails, or that falls so far behind
+ * that its queue is full, is abandoned at once and the content URL is recorded for a later
+ * retry, so a slow secondary store never holds up the writer.
+ *
+ * @since 23.3
+ */
+/* package */ class ReplicatingContentWriter extends AbstractContentWriter
+{
+    private static final Log logger = LogFactory.getLog(ReplicatingContentWriter.class);
+
+    private static final ByteBuffer END_OF_CONTENT = ByteBuffer.allocate(0);
+
+    private final AggregatingContentStore store;
+    private final ContentWriter primaryWriter;
+
+    /* package */ ReplicatingContentWriter(AggregatingContentStore store, ContentWriter primaryWriter, ContentReader existingContentReader)
+    {
+        super(primaryWriter.getContentUrl(), existingContentReader);
+        this.store = store;
+        this.primaryWriter = primaryWriter;
+    }
+
+    @Override
+    public long getSize()
+    {
+        return primaryWriter.getSize();
+    }
+
+    @Override
+    protected ContentReader createReader() throws ContentIOException
+    {
+        return store.getReader(getContentUrl());
+    }
+
+    @Override
+    protected WritableByteChannel getDirectWritableChannel() throws ContentIOException
+    {
+        WritableByteChannel primaryChannel = primaryWriter.getWritableChannel();
+        List<ContentStore> secondaryStores = store.getSecondaryStores();
+        List<SecondaryPipe> pipes = new ArrayList<SecondaryPipe>(secondaryStores.size());
+        for (int i = 0; i < secondaryStores.size(); i++)
+        {
+            SecondaryPipe pipe = new SecondaryPipe(i, secondaryStores.get(i));
+            try
+            {
+                store.getReplicationExecutor().execute(pipe);
+            }
+            catch (RejectedExecutionException e)
+            {
+                pipe.fail("replication executor is saturated", e);
+            }
+            pipes.add(pipe);
+        }
+        return new FanOutChannel(primaryChannel, pipes);
+    }
+
+    private class FanOutChannel implements WritableByteChannel
+    {
+        private final WritableByteChannel primaryChannel;
+        private final List<SecondaryPipe> pipes;
+        private boolean open = true;
+
+        private FanOutChannel(WritableByteChannel primaryChannel, List<SecondaryPipe> pipes)
+        {
+            this.primaryChannel = primaryChannel;
+            this.pipes = pipes;
+        }
+
+        @Override
+        public synchronized int write(ByteBuffer src) throws IOException
+        {
+            if (!open)
+            {
+                throw new ClosedChannelException();
+            }
+            // One copy of the chunk is shared by all secondary stores still being written
+            ByteBuffer chunk = null;
+            if (isReplicating())
+            {
+                chunk = ByteBuffer.allocate(src.remaining());
+                chunk.put(src.duplicate()).flip();
+            }
+            int count = 0;
+            try
+            {
+                while (src.hasRemaining())
+                {
+                    count += primaryChannel.write(src);
+                }
+            }
+            catch (IOException | RuntimeException e)
+            {
+                abandonAll("primary store write failed");
+                throw e;
+            }
+            if (chunk != null)
+            {
+                for (SecondaryPipe pipe : pipes)
+                {
+                    pipe.offer(chunk.asReadOnlyBuffer());
+                }
+            }
+            return count;
+        }
+
+        private boolean isReplicating()
+        {
+            for (SecondaryPipe pipe : pipes)
+            {
+                if (!pipe.abandoned)
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public synchronized boolean isOpen()
+        {
+            return open;
+        }
+
+        @Override
+        public synchronized void close() throws IOException
+        {
+            if (!open)
+            {
+                return;
+            }
+            open = false;
+            try
+            {
+                primaryChannel.close();
+            }
+            catch (IOException | RuntimeException e)
+            {
+                abandonAll("primary store write failed");
+                throw e;
+            }
+            for (SecondaryPipe pipe : pipes)
+            {
+                pipe.offer(END_OF_CONTENT);
+            }
+            if (store.getWriteAcknowledgement() == WriteAcknowledgement.QUORUM)
+            {
+                awaitQuorum();
+            }
+        }
+
+        private void abandonAll(String reason)
+        {
+            for (SecondaryPipe pipe : pipes)
+            {
+                pipe.abandon(reason);
+            }
+        }
+
+        /**
+         * Wait until a majority of all the stores, including the primary, have the content.
+         */
+        private void awaitQuorum() throws IOException
+        {
+            int stores = pipes.size() + 1;
+            int required = stores / 2 + 1;
+            int acknowledged = 1;
+            long deadline = System.currentTimeMillis() + store.getReplicationTimeoutMs();
+            for (SecondaryPipe pipe : pipes)
+            {
+                if (acknowledged >= required)
+                {
+                    break;
+                }
+                long wait = Math.max(0L, deadline - System.currentTimeMillis());
+                try
+                {
+                    if (pipe.result.get(wait, TimeUnit.MILLISECONDS))
+                    {
+                        acknowledged++;
+                    }
+                }
+                catch (TimeoutException e)
+                {
+                    pipe.abandon("write quorum timed out");
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new ContentIOException("Interrupted while waiting for write quorum: " + ReplicatingContentWriter.this, e);
+                }
+                catch (Exception e)
+                {
+                    // The pipe never completes exceptionally, but be defensive
+                }
+            }
+            if (acknowledged < required)
+            {
+                throw new ContentIOException(
+                        "Write quorum not reached: \n" +
+                        "   writer: " + ReplicatingContentWriter.this + "\n" +
+                        "   stores: " + stores + "\n" +
+                        "   acknowledged: " + acknowledged + "\n" +
+                        "   required: " + required);
+            }
+        }
+    }
+
+    /**
+     * Streams the queued chunks to one secondary store.
+     */
+    private class SecondaryPipe implements Runnable
+    {
+        private final int storeIndex;
+        private final ContentStore secondaryStore;
+        private final BlockingQueue<ByteBuffer> queue;
+        private final AtomicBoolean finished = new AtomicBoolean(false);
+        private final CompletableFuture<Boolean> result = new CompletableFuture<Boolean>();
+        private volatile boolean abandoned = false;
+        private volatile WritableByteChannel channel;
+
+        private SecondaryPipe(int storeIndex, ContentStore secondaryStore)
+        {
+            this.storeIndex = storeIndex;
+            this.secondaryStore = secondaryStore;
+            // One more place than the queue size keeps room for the end of the content
+            this.queue = new ArrayBlockingQueue<ByteBuffer>(store.getReplicationQueueSize() + 1);
+        }
+
+        /**
+         * Queue a chunk without waiting, abandoning the store if its queue is full.
+         */
+        private void offer(ByteBuffer chunk)
+        {
+            if (abandoned)
+            {
+                return;
+            }
+            // Only the writer adds to the queue, so the place kept for the end of the content stays free
+            if ((chunk != END_OF_CONTENT && queue.remainingCapacity() <= 1) || !queue.offer(chunk))
+            {
+                abandon("secondary store is not keeping up");
+            }
+        }
+
+        private void abandon(String reason)
+        {
+            if (abandoned)
+            {
+                return;
+            }
+            abandoned = true;
+            queue.clear();
+            queue.offer(END_OF_CONTENT);
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Abandoned replication to secondary store " + storeIndex + ": " + reason);
+            }
+        }
+
+        @Override
+        public void run()
+        {
+            String contentUrl = getContentUrl();
+            try
+            {
+                ContentWriter writer = secondaryStore.getWriter(new ContentContext(null, contentUrl));
+                channel = writer.getWritableChannel();
+                while (true)
+                {
+                    ByteBuffer chunk = queue.poll(store.getReplicationTimeoutMs(), TimeUnit.MILLISECONDS);
+                    if (abandoned)
+                    {
+                        fail("replication abandoned", null);
+                        return;
+                    }
+                    if (chunk == null)
+                    {
+                        fail("timed out waiting for content", null);
+                        return;
+                    }
+                    if (chunk == END_OF_CONTENT)
+                    {
+                        channel.close();
+                        finished.set(true);
+                        result.complete(Boolean.TRUE);
+                        return;
+                    }
+                    while (chunk.hasRemaining())
+                    {
+                        channel.write(chunk);
+                    }
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                fail("interrupted", e);
+            }
+            catch (Throwable e)
+            {
+                fail("write failed", e);
+            }
+        }
+
+        /**
+         * Clean up after a failed replication and queue the content URL for a retry.
+         */
+        private void fail(String reason, Throwable cause)
+        {
+            if (!finished.compareAndSet(false, true))
+            {
+                return;
+            }
+            abandoned = true;
+            String contentUrl = getContentUrl();
+            if (channel != null)
+            {
+                try
+                {
+                    channel.close();
+                }
+                catch (IOException e)
+                {
+                    if (logger.isDebugEnabled())
+                    {
+                        logger.debug("Failed to close abandoned replication channel: " + contentUrl, e);
+                    }
+                }
+            }
+            try
+            {
+                // Remove any partial content
+                if (secondaryStore.isWriteSupported() && secondaryStore.exists(contentUrl))
+                {
+                    secondaryStore.delete(contentUrl);
+                }
+            }
+            catch (Exception e)
+            {
+                // The retry will try again
+                if (logger.isDebugEnabled())
+                {
+                    logger.debug("Failed to remove partial content from secondary store " + storeIndex + ": " + contentUrl, e);
+                }
+            }
+            store.queueFailedReplication(storeIndex, contentUrl);
+            logger.warn("Failed to replicate content to secondary store " + storeIndex + " (" + reason + "): " + contentUrl, cause);
+            result.complete(Boolean.FALSE);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.replication;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.alfresco.service.cmr.repository.ContentIOException;
+import org.alfresco.util.Pair;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A persistent queue of content URLs that could not be written to a secondary store of an
+ * {@link AggregatingContentStore}.  Each entry is the index of the secondary store and the
+ * content URL.  Entries are appended to a journal file as they are added so that they survive
+ * a restart; the journal is rewritten when entries are removed.
+ *
+ * @since 23.3
+ */
+public class ReplicationRetryQueue
+{
+    private static final Log logger = LogFactory.getLog(ReplicationRetryQueue.class);
+
+    private final File journal;
+    private final Set<Pair<Integer, String>> entries = new LinkedHashSet<Pair<Integer, String>>();
+
+    /**
+     * @param journalPath       the file in which queued entries are kept.  The file and its
+     *                          parent directories are created if they do not exist.
+     */
+    public ReplicationRetryQueue(String journalPath)
+    {
+        this.journal = new File(journalPath);
+        File parent = journal.getAbsoluteFile().getParentFile();
+        if (!parent.exists() && !parent.mkdirs())
+        {
+            throw new ContentIOException("Failed to create directory for replication retry queue: " + parent);
+        }
+        load();
+    }
+
+    private void load()
+    {
+        if (!journal.exists())
+        {
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(journal), StandardCharsets.UTF_8)))
+        {
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                int index = line.indexOf('\t');
+                if (index <= 0)
+                {
+                    // Incomplete line from an interrupted append
+                    continue;
+                }
+                entries.add(new Pair<Integer, String>(Integer.valueOf(line.substring(0, index)), line.substring(index + 1)));
+            }
+        }
+        catch (IOException | NumberFormatException e)
+        {
+            throw new ContentIOException("Failed to read replication retry queue: " + journal, e);
+        }
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Loaded " + entries.size() + " queued replications from " + journal);
+        }
+    }
+
+    /**
+     * Queue a content URL for another attempt at writing to a secondary store.
+     *
+     * @param storeIndex        the index of the store in the list of secondary stores
+     * @param contentUrl        the content URL
+     */
+    public synchronized void add(int storeIndex, String contentUrl)
+    {
+        if (!entries.add(new Pair<Integer, String>(storeIndex, contentUrl)))
+        {
+            return;
+        }
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(journal, true), StandardCharsets.UTF_8))
+        {
+            writer.write(storeIndex + "\t" + contentUrl + "\n");
+        }
+        catch (IOException e)
+        {
+            // The entry is still queued in memory
+            logger.error("Failed to persist queued replication of " + contentUrl + " to secondary store " + storeIndex, e);
+        }
+    }
+
+    /**
+     * @return              Returns a copy of the queued entries, oldest first
+     */
+    public synchronized List<Pair<Integer, String>> getEntries()
+    {
+        return new ArrayList<Pair<Integer, String>>(entries);
+    }
+
+    /**
+     * Remove entries that have been dealt with.
+     */
+    public synchronized void remove(Collection<Pair<Integer, String>> done)
+    {
+        if (!entries.removeAll(done))
+        {
+            return;
+        }
+        File temp = new File(journal.getPath() + ".tmp");
+        try
+        {
+            try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8)))
+            {
+                for (Pair<Integer, String> entry : entries)
+                {
+                    writer.write(entry.getFirst() + "\t" + entry.getSecond() + "\n");
+                }
+            }
+            Files.move(temp.toPath(), journal.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e)
+        {
+            logger.error("Failed to rewrite replication retry queue: " + journal, e);
+        }
+    }
+
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+}
@@ -26,9 +26,14 @@
 package org.alfresco.repo.domain.contentdata;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 
 import org.alfresco.repo.cache.SimpleCache;
@@ -68,6 +73,11 @@ public abstract class AbstractContentDataDAOImpl implements ContentDataDAO
     private static final String CACHE_REGION_CONTENT_DATA = "ContentData";
     private static final String CACHE_REGION_CONTENT_URL = "ContentUrl";
 
+    /**
+     * The maximum number of IDs to put into a single bulk lookup query
+     */
+    private static final int BULK_LOOKUP_BATCH_SIZE = 256;
+
     /**
      * Content URL IDs to delete before final commit.
      */
@@ -241,12 +251,109 @@ public abstract class AbstractContentDataDAOImpl implements ContentDataDAO
         return (pair == null ? null : pair.getSecond());
     }
 
+    @Override
+    public Map<Long, ContentUrlEntity> getContentUrls(Collection<Long> contentUrlIds)
+    {
+        if (contentUrlIds == null)
+        {
+            throw new IllegalArgumentException("Cannot look up ContentUrls by null IDs.");
+        }
+        Map<Long, ContentUrlEntity> results = new HashMap<Long, ContentUrlEntity>(contentUrlIds.size() * 2);
+        List<Long> misses = new ArrayList<Long>(contentUrlIds.size());
+        for (Long contentUrlId : new HashSet<Long>(contentUrlIds))
+        {
+            ContentUrlEntity entity = contentUrlCache.getValue(contentUrlId);
+            if (entity != null)
+            {
+                results.put(contentUrlId, entity);
+            }
+            else
+            {
+                misses.add(contentUrlId);
+            }
+        }
+        for (int i = 0; i < misses.size(); i += BULK_LOOKUP_BATCH_SIZE)
+        {
+            List<Long> batch = misses.subList(i, Math.min(i + BULK_LOOKUP_BATCH_SIZE, misses.size()));
+            for (ContentUrlEntity entity : getContentUrlEntities(batch))
+            {
+                contentUrlCache.setValue(entity.getId(), entity);
+                results.put(entity.getId(), entity);
+            }
+        }
+        if (logger.isDebugEnabled() && misses.size() > 0)
+        {
+            logger.debug("Bulk loaded " + misses.size() + " of " + contentUrlIds.size() + " content URLs");
+        }
+        return results;
+    }
+
+    @Override
+    public Map<Long, ContentData> getContentData(Collection<Long> ids)
+    {
+        if (ids == null)
+        {
+            throw new IllegalArgumentException("Cannot look up ContentData by null IDs.");
+        }
+        Map<Long, ContentData> results = new HashMap<Long, ContentData>(ids.size() * 2);
+        List<Long> misses = new ArrayList<Long>(ids.size());
+        for (Long id : new HashSet<Long>(ids))
+        {
+            ContentData contentData = contentDataCache.getValue(id);
+            if (contentData != null)
+            {
+                results.put(id, contentData);
+            }
+            else
+            {
+                misses.add(id);
+            }
+        }
+        for (int i = 0; i < misses.size(); i += BULK_LOOKUP_BATCH_SIZE)
+        {
+            List<Long> batch = misses.subList(i, Math.min(i + BULK_LOOKUP_BATCH_SIZE, misses.size()));
+            for (Map.Entry<Long, ContentData> entry : cacheContentDataEntities(getContentDataEntities(batch)).entrySet())
+            {
+                results.put(entry.getKey(), entry.getValue());
+            }
+        }
+        if (logger.isDebugEnabled() && misses.size() > 0)
+        {
+            logger.debug("Bulk loaded " + misses.size() + " of " + ids.size() + " ContentData instances");
+        }
+        return results;
+    }
+
     public void cacheContentDataForNodes(Set<Long> nodeIds)
     {
-        for (ContentDataEntity entity : getContentDataEntitiesForNodes(nodeIds))
+        cacheContentDataEntities(getContentDataEntitiesForNodes(nodeIds));
+    }
+
+    /**
+     * Convert and cache the given entities, fetching the content URLs they reference in bulk
+     * 
+     * @return              the converted values keyed by ID
+     */
+    private Map<Long, ContentData> cacheContentDataEntities(List<ContentDataEntity> entities)
+    {
+        Set<Long> contentUrlIds = new HashSet<Long>(entities.size() * 2);
+        for (ContentDataEntity entity : entities)
         {
-            contentDataCache.setValue(entity.getId(), makeContentData(entity));
-        }        
+            if (entity.getContentUrlId() != null)
+            {
+                contentUrlIds.add(entity.getContentUrlId());
+            }
+        }
+        // Get the URLs into the cache so that they are not fetched one at a time
+        getContentUrls(contentUrlIds);
+        Map<Long, ContentData> results = new HashMap<Long, ContentData>(entities.size() * 2);
+        for (ContentDataEntity entity : entities)
+        {
+            ContentData contentData = makeContentData(entity);
+            contentDataCache.setValue(entity.getId(), contentData);
+            results.put(entity.getId(), contentData);
+        }
+        return results;
     }
 
     @Override
@@ -612,6 +719,53 @@ public abstract class AbstractContentDataDAOImpl implements ContentDataDAO
         return success;
     }
 
+    @Override
+    public boolean updateContentUrlDigests(String contentUrl, Map<String, String> digests)
+    {
+        ContentUrlEntity contentUrlEntity = getContentUrl(contentUrl);
+        if (contentUrlEntity == null)
+        {
+            return false;
+        }
+        if (digests.isEmpty())
+        {
+            return true;
+        }
+        Long contentUrlId = contentUrlEntity.getId();
+        deleteContentUrlDigestEntities(contentUrlId, digests.keySet());
+        for (Map.Entry<String, String> entry : digests.entrySet())
+        {
+            ContentUrlDigestEntity digestEntity = new ContentUrlDigestEntity();
+            digestEntity.setContentUrlId(contentUrlId);
+            digestEntity.setAlgorithm(entry.getKey());
+            digestEntity.setDigest(entry.getValue());
+            createContentUrlDigestEntity(digestEntity);
+        }
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Recorded content digests: \n" +
+                    "   content URL: " + contentUrl + "\n" +
+                    "   digests: " + digests);
+        }
+        return true;
+    }
+
+    @Override
+    public Map<String, String> getContentUrlDigests(String contentUrl)
+    {
+        ContentUrlEntity contentUrlEntity = getContentUrl(contentUrl);
+        if (contentUrlEntity == null)
+        {
+            return Collections.emptyMap();
+        }
+        Map<String, String> digests = new HashMap<String, String>(5);
+        for (ContentUrlDigestEntity digestEntity : getContentUrlDigestEntities(contentUrlEntity.getId()))
+        {
+            digests.put(digestEntity.getAlgorithm(), digestEntity.getDigest());
+        }
+        return digests;
+    }
+
     @Override
     public ContentUrlEntity getOrCreateContentUrl(String contentUrl)
     {
@@ -650,6 +804,12 @@ public abstract class AbstractContentDataDAOImpl implements ContentDataDAO
 
     protected abstract ContentUrlEntity getContentUrlEntity(String contentUrl);
 
+    /**
+     * @param ids           the content URL entity IDs
+     * @return              Returns the entities that exist
+     */
+    protected abstract List<ContentUrlEntity> getContentUrlEntities(List<Long> ids);
+
     
     /**
      * @param contentUrl    the URL of the <b>content url</b> entity
@@ -683,6 +843,12 @@ public abstract class AbstractContentDataDAOImpl implements ContentDataDAO
      */
     protected abstract ContentDataEntity getContentDataEntity(Long id);
 
+    /**
+     * @param ids           the entity IDs
+     * @return              Returns the entities that exist
+     */
+    protected abstract List<ContentDataEntity> getContentDataEntities(List<Long> ids);
+
     /**
      * @param nodeIds       the node ID
      * @return              Returns the associated entities or <tt>null</tt> if none exist
@@ -705,6 +871,23 @@ public abstract class AbstractContentDataDAOImpl implements ContentDataDAO
     protected abstract int deleteContentDataEntity(Long id);
 
     protected abstract int deleteContentUrlEntity(long id);
+
+    /**
+     * @since 23.3
+     */
+    protected abstract void createContentUrlDigestEntity(ContentUrlDigestEntity digestEntity);
+
+    /**
+     * @since 23.3
+     */
+    protected abstract List<ContentUrlDigestEntity> getContentUrlDigestEntities(Long contentUrlId);
+
+    /**
+     * Delete the digests for a content URL that were computed with the given algorithms
+     * 
+     * @since 23.3
+     */
+    protected abstract int deleteContentUrlDigestEntities(Long contentUrlId, Set<String> algorithms);
     protected abstract int updateContentUrlEntity(ContentUrlEntity existing, ContentUrlEntity entity);
 
     /**
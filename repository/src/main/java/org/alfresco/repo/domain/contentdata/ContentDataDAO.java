@@ -25,6 +25,7 @@
  */
 package org.alfresco.repo.domain.contentdata;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -78,6 +79,18 @@ public interface ContentDataDAO
      */
     Pair<Long, ContentData> getContentData(Long id);
     
+    /**
+     * Get several ContentData instances at once.  Values that are not already cached are
+     * fetched together rather than one at a time.
+     * 
+     * @param ids           the unique IDs of the entities
+     * @return              the ContentData instances keyed by ID.  IDs that do not exist are
+     *                      not present in the map.
+     * 
+     * @since 23.3
+     */
+    Map<Long, ContentData> getContentData(Collection<Long> ids);
+    
     /**
      * @param nodeIds       the nodeIds
      * @throws              AlfrescoRuntimeException if an ID provided is invalid
@@ -159,6 +172,18 @@ public interface ContentDataDAO
      */
     ContentUrlEntity getContentUrl(Long contentUrlId);
 
+    /**
+     * Get several content url entities at once.  Entities that are not already cached are
+     * fetched together rather than one at a time.
+     * 
+     * @param contentUrlIds             the content url IDs
+     * @return                          the entities keyed by ID.  IDs that do not exist are
+     *                                  not present in the map.
+     * 
+     * @since 23.3
+     */
+    Map<Long, ContentUrlEntity> getContentUrls(Collection<Long> contentUrlIds);
+
     /**
      * Get a content URL or create one if it does not exist
      * 
@@ -220,4 +245,43 @@ public interface ContentDataDAO
      * @return
      */
     int countSymmetricKeysForMasterKeyAlias(String masterKeyAlias);
+
+    /**
+     * Record digests of the content at a content URL, replacing any existing digests computed
+     * with the same algorithms.  Digests are only recorded against existing content URL entities
+     * so that no entity is created that is not referenced by content data.
+     * 
+     * @since 23.3
+     * @param contentUrl                the content URL
+     * @param digests                   the digests keyed by algorithm
+     * @return                          Returns <tt>false</tt> if the content URL entity does not exist
+     */
+    boolean updateContentUrlDigests(String contentUrl, Map<String, String> digests);
+
+    /**
+     * Get the digests recorded for a content URL
+     * 
+     * @since 23.3
+     * @return                          the digests keyed by algorithm, never <tt>null</tt>
+     */
+    Map<String, String> getContentUrlDigests(String contentUrl);
+
+    /**
+     * Find the content URLs with a given digest, e.g. to find duplicate content
+     * 
+     * @since 23.3
+     * @param algorithm                 the digest algorithm
+     * @param digest                    the digest value
+     * @return                          the matching content URLs
+     */
+    List<String> getContentUrlsByDigest(String algorithm, String digest);
+
+    /**
+     * Get recorded digests in ID order, including their content URLs
+     * 
+     * @since 23.3
+     * @param fromId                    the digest ID to start after
+     * @param maxResults                the maximum number of digests to return
+     */
+    List<ContentUrlDigestEntity> getContentUrlDigests(long fromId, int maxResults);
 }
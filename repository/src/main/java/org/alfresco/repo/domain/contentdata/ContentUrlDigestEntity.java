@@ -0,0 +1,115 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.contentdata;
+
+import java.io.Serializable;
+
+/**
+ * Entity bean for <b>alf_content_url_digest</b> table: a digest of the content at a content URL,
+ * computed as the content was written.
+ *
+ * @since 23.3
+ */
+public class ContentUrlDigestEntity implements Serializable
+{
+    private static final long serialVersionUID = 4207925343466297631L;
+
+    private Long id;
+    private Long contentUrlId;
+    private String contentUrl;
+    private String algorithm;
+    private String digest;
+
+    public ContentUrlDigestEntity()
+    {
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder(128);
+        sb.append("ContentUrlDigestEntity")
+          .append("[ id=").append(id)
+          .append(", contentUrlId=").append(contentUrlId)
+          .append(", algorithm=").append(algorithm)
+          .append(", digest=").append(digest)
+          .append("]");
+        return sb.toString();
+    }
+
+    public Long getId()
+    {
+        return id;
+    }
+
+    public void setId(Long id)
+    {
+        this.id = id;
+    }
+
+    public Long getContentUrlId()
+    {
+        return contentUrlId;
+    }
+
+    public void setContentUrlId(Long contentUrlId)
+    {
+        this.contentUrlId = contentUrlId;
+    }
+
+    /**
+     * @return          Returns the content URL; only populated when selected with the digest
+     */
+    public String getContentUrl()
+    {
+        return contentUrl;
+    }
+
+    public void setContentUrl(String contentUrl)
+    {
+        this.contentUrl = contentUrl;
+    }
+
+    public String getAlgorithm()
+    {
+        return algorithm;
+    }
+
+    public void setAlgorithm(String algorithm)
+    {
+        this.algorithm = algorithm;
+    }
+
+    public String getDigest()
+    {
+        return digest;
+    }
+
+    public void setDigest(String digest)
+    {
+        this.digest = digest;
+    }
+}
@@ -37,6 +37,7 @@ import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.ibatis.IdsEntity;
 import org.alfresco.repo.domain.contentdata.AbstractContentDataDAOImpl;
 import org.alfresco.repo.domain.contentdata.ContentDataEntity;
+import org.alfresco.repo.domain.contentdata.ContentUrlDigestEntity;
 import org.alfresco.repo.domain.contentdata.ContentUrlEntity;
 import org.alfresco.repo.domain.contentdata.ContentUrlKeyEntity;
 import org.alfresco.repo.domain.contentdata.ContentUrlOrphanQuery;
@@ -61,11 +62,13 @@ import org.springframework.dao.DataIntegrityViolationException;
 public class ContentDataDAOImpl extends AbstractContentDataDAOImpl
 {
     private static final String SELECT_CONTENT_URL_BY_ID = "alfresco.content.select_ContentUrlById";
+    private static final String SELECT_CONTENT_URLS_BY_IDS = "alfresco.content.select_ContentUrlsByIds";
     private static final String SELECT_CONTENT_URL_BY_KEY = "alfresco.content.select_ContentUrlByKey";
     private static final String SELECT_CONTENT_URL_BY_KEY_UNREFERENCED = "alfresco.content.select_ContentUrlByKeyUnreferenced";
     private static final String SELECT_CONTENT_URLS_ORPHANED = "alfresco.content.select.select_ContentUrlsOrphaned";
     private static final String SELECT_CONTENT_URLS_KEEP_ORPHANED = "alfresco.content.select_ContentUrlsKeepOrphaned";
     private static final String SELECT_CONTENT_DATA_BY_ID = "alfresco.content.select_ContentDataById";
+    private static final String SELECT_CONTENT_DATA_BY_IDS = "alfresco.content.select_ContentDataByIds";
     private static final String SELECT_CONTENT_DATA_BY_NODE_AND_QNAME = "alfresco.content.select_ContentDataByNodeAndQName";
     private static final String SELECT_CONTENT_DATA_BY_NODE_IDS = "alfresco.content.select_ContentDataByNodeIds";
     private static final String INSERT_CONTENT_URL = "alfresco.content.insert.insert_ContentUrl";
@@ -81,6 +84,12 @@ public class ContentDataDAOImpl extends AbstractContentDataDAOImpl
     private static final String SELECT_SYMMETRIC_KEYS_BY_MASTER_KEY = "alfresco.content.select_SymmetricKeysByMasterKey";
     private static final String COUNT_SYMMETRIC_KEYS_BY_MASTER_KEY = "alfresco.content.select_CountSymmetricKeysByMasterKey";
     private static final String COUNT_SYMMETRIC_KEYS_FOR_MASTER_KEYS = "alfresco.content.select_CountSymmetricKeysForAllMasterKeys";
+    private static final String INSERT_CONTENT_URL_DIGEST = "alfresco.content.insert.insert_ContentUrlDigest";
+    private static final String SELECT_CONTENT_URL_DIGESTS_BY_URL_ID = "alfresco.content.select_ContentUrlDigestsByUrlId";
+    private static final String SELECT_CONTENT_URL_DIGESTS_FROM_ID = "alfresco.content.select_ContentUrlDigestsFromId";
+    private static final String SELECT_CONTENT_URLS_BY_DIGEST = "alfresco.content.select_ContentUrlsByDigest";
+    private static final String DELETE_CONTENT_URL_DIGESTS = "alfresco.content.delete_ContentUrlDigests";
+    private static final String DELETE_CONTENT_URL_DIGESTS_BY_URL_IDS = "alfresco.content.delete_ContentUrlDigestsByUrlIds";
 
     protected SqlSessionTemplate template;
     
@@ -131,6 +140,19 @@ public class ContentDataDAOImpl extends AbstractContentDataDAOImpl
         return contentUrlEntity;
     }
 
+    @Override
+    protected List<ContentUrlEntity> getContentUrlEntities(List<Long> ids)
+    {
+        if (ids.size() == 0)
+        {
+            // There will be no results
+            return Collections.emptyList();
+        }
+        IdsEntity idsEntity = new IdsEntity();
+        idsEntity.setIds(ids);
+        return template.selectList(SELECT_CONTENT_URLS_BY_IDS, idsEntity);
+    }
+
     @Override
     public ContentUrlEntity getContentUrlEntity(String contentUrl)
     {
@@ -203,6 +225,7 @@ public class ContentDataDAOImpl extends AbstractContentDataDAOImpl
     public int deleteContentUrls(List<Long> ids)
     {
         template.delete(DELETE_CONTENT_URL_KEYS, ids);
+        template.delete(DELETE_CONTENT_URL_DIGESTS_BY_URL_IDS, ids);
         return template.delete(DELETE_CONTENT_URLS, ids);
     }
 
@@ -255,6 +278,19 @@ public class ContentDataDAOImpl extends AbstractContentDataDAOImpl
         return contentDataEntity;
     }
 
+    @Override
+    protected List<ContentDataEntity> getContentDataEntities(List<Long> ids)
+    {
+        if (ids.size() == 0)
+        {
+            // There will be no results
+            return Collections.emptyList();
+        }
+        IdsEntity idsEntity = new IdsEntity();
+        idsEntity.setIds(ids);
+        return template.selectList(SELECT_CONTENT_DATA_BY_IDS, idsEntity);
+    }
+
     @Override
     protected List<ContentDataEntity> getContentDataEntitiesForNodes(Set<Long> nodeIds)
     {
@@ -386,4 +422,44 @@ public class ContentDataDAOImpl extends AbstractContentDataDAOImpl
     {
         return (Integer)template.selectOne(COUNT_SYMMETRIC_KEYS_BY_MASTER_KEY, masterKeyAlias);
     }
+
+    @Override
+    protected void createContentUrlDigestEntity(ContentUrlDigestEntity digestEntity)
+    {
+        template.insert(INSERT_CONTENT_URL_DIGEST, digestEntity);
+    }
+
+    @Override
+    protected List<ContentUrlDigestEntity> getContentUrlDigestEntities(Long contentUrlId)
+    {
+        ContentUrlDigestEntity digestEntity = new ContentUrlDigestEntity();
+        digestEntity.setContentUrlId(contentUrlId);
+        return template.selectList(SELECT_CONTENT_URL_DIGESTS_BY_URL_ID, digestEntity);
+    }
+
+    @Override
+    protected int deleteContentUrlDigestEntities(Long contentUrlId, Set<String> algorithms)
+    {
+        Map<String, Object> params = new HashMap<String, Object>(5);
+        params.put("contentUrlId", contentUrlId);
+        params.put("algorithms", new ArrayList<String>(algorithms));
+        return template.delete(DELETE_CONTENT_URL_DIGESTS, params);
+    }
+
+    @Override
+    public List<String> getContentUrlsByDigest(String algorithm, String digest)
+    {
+        ContentUrlDigestEntity digestEntity = new ContentUrlDigestEntity();
+        digestEntity.setAlgorithm(algorithm);
+        digestEntity.setDigest(digest);
+        return template.selectList(SELECT_CONTENT_URLS_BY_DIGEST, digestEntity);
+    }
+
+    @Override
+    public List<ContentUrlDigestEntity> getContentUrlDigests(long fromId, int maxResults)
+    {
+        ContentUrlDigestEntity digestEntity = new ContentUrlDigestEntity();
+        digestEntity.setId(fromId);
+        return template.selectList(SELECT_CONTENT_URL_DIGESTS_FROM_ID, digestEntity, new RowBounds(0, maxResults));
+    }
 }
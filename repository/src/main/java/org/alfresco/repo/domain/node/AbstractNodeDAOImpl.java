@@ -2,7 +2,7 @@
  * #%L
  * Alfresco Repository
  * %%
- * Copyright (C) 2005 - 2023 Alfresco Software Limited
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
  * %%
  * This file is part of the Alfresco software. 
  * If the software was purchased under a paid Alfresco license, the terms of 
@@ -68,6 +68,7 @@ import org.alfresco.repo.policy.BehaviourFilter;
 import org.alfresco.repo.security.permissions.AccessControlListProperties;
 import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
 import org.alfresco.repo.transaction.AlfrescoTransactionSupport.TxnReadState;
+import org.alfresco.repo.transaction.CommitGeneration;
 import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
 import org.alfresco.repo.transaction.TransactionAwareSingleton;
 import org.alfresco.repo.transaction.TransactionalDao;
@@ -143,6 +144,7 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
     private ContentDataDAO contentDataDAO;
     private LocaleDAO localeDAO;
     private UsageDAO usageDAO;
+    private CommitGeneration commitGeneration;
 
     private int cachingThreshold = 10;
 
@@ -303,6 +305,15 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
         this.usageDAO = usageDAO;
     }
 
+    /**
+     * @param commitGeneration  told about every transaction that writes nodes (optional)
+     * @since 23.3
+     */
+    public void setCommitGeneration(CommitGeneration commitGeneration)
+    {
+        this.commitGeneration = commitGeneration;
+    }
+
     /**
      * Set the cache that maintains the Store root node data
      * 
@@ -602,6 +613,10 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
         AlfrescoTransactionSupport.bindResource(KEY_TRANSACTION, txn);
         // Listen for the end of the transaction
         AlfrescoTransactionSupport.bindDaoService(updateTransactionListener);
+        if (commitGeneration != null)
+        {
+            commitGeneration.bindToTransaction();
+        }
         // Done
         return txn;
     }
@@ -4523,6 +4538,78 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
         }
     }
 
+    @Override
+    public void cacheParentAssocsById(List<Long> nodeIds)
+    {
+        int batchSize = 256;
+        Map<Long, Node> batch = new HashMap<Long, Node>(batchSize * 2);
+        for (Long nodeId : nodeIds)
+        {
+            Node node = nodesCache.getValue(nodeId);
+            if (node == null || node.getDeleted(qnameDAO))
+            {
+                // Not cached or not relevant
+                continue;
+            }
+            Pair<Long, String> cacheKey = new Pair<Long, String>(nodeId, node.getTransaction().getChangeTxnId());
+            if (parentAssocsCache.get(cacheKey) != null)
+            {
+                continue;
+            }
+            batch.put(nodeId, node);
+            if (batch.size() >= batchSize)
+            {
+                cacheParentAssocsNoBatch(batch);
+                batch.clear();
+            }
+        }
+        if (batch.size() > 0)
+        {
+            cacheParentAssocsNoBatch(batch);
+        }
+    }
+
+    /**
+     * Bulk-fetch the parent associations of the given nodes.  Nodes without parents and nodes whose
+     * cached version is stale are left to be loaded, with the associated checks, when first used.
+     */
+    private void cacheParentAssocsNoBatch(Map<Long, Node> nodes)
+    {
+        List<ChildAssocEntity> assocs = selectParentAssocsOfChildren(nodes.keySet());
+        Map<Long, List<ChildAssocEntity>> assocsByChildId = new HashMap<Long, List<ChildAssocEntity>>(nodes.size() * 2);
+        for (ChildAssocEntity assoc : assocs)
+        {
+            Long childNodeId = assoc.getChildNode().getId();
+            List<ChildAssocEntity> childAssocs = assocsByChildId.get(childNodeId);
+            if (childAssocs == null)
+            {
+                childAssocs = new ArrayList<ChildAssocEntity>(2);
+                assocsByChildId.put(childNodeId, childAssocs);
+            }
+            childAssocs.add(assoc);
+        }
+        int cached = 0;
+        for (Map.Entry<Long, List<ChildAssocEntity>> entry : assocsByChildId.entrySet())
+        {
+            Long nodeId = entry.getKey();
+            Node node = nodes.get(nodeId);
+            List<ChildAssocEntity> childAssocs = entry.getValue();
+            if (!childAssocs.get(0).getChildNode().getNodeVersionKey().equals(node.getNodeVersionKey()))
+            {
+                continue;
+            }
+            boolean isRoot = hasNodeAspect(nodeId, ContentModel.ASPECT_ROOT);
+            boolean isStoreRoot = getNodeType(nodeId).equals(ContentModel.TYPE_STOREROOT);
+            Pair<Long, String> cacheKey = new Pair<Long, String>(nodeId, node.getTransaction().getChangeTxnId());
+            parentAssocsCache.put(cacheKey, new ParentAssocsInfo(isRoot, isStoreRoot, childAssocs));
+            cached++;
+        }
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Pre-loaded parent associations for " + cached + " of " + nodes.size() + " nodes");
+        }
+    }
+
     @Override
     public void cacheNodesById(List<Long> nodeIds)
     {
@@ -5045,6 +5132,7 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
             Boolean isPrimary,
             ChildAssocRefQueryCallback resultsCallback);
     protected abstract List<ChildAssocEntity> selectParentAssocs(Long childNodeId);
+    protected abstract List<ChildAssocEntity> selectParentAssocsOfChildren(Set<Long> childNodeIds);
     /**
      * No DB constraint, so multiple returned
      */
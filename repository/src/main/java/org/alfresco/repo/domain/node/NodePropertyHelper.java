@@ -29,9 +29,11 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
 
@@ -371,6 +373,43 @@ public class NodePropertyHelper
         }
     }
 
+    /**
+     * Fetch the ContentData referenced by the given raw properties in bulk so that the conversion
+     * to public properties does not look each value up individually.
+     * 
+     * @param propertyValueMaps     the raw properties of one or more nodes
+     * 
+     * @since 23.3
+     */
+    public void cacheContentData(Collection<Map<NodePropertyKey, NodePropertyValue>> propertyValueMaps)
+    {
+        Set<Long> contentDataIds = new HashSet<Long>();
+        for (Map<NodePropertyKey, NodePropertyValue> propertyValues : propertyValueMaps)
+        {
+            addContentDataIds(propertyValues, contentDataIds);
+        }
+        if (contentDataIds.size() > 0)
+        {
+            contentDataDAO.getContentData(contentDataIds);
+        }
+    }
+
+    /**
+     * Gather the IDs of ContentData values.  Older values that were persisted as plain
+     * <tt>Long</tt>s are left to be looked up individually.
+     */
+    private void addContentDataIds(Map<NodePropertyKey, NodePropertyValue> propertyValues, Set<Long> contentDataIds)
+    {
+        for (NodePropertyValue propertyValue : propertyValues.values())
+        {
+            Long contentDataId = propertyValue.getContentDataId();
+            if (contentDataId != null)
+            {
+                contentDataIds.add(contentDataId);
+            }
+        }
+    }
+
     public Map<QName, Serializable> convertToPublicProperties(Map<NodePropertyKey, NodePropertyValue> propertyValues)
     {
         Map<QName, Serializable> propertyMap = new HashMap<QName, Serializable>(propertyValues.size(), 1.0F);
@@ -379,6 +418,13 @@ public class NodePropertyHelper
         {
             return propertyMap;
         }
+        // Fetch multiple content values together rather than one at a time
+        Set<Long> contentDataIds = new HashSet<Long>();
+        addContentDataIds(propertyValues, contentDataIds);
+        if (contentDataIds.size() > 1)
+        {
+            contentDataDAO.getContentData(contentDataIds);
+        }
         // We need to process the properties in order
         SortedMap<NodePropertyKey, NodePropertyValue> sortedPropertyValues = new TreeMap<NodePropertyKey, NodePropertyValue>(
                 propertyValues);
@@ -967,6 +967,19 @@ public class NodePropertyValue implements Cloneable, Serializable
         return actualType == null ? null : actualType.getOrdinalNumber();
     }
 
+    /**
+     * @return          Returns the ID of the referenced ContentData or <tt>null</tt> if this is not
+     *                  a ContentData reference
+     */
+    /* package */ Long getContentDataId()
+    {
+        if (actualType == ValueType.CONTENT_DATA_ID && persistedType == ValueType.LONG && longValue != null)
+        {
+            return longValue;
+        }
+        return null;
+    }
+
     /**
      * @return          Returns the actual type's String representation
      */
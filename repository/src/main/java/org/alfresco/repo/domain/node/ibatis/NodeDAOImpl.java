@@ -144,6 +144,7 @@ public class NodeDAOImpl extends AbstractNodeDAOImpl
     private static final String SELECT_CHILD_ASSOCS_OF_PARENT_WITHOUT_NODE_ASSOCS_OF_TYPE =
             "alfresco.node.select_ChildAssocsOfParentWithoutNodeAssocsOfType";
     private static final String SELECT_PARENT_ASSOCS_OF_CHILD = "alfresco.node.select_ParentAssocsOfChild";
+    private static final String SELECT_PARENT_ASSOCS_OF_CHILDREN = "alfresco.node.select_ParentAssocsOfChildren";
     private static final String UPDATE_PARENT_ASSOCS_OF_CHILD = "alfresco.node.update_ParentAssocsOfChild";
     private static final String DELETE_SUBSCRIPTIONS = "alfresco.node.delete_NodeSubscriptions";
     
@@ -1528,6 +1529,18 @@ public class NodeDAOImpl extends AbstractNodeDAOImpl
         return template.selectList(SELECT_PARENT_ASSOCS_OF_CHILD, assoc);
     }
 
+    @Override
+    protected List<ChildAssocEntity> selectParentAssocsOfChildren(Set<Long> childNodeIds)
+    {
+        if (childNodeIds.size() == 0)
+        {
+            return Collections.emptyList();
+        }
+        IdsEntity ids = new IdsEntity();
+        ids.setIds(new ArrayList<Long>(childNodeIds));
+        return template.selectList(SELECT_PARENT_ASSOCS_OF_CHILDREN, ids);
+    }
+
     @Override
     protected int updatePrimaryParentAssocs(
             Long childNodeId,
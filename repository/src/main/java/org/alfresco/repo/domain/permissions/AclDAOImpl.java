@@ -2,7 +2,7 @@
  * #%L
  * Alfresco Repository
  * %%
- * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
  * %%
  * This file is part of the Alfresco software. 
  * If the software was purchased under a paid Alfresco license, the terms of 
@@ -52,6 +52,7 @@ import org.alfresco.repo.security.permissions.impl.AclChange;
 import org.alfresco.repo.security.permissions.impl.SimplePermissionReference;
 import org.alfresco.repo.tenant.TenantService;
 import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
+import org.alfresco.repo.transaction.CommitGeneration;
 import org.alfresco.repo.transaction.TransactionListenerAdapter;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.security.AccessStatus;
@@ -80,6 +81,7 @@ public class AclDAOImpl implements AclDAO
     private NodeDAO nodeDAO;
     private TenantService tenantService;
     private SimpleCache<Serializable, AccessControlList> aclCache;
+    private CommitGeneration commitGeneration;
     
     private enum WriteMode
     {
@@ -123,6 +125,15 @@ public class AclDAOImpl implements AclDAO
         this.tenantService = tenantService;
     }
 
+    /**
+     * @param commitGeneration  told about every transaction that changes ACLs (optional)
+     * @since 23.3
+     */
+    public void setCommitGeneration(CommitGeneration commitGeneration)
+    {
+        this.commitGeneration = commitGeneration;
+    }
+
     public void setAclCrudDAO(AclCrudDAO aclCrudDAO)
     {
         this.aclCrudDAO = aclCrudDAO;
@@ -1688,6 +1699,10 @@ public class AclDAOImpl implements AclDAO
             // bind the ID and the listener
             AlfrescoTransactionSupport.bindResource(RESOURCE_KEY_ACL_CHANGE_SET_ID, changeSetId);
             AlfrescoTransactionSupport.bindListener(updateChangeSetListener);
+            if (commitGeneration != null)
+            {
+                commitGeneration.bindToTransaction();
+            }
             if (logger.isDebugEnabled())
             {
                 logger.debug("New change set = " + changeSetId);
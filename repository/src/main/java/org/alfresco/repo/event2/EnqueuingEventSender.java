@@ -2,7 +2,7 @@
  * #%L
  * Alfresco Repository
  * %%
- * Copyright (C) 2005 - 2023 Alfresco Software Limited
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
  * %%
  * This file is part of the Alfresco software.
  * If the software was purchased under a paid Alfresco license, the terms of
@@ -25,6 +25,8 @@
  */
 package org.alfresco.repo.event2;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.Optional;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
@@ -32,24 +34,51 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.repo.event.v1.model.RepoEvent;
+import org.alfresco.repo.management.DynamicMBeanExportOperations;
 import org.alfresco.util.PropertyCheck;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
 
 /**
  * Enqueuing event sender allows to create asynchronously the RepoEvent offloading the work to a ThreadPool but
  * at the same time it preserves the order of the events.
+ * <p>
+ * Events are partitioned by the key they are accepted with (the node id) across a number of lanes.  Each lane
+ * sends its events in order on its own thread from the dequeue pool, so the events about a node keep their order
+ * while a slow send in one lane does not hold up the others.  Events accepted without a key go to the first lane.
+ * With a single lane, the default, all the events are sent in the order they are accepted.
+ * <p>
+ * When an MBean exporter is set, the depth of the lanes and the latencies are exported as
+ * <tt>Alfresco:Name=EnqueuingEventSender</tt>.
  */
-public class EnqueuingEventSender extends DirectEventSender
+public class EnqueuingEventSender extends DirectEventSender implements EnqueuingEventSenderMBean, DisposableBean
 {
     protected static final Log LOGGER = LogFactory.getLog(EnqueuingEventSender.class);
 
+    public static final int DEFAULT_LANES = 1;
+    public static final int DEFAULT_BATCH_SIZE = 100;
+    public static final String MBEAN_NAME = "Alfresco:Name=EnqueuingEventSender";
+
     protected Executor enqueueThreadPoolExecutor;
     protected Executor dequeueThreadPoolExecutor;
-    protected BlockingQueue<EventInMaking> queue = new LinkedBlockingQueue<>();
-    protected Runnable listener = createListener();
+    protected int laneCount = DEFAULT_LANES;
+    protected int batchSize = DEFAULT_BATCH_SIZE;
+    private volatile Lane[] lanes;
+    private DynamicMBeanExportOperations mbeanExporter;
+    private ObjectName mbeanName;
+
+    private final LongAdder madeCount = new LongAdder();
+    private final LongAdder makeNanos = new LongAdder();
+    private final LongAdder sentCount = new LongAdder();
+    private final LongAdder sendNanos = new LongAdder();
 
     @Override
     public void afterPropertiesSet()
@@ -57,6 +86,28 @@ public class EnqueuingEventSender extends DirectEventSender
         super.afterPropertiesSet();
         PropertyCheck.mandatory(this, "enqueueThreadPoolExecutor", enqueueThreadPoolExecutor);
         PropertyCheck.mandatory(this, "dequeueThreadPoolExecutor", dequeueThreadPoolExecutor);
+        getLanes();
+        if (mbeanExporter != null)
+        {
+            try
+            {
+                mbeanName = mbeanExporter.registerMBean(this, new ObjectName(MBEAN_NAME));
+            }
+            catch (MalformedObjectNameException e)
+            {
+                throw new AlfrescoRuntimeException("Invalid MBean name: " + MBEAN_NAME, e);
+            }
+        }
+    }
+
+    @Override
+    public void destroy()
+    {
+        if (mbeanName != null)
+        {
+            mbeanExporter.unregisterMBean(mbeanName);
+            mbeanName = null;
+        }
     }
 
     public void setEnqueueThreadPoolExecutor(Executor enqueueThreadPoolExecutor)
@@ -64,10 +115,36 @@ public class EnqueuingEventSender extends DirectEventSender
         this.enqueueThreadPoolExecutor = enqueueThreadPoolExecutor;
     }
 
+    /**
+     * @param dequeueThreadPoolExecutor the pool running the lanes; it needs a thread for each lane
+     */
     public void setDequeueThreadPoolExecutor(Executor dequeueThreadPoolExecutor)
     {
         this.dequeueThreadPoolExecutor = dequeueThreadPoolExecutor;
-        dequeueThreadPoolExecutor.execute(listener);
+    }
+
+    /**
+     * @param mbeanExporter the exporter to register the statistics of the lanes with (optional)
+     */
+    public void setMbeanExporter(DynamicMBeanExportOperations mbeanExporter)
+    {
+        this.mbeanExporter = mbeanExporter;
+    }
+
+    /**
+     * @param laneCount the number of lanes sending events in parallel
+     */
+    public void setLaneCount(int laneCount)
+    {
+        this.laneCount = Math.max(laneCount, 1);
+    }
+
+    /**
+     * @param batchSize the maximum number of ready events a lane takes from its queue and sends in one go
+     */
+    public void setBatchSize(int batchSize)
+    {
+        this.batchSize = Math.max(batchSize, 1);
     }
 
     /**
@@ -77,8 +154,21 @@ public class EnqueuingEventSender extends DirectEventSender
     @Override
     public void accept(Callable<Optional<RepoEvent<?>>> eventProducer)
     {
+        accept(null, eventProducer);
+    }
+
+    /**
+     * Procedure to enqueue the callback functions that creates an event about an entity.
+     * @param partitionKey Key of the entity the event is about, selecting the lane the event is sent by.
+     * @param eventProducer Callback function that creates an event.
+     */
+    @Override
+    public void accept(String partitionKey, Callable<Optional<RepoEvent<?>>> eventProducer)
+    {
+        Lane[] currentLanes = getLanes();
+        int laneIndex = (partitionKey == null) ? 0 : Math.floorMod(partitionKey.hashCode(), currentLanes.length);
         EventInMaking eventInMaking = new EventInMaking(eventProducer);
-        queue.offer(eventInMaking);
+        currentLanes[laneIndex].queue.offer(eventInMaking);
         enqueueThreadPoolExecutor.execute(() -> {
             try
             {
@@ -88,23 +178,113 @@ public class EnqueuingEventSender extends DirectEventSender
             {
                 LOGGER.error("Unexpected error while enqueuing maker function for repository event" + e);
             }
+            finally
+            {
+                madeCount.increment();
+                makeNanos.add(System.nanoTime() - eventInMaking.acceptedAt);
+            }
         });
     }
 
+    @Override
+    public int[] getLaneDepths()
+    {
+        Lane[] currentLanes = getLanes();
+        int[] depths = new int[currentLanes.length];
+        for (int i = 0; i < currentLanes.length; i++)
+        {
+            depths[i] = currentLanes[i].queue.size();
+        }
+        return depths;
+    }
+
+    @Override
+    public double getAverageMakeLatencyMillis()
+    {
+        return averageMillis(makeNanos, madeCount);
+    }
+
+    @Override
+    public double getAverageSendLatencyMillis()
+    {
+        return averageMillis(sendNanos, sentCount);
+    }
+
+    @Override
+    public long getSentCount()
+    {
+        return sentCount.sum();
+    }
+
+    private static double averageMillis(LongAdder nanos, LongAdder count)
+    {
+        long n = count.sum();
+        return (n == 0) ? 0.0 : nanos.sum() / (n * 1000000.0);
+    }
+
+    /**
+     * Start the lanes the first time they are needed, once all the properties have been set.
+     */
+    private Lane[] getLanes()
+    {
+        Lane[] currentLanes = lanes;
+        if (currentLanes == null)
+        {
+            synchronized (this)
+            {
+                currentLanes = lanes;
+                if (currentLanes == null)
+                {
+                    currentLanes = new Lane[laneCount];
+                    for (int i = 0; i < laneCount; i++)
+                    {
+                        currentLanes[i] = new Lane(i);
+                        dequeueThreadPoolExecutor.execute(currentLanes[i]);
+                    }
+                    lanes = currentLanes;
+                    if (LOGGER.isDebugEnabled())
+                    {
+                        LOGGER.debug("Started " + laneCount + " event lanes with a batch size of " + batchSize);
+                    }
+                }
+            }
+        }
+        return currentLanes;
+    }
+
     /**
-     * Create listener task in charge of dequeuing and sending events ready to be sent.
-     * @return The task in charge of dequeuing and sending events ready to be sent.
+     * Task in charge of dequeuing and sending the events of one lane as they become ready.
      */
-    private Runnable createListener()
+    private class Lane implements Runnable
     {
-        return () -> {
+        private final int index;
+        private final BlockingQueue<EventInMaking> queue = new LinkedBlockingQueue<>();
+        /** Events taken from the queue but not sent yet; only used by the thread running the lane */
+        private final Deque<EventInMaking> pending = new ArrayDeque<>();
+
+        private Lane(int index)
+        {
+            this.index = index;
+        }
+
+        @Override
+        public void run()
+        {
             try
             {
                 while (!Thread.interrupted())
                 {
                     try
                     {
-                        queue.take().getEventWhenReady().ifPresent(event -> event2MessageProducer.send(event));
+                        if (pending.isEmpty())
+                        {
+                            pending.add(queue.take());
+                            queue.drainTo(pending, batchSize - 1);
+                        }
+                        while (!pending.isEmpty())
+                        {
+                            send(pending.poll());
+                        }
                     }
                     catch (Exception e)
                     {
@@ -114,11 +294,29 @@ public class EnqueuingEventSender extends DirectEventSender
             }
             finally
             {
-                LOGGER.warn("Unexpected: rescheduling the listener thread.");
-                dequeueThreadPoolExecutor.execute(listener);
+                LOGGER.warn("Unexpected: rescheduling the listener thread for event lane " + index + ".");
+                dequeueThreadPoolExecutor.execute(this);
             }
-        };
+        }
 
+        private void send(EventInMaking eventInMaking)
+        {
+            try
+            {
+                Optional<RepoEvent<?>> event = eventInMaking.getEventWhenReady();
+                if (event.isPresent())
+                {
+                    long start = System.nanoTime();
+                    event2MessageProducer.send(event.get());
+                    sendNanos.add(System.nanoTime() - start);
+                    sentCount.increment();
+                }
+            }
+            catch (Exception e)
+            {
+                LOGGER.error("Unexpected error while dequeuing and sending repository event " + e);
+            }
+        }
     }
 
     /**
@@ -127,12 +325,14 @@ public class EnqueuingEventSender extends DirectEventSender
     private static class EventInMaking
     {
         private final Callable<Optional<RepoEvent<?>>> maker;
+        private final long acceptedAt;
         private volatile RepoEvent<?> event;
         private final CountDownLatch latch;
 
         public EventInMaking(Callable<Optional<RepoEvent<?>>> maker)
         {
             this.maker = maker;
+            this.acceptedAt = System.nanoTime();
             this.latch = new CountDownLatch(1);
         }
 
@@ -597,22 +597,23 @@ public class EventGenerator extends AbstractLifecycleBean implements Initializin
 
         protected void sendEvent(NodeRef nodeRef, NodeEventConsolidator consolidator)
         {
-            sendEvent(nodeRef, consolidator, nodeToEventEligibilityVerifier());
+            sendEvent(nodeRef.getId(), nodeRef, consolidator, nodeToEventEligibilityVerifier());
         }
 
         protected void sendEvent(ChildAssociationRef childAssociationRef, ChildAssociationEventConsolidator consolidator)
         {
-            sendEvent(childAssociationRef, consolidator, childAssociationToEventEligibilityVerifier());
+            sendEvent(childAssociationRef.getChildRef().getId(), childAssociationRef, consolidator, childAssociationToEventEligibilityVerifier());
         }
 
         protected void sendEvent(AssociationRef peerAssociationRef, PeerAssociationEventConsolidator consolidator)
         {
-            sendEvent(peerAssociationRef, consolidator, null);
+            sendEvent(peerAssociationRef.getSourceRef().getId(), peerAssociationRef, consolidator, null);
         }
 
         /**
          * Handles all kinds of events and sends them within dedicated transaction.
          *
+         * @param partitionKey - id of the node the event is about, events about the same node are sent in order
          * @param entityReference - reference to an entity (e.g. node, child association, peer association)
          * @param eventConsolidator - object encapsulating events occurred in a transaction
          * @param entityToEventEligibilityVerifier - allows to verify if entity is eligible to generate an even. If null no verification is necessary
@@ -620,11 +621,12 @@ public class EventGenerator extends AbstractLifecycleBean implements Initializin
          * @param <CON> - event consolidator type - extension of {@link EventConsolidator}
          */
         private  <REF extends EntityRef, CON extends EventConsolidator<REF, ? extends Resource>> void sendEvent(
-            final REF entityReference, final CON eventConsolidator, final TriPredicate<REF, CON, EventInfo> entityToEventEligibilityVerifier)
+            final String partitionKey, final REF entityReference, final CON eventConsolidator,
+            final TriPredicate<REF, CON, EventInfo> entityToEventEligibilityVerifier)
         {
             final EventInfo eventInfo = getEventInfo(AuthenticationUtil.getFullyAuthenticatedUser());
             transactionService.getRetryingTransactionHelper().doInTransaction((RetryingTransactionCallback<Void>) () -> {
-                eventSender.accept(() -> createEvent(entityReference, eventConsolidator, eventInfo, entityToEventEligibilityVerifier));
+                eventSender.accept(partitionKey, () -> createEvent(entityReference, eventConsolidator, eventInfo, entityToEventEligibilityVerifier));
                 return null;
             }, true, true);
         }
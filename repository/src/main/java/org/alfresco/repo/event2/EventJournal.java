@@ -0,0 +1,519 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.event2;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * An append-only journal of serialized repository events, kept as a sequence of segment files in a directory.
+ * <p>
+ * Every record is addressed by its offset, the position of the record in the journal as a whole.  A segment is
+ * named after the offset of its first record, so a record can be read again from its offset for as long as its
+ * segment is retained.  A record is stored as its length, the CRC32 of its payload and the payload; a record torn
+ * by a crash is detected and cut off when the journal is opened.
+ * <p>
+ * The journal also keeps the committed offset, the offset up to which the records have been delivered.
+ * <p>
+ * A journal may only be open in one process at a time: it holds an exclusive lock on a file in its directory while
+ * it is open, and fails to open if another process holds the lock.
+ *
+ * @since 23.3
+ */
+public class EventJournal
+{
+    private static final Log LOGGER = LogFactory.getLog(EventJournal.class);
+
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final String OFFSET_FILE = "committed.offset";
+    private static final String LOCK_FILE = "journal.lock";
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    private final File directory;
+    private final long segmentSize;
+    private final boolean fsync;
+
+    /** The segments by the offset of their first record */
+    private final TreeMap<Long, File> segments = new TreeMap<>();
+    private FileChannel lockChannel;
+    private FileLock lock;
+    private FileChannel activeChannel;
+    private long activeBaseOffset;
+    private long endOffset;
+    private volatile long committedOffset;
+
+    /**
+     * Opens the journal in the given directory, creating it if necessary.
+     *
+     * @param directory the directory holding the segment files
+     * @param segmentSize the size after which a new segment is started
+     * @param fsync true to force each append to the disk before returning
+     */
+    public EventJournal(File directory, long segmentSize, boolean fsync)
+    {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.fsync = fsync;
+        try
+        {
+            open();
+        }
+        catch (IOException e)
+        {
+            if (lock != null)
+            {
+                try
+                {
+                    lockChannel.close();
+                }
+                catch (IOException ce)
+                {
+                    // The journal failed to open anyway
+                }
+            }
+            throw new AlfrescoRuntimeException("Failed to open the event journal: " + directory, e);
+        }
+    }
+
+    private void open() throws IOException
+    {
+        if (!directory.exists() && !directory.mkdirs())
+        {
+            throw new IOException("Unable to create directory " + directory);
+        }
+        lock();
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SEGMENT_SUFFIX));
+        if (files != null)
+        {
+            for (File file : files)
+            {
+                String name = file.getName();
+                segments.put(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())), file);
+            }
+        }
+        if (segments.isEmpty())
+        {
+            segments.put(0L, segmentFile(0L));
+        }
+        activeBaseOffset = segments.lastKey();
+        activeChannel = FileChannel.open(segments.get(activeBaseOffset).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long validLength = recover(activeChannel);
+        if (validLength < activeChannel.size())
+        {
+            LOGGER.warn("Truncating a partially written record at offset " + (activeBaseOffset + validLength) + " of the event journal " + directory);
+            activeChannel.truncate(validLength);
+        }
+        activeChannel.position(validLength);
+        endOffset = activeBaseOffset + validLength;
+
+        committedOffset = readCommittedOffset();
+        if (committedOffset < segments.firstKey() || committedOffset > endOffset)
+        {
+            LOGGER.warn("Committed offset " + committedOffset + " is outside the event journal " + directory + ", starting from " + segments.firstKey());
+            committedOffset = segments.firstKey();
+        }
+        if (LOGGER.isDebugEnabled())
+        {
+            LOGGER.debug("Opened event journal " + directory + ": segments=" + segments.size() + ", committed=" + committedOffset + ", end=" + endOffset);
+        }
+    }
+
+    /**
+     * Take the lock on the journal, failing if another process, or another journal in this process, holds it.
+     */
+    private void lock() throws IOException
+    {
+        lockChannel = FileChannel.open(new File(directory, LOCK_FILE).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try
+        {
+            lock = lockChannel.tryLock();
+        }
+        catch (OverlappingFileLockException e)
+        {
+            lock = null;
+        }
+        if (lock == null)
+        {
+            lockChannel.close();
+            throw new IOException("The event journal is in use by another process: " + directory);
+        }
+    }
+
+    /**
+     * @return the length of the segment up to the end of its last complete record
+     */
+    private long recover(FileChannel channel) throws IOException
+    {
+        long position = 0L;
+        while (true)
+        {
+            byte[] payload = readRecord(channel, position);
+            if (payload == null)
+            {
+                return position;
+            }
+            position += RECORD_HEADER_SIZE + payload.length;
+        }
+    }
+
+    /**
+     * @return the payload of the record at the given position, or null if there is no complete record there
+     */
+    private byte[] readRecord(FileChannel channel, long position) throws IOException
+    {
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        if (!readFully(channel, header, position))
+        {
+            return null;
+        }
+        header.flip();
+        int length = header.getInt();
+        int crc = header.getInt();
+        if (length < 0 || position + RECORD_HEADER_SIZE + length > channel.size())
+        {
+            return null;
+        }
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        if (!readFully(channel, payload, position + RECORD_HEADER_SIZE) || crc != crc(payload.array()))
+        {
+            return null;
+        }
+        return payload.array();
+    }
+
+    private boolean readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+    {
+        while (buffer.hasRemaining())
+        {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int crc(byte[] payload)
+    {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    private File segmentFile(long baseOffset)
+    {
+        return new File(directory, String.format("%020d", baseOffset) + SEGMENT_SUFFIX);
+    }
+
+    /**
+     * Appends records to the journal.  The records are on the disk when the method returns, unless
+     * the journal was opened without fsync.
+     *
+     * @param payloads the records to append
+     * @return the end offset of the journal after the append
+     */
+    public synchronized long append(List<byte[]> payloads)
+    {
+        try
+        {
+            if (activeChannel.size() >= segmentSize)
+            {
+                roll();
+            }
+            int size = 0;
+            for (byte[] payload : payloads)
+            {
+                size += RECORD_HEADER_SIZE + payload.length;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(size);
+            for (byte[] payload : payloads)
+            {
+                buffer.putInt(payload.length).putInt(crc(payload)).put(payload);
+            }
+            buffer.flip();
+            while (buffer.hasRemaining())
+            {
+                activeChannel.write(buffer);
+            }
+            if (fsync)
+            {
+                activeChannel.force(false);
+            }
+            endOffset += size;
+            return endOffset;
+        }
+        catch (IOException e)
+        {
+            throw new AlfrescoRuntimeException("Failed to append to the event journal: " + directory, e);
+        }
+    }
+
+    private void roll() throws IOException
+    {
+        activeChannel.force(false);
+        activeChannel.close();
+        activeBaseOffset = endOffset;
+        File segment = segmentFile(activeBaseOffset);
+        segments.put(activeBaseOffset, segment);
+        activeChannel = FileChannel.open(segment.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Reads records starting at the given offset, never crossing into another segment.
+     *
+     * @param offset the offset of the first record to read
+     * @param maxRecords the maximum number of records to read
+     * @return the records read, empty if there are none at the offset yet
+     */
+    public List<Record> read(long offset, int maxRecords)
+    {
+        List<Record> records = new ArrayList<>();
+        File segment;
+        long baseOffset;
+        long limit;
+        synchronized (this)
+        {
+            if (offset >= endOffset)
+            {
+                return records;
+            }
+            Long floor = segments.floorKey(offset);
+            if (floor == null)
+            {
+                throw new AlfrescoRuntimeException("Offset " + offset + " is no longer retained in the event journal: " + directory);
+            }
+            baseOffset = floor;
+            segment = segments.get(baseOffset);
+            Long next = segments.higherKey(baseOffset);
+            limit = (next == null ? endOffset : next) - baseOffset;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(segment, "r"))
+        {
+            FileChannel channel = file.getChannel();
+            long position = offset - baseOffset;
+            while (records.size() < maxRecords && position < limit)
+            {
+                byte[] payload = readRecord(channel, position);
+                if (payload == null)
+                {
+                    throw new AlfrescoRuntimeException("Corrupt record at offset " + (baseOffset + position) + " of the event journal: " + directory);
+                }
+                long next = position + RECORD_HEADER_SIZE + payload.length;
+                records.add(new Record(baseOffset + position, baseOffset + next, payload));
+                position = next;
+            }
+        }
+        catch (IOException e)
+        {
+            throw new AlfrescoRuntimeException("Failed to read the event journal: " + directory, e);
+        }
+        return records;
+    }
+
+    /**
+     * @return the offset up to which the records have been delivered
+     */
+    public long getCommittedOffset()
+    {
+        return committedOffset;
+    }
+
+    /**
+     * @return the offset the next record will be appended at
+     */
+    public synchronized long getEndOffset()
+    {
+        return endOffset;
+    }
+
+    /**
+     * @return the offset of the oldest retained record
+     */
+    public synchronized long getStartOffset()
+    {
+        return segments.firstKey();
+    }
+
+    /**
+     * Records that all the records before the given offset have been delivered.  Moving the offset back
+     * makes the records from there on be delivered again.
+     *
+     * @param offset the offset of the first record not yet delivered
+     */
+    public synchronized void commit(long offset)
+    {
+        if (offset < segments.firstKey() || offset > endOffset)
+        {
+            throw new AlfrescoRuntimeException("Offset " + offset + " is outside the event journal " + directory +
+                    " [" + segments.firstKey() + ", " + endOffset + "]");
+        }
+        try
+        {
+            File temp = new File(directory, OFFSET_FILE + ".tmp");
+            Files.write(temp.toPath(), Long.toString(offset).getBytes(StandardCharsets.US_ASCII));
+            Files.move(temp.toPath(), new File(directory, OFFSET_FILE).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            committedOffset = offset;
+        }
+        catch (IOException e)
+        {
+            throw new AlfrescoRuntimeException("Failed to commit offset " + offset + " of the event journal: " + directory, e);
+        }
+    }
+
+    private long readCommittedOffset() throws IOException
+    {
+        File file = new File(directory, OFFSET_FILE);
+        if (!file.exists())
+        {
+            return segments.firstKey();
+        }
+        String value = new String(Files.readAllBytes(file.toPath()), StandardCharsets.US_ASCII).trim();
+        try
+        {
+            return Long.parseLong(value);
+        }
+        catch (NumberFormatException e)
+        {
+            LOGGER.warn("Ignoring invalid committed offset '" + value + "' of the event journal " + directory);
+            return segments.firstKey();
+        }
+    }
+
+    /**
+     * Deletes the segments that have been delivered completely and were last written to before the given time.
+     * The active segment is always kept.
+     *
+     * @param olderThan the time in milliseconds since the epoch
+     * @return the number of segments deleted
+     */
+    public synchronized int applyRetention(long olderThan)
+    {
+        int deleted = 0;
+        while (segments.size() > 1)
+        {
+            long baseOffset = segments.firstKey();
+            long nextBaseOffset = segments.higherKey(baseOffset);
+            File segment = segments.get(baseOffset);
+            if (nextBaseOffset > committedOffset || segment.lastModified() >= olderThan)
+            {
+                break;
+            }
+            if (!segment.delete() && segment.exists())
+            {
+                LOGGER.warn("Unable to delete event journal segment " + segment);
+                break;
+            }
+            segments.remove(baseOffset);
+            deleted++;
+        }
+        if (deleted > 0 && LOGGER.isDebugEnabled())
+        {
+            LOGGER.debug("Deleted " + deleted + " delivered segments from the event journal " + directory);
+        }
+        return deleted;
+    }
+
+    public synchronized void close()
+    {
+        try
+        {
+            activeChannel.close();
+        }
+        catch (IOException e)
+        {
+            LOGGER.warn("Failed to close the event journal " + directory, e);
+        }
+        try
+        {
+            // Closing the channel releases the lock
+            lockChannel.close();
+        }
+        catch (IOException e)
+        {
+            LOGGER.warn("Failed to release the lock on the event journal " + directory, e);
+        }
+    }
+
+    /**
+     * A record read from the journal.
+     */
+    public static class Record
+    {
+        private final long offset;
+        private final long nextOffset;
+        private final byte[] payload;
+
+        public Record(long offset, long nextOffset, byte[] payload)
+        {
+            this.offset = offset;
+            this.nextOffset = nextOffset;
+            this.payload = payload;
+        }
+
+        public long getOffset()
+        {
+            return offset;
+        }
+
+        /**
+         * @return the offset of the record after this one
+         */
+        public long getNextOffset()
+        {
+            return nextOffset;
+        }
+
+        public byte[] getPayload()
+        {
+            return payload;
+        }
+
+        public String getPayloadAsString()
+        {
+            return new String(payload, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -40,4 +40,15 @@ public interface EventSender
      * @param eventProducer - callback function that creates an event
      */
     void accept(Callable<Optional<RepoEvent<?>>> eventProducer);
+
+    /**
+     * Accepts a callback function creating an event about an entity. Events with the same partition key are sent
+     * in the order they are accepted, events with different keys may be sent in parallel.
+     * @param partitionKey - key of the entity the event is about (e.g. the node id), or null
+     * @param eventProducer - callback function that creates an event
+     */
+    default void accept(String partitionKey, Callable<Optional<RepoEvent<?>>> eventProducer)
+    {
+        accept(eventProducer);
+    }
 }
@@ -0,0 +1,389 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.event2;
+
+import java.io.File;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.repo.event.v1.model.RepoEvent;
+import org.alfresco.util.PropertyCheck;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Event sender that writes the events to a node-local {@link EventJournal} and relays them from the journal to the
+ * destination on a thread of its own.
+ * <p>
+ * The events are made after the transaction has committed, on the committing thread, so a slow or unavailable broker
+ * never holds up the repository and the events written during a broker outage are delivered once the broker is back.
+ * The relay sends the events in batches in the order they were written and commits its offset after each batch, so an
+ * event in the journal is delivered at least once: a failure part way through a batch sends the whole batch again.
+ * {@link #replayFrom(long)} sends the retained events again from any offset, and segments that have been delivered
+ * are deleted once they are older than the retention period.
+ * <p>
+ * This is not a transactional outbox.  The journal is written after the database commit rather than as part of it,
+ * so an event is lost if the JVM stops between the two, and the journal is a file of this node, so the events
+ * waiting in it are not delivered by the other nodes of a cluster if this node is lost.  Unless fsync is enabled the
+ * events are only written to the page cache of the operating system and the last of them may also be lost if the
+ * host itself fails.
+ * <p>
+ * Each node keeps its journal in a directory of its own, named after the node, under the journal directory; the
+ * journal directory may be shared, but the journal itself fails to open if another process already has it open.
+ *
+ * @since 23.3
+ */
+public class JournalingEventSender extends DirectEventSender implements DisposableBean
+{
+    private static final Log LOGGER = LogFactory.getLog(JournalingEventSender.class);
+
+    private static final long RETENTION_CHECK_INTERVAL_MS = 60000L;
+    private static final long NO_REPLAY = -1L;
+
+    private ObjectMapper objectMapper;
+    private Executor relayThreadPoolExecutor;
+    private String journalDirectory;
+    private String nodeName;
+    private long segmentSize = 64L * 1024L * 1024L;
+    private boolean fsync;
+    private int batchSize = 100;
+    private long pollIntervalMs = 1000L;
+    private long retryIntervalMs = 5000L;
+    private long retentionMs = TimeUnit.HOURS.toMillis(24);
+
+    private EventJournal journal;
+    private final Object signal = new Object();
+    private final CountDownLatch relayStopped = new CountDownLatch(1);
+    private volatile boolean running;
+    private volatile long replayOffset = NO_REPLAY;
+    private long lastRetentionCheck;
+
+    @Override
+    public void afterPropertiesSet()
+    {
+        super.afterPropertiesSet();
+        PropertyCheck.mandatory(this, "objectMapper", objectMapper);
+        PropertyCheck.mandatory(this, "relayThreadPoolExecutor", relayThreadPoolExecutor);
+        PropertyCheck.mandatory(this, "journalDirectory", journalDirectory);
+
+        journal = new EventJournal(new File(journalDirectory, getNodeName()), segmentSize, fsync);
+        running = true;
+        relayThreadPoolExecutor.execute(this::relay);
+    }
+
+    @Override
+    public void destroy()
+    {
+        running = false;
+        wakeUpRelay();
+        try
+        {
+            relayStopped.await(retryIntervalMs, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        if (journal != null)
+        {
+            journal.close();
+        }
+    }
+
+    public void setObjectMapper(ObjectMapper objectMapper)
+    {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * @param relayThreadPoolExecutor the pool running the relay; the relay keeps one thread for as long as it runs
+     */
+    public void setRelayThreadPoolExecutor(Executor relayThreadPoolExecutor)
+    {
+        this.relayThreadPoolExecutor = relayThreadPoolExecutor;
+    }
+
+    /**
+     * @param journalDirectory the directory holding the journal of each node
+     */
+    public void setJournalDirectory(String journalDirectory)
+    {
+        this.journalDirectory = journalDirectory;
+    }
+
+    /**
+     * @param nodeName the name of the directory of this node's journal; the host name is used if it is empty
+     */
+    public void setNodeName(String nodeName)
+    {
+        this.nodeName = nodeName;
+    }
+
+    private String getNodeName()
+    {
+        if (nodeName != null && !nodeName.trim().isEmpty())
+        {
+            return nodeName.trim();
+        }
+        try
+        {
+            return InetAddress.getLocalHost().getHostName();
+        }
+        catch (UnknownHostException e)
+        {
+            throw new AlfrescoRuntimeException("Unable to name the event journal of this node after its host, set repo.event2.journal.nodeName", e);
+        }
+    }
+
+    /**
+     * @param segmentSize the size in bytes after which the journal starts a new segment file
+     */
+    public void setSegmentSize(long segmentSize)
+    {
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * @param fsync true to force every event to the disk before the sender returns; this is a synchronized disk
+     *              write on the committing thread for every event, so it is off by default
+     */
+    public void setFsync(boolean fsync)
+    {
+        this.fsync = fsync;
+    }
+
+    /**
+     * @param batchSize the maximum number of events the relay sends before committing its offset
+     */
+    public void setBatchSize(int batchSize)
+    {
+        this.batchSize = Math.max(batchSize, 1);
+    }
+
+    /**
+     * @param pollIntervalMs how long the relay waits for new events when it has caught up
+     */
+    public void setPollIntervalMs(long pollIntervalMs)
+    {
+        this.pollIntervalMs = pollIntervalMs;
+    }
+
+    /**
+     * @param retryIntervalMs how long the relay waits before sending a batch again after a failure
+     */
+    public void setRetryIntervalMs(long retryIntervalMs)
+    {
+        this.retryIntervalMs = retryIntervalMs;
+    }
+
+    /**
+     * @param retentionHours how long delivered events are kept for a replay
+     */
+    public void setRetentionHours(long retentionHours)
+    {
+        this.retentionMs = TimeUnit.HOURS.toMillis(retentionHours);
+    }
+
+    /**
+     * Makes the event and writes it to the journal.
+     * @param eventProducer Callback function that creates an event.
+     */
+    @Override
+    public void accept(Callable<Optional<RepoEvent<?>>> eventProducer)
+    {
+        Optional<RepoEvent<?>> event;
+        try
+        {
+            event = eventProducer.call();
+        }
+        catch (RuntimeException e)
+        {
+            throw e;
+        }
+        catch (Exception e)
+        {
+            throw new AlfrescoRuntimeException("Unexpected error while executing maker function for repository event", e);
+        }
+        if (event.isPresent())
+        {
+            byte[] payload;
+            try
+            {
+                payload = objectMapper.writeValueAsBytes(event.get());
+            }
+            catch (Exception e)
+            {
+                throw new AlfrescoRuntimeException("Failed to serialize repository event: " + event.get(), e);
+            }
+            journal.append(Collections.singletonList(payload));
+            wakeUpRelay();
+        }
+    }
+
+    /**
+     * Makes the relay send the retained events again, starting from the given offset.
+     *
+     * @param offset the offset of a record in the journal, or its start offset to send all the retained events
+     */
+    public void replayFrom(long offset)
+    {
+        if (offset < journal.getStartOffset() || offset > journal.getEndOffset())
+        {
+            throw new AlfrescoRuntimeException("Offset " + offset + " is not retained in the event journal [" +
+                    journal.getStartOffset() + ", " + journal.getEndOffset() + "]");
+        }
+        replayOffset = offset;
+        wakeUpRelay();
+    }
+
+    /**
+     * @return the offset up to which the events have been delivered
+     */
+    public long getCommittedOffset()
+    {
+        return journal.getCommittedOffset();
+    }
+
+    /**
+     * @return the offset the next event will be written at
+     */
+    public long getEndOffset()
+    {
+        return journal.getEndOffset();
+    }
+
+    /**
+     * @return the offset of the oldest event that can be replayed
+     */
+    public long getStartOffset()
+    {
+        return journal.getStartOffset();
+    }
+
+    /**
+     * @return the size in bytes of the events waiting to be delivered
+     */
+    public long getLag()
+    {
+        return journal.getEndOffset() - journal.getCommittedOffset();
+    }
+
+    private void relay()
+    {
+        try
+        {
+            while (running)
+            {
+                try
+                {
+                    long replay = replayOffset;
+                    if (replay != NO_REPLAY)
+                    {
+                        journal.commit(replay);
+                        replayOffset = NO_REPLAY;
+                        LOGGER.info("Replaying repository events from offset " + replay);
+                    }
+                    List<EventJournal.Record> records = journal.read(journal.getCommittedOffset(), batchSize);
+                    if (records.isEmpty())
+                    {
+                        applyRetention();
+                        await(pollIntervalMs, true);
+                        continue;
+                    }
+                    for (EventJournal.Record record : records)
+                    {
+                        event2MessageProducer.send(record.getPayloadAsString());
+                    }
+                    journal.commit(records.get(records.size() - 1).getNextOffset());
+                    if (LOGGER.isDebugEnabled())
+                    {
+                        LOGGER.debug("Relayed " + records.size() + " repository events up to offset " + journal.getCommittedOffset());
+                    }
+                }
+                catch (Exception e)
+                {
+                    LOGGER.warn("Failed to relay repository events from offset " + journal.getCommittedOffset() +
+                            ", retrying in " + retryIntervalMs + "ms", e);
+                    await(retryIntervalMs, false);
+                }
+            }
+        }
+        finally
+        {
+            relayStopped.countDown();
+        }
+    }
+
+    private void applyRetention()
+    {
+        long now = System.currentTimeMillis();
+        if (now - lastRetentionCheck >= RETENTION_CHECK_INTERVAL_MS)
+        {
+            lastRetentionCheck = now;
+            journal.applyRetention(now - retentionMs);
+        }
+    }
+
+    private void await(long millis, boolean untilNewEvents)
+    {
+        synchronized (signal)
+        {
+            if (!running || replayOffset != NO_REPLAY ||
+                (untilNewEvents && journal.getEndOffset() > journal.getCommittedOffset()))
+            {
+                return;
+            }
+            try
+            {
+                signal.wait(millis);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+        }
+    }
+
+    private void wakeUpRelay()
+    {
+        synchronized (signal)
+        {
+            signal.notifyAll();
+        }
+    }
+}
@@ -73,6 +73,16 @@ public interface NodeBulkLoader
      */
     public void cacheNodesById(List<Long> nodeIds);
     
+    /**
+     * Pre-cache the parent associations of the given nodes.  Only nodes that are already
+     * cached are considered, so this is normally called after {@link #cacheNodesById(List)}.
+     * 
+     * @param nodeIds           the nodes whose parent associations will be cached.
+     * 
+     * @since 23.3
+     */
+    public void cacheParentAssocsById(List<Long> nodeIds);
+    
     /**
      * <b>FOR TESTING ONLY: </b>Clears out node cache data
      */
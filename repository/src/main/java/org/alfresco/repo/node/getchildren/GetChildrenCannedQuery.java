@@ -2,7 +2,7 @@
  * #%L
  * Alfresco Repository
  * %%
- * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
  * %%
  * This file is part of the Alfresco software. 
  * If the software was purchased under a paid Alfresco license, the terms of 
@@ -33,6 +33,7 @@ import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -804,11 +805,9 @@ public class GetChildrenCannedQuery extends AbstractCannedQueryPermissions<NodeR
             
             preload(nodeRefs);
             
+            List<Map<NodePropertyKey, NodePropertyValue>> propertyValuesList = new ArrayList<>(results.size());
             for (FilterSortNodeEntity result : results)
             {
-                Node node = result.getNode();
-                NodeRef nodeRef = node.getNodeRef();
-                
                 Map<NodePropertyKey, NodePropertyValue> propertyValues = new HashMap<NodePropertyKey, NodePropertyValue>(3);
                 
                 NodePropertyEntity prop1 = result.getProp1();
@@ -829,7 +828,19 @@ public class GetChildrenCannedQuery extends AbstractCannedQueryPermissions<NodeR
                     propertyValues.put(prop3.getKey(), prop3.getValue());
                 }
                 
-                Map<QName, Serializable> propVals = nodePropertyHelper.convertToPublicProperties(propertyValues);
+                propertyValuesList.add(propertyValues);
+            }
+            
+            // Fetch the ContentData (eg. for sorting by cm:content.size) for the whole batch at once
+            nodePropertyHelper.cacheContentData(propertyValuesList);
+            
+            Iterator<Map<NodePropertyKey, NodePropertyValue>> propertyValuesIterator = propertyValuesList.iterator();
+            for (FilterSortNodeEntity result : results)
+            {
+                Node node = result.getNode();
+                NodeRef nodeRef = node.getNodeRef();
+                
+                Map<QName, Serializable> propVals = nodePropertyHelper.convertToPublicProperties(propertyValuesIterator.next());
                 
                 // Add referenceable / spoofed properties (including spoofed name if null)
                 ReferenceablePropertiesEntity.addReferenceableProperties(node, propVals);
@@ -2,7 +2,7 @@
  * #%L
  * Alfresco Repository
  * %%
- * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
  * %%
  * This file is part of the Alfresco software. 
  * If the software was purchased under a paid Alfresco license, the terms of 
@@ -44,4 +44,11 @@ package org.alfresco.repo.policy;
     void addition(B binding, Behaviour behaviour);
 
     void removal(B binding, Behaviour behaviour);
+
+    /**
+     * The data dictionary has changed, so the class hierarchy any binding derives from may have changed.
+     */
+    default void dictionaryChanged()
+    {
+    }
 }
@@ -2,7 +2,7 @@
  * #%L
  * Alfresco Repository
  * %%
- * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
  * %%
  * This file is part of the Alfresco software. 
  * If the software was purchased under a paid Alfresco license, the terms of 
@@ -27,9 +27,13 @@ package org.alfresco.repo.policy;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Map;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.alfresco.api.AlfrescoPublicApi;
 import org.alfresco.util.LockHelper;
@@ -39,6 +43,13 @@ import org.apache.commons.logging.LogFactory;
 
 /**
  * Policy Factory with caching support.
+ * <p>
+ * The caches are immutable snapshots that are replaced, never modified, so looking up a cached policy
+ * takes no lock.  Only adding to or clearing a cache takes the lock.
+ * <p>
+ * Besides the policies for single bindings, the factory caches a dispatch table for each set of bindings
+ * a policy is invoked for, such as the type and aspects of a node.  The table holds the behaviours of all
+ * the bindings, inherited ones included, flattened into a single array.
  *
  * @author David Caruana
  *
@@ -51,21 +62,35 @@ public class CachedPolicyFactory<B extends BehaviourBinding, P extends Policy> e
     // Logger
     private static final Log logger = LogFactory.getLog(PolicyComponentImpl.class);
 
+    // Maximum number of cached dispatch tables for sets of bindings
+    private static final int MAX_DISPATCH_TABLES = 1000;
+
     // Behaviour Filter
     private BehaviourFilter behaviourFilter = null;
     
-    // Cache Lock
-    private ReentrantReadWriteLock lock = new ReentrantReadWriteLock(); 
+    // Lock for replacing the caches
+    private ReentrantLock lock = new ReentrantLock(); 
 
     /**
      * Cache for a single Policy interface (keyed by Binding)
      */
-    private Map<B, P> singleCache = new HashMap<B, P>();
+    private volatile Map<B, P> singleCache = Collections.emptyMap();
     
     /**
      * Cache for a collection of Policy interfaces (keyed by Binding)
      */
-    private Map<B, Collection<P>> listCache = new HashMap<B, Collection<P>>();
+    private volatile Map<B, Collection<P>> listCache = Collections.emptyMap();
+
+    /**
+     * Cache for the dispatch table of a set of bindings (keyed by the set of Bindings)
+     */
+    private volatile Map<Set<B>, P> dispatchCache = Collections.emptyMap();
+
+    /**
+     * Incremented whenever the caches are cleared, so a policy built from the behaviours
+     * before a change is not cached after it
+     */
+    private volatile long generation = 0;
 
     // Try lock timeout (MNT-11371)
     private long tryLockTimeout;
@@ -94,14 +119,17 @@ public class CachedPolicyFactory<B extends BehaviourBinding, P extends Policy> e
         {
             public void addition(B binding, Behaviour behaviour)
             {
-                clearCache("aggregate delegate", singleCache, binding);
-                clearCache("delegate collection", listCache, binding);
+                clearCaches(binding);
             }
 
             public void removal(B binding, Behaviour behaviour)
             {
-                clearCache("aggregate delegate", singleCache, binding);
-                clearCache("delegate collection", listCache, binding);
+                clearCaches(binding);
+            }
+
+            public void dictionaryChanged()
+            {
+                clearCaches(null);
             }
         });
     }
@@ -116,40 +144,38 @@ public class CachedPolicyFactory<B extends BehaviourBinding, P extends Policy> e
             return super.create(binding);
         }
         
-        LockHelper.tryLock(lock.readLock(), tryLockTimeout, "getting policy from cache in 'CachedPolicyFactory.create()'");
-        try
-        {
-            P policyInterface = singleCache.get(binding);
-            if (policyInterface != null)
-            {
-                return policyInterface;
-            }
-        }
-        finally
+        P policyInterface = singleCache.get(binding);
+        if (policyInterface != null)
         {
-            lock.readLock().unlock();
+            return policyInterface;
         }
         
         // There wasn't one
-        LockHelper.tryLock(lock.writeLock(), tryLockTimeout, "putting new policy to cache in 'CachedPolicyFactory.create()'");
+        long expectedGeneration = generation;
+        policyInterface = super.create(binding);
+
+        LockHelper.tryLock(lock, tryLockTimeout, "putting new policy to cache in 'CachedPolicyFactory.create()'");
         try
         {
-            P policyInterface = singleCache.get(binding);
-            if (policyInterface != null)
+            P cachedInterface = singleCache.get(binding);
+            if (cachedInterface != null)
             {
-                return policyInterface;
+                return cachedInterface;
+            }
+            if (generation == expectedGeneration)
+            {
+                Map<B, P> cache = new HashMap<B, P>(singleCache);
+                cache.put(binding, policyInterface);
+                singleCache = cache;
+                
+                if (logger.isDebugEnabled())
+                    logger.debug("Cached delegate interface " + policyInterface + " for " + binding + " and policy " + getPolicyClass());
             }
-            policyInterface = super.create(binding);
-            singleCache.put(binding, policyInterface);
-            
-            if (logger.isDebugEnabled())
-                logger.debug("Cached delegate interface " + policyInterface + " for " + binding + " and policy " + getPolicyClass());
-            
             return policyInterface;
         }
         finally
         {
-            lock.writeLock().unlock();
+            lock.unlock();
         }
     }
     
@@ -163,108 +189,179 @@ public class CachedPolicyFactory<B extends BehaviourBinding, P extends Policy> e
             return super.createList(binding);
         }
         
-        LockHelper.tryLock(lock.readLock(), tryLockTimeout, "getting policy list from cache in 'CachedPolicyFactory.createList()'");
+        Collection<P> policyInterfaces = listCache.get(binding);
+        if (policyInterfaces != null)
+        {
+            return policyInterfaces;
+        }
+        
+        // There wasn't one
+        long expectedGeneration = generation;
+        policyInterfaces = super.createList(binding);
+
+        LockHelper.tryLock(lock, tryLockTimeout, "putting policy list to cache in 'CachedPolicyFactory.createList()'");
         try
         {
-            Collection<P> policyInterfaces = listCache.get(binding);
-            if (policyInterfaces != null)
+            Collection<P> cachedInterfaces = listCache.get(binding);
+            if (cachedInterfaces != null)
             {
-                return policyInterfaces;
+                return cachedInterfaces;
             }
+            if (generation == expectedGeneration)
+            {
+                Map<B, Collection<P>> cache = new HashMap<B, Collection<P>>(listCache);
+                cache.put(binding, policyInterfaces);
+                listCache = cache;
+    
+                if (logger.isDebugEnabled())
+                    logger.debug("Cached delegate interface collection " + policyInterfaces + " for " + binding + " and policy " + getPolicyClass());
+            }
+            return policyInterfaces;
         }
         finally
         {
-            lock.readLock().unlock();
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Construct a single Policy implementation invoking the behaviours of all the given bindings
+     * 
+     * @param bindings  the bindings
+     * @return  the policy implementation
+     */
+    public P create(Set<B> bindings)
+    {
+        // When behaviour filters are activated bypass the cache 
+        if (behaviourFilter != null && behaviourFilter.isActivated())
+        {
+            return toPolicy(flatten(bindings));
+        }
+        
+        P policyInterface = dispatchCache.get(bindings);
+        if (policyInterface != null)
+        {
+            return policyInterface;
         }
         
         // There wasn't one
-        LockHelper.tryLock(lock.writeLock(), tryLockTimeout, "putting policy list to cache in 'CachedPolicyFactory.createList()'");
+        long expectedGeneration = generation;
+        policyInterface = toPolicy(flatten(bindings));
+
+        LockHelper.tryLock(lock, tryLockTimeout, "putting dispatch table to cache in 'CachedPolicyFactory.create()'");
         try
         {
-            Collection<P> policyInterfaces = listCache.get(binding);
-            if (policyInterfaces != null)
+            P cachedInterface = dispatchCache.get(bindings);
+            if (cachedInterface != null)
+            {
+                return cachedInterface;
+            }
+            if (generation == expectedGeneration && dispatchCache.size() < MAX_DISPATCH_TABLES)
             {
-                return policyInterfaces;
+                Map<Set<B>, P> cache = new HashMap<Set<B>, P>(dispatchCache);
+                cache.put(new HashSet<B>(bindings), policyInterface);
+                dispatchCache = cache;
+                
+                if (logger.isDebugEnabled())
+                    logger.debug("Cached dispatch table " + policyInterface + " for " + bindings + " and policy " + getPolicyClass());
             }
-            policyInterfaces = super.createList(binding);
-            listCache.put(binding, policyInterfaces);
+            return policyInterface;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the policy implementations of all the given bindings, without duplicates
+     */
+    private Collection<P> flatten(Set<B> bindings)
+    {
+        Collection<P> policyInterfaces = new LinkedHashSet<P>();
+        for (B binding : bindings)
+        {
+            policyInterfaces.addAll(getPolicies(create(binding)));
+        }
+        return policyInterfaces;
+    }
     
-            if (logger.isDebugEnabled())
-                logger.debug("Cached delegate interface collection " + policyInterfaces + " for " + binding + " and policy " + getPolicyClass());
+    /**
+     * Clear entries in the caches based on binding changes.
+     * 
+     * @param binding  the changed binding, or null if all bindings are affected
+     */
+    private void clearCaches(B binding)
+    {
+        LockHelper.tryLock(lock, tryLockTimeout, "clearing policy cache in 'CachedPolicyFactory.clearCaches()'");
+        try
+        {
+            generation++;
+            singleCache = clearCache("aggregate delegate", singleCache, binding);
+            listCache = clearCache("delegate collection", listCache, binding);
             
-            return policyInterfaces;
+            // A change to any binding may affect any of the sets of bindings
+            if (logger.isDebugEnabled() && dispatchCache.isEmpty() == false)
+                logger.debug("Cleared dispatch table cache for policy " + getPolicyClass());
+            dispatchCache = Collections.emptyMap();
         }
         finally
         {
-            lock.writeLock().unlock();
+            lock.unlock();
         }
     }
-    
+
     /**
      * Clear entries in the cache based on binding changes.
      * 
      * @param cacheDescription  description of cache to clear
      * @param cache  the cache to clear
      * @param binding  the binding
+     * @return  the cache without the cleared entries
      */
-    private void clearCache(String cacheDescription, Map<B, ?> cache, B binding)
+    private <V> Map<B, V> clearCache(String cacheDescription, Map<B, V> cache, B binding)
     {
         if (binding == null)
         {
-            LockHelper.tryLock(lock.writeLock(), tryLockTimeout, "clearing policy cache in 'CachedPolicyFactory.clearCache()'");
-            try
-            {
-                // A specific binding has not been provided, so clear all entries
-                cache.clear();
-                
-                if (logger.isDebugEnabled() && cache.isEmpty() == false)
-                    logger.debug("Cleared " + cacheDescription + " cache (all class bindings) for policy " + getPolicyClass());
-            }
-            finally
-            {
-                lock.writeLock().unlock();
-            }
+            // A specific binding has not been provided, so clear all entries
+            if (logger.isDebugEnabled() && cache.isEmpty() == false)
+                logger.debug("Cleared " + cacheDescription + " cache (all class bindings) for policy " + getPolicyClass());
+            
+            return Collections.emptyMap();
         }
-        else
+
+        // A specific binding has been provided.  Build a list of entries
+        // that require removal.  An entry is removed if the binding in the
+        // list is equal or derived from the changed binding. 
+        Collection<B> invalidBindings = new ArrayList<B>();
+        for (B cachedBinding : cache.keySet())
         {
-            // A specific binding has been provided.  Build a list of entries
-            // that require removal.  An entry is removed if the binding in the
-            // list is equal or derived from the changed binding. 
-            Collection<B> invalidBindings = new ArrayList<B>();
-            for (B cachedBinding : cache.keySet())
+            // Determine if binding is equal or derived from changed binding
+            BehaviourBinding generalisedBinding = cachedBinding;
+            while(generalisedBinding != null)
             {
-                // Determine if binding is equal or derived from changed binding
-                BehaviourBinding generalisedBinding = cachedBinding;
-                while(generalisedBinding != null)
+                if (generalisedBinding.equals(binding))
                 {
-                    if (generalisedBinding.equals(binding))
-                    {
-                        invalidBindings.add(cachedBinding);
-                        break;
-                    }
-                    generalisedBinding = generalisedBinding.generaliseBinding();
+                    invalidBindings.add(cachedBinding);
+                    break;
                 }
+                generalisedBinding = generalisedBinding.generaliseBinding();
             }
+        }
 
-            // Remove all invalid bindings
-            if (invalidBindings.size() > 0)
-            {
-                LockHelper.tryLock(lock.writeLock(), tryLockTimeout, "removing invalid policy bindings from cache in 'CachedPolicyFactory.clearCache()'");
-                try
-                {
-                    for (B invalidBinding : invalidBindings)
-                    {
-                        cache.remove(invalidBinding);
-                        
-                        if (logger.isDebugEnabled())
-                            logger.debug("Cleared " + cacheDescription + " cache for " + invalidBinding + " and policy " + getPolicyClass());
-                    }
-                }
-                finally
-                {
-                    lock.writeLock().unlock();
-                }
-            }
+        // Remove all invalid bindings
+        if (invalidBindings.isEmpty())
+        {
+            return cache;
+        }
+        Map<B, V> clearedCache = new HashMap<B, V>(cache);
+        for (B invalidBinding : invalidBindings)
+        {
+            clearedCache.remove(invalidBinding);
+            
+            if (logger.isDebugEnabled())
+                logger.debug("Cleared " + cacheDescription + " cache for " + invalidBinding + " and policy " + getPolicyClass());
         }
+        return clearedCache;
     }
 }
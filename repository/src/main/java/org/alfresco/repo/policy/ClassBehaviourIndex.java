@@ -2,7 +2,7 @@
  * #%L
  * Alfresco Repository
  * %%
- * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
  * %%
  * This file is part of the Alfresco software. 
  * If the software was purchased under a paid Alfresco license, the terms of 
@@ -27,8 +27,11 @@ package org.alfresco.repo.policy;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.namespace.QName;
@@ -39,14 +42,18 @@ import org.alfresco.util.LockHelper;
  * Class (Type/Aspect) oriented index of bound behaviours
  * 
  * Note: Uses Class hierarchy to derive bindings.
+ * <p>
+ * Lookups read an immutable snapshot of the bound behaviours without taking a lock.  Binding or
+ * removing a behaviour takes the lock, publishes a new snapshot and only then notifies the observers,
+ * so an observer clearing its cache never sees the behaviours from before the change again.
  * 
  * @author David Caruana
  *
  */
 /*package*/ class ClassBehaviourIndex<B extends ClassBehaviourBinding> implements BehaviourIndex<B>
 {
-    // Lock
-    private ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Lock for changing the bound behaviours
+    private ReentrantLock lock = new ReentrantLock();
     
     // Map of class bindings  
     private BehaviourMap<B> classMap = new BehaviourMap<B>();
@@ -54,6 +61,10 @@ import org.alfresco.util.LockHelper;
     // Map of service bindings
     private BehaviourMap<ServiceBehaviourBinding> serviceMap = new BehaviourMap<ServiceBehaviourBinding>();
     
+    // Snapshot of the bound behaviours read by the lookups
+    private volatile Snapshot<B> snapshot = new Snapshot<B>(Collections.<B, List<BehaviourDefinition<B>>>emptyMap(),
+                Collections.<BehaviourDefinition>emptyList(), Collections.<BehaviourDefinition>emptyList());
+    
     // List of registered observers
     private List<BehaviourChangeObserver<B>> observers = new ArrayList<BehaviourChangeObserver<B>>();
 
@@ -79,6 +90,7 @@ import org.alfresco.util.LockHelper;
         {
             public void addition(B binding, Behaviour behaviour)
             {
+                publishSnapshot();
                 for (BehaviourChangeObserver<B> listener : observers)
                 {
                     listener.addition(binding, behaviour);
@@ -87,25 +99,7 @@ import org.alfresco.util.LockHelper;
 
             public void removal(B binding, Behaviour behaviour)
             {
-                for (BehaviourChangeObserver<B> listener : observers)
-                {
-                    listener.removal(binding, behaviour);
-                }
-            }
-        });
-
-        this.classMap.addChangeObserver(new BehaviourChangeObserver<B>()
-        {
-            public void addition(B binding, Behaviour behaviour)
-            {
-                for (BehaviourChangeObserver<B> listener : observers)
-                {
-                    listener.addition(binding, behaviour);
-                }
-            }
-
-            public void removal(B binding, Behaviour behaviour)
-            {
+                publishSnapshot();
                 for (BehaviourChangeObserver<B> listener : observers)
                 {
                     listener.removal(binding, behaviour);
@@ -118,6 +112,7 @@ import org.alfresco.util.LockHelper;
         {
             public void addition(ServiceBehaviourBinding binding, Behaviour behaviour)
             {
+                publishSnapshot();
                 for (BehaviourChangeObserver<B> listener : observers)
                 {
                     // Note: Don't specify class ref as service-level bindings affect all classes
@@ -127,6 +122,7 @@ import org.alfresco.util.LockHelper;
 
             public void removal(ServiceBehaviourBinding binding, Behaviour behaviour)
             {
+                publishSnapshot();
                 for (BehaviourChangeObserver<B> listener : observers)
                 {
                     listener.removal(null, behaviour);
@@ -142,19 +138,7 @@ import org.alfresco.util.LockHelper;
     @Override
     public Collection<BehaviourDefinition> getAll()
     {
-        LockHelper.tryLock(lock.readLock(), tryLockTimeout, "getting all behavior definitions in 'ClassBehaviourIndex.getAll()'");
-        
-        try
-        {
-            List<BehaviourDefinition> all = new ArrayList<BehaviourDefinition>(classMap.size() + serviceMap.size());
-            all.addAll(classMap.getAll());
-            all.addAll(serviceMap.getAll());
-            return all;
-        }
-        finally
-        {
-            lock.readLock().unlock();
-        }
+        return new ArrayList<BehaviourDefinition>(snapshot.all);
     }
     
 
@@ -162,36 +146,28 @@ import org.alfresco.util.LockHelper;
     @SuppressWarnings("unchecked")
     public Collection<BehaviourDefinition> find(B binding)
     {
-        LockHelper.tryLock(lock.readLock(), tryLockTimeout, "searching behavior definitions list in 'ClassBehaviourIndex.find()'");
-        
-        try
-        {
-            List<BehaviourDefinition> behaviours = new ArrayList<BehaviourDefinition>();
+        Snapshot<B> current = snapshot;
+        List<BehaviourDefinition> behaviours = new ArrayList<BehaviourDefinition>();
 
-            // Find class behaviour by scanning up the class hierarchy
-            List<BehaviourDefinition<B>> behaviour = null;
+        // Find class behaviour by scanning up the class hierarchy
+        List<BehaviourDefinition<B>> behaviour = null;
 
-            if (isEnabled(binding))
+        if (isEnabled(binding))
+        {
+            while (binding != null)
             {
-                while (binding != null)
+                behaviour = current.classBehaviours.get(binding);
+                if (behaviour != null)
                 {
-                    behaviour = classMap.get(binding);
-                    if (behaviour != null)
-                    {
-                        behaviours.addAll(0, behaviour); // note: list base/generalised before extended/specific
-                    }
-                    binding = (B)binding.generaliseBinding();
+                    behaviours.addAll(0, behaviour); // note: list base/generalised before extended/specific
                 }
+                binding = (B)binding.generaliseBinding();
             }
-            // Append all service-level behaviours
-            behaviours.addAll(serviceMap.getAll());
-            
-            return behaviours;
-        }
-        finally
-        {
-            lock.readLock().unlock();
         }
+        // Append all service-level behaviours
+        behaviours.addAll(current.serviceBehaviours);
+        
+        return behaviours;
     }
 
     @Override
@@ -215,14 +191,14 @@ import org.alfresco.util.LockHelper;
      */
     public void putClassBehaviour(BehaviourDefinition<B> behaviour)
     {
-        LockHelper.tryLock(lock.writeLock(), tryLockTimeout, "putting behavior definition in 'ClassBehaviourIndex.putClassBehavior()'");
+        LockHelper.tryLock(lock, tryLockTimeout, "putting behavior definition in 'ClassBehaviourIndex.putClassBehavior()'");
         try
         {
             classMap.put(behaviour);
         }
         finally
         {
-            lock.writeLock().unlock();
+            lock.unlock();
         }
     }
 
@@ -234,14 +210,14 @@ import org.alfresco.util.LockHelper;
      */
     public void putServiceBehaviour(BehaviourDefinition<ServiceBehaviourBinding> behaviour)
     {
-        LockHelper.tryLock(lock.writeLock(), tryLockTimeout, "putting behavior definition in 'ClassBehaviourIndex.putServiceBehavior()'");
+        LockHelper.tryLock(lock, tryLockTimeout, "putting behavior definition in 'ClassBehaviourIndex.putServiceBehavior()'");
         try
         {
             serviceMap.put(behaviour);
         }
         finally
         {
-            lock.writeLock().unlock();
+            lock.unlock();
         }
     }
 
@@ -252,17 +228,49 @@ import org.alfresco.util.LockHelper;
      */
     public void removeClassBehaviour(BehaviourDefinition<B> behaviour)
     {
-        LockHelper.tryLock(lock.writeLock(), tryLockTimeout, "removing behavior definition in 'ClassBehaviourIndex.removeClassBehavior()'");
+        LockHelper.tryLock(lock, tryLockTimeout, "removing behavior definition in 'ClassBehaviourIndex.removeClassBehavior()'");
         try
         {
             classMap.remove(behaviour);
         }
         finally
         {
-            lock.writeLock().unlock();
+            lock.unlock();
         }
     }
 
+    /**
+     * Notify the observers that the data dictionary has changed
+     */
+    public void dictionaryChanged()
+    {
+        for (BehaviourChangeObserver<B> listener : observers)
+        {
+            listener.dictionaryChanged();
+        }
+    }
+
+    /**
+     * Publish a snapshot of the bound behaviours.  Called with the lock held, after each change.
+     */
+    private void publishSnapshot()
+    {
+        Map<B, List<BehaviourDefinition<B>>> classBehaviours = new HashMap<B, List<BehaviourDefinition<B>>>();
+        List<BehaviourDefinition> all = new ArrayList<BehaviourDefinition>(classMap.size() + serviceMap.size());
+        for (BehaviourDefinition<B> definition : classMap.getAll())
+        {
+            B binding = definition.getBinding();
+            if (!classBehaviours.containsKey(binding))
+            {
+                classBehaviours.put(binding, Collections.unmodifiableList(new ArrayList<BehaviourDefinition<B>>(classMap.get(binding))));
+            }
+        }
+        all.addAll(classMap.getAll());
+        List<BehaviourDefinition> serviceBehaviours = new ArrayList<BehaviourDefinition>(serviceMap.getAll());
+        all.addAll(serviceBehaviours);
+        snapshot = new Snapshot<B>(classBehaviours, Collections.unmodifiableList(serviceBehaviours), Collections.unmodifiableList(all));
+    }
+
     private boolean isEnabled(B binding)
     {
         // Determine if behaviour has been disabled
@@ -275,4 +283,21 @@ import org.alfresco.util.LockHelper;
         }
         return isEnabled;
     }
+
+    /**
+     * Immutable view of the bound behaviours
+     */
+    private static class Snapshot<B extends ClassBehaviourBinding>
+    {
+        private final Map<B, List<BehaviourDefinition<B>>> classBehaviours;
+        private final List<BehaviourDefinition> serviceBehaviours;
+        private final List<BehaviourDefinition> all;
+
+        private Snapshot(Map<B, List<BehaviourDefinition<B>>> classBehaviours, List<BehaviourDefinition> serviceBehaviours, List<BehaviourDefinition> all)
+        {
+            this.classBehaviours = classBehaviours;
+            this.serviceBehaviours = serviceBehaviours;
+            this.all = all;
+        }
+    }
 }
@@ -2,7 +2,7 @@
  * #%L
  * Alfresco Repository
  * %%
- * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
  * %%
  * This file is part of the Alfresco software. 
  * If the software was purchased under a paid Alfresco license, the terms of 
@@ -32,6 +32,8 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.alfresco.repo.dictionary.DictionaryDAO;
+import org.alfresco.repo.dictionary.DictionaryListener;
 import org.alfresco.repo.policy.Policy.Arg;
 import org.alfresco.repo.tenant.TenantService;
 import org.alfresco.service.cmr.dictionary.AssociationDefinition;
@@ -63,6 +65,9 @@ public class PolicyComponentImpl implements PolicyComponent
     // Dictionary Service
     private DictionaryService dictionary;
     
+    // Dictionary DAO, notifying dictionary changes
+    private DictionaryDAO dictionaryDAO;
+    
     // Behaviour Filter
     private BehaviourFilter behaviourFilter;
     
@@ -102,6 +107,70 @@ public class PolicyComponentImpl implements PolicyComponent
     }
     
 
+    /**
+     * Sets the dictionary DAO, so that the cached policies are rebuilt when the dictionary changes
+     * 
+     * @param dictionaryDAO DictionaryDAO
+     */
+    public void setDictionaryDAO(DictionaryDAO dictionaryDAO)
+    {
+        this.dictionaryDAO = dictionaryDAO;
+    }
+    
+    
+    /**
+     * Registers for dictionary changes
+     */
+    public void init()
+    {
+        if (dictionaryDAO != null)
+        {
+            dictionaryDAO.registerListener(new DictionaryListener()
+            {
+                @Override
+                public void onDictionaryInit()
+                {
+                }
+
+                @Override
+                public void afterDictionaryInit()
+                {
+                    dictionaryChanged();
+                }
+
+                @Override
+                public void afterDictionaryDestroy()
+                {
+                }
+            });
+        }
+    }
+    
+    
+    /**
+     * Clears the cached policies of all the behaviour indexes, as the class hierarchy they were built from may have changed
+     */
+    private synchronized void dictionaryChanged()
+    {
+        for (ClassBehaviourIndex<ClassBehaviourBinding> index : classBehaviours.values())
+        {
+            index.dictionaryChanged();
+        }
+        for (ClassBehaviourIndex<ClassFeatureBehaviourBinding> index : propertyBehaviours.values())
+        {
+            index.dictionaryChanged();
+        }
+        for (ClassBehaviourIndex<ClassFeatureBehaviourBinding> index : associationBehaviours.values())
+        {
+            index.dictionaryChanged();
+        }
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Cleared cached policies after a dictionary change");
+        }
+    }
+    
+
     /**
      * Sets the behaviour filter
      * 
@@ -2,7 +2,7 @@
  * #%L
  * Alfresco Repository
  * %%
- * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
  * %%
  * This file is part of the Alfresco software. 
  * If the software was purchased under a paid Alfresco license, the terms of 
@@ -30,6 +30,7 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
@@ -187,6 +188,36 @@ import org.alfresco.service.cmr.repository.StoreRef;
     }
     
 
+    /**
+     * Gets the policy implementations wrapped by a policy built by {@link #toPolicy(Collection)}, so that
+     * they can be invoked directly instead of through another layer of proxies.
+     * 
+     * @param policy  the policy
+     * @return  the wrapped policy implementations, or the policy itself if it is not a wrapper
+     */
+    @SuppressWarnings("unchecked")
+    protected Collection<P> getPolicies(P policy)
+    {
+        if (Proxy.isProxyClass(policy.getClass()))
+        {
+            InvocationHandler handler = Proxy.getInvocationHandler(policy);
+            if (handler instanceof MultiHandler)
+            {
+                return ((MultiHandler<P>)handler).getPolicies();
+            }
+            else if (handler instanceof SingleHandler)
+            {
+                return Collections.singletonList(((SingleHandler<P>)handler).policyInterface);
+            }
+            else if (handler == NOOPHandler)
+            {
+                return Collections.emptyList();
+            }
+        }
+        return Collections.singletonList(policy);
+    }
+    
+
     /**
      * NOOP Invocation Handler.
      * 
@@ -309,7 +340,7 @@ import org.alfresco.service.cmr.repository.StoreRef;
      */
     private static class MultiHandler<P extends Policy> implements InvocationHandler, PolicyList
     {
-        private Collection<P> policyInterfaces;
+        private final Object[] policyInterfaces;
        
         /**
          * Construct
@@ -318,7 +349,7 @@ import org.alfresco.service.cmr.repository.StoreRef;
          */
         public MultiHandler(Collection<P> policyInterfaces)
         {
-            this.policyInterfaces = Collections.unmodifiableCollection(policyInterfaces);
+            this.policyInterfaces = policyInterfaces.toArray();
         }
         
         /* (non-Javadoc)
@@ -341,7 +372,7 @@ import org.alfresco.service.cmr.repository.StoreRef;
             // Handle Object level methods
             if (method.getName().equals("toString"))
             {
-                return toString() + ": wrapped " + policyInterfaces.size() + " policies";
+                return toString() + ": wrapped " + policyInterfaces.length + " policies";
             }
             else if (method.getName().equals("hashCode"))
             {
@@ -356,9 +387,9 @@ import org.alfresco.service.cmr.repository.StoreRef;
             try
             {
                 Object result = null;
-                for (P policyInterface : policyInterfaces)
+                for (int i = 0; i < policyInterfaces.length; i++)
                 {
-                    result = method.invoke(policyInterface, args);
+                    result = method.invoke(policyInterfaces[i], args);
                 }
                 return result;
             }
@@ -373,7 +404,7 @@ import org.alfresco.service.cmr.repository.StoreRef;
          */
         public Collection getPolicies()
         {
-            return policyInterfaces;
+            return Collections.unmodifiableList(Arrays.asList(policyInterfaces));
         }
     }
     
@@ -2,7 +2,7 @@
  * #%L
  * Alfresco Repository
  * %%
- * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
  * %%
  * This file is part of the Alfresco software. 
  * If the software was purchased under a paid Alfresco license, the terms of 
@@ -27,6 +27,7 @@ package org.alfresco.repo.policy;
 
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 import org.alfresco.api.AlfrescoPublicApi;
@@ -175,7 +176,12 @@ public class PropertyPolicyDelegate<P extends PropertyPolicy>
     public P get(NodeRef nodeRef, Set<QName> classQNames, QName propertyQName)
     {
         checkPropertyType(propertyQName);
-        return factory.toPolicy(getList(nodeRef, classQNames, propertyQName));
+        Set<ClassFeatureBehaviourBinding> bindings = new LinkedHashSet<ClassFeatureBehaviourBinding>();
+        for (QName classQName : classQNames)
+        {
+            bindings.add(new ClassFeatureBehaviourBinding(dictionary, nodeRef, classQName, propertyQName));
+        }
+        return factory.create(bindings);
     }
     
     /**
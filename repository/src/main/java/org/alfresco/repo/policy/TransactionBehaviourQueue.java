@@ -2,7 +2,7 @@
  * #%L
  * Alfresco Repository
  * %%
- * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
  * %%
  * This file is part of the Alfresco software. 
  * If the software was purchased under a paid Alfresco license, the terms of 
@@ -38,6 +38,7 @@ import org.alfresco.repo.policy.Policy.Arg;
 import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
 import org.alfresco.repo.transaction.TransactionListener;
 import org.alfresco.util.GUID;
+import org.alfresco.util.transaction.TransactionalResourceSlot;
 
 
 /**
@@ -50,8 +51,9 @@ public class TransactionBehaviourQueue implements TransactionListener
     /** Id used in equals and hash */
     private String id = GUID.generate();
     
-    // Transaction Keys for Behaviour Execution state
-    private static final String QUEUE_CONTEXT_KEY = TransactionBehaviourQueue.class.getName() + ".context";
+    // Transaction slot for Behaviour Execution state
+    private static final TransactionalResourceSlot<QueueContext> QUEUE_CONTEXT =
+            TransactionalResourceSlot.forKey(TransactionBehaviourQueue.class.getName() + ".context");
     
     
     /**
@@ -68,11 +70,11 @@ public class TransactionBehaviourQueue implements TransactionListener
     public <P extends Policy> void queue(Behaviour behaviour, PolicyDefinition<P> definition, P policyInterface, Method method, Object[] args)
     {
         // Construct queue context, if required
-        QueueContext queueContext = (QueueContext)AlfrescoTransactionSupport.getResource(QUEUE_CONTEXT_KEY);
+        QueueContext queueContext = QUEUE_CONTEXT.get();
         if (queueContext == null)
         {
             queueContext = new QueueContext();
-            AlfrescoTransactionSupport.bindResource(QUEUE_CONTEXT_KEY, queueContext);
+            QUEUE_CONTEXT.set(queueContext);
             AlfrescoTransactionSupport.bindListener(this);
         }
         
@@ -134,7 +136,7 @@ public class TransactionBehaviourQueue implements TransactionListener
     @SuppressWarnings("unchecked")
     public void beforeCommit(boolean readOnly)
     {
-        QueueContext queueContext = (QueueContext)AlfrescoTransactionSupport.getResource(QUEUE_CONTEXT_KEY);
+        QueueContext queueContext = QUEUE_CONTEXT.get();
         ExecutionContext context = queueContext.queue.poll();
         while (context != null)
         {
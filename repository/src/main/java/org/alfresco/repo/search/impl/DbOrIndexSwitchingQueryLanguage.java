@@ -2,7 +2,7 @@
  * #%L
  * Alfresco Repository
  * %%
- * Copyright (C) 2005 - 2022 Alfresco Software Limited
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
  * %%
  * This file is part of the Alfresco software. 
  * If the software was purchased under a paid Alfresco license, the terms of 
@@ -27,12 +27,17 @@ package org.alfresco.repo.search.impl;
 
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.regex.Matcher;
 
 import org.alfresco.repo.domain.node.Node;
+import org.alfresco.repo.domain.qname.QNameDAO;
 import org.alfresco.repo.domain.solr.SearchDAO;
+import org.alfresco.repo.search.SearchEngineResultSet;
+import org.alfresco.repo.search.impl.QueryPlanner.QueryPlan;
 import org.alfresco.repo.search.impl.lucene.AbstractLuceneQueryLanguage;
 import org.alfresco.repo.search.impl.lucene.LuceneQueryLanguageSPI;
 import org.alfresco.repo.search.impl.querymodel.QueryModelException;
@@ -42,6 +47,7 @@ import org.alfresco.repo.solr.NodeParameters;
 import org.alfresco.service.cmr.repository.ChildAssociationRef;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.cmr.repository.StoreRef;
 import org.alfresco.service.cmr.search.QueryConsistency;
 import org.alfresco.service.cmr.search.ResultSet;
 import org.alfresco.service.cmr.search.SearchParameters;
@@ -72,6 +78,13 @@ public class DbOrIndexSwitchingQueryLanguage extends AbstractLuceneQueryLanguage
     private Boolean solrHybridEnabled; // Deprecated
 
     private String subsystemName;
+
+    private QueryPlanner queryPlanner;
+
+    private QNameDAO qnameDAO;
+
+    private boolean gapFillingEnabled = false;
+    private int gapFillingMaxChangedNodes = 10000;
     
     /**
      * @param dbQueryLanguage the dbQueryLanguage to set
@@ -132,6 +145,38 @@ public class DbOrIndexSwitchingQueryLanguage extends AbstractLuceneQueryLanguage
         this.subsystemName = subsystemName;
     }
 
+    /**
+     * @param queryPlanner chooses between the database and the index from the estimated size of a query (optional)
+     */
+    public void setQueryPlanner(QueryPlanner queryPlanner)
+    {
+        this.queryPlanner = queryPlanner;
+    }
+
+    public void setQnameDAO(QNameDAO qnameDAO)
+    {
+        this.qnameDAO = qnameDAO;
+    }
+
+    /**
+     * @param gapFillingEnabled <tt>true</tt> to correct eventually consistent results for the transactions
+     *                          committed since the index was last updated
+     */
+    public void setGapFillingEnabled(boolean gapFillingEnabled)
+    {
+        this.gapFillingEnabled = gapFillingEnabled;
+    }
+
+    /**
+     * @param gapFillingMaxChangedNodes the most nodes changed since the index was last updated for which
+     *                                  results are corrected.  The index results are used as they are
+     *                                  when the index is further behind.
+     */
+    public void setGapFillingMaxChangedNodes(int gapFillingMaxChangedNodes)
+    {
+        this.gapFillingMaxChangedNodes = gapFillingMaxChangedNodes;
+    }
+
     public ResultSet executeQuery(SearchParameters searchParameters)
     {
         QueryConsistency consistency = searchParameters.getQueryConsistency();
@@ -146,6 +191,28 @@ public class DbOrIndexSwitchingQueryLanguage extends AbstractLuceneQueryLanguage
                 consistency = queryConsistency;
             }
         }
+        if (searchParameters.getContinuationToken() != null)
+        {
+            // Only the database query engine can continue from a token
+            consistency = QueryConsistency.TRANSACTIONAL;
+        }
+        if (queryPlanner != null)
+        {
+            QueryPlan plan = planQuery(searchParameters, consistency);
+            if (plan == QueryPlan.SPLIT)
+            {
+                return executeHybridQuery(searchParameters);
+            }
+            else if (plan == QueryPlan.INDEX)
+            {
+                consistency = QueryConsistency.EVENTUAL;
+            }
+            else if (plan == QueryPlan.DB)
+            {
+                // The index is still used if the database cannot execute the query
+                consistency = QueryConsistency.TRANSACTIONAL_IF_POSSIBLE;
+            }
+        }
  
         switch(consistency)
         {
@@ -165,6 +232,10 @@ public class DbOrIndexSwitchingQueryLanguage extends AbstractLuceneQueryLanguage
                     logger.debug(subsystemName+" returned " + results.length() + " results in " +
                                  stopWatch.getLastTaskTimeMillis() + "ms");
                 }
+                if (gapFillingEnabled)
+                {
+                    results = fillGap(searchParameters, results);
+                }
                 return results;
             }
             else
@@ -194,7 +265,7 @@ public class DbOrIndexSwitchingQueryLanguage extends AbstractLuceneQueryLanguage
                 throw new QueryModelException("No query language available");
             }
         case HYBRID:
-            if (((solrHybridEnabled != null) && (!solrHybridEnabled)) || (hybridEnabled == null) || (!hybridEnabled))
+            if (!isHybridEnabled())
             {
                 throw new DisabledFeatureException("Hybrid query is disabled.");
             }
@@ -277,6 +348,37 @@ public class DbOrIndexSwitchingQueryLanguage extends AbstractLuceneQueryLanguage
         }
     }
 
+    private boolean isHybridEnabled()
+    {
+        return ((solrHybridEnabled == null) || solrHybridEnabled) && (hybridEnabled != null) && hybridEnabled;
+    }
+
+    /**
+     * Ask the query planner where to execute a query that may go to either the database or the index.
+     *
+     * @return the plan or <tt>null</tt> to make the usual choice for the query consistency
+     */
+    private QueryPlan planQuery(SearchParameters searchParameters, QueryConsistency consistency)
+    {
+        switch (consistency)
+        {
+        case EVENTUAL:
+        case TRANSACTIONAL_IF_POSSIBLE:
+        case DEFAULT:
+            break;
+        default:
+            return null;
+        }
+        if ((dbQueryLanguage == null) || (indexQueryLanguage == null) || searchParameters.hasFaceting())
+        {
+            return null;
+        }
+        // The merged results of a split query are neither sorted nor paged, so only complete unsorted result sets are split
+        boolean splitAllowed = isHybridEnabled() && (searchDao != null) && searchParameters.getSortDefinitions().isEmpty()
+                    && (searchParameters.getSkipCount() == 0) && (searchParameters.getMaxItems() < 0);
+        return queryPlanner.plan(searchParameters, flattenDBQuery(searchParameters).getQuery(), splitAllowed);
+    }
+
     private SearchParameters flattenDBQuery(SearchParameters sp)
     {
         if (sp.getFilterQueries().size() == 0)
@@ -307,6 +409,141 @@ public class DbOrIndexSwitchingQueryLanguage extends AbstractLuceneQueryLanguage
         }
     }
 
+    /**
+     * Correct index results for the transactions committed since the index was last updated.  The nodes changed
+     * by those transactions are removed from the index results and the nodes among them that the database query
+     * selects are placed after all of the index results, as if they were the last nodes found by the index.  Each
+     * page takes the part of that tail that falls within it, so that no node is returned on more than one page and
+     * no page grows beyond the requested size.  If the database cannot execute the query, only nodes that have been
+     * deleted are removed.
+     * <p>
+     * The corrected page keeps the metadata of the index results.  The number of nodes found is adjusted for the
+     * nodes removed from this page and the nodes added by the database; changed nodes the index found for other
+     * pages cannot be accounted for, so it remains an estimate.
+     */
+    private ResultSet fillGap(SearchParameters searchParameters, ResultSet indexResults)
+    {
+        if (!(indexResults instanceof SolrJSONResultSet) || (dbQueryLanguage == null) || (searchDao == null))
+        {
+            return indexResults;
+        }
+        long lastTxId = ((SolrJSONResultSet) indexResults).getLastIndexedTxId();
+        if (lastTxId <= 0)
+        {
+            // The index did not say how far it has got
+            return indexResults;
+        }
+
+        StopWatch stopWatch = new StopWatch("gap filling");
+        stopWatch.start("get changed nodes");
+        NodeParameters nodeParameters = new NodeParameters();
+        nodeParameters.setFromTxnId(lastTxId + 1);
+        nodeParameters.setToTxnId(Long.MAX_VALUE);
+        nodeParameters.setMaxResults(gapFillingMaxChangedNodes + 1);
+        if (searchParameters.getStores().size() == 1)
+        {
+            StoreRef storeRef = searchParameters.getStores().get(0);
+            nodeParameters.setStoreProtocol(storeRef.getProtocol());
+            nodeParameters.setStoreIdentifier(storeRef.getIdentifier());
+        }
+        List<Node> changedNodeList = searchDao.getNodes(nodeParameters, null, null);
+        stopWatch.stop();
+        if (changedNodeList.isEmpty())
+        {
+            // The index is up to date
+            return indexResults;
+        }
+        if (changedNodeList.size() > gapFillingMaxChangedNodes)
+        {
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Not filling gap in "+subsystemName+" results: more than " + gapFillingMaxChangedNodes +
+                             " nodes changed since last indexed transaction (ID " + lastTxId + ")");
+            }
+            return indexResults;
+        }
+
+        SearchParameters dbSearchParameters = flattenDBQuery(searchParameters).copy();
+        dbSearchParameters.setSinceTxId(lastTxId);
+        // All of the changed nodes are needed to work out which of them fall within the requested page
+        dbSearchParameters.setSkipCount(0);
+        dbSearchParameters.setMaxItems(-1);
+        ResultSet dbResults = null;
+        stopWatch.start("database query");
+        try
+        {
+            dbResults = dbQueryLanguage.executeQuery(dbSearchParameters);
+        }
+        catch (QueryModelException qme)
+        {
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("DB query failed while filling gap in "+subsystemName+" results for " + searchParameters, qme);
+            }
+        }
+        stopWatch.stop();
+
+        stopWatch.start("merge result sets");
+        Set<NodeRef> changedNodeRefs = new HashSet<>(changedNodeList.size() * 2);
+        Set<NodeRef> deletedNodeRefs = new HashSet<>();
+        for (Node n : changedNodeList)
+        {
+            changedNodeRefs.add(n.getNodeRef());
+            if ((qnameDAO != null) && n.getDeleted(qnameDAO))
+            {
+                deletedNodeRefs.add(n.getNodeRef());
+            }
+        }
+        // Keep the order of the index results, leaving out the nodes the database answers for
+        List<ChildAssociationRef> childAssocs = new ArrayList<>();
+        Set<NodeRef> included = new HashSet<>();
+        List<ChildAssociationRef> indexChildAssocs = indexResults.getChildAssocRefs();
+        for (ChildAssociationRef car : indexChildAssocs)
+        {
+            NodeRef nodeRef = car.getChildRef();
+            boolean keep = (dbResults == null) ? !deletedNodeRefs.contains(nodeRef) : !changedNodeRefs.contains(nodeRef);
+            if (keep && included.add(nodeRef))
+            {
+                childAssocs.add(car);
+            }
+        }
+        int removed = indexChildAssocs.size() - childAssocs.size();
+        // The nodes selected by the database follow the last of the index results
+        Map<NodeRef, ChildAssociationRef> dbChildAssocs = new LinkedHashMap<>();
+        if (dbResults != null)
+        {
+            for (ChildAssociationRef car : dbResults.getChildAssocRefs())
+            {
+                dbChildAssocs.putIfAbsent(car.getChildRef(), car);
+            }
+        }
+        int skipCount = Math.max(searchParameters.getSkipCount(), 0);
+        int maxItems = searchParameters.getMaxItems();
+        long indexNumberFound = indexResults.getNumberFound();
+        long tailEnd = indexNumberFound + dbChildAssocs.size();
+        long pageEnd = (maxItems < 0) ? tailEnd : Math.min((long) skipCount + maxItems, tailEnd);
+        long position = indexNumberFound;
+        for (ChildAssociationRef car : dbChildAssocs.values())
+        {
+            if ((position >= skipCount) && (position < pageEnd))
+            {
+                childAssocs.add(car);
+            }
+            position++;
+        }
+        ResultSet results = new GapFilledResultSet(nodeService, childAssocs, (SearchEngineResultSet) indexResults,
+                    tailEnd - removed, pageEnd < tailEnd);
+        stopWatch.stop();
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Filled gap in "+subsystemName+" results since last indexed transaction (ID " + lastTxId + "): " +
+                         "changed nodes=" + changedNodeList.size() + ", " + subsystemName + "=" + indexResults.length() +
+                         ", DB=" + ((dbResults == null) ? "n/a" : dbResults.length()) + ", total=" + results.length());
+            logger.debug(stopWatch.prettyPrint());
+        }
+        return results;
+    }
+
     private ResultSet executeHybridQuery(SearchParameters searchParameters)
     {        
         if (indexQueryLanguage == null || dbQueryLanguage == null)
@@ -341,13 +578,14 @@ public class DbOrIndexSwitchingQueryLanguage extends AbstractLuceneQueryLanguage
         }
         
         long lastTxId = ((SolrJSONResultSet) indexResults).getLastIndexedTxId();
-        searchParameters.setSinceTxId(lastTxId);
+        SearchParameters dbSearchParameters = searchParameters.copy();
+        dbSearchParameters.setSinceTxId(lastTxId);
         if(logger.isDebugEnabled())
         {
-            logger.debug("Hybrid search, using DB query: "+dbQueryLanguage.getName()+" for "+searchParameters);
+            logger.debug("Hybrid search, using DB query: "+dbQueryLanguage.getName()+" for "+dbSearchParameters);
         }
         stopWatch.start("database query");
-        ResultSet dbResults = dbQueryLanguage.executeQuery(searchParameters);
+        ResultSet dbResults = dbQueryLanguage.executeQuery(dbSearchParameters);
         stopWatch.stop();
         if (logger.isDebugEnabled())
         {
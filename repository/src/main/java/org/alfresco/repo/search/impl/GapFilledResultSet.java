@@ -0,0 +1,193 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.search.impl;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.alfresco.repo.search.SearchEngineResultSet;
+import org.alfresco.repo.search.impl.solr.facet.facetsresponse.GenericFacetResponse;
+import org.alfresco.repo.search.impl.solr.facet.facetsresponse.Metric;
+import org.alfresco.repo.search.results.ChildAssocRefResultSet;
+import org.alfresco.service.cmr.repository.ChildAssociationRef;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.cmr.search.ResultSetMetaData;
+import org.alfresco.service.cmr.search.SpellCheckResult;
+import org.alfresco.util.Pair;
+
+/**
+ * A page of index results that has been corrected from the database for the transactions the index has
+ * not caught up with yet.
+ * <p>
+ * The rows are given by the caller.  Everything else - scores, facets, highlighting, spell checking and the
+ * last indexed transaction - is taken from the index results, apart from the number of nodes found and whether
+ * there are more pages, which the caller works out for the corrected results.  Facet counts are left as the
+ * index reported them.
+ *
+ * @since 23.3
+ */
+class GapFilledResultSet extends ChildAssocRefResultSet implements SearchEngineResultSet
+{
+    private final SearchEngineResultSet indexResults;
+    private final Map<NodeRef, Integer> indexPositions;
+    private final long numberFound;
+    private final boolean hasMore;
+
+    /**
+     * @param nodeService           used to resolve the rows
+     * @param childAssocs           the rows of the corrected page
+     * @param indexResults          the page as returned by the index
+     * @param numberFound           the estimated number of nodes found after correction
+     * @param hasMore               <tt>true</tt> if there are more pages after this one
+     */
+    GapFilledResultSet(NodeService nodeService, List<ChildAssociationRef> childAssocs, SearchEngineResultSet indexResults,
+                long numberFound, boolean hasMore)
+    {
+        super(nodeService, childAssocs);
+        this.indexResults = indexResults;
+        this.numberFound = numberFound;
+        this.hasMore = hasMore;
+        List<ChildAssociationRef> indexChildAssocs = indexResults.getChildAssocRefs();
+        indexPositions = new HashMap<>(indexChildAssocs.size() * 2);
+        for (int i = 0; i < indexChildAssocs.size(); i++)
+        {
+            indexPositions.putIfAbsent(indexChildAssocs.get(i).getChildRef(), i);
+        }
+    }
+
+    @Override
+    public float getScore(int n)
+    {
+        Integer indexPosition = indexPositions.get(getNodeRef(n));
+        // Nodes found by the database have not been scored
+        return (indexPosition == null) ? super.getScore(n) : indexResults.getScore(indexPosition);
+    }
+
+    @Override
+    public long getNumberFound()
+    {
+        return numberFound;
+    }
+
+    @Override
+    public boolean hasMore()
+    {
+        return hasMore;
+    }
+
+    @Override
+    public int getStart()
+    {
+        return indexResults.getStart();
+    }
+
+    @Override
+    public ResultSetMetaData getResultSetMetaData()
+    {
+        return indexResults.getResultSetMetaData();
+    }
+
+    @Override
+    public void close()
+    {
+        indexResults.close();
+    }
+
+    @Override
+    public Long getQueryTime()
+    {
+        return indexResults.getQueryTime();
+    }
+
+    @Override
+    public List<Pair<String, Integer>> getFieldFacet(String field)
+    {
+        return indexResults.getFieldFacet(field);
+    }
+
+    @Override
+    public Map<String, List<Pair<String, Integer>>> getFieldFacets()
+    {
+        return indexResults.getFieldFacets();
+    }
+
+    @Override
+    public Map<String, List<Pair<String, Integer>>> getFacetIntervals()
+    {
+        return indexResults.getFacetIntervals();
+    }
+
+    @Override
+    public Map<String, List<Map<String, String>>> getFacetRanges()
+    {
+        return indexResults.getFacetRanges();
+    }
+
+    @Override
+    public List<GenericFacetResponse> getPivotFacets()
+    {
+        return indexResults.getPivotFacets();
+    }
+
+    @Override
+    public Map<String, Set<Metric>> getStats()
+    {
+        return indexResults.getStats();
+    }
+
+    @Override
+    public Map<String, Integer> getFacetQueries()
+    {
+        return indexResults.getFacetQueries();
+    }
+
+    @Override
+    public Map<NodeRef, List<Pair<String, List<String>>>> getHighlighting()
+    {
+        return indexResults.getHighlighting();
+    }
+
+    @Override
+    public SpellCheckResult getSpellCheckResult()
+    {
+        return indexResults.getSpellCheckResult();
+    }
+
+    @Override
+    public long getLastIndexedTxId()
+    {
+        return indexResults.getLastIndexedTxId();
+    }
+
+    @Override
+    public boolean getProcessedDenies()
+    {
+        return indexResults.getProcessedDenies();
+    }
+}
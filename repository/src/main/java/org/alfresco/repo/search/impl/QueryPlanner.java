@@ -0,0 +1,437 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.search.impl;
+
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.alfresco.repo.search.impl.parsers.FTSParser;
+import org.alfresco.repo.search.impl.parsers.FTSQueryParser;
+import org.alfresco.repo.search.impl.querymodel.QueryOptions;
+import org.alfresco.repo.search.impl.querymodel.QueryOptions.Connective;
+import org.alfresco.repo.search.impl.querymodel.impl.db.QueryCardinalityStatistics;
+import org.alfresco.service.cmr.dictionary.DataTypeDefinition;
+import org.alfresco.service.cmr.dictionary.DictionaryService;
+import org.alfresco.service.cmr.dictionary.PropertyDefinition;
+import org.alfresco.service.cmr.search.SearchParameters;
+import org.alfresco.service.namespace.NamespaceService;
+import org.alfresco.service.namespace.QName;
+import org.antlr.runtime.tree.CommonTree;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Chooses where an FTS query is executed from an estimate of the number of nodes it selects.
+ * <p>
+ * The estimate is taken from the {@link QueryCardinalityStatistics per-type, per-aspect and per-property counts}
+ * of nodes: a conjunction selects no more than its most selective part and a disjunction no more than the sum
+ * of its parts.  Queries that need the full text index go to the index.  Metadata queries estimated to select
+ * no more than {@link #setDbMaxEstimatedRows(long) dbMaxEstimatedRows} nodes go to the database.  Larger
+ * metadata queries go to the index or, when hybrid queries are allowed, are split so that the index answers
+ * for everything it has indexed and the database answers for the transactions since then.
+ * <p>
+ * Each decision is counted, see {@link #getDecisionCount(QueryPlan)}.
+ *
+ * @since 23.3
+ */
+public class QueryPlanner
+{
+    private static final Log logger = LogFactory.getLog(QueryPlanner.class);
+
+    public static final long DEFAULT_DB_MAX_ESTIMATED_ROWS = 10000L;
+
+    /**
+     * Where a query is executed.
+     */
+    public enum QueryPlan
+    {
+        /** The query is executed by the database */
+        DB,
+        /** The query is executed by the index */
+        INDEX,
+        /** The index answers for the nodes it has indexed and the database for the transactions since then */
+        SPLIT;
+    }
+
+    private DictionaryService dictionaryService;
+    private NamespaceService namespaceService;
+    private QueryCardinalityStatistics statistics;
+    private boolean enabled = false;
+    private long dbMaxEstimatedRows = DEFAULT_DB_MAX_ESTIMATED_ROWS;
+
+    private final Map<QueryPlan, LongAdder> decisions = new EnumMap<QueryPlan, LongAdder>(QueryPlan.class);
+    private final LongAdder undecided = new LongAdder();
+
+    public QueryPlanner()
+    {
+        for (QueryPlan plan : QueryPlan.values())
+        {
+            decisions.put(plan, new LongAdder());
+        }
+    }
+
+    public void setDictionaryService(DictionaryService dictionaryService)
+    {
+        this.dictionaryService = dictionaryService;
+    }
+
+    public void setNamespaceService(NamespaceService namespaceService)
+    {
+        this.namespaceService = namespaceService;
+    }
+
+    public void setStatistics(QueryCardinalityStatistics statistics)
+    {
+        this.statistics = statistics;
+    }
+
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * @param dbMaxEstimatedRows        the largest estimated number of nodes for which the database is used
+     */
+    public void setDbMaxEstimatedRows(long dbMaxEstimatedRows)
+    {
+        this.dbMaxEstimatedRows = dbMaxEstimatedRows;
+    }
+
+    /**
+     * @return              Returns the number of queries for which the given plan was chosen
+     */
+    public long getDecisionCount(QueryPlan plan)
+    {
+        return decisions.get(plan).sum();
+    }
+
+    /**
+     * @return              Returns the number of queries for which no plan could be chosen
+     */
+    public long getUndecidedCount()
+    {
+        return undecided.sum();
+    }
+
+    /**
+     * Choose where to execute a query.
+     *
+     * @param searchParameters      the query
+     * @param ftsExpression         the FTS expression to estimate, including any filter queries
+     * @param splitAllowed          <tt>true</tt> if the query may be split between the index and the database
+     * @return                      Returns the plan or <tt>null</tt> if the planner is disabled, the node counts have not
+     *                              been collected yet or the query cannot be estimated
+     */
+    public QueryPlan plan(SearchParameters searchParameters, String ftsExpression, boolean splitAllowed)
+    {
+        if (!enabled)
+        {
+            return null;
+        }
+        if (!statistics.isAvailable())
+        {
+            // The counts are collected in the background; keep the default plan until they are
+            undecided.increment();
+            return null;
+        }
+
+        Estimate estimate = new Estimate(statistics.getNodeCount(), searchParameters.getDefaultFieldName());
+        long rows;
+        try
+        {
+            QueryOptions options = QueryOptions.create(searchParameters);
+            FTSParser.Mode mode = (options.getDefaultFTSConnective() == Connective.AND) ? FTSParser.Mode.DEFAULT_CONJUNCTION
+                    : FTSParser.Mode.DEFAULT_DISJUNCTION;
+            CommonTree tree = FTSQueryParser.parseFTS(ftsExpression, mode, options.getDefaultFTSFieldConnective());
+            rows = estimate(tree, null, estimate);
+        }
+        catch (RuntimeException e)
+        {
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Unable to estimate query: " + ftsExpression, e);
+            }
+            undecided.increment();
+            return null;
+        }
+        if (estimate.unknown)
+        {
+            undecided.increment();
+            return null;
+        }
+
+        QueryPlan plan;
+        if (estimate.fullText)
+        {
+            plan = QueryPlan.INDEX;
+        }
+        else if (rows <= dbMaxEstimatedRows)
+        {
+            plan = QueryPlan.DB;
+        }
+        else
+        {
+            plan = splitAllowed ? QueryPlan.SPLIT : QueryPlan.INDEX;
+        }
+        decisions.get(plan).increment();
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Query plan " + plan + " (estimated rows: " + rows + ", full text: " + estimate.fullText + ") for " + ftsExpression);
+        }
+        return plan;
+    }
+
+    private long estimate(CommonTree node, String field, Estimate estimate)
+    {
+        switch (node.getType())
+        {
+        case FTSParser.DISJUNCTION:
+        case FTSParser.FIELD_DISJUNCTION:
+            long sum = 0L;
+            for (int i = 0; i < node.getChildCount(); i++)
+            {
+                sum += estimate((CommonTree) node.getChild(i), field, estimate);
+            }
+            return Math.min(sum, estimate.nodeCount);
+        case FTSParser.CONJUNCTION:
+        case FTSParser.FIELD_CONJUNCTION:
+            long min = estimate.nodeCount;
+            for (int i = 0; i < node.getChildCount(); i++)
+            {
+                CommonTree child = (CommonTree) node.getChild(i);
+                long rows = estimate(child, field, estimate);
+                if (isRequired(child))
+                {
+                    min = Math.min(min, rows);
+                }
+            }
+            return min;
+        case FTSParser.NEGATION:
+        case FTSParser.FIELD_NEGATION:
+        case FTSParser.EXCLUDE:
+        case FTSParser.FIELD_EXCLUDE:
+            estimate((CommonTree) node.getChild(0), field, estimate);
+            return estimate.nodeCount;
+        case FTSParser.DEFAULT:
+        case FTSParser.FIELD_DEFAULT:
+        case FTSParser.MANDATORY:
+        case FTSParser.FIELD_MANDATORY:
+        case FTSParser.OPTIONAL:
+        case FTSParser.FIELD_OPTIONAL:
+            return estimate((CommonTree) node.getChild(0), field, estimate);
+        case FTSParser.FIELD_GROUP:
+            return estimate((CommonTree) node.getChild(1), getFieldName((CommonTree) node.getChild(0)), estimate);
+        case FTSParser.TERM:
+        case FTSParser.FG_TERM:
+        case FTSParser.EXACT_TERM:
+        case FTSParser.FG_EXACT_TERM:
+        case FTSParser.PHRASE:
+        case FTSParser.FG_PHRASE:
+        case FTSParser.EXACT_PHRASE:
+        case FTSParser.FG_EXACT_PHRASE:
+        case FTSParser.SYNONYM:
+        case FTSParser.FG_SYNONYM:
+        case FTSParser.RANGE:
+        case FTSParser.FG_RANGE:
+            CommonTree fieldReferenceNode = (CommonTree) node.getFirstChildWithType(FTSParser.FIELD_REF);
+            String testField = (fieldReferenceNode != null) ? getFieldName(fieldReferenceNode) : field;
+            if (testField == null)
+            {
+                testField = estimate.defaultField;
+            }
+            if (node.getFirstChildWithType(FTSParser.FUZZY) != null)
+            {
+                estimate.fullText = true;
+            }
+            boolean isRange = (node.getType() == FTSParser.RANGE) || (node.getType() == FTSParser.FG_RANGE);
+            return estimateTest(testField, isRange ? null : node.getChild(0).getText(), estimate);
+        case FTSParser.PROXIMITY:
+        case FTSParser.FG_PROXIMITY:
+            estimate.fullText = true;
+            return estimate.nodeCount;
+        default:
+            // Templates and anything else we do not understand
+            estimate.unknown = true;
+            return estimate.nodeCount;
+        }
+    }
+
+    private static boolean isRequired(CommonTree node)
+    {
+        switch (node.getType())
+        {
+        case FTSParser.OPTIONAL:
+        case FTSParser.FIELD_OPTIONAL:
+        case FTSParser.EXCLUDE:
+        case FTSParser.FIELD_EXCLUDE:
+        case FTSParser.NEGATION:
+        case FTSParser.FIELD_NEGATION:
+            return false;
+        default:
+            return true;
+        }
+    }
+
+    private long estimateTest(String field, String value, Estimate estimate)
+    {
+        if (field == null)
+        {
+            estimate.unknown = true;
+            return estimate.nodeCount;
+        }
+        if (field.startsWith("@"))
+        {
+            field = field.substring(1);
+        }
+        switch (field)
+        {
+        case "TEXT":
+        case "ALL":
+        case "TAG":
+            estimate.fullText = true;
+            return estimate.nodeCount;
+        case "ID":
+            return 1L;
+        case "TYPE":
+        case "EXACTTYPE":
+            if (value == null)
+            {
+                return estimate.nodeCount;
+            }
+            long types = 0L;
+            for (QName type : getClasses(resolve(value), field.equals("TYPE"), true))
+            {
+                types += statistics.getTypeCardinality(type);
+            }
+            return types;
+        case "ASPECT":
+        case "EXACTASPECT":
+            if (value == null)
+            {
+                return estimate.nodeCount;
+            }
+            long aspects = 0L;
+            for (QName aspect : getClasses(resolve(value), field.equals("ASPECT"), false))
+            {
+                aspects += statistics.getAspectCardinality(aspect);
+            }
+            return aspects;
+        default:
+            if ((field.indexOf(':') < 0) && (field.indexOf('}') < 0) && field.equals(field.toUpperCase()))
+            {
+                // Some other special field, such as PARENT or PATH
+                return estimate.nodeCount;
+            }
+            PropertyDefinition propertyDef = dictionaryService.getProperty(resolve(field));
+            if (propertyDef == null)
+            {
+                estimate.unknown = true;
+                return estimate.nodeCount;
+            }
+            if (propertyDef.getDataType().getName().equals(DataTypeDefinition.CONTENT))
+            {
+                estimate.fullText = true;
+                return estimate.nodeCount;
+            }
+            return statistics.getPropertyCardinality(propertyDef.getName());
+        }
+    }
+
+    private Set<QName> getClasses(QName classQName, boolean includeSubClasses, boolean isType)
+    {
+        Set<QName> classes = new HashSet<QName>();
+        classes.add(classQName);
+        if (includeSubClasses)
+        {
+            classes.addAll(isType ? dictionaryService.getSubTypes(classQName, true) : dictionaryService.getSubAspects(classQName, true));
+        }
+        return classes;
+    }
+
+    private QName resolve(String text)
+    {
+        StringBuilder unescaped = new StringBuilder(text.length());
+        int start = 0;
+        int end = text.length();
+        if ((end > 1) && (text.charAt(0) == '"') && (text.charAt(end - 1) == '"'))
+        {
+            start++;
+            end--;
+        }
+        for (int i = start; i < end; i++)
+        {
+            char c = text.charAt(i);
+            if ((c == '\\') && (i + 1 < end))
+            {
+                c = text.charAt(++i);
+            }
+            unescaped.append(c);
+        }
+        return QName.resolveToQName(namespaceService, unescaped.toString());
+    }
+
+    private static String getFieldName(CommonTree fieldReferenceNode)
+    {
+        String name = fieldReferenceNode.getChild(0).getText();
+        CommonTree prefix = (CommonTree) fieldReferenceNode.getFirstChildWithType(FTSParser.PREFIX);
+        if (prefix != null)
+        {
+            return prefix.getChild(0).getText() + ":" + name;
+        }
+        CommonTree uri = (CommonTree) fieldReferenceNode.getFirstChildWithType(FTSParser.NAME_SPACE);
+        if (uri != null)
+        {
+            return uri.getChild(0).getText() + name;
+        }
+        return name;
+    }
+
+    /**
+     * What has been learnt about a query while estimating it.
+     */
+    private static class Estimate
+    {
+        private final long nodeCount;
+        private final String defaultField;
+        private boolean fullText = false;
+        private boolean unknown = false;
+
+        private Estimate(long nodeCount, String defaultField)
+        {
+            this.nodeCount = nodeCount;
+            this.defaultField = defaultField;
+        }
+    }
+}
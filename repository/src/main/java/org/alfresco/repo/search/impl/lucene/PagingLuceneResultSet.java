@@ -298,6 +298,12 @@ public class PagingLuceneResultSet implements ResultSet, Serializable
         return wrapped.getSpellCheckResult();
     }
 
+    @Override
+    public String getContinuationToken()
+    {
+        return wrapped.getContinuationToken();
+    }
+
     public void setTrimmedResultSet(boolean value)
     {
         this.trimmedResultSet = value;
@@ -0,0 +1,58 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.search.impl.querymodel.impl.db;
+
+/**
+ * The number of nodes of a type, or with an aspect or property, as counted by the
+ * <tt>select_*Cardinality</tt> metadata queries.
+ *
+ * @since 23.3
+ */
+public class CardinalityEntity
+{
+    private Long qnameId;
+    private long cardinality;
+
+    public Long getQnameId()
+    {
+        return qnameId;
+    }
+
+    public void setQnameId(Long qnameId)
+    {
+        this.qnameId = qnameId;
+    }
+
+    public long getCardinality()
+    {
+        return cardinality;
+    }
+
+    public void setCardinality(long cardinality)
+    {
+        this.cardinality = cardinality;
+    }
+}
@@ -78,6 +78,10 @@ public class DBQuery extends BaseQuery implements DBQueryBuilderComponent
 
     private int offset = 0;
 
+    private Long afterNodeId;
+
+    private boolean orderByNodeId = false;
+
     /**
      * @param source Source
      * @param constraint Constraint
@@ -153,6 +157,38 @@ public class DBQuery extends BaseQuery implements DBQueryBuilderComponent
         this.offset = offset;
     }
 
+    /**
+     * @return the ID of the node after which results start, for keyset paging
+     */
+    public Long getAfterNodeId()
+    {
+        return afterNodeId;
+    }
+
+    /**
+     * @param afterNodeId only select nodes with a greater ID, or <tt>null</tt> to start at the first node
+     */
+    public void setAfterNodeId(Long afterNodeId)
+    {
+        this.afterNodeId = afterNodeId;
+    }
+
+    /**
+     * @return <tt>true</tt> if results are sorted by node ID rather than by the query orderings
+     */
+    public boolean getOrderByNodeId()
+    {
+        return orderByNodeId;
+    }
+
+    /**
+     * @param orderByNodeId sort results by node ID, which is required for keyset paging
+     */
+    public void setOrderByNodeId(boolean orderByNodeId)
+    {
+        this.orderByNodeId = orderByNodeId;
+    }
+
     public List<DBQueryBuilderJoinCommand> getJoins()
     {
         HashMap<QName, DBQueryBuilderJoinCommand> singleJoins = new HashMap<QName, DBQueryBuilderJoinCommand>();
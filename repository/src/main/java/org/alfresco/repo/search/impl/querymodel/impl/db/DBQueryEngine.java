@@ -28,8 +28,11 @@ package org.alfresco.repo.search.impl.querymodel.impl.db;
 import static org.alfresco.repo.domain.node.AbstractNodeDAOImpl.CACHE_REGION_NODES;
 
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.BitSet;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -37,6 +40,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
 
 import javax.annotation.concurrent.NotThreadSafe;
 
@@ -53,7 +58,14 @@ import org.alfresco.repo.domain.permissions.Authority;
 import org.alfresco.repo.domain.qname.QNameDAO;
 import org.alfresco.repo.search.SimpleResultSetMetaData;
 import org.alfresco.repo.search.impl.lucene.PagingLuceneResultSet;
+import org.alfresco.repo.search.impl.querymodel.Argument;
+import org.alfresco.repo.search.impl.querymodel.Conjunction;
+import org.alfresco.repo.search.impl.querymodel.Constraint;
+import org.alfresco.repo.search.impl.querymodel.Disjunction;
 import org.alfresco.repo.search.impl.querymodel.FunctionEvaluationContext;
+import org.alfresco.repo.search.impl.querymodel.FunctionInvokation;
+import org.alfresco.repo.search.impl.querymodel.ListArgument;
+import org.alfresco.repo.search.impl.querymodel.LiteralArgument;
 import org.alfresco.repo.search.impl.querymodel.Query;
 import org.alfresco.repo.search.impl.querymodel.QueryEngine;
 import org.alfresco.repo.search.impl.querymodel.QueryEngineResults;
@@ -63,6 +75,7 @@ import org.alfresco.repo.search.impl.querymodel.QueryOptions;
 import org.alfresco.repo.security.authentication.AuthenticationUtil;
 import org.alfresco.repo.security.permissions.impl.acegi.FilteringResultSet;
 import org.alfresco.repo.tenant.TenantService;
+import org.alfresco.repo.transaction.CommitGeneration;
 import org.alfresco.service.cmr.dictionary.DictionaryService;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.repository.NodeService;
@@ -96,6 +109,12 @@ public class DBQueryEngine implements QueryEngine
 
     private static final int DEFAULT_MAX_PAGING_BATCH_SIZE = 10000;
 
+    private static final int DEFAULT_RESULT_CACHE_MAX_NODE_IDS = 1000;
+
+    private static final String CONTINUATION_TOKEN_VERSION = "1";
+
+    private static final Pattern RELATIVE_DATE = Pattern.compile("(?i)(NOW|TODAY)([/+\\-].*)?");
+
     protected SqlSessionTemplate template;
 
     protected QNameDAO qnameDAO;
@@ -126,6 +145,14 @@ public class DBQueryEngine implements QueryEngine
 
     private int maxPagingBatchSize = DEFAULT_MAX_PAGING_BATCH_SIZE;
 
+    private SimpleCache<String, CachedQueryResult> resultCache;
+
+    private CommitGeneration commitGeneration;
+
+    private boolean resultCacheEnabled = true;
+
+    private int resultCacheMaxNodeIds = DEFAULT_RESULT_CACHE_MAX_NODE_IDS;
+
     protected EntityLookupCache<Long, Node, NodeRef> nodesCache;
 
     private List<Pair<Long, StoreRef>> stores;
@@ -186,6 +213,44 @@ public class DBQueryEngine implements QueryEngine
         this.maxPagingBatchSize = maxPagingBatchSize;
     }
 
+    /**
+     * @param resultCache           cache of the node IDs selected by previous queries, before any permission
+     *                              checks.  Results are not cached if this is not set.
+     * @since 23.3
+     */
+    public void setResultCache(SimpleCache<String, CachedQueryResult> resultCache)
+    {
+        this.resultCache = resultCache;
+    }
+
+    /**
+     * @param commitGeneration      changes whenever a write transaction commits, making cached results stale.
+     *                              Results are not cached if this is not set.
+     * @since 23.3
+     */
+    public void setCommitGeneration(CommitGeneration commitGeneration)
+    {
+        this.commitGeneration = commitGeneration;
+    }
+
+    /**
+     * @since 23.3
+     */
+    public void setResultCacheEnabled(boolean resultCacheEnabled)
+    {
+        this.resultCacheEnabled = resultCacheEnabled;
+    }
+
+    /**
+     * @param resultCacheMaxNodeIds the maximum number of node IDs kept for a single query.  Longer results
+     *                              are cached as a prefix that is completed from the database when needed.
+     * @since 23.3
+     */
+    public void setResultCacheMaxNodeIds(int resultCacheMaxNodeIds)
+    {
+        this.resultCacheMaxNodeIds = resultCacheMaxNodeIds;
+    }
+
     public void setMetadataIndexCheck2(OptionalPatchApplicationCheckBootstrapBean metadataIndexCheck2)
     {
         this.metadataIndexCheck2 = metadataIndexCheck2;
@@ -313,6 +378,18 @@ public class DBQueryEngine implements QueryEngine
             sinceTxId = -1L;
         }
         dbQuery.setSinceTxId(sinceTxId);
+
+        String continuationToken = options.getContinuationToken();
+        if (continuationToken != null)
+        {
+            if (dbQuery.getHasOrderBy())
+            {
+                throw new QueryModelException("Continuation tokens are not supported for queries with a sort order");
+            }
+            // Keyset paging: seek past the last node of the previous page instead of skipping rows
+            dbQuery.setOrderByNodeId(true);
+            dbQuery.setAfterNodeId(decodeContinuationToken(options, continuationToken));
+        }
         
         logger.debug("- query is being prepared");
         dbQuery.prepare(namespaceService, dictionaryService, qnameDAO, nodeDAO, tenantService, selectorGroup,
@@ -365,9 +442,9 @@ public class DBQueryEngine implements QueryEngine
 
         List<Node> nodes = new ArrayList<>();
         int requiredNodes = computeRequiredNodesCount(options);
+        AtomicLong quitChecksAtNodeId = new AtomicLong(-1L);
         
-        logger.debug("- query sent to the database");
-        performTmdqSelect(pickQueryTemplate(options, dbQuery), dbQuery, requiredNodes, new ResultHandler<Node>()
+        ResultHandler<Node> handler = new ResultHandler<Node>()
         {
             @Override
             public void handleResult(ResultContext<? extends Node> context)
@@ -406,6 +483,7 @@ public class DBQueryEngine implements QueryEngine
                 
                 if (permissionAssessor.shouldQuitChecks())
                 {
+                    quitChecksAtNodeId.set(node.getId());
                     context.stop();
                     return;
                 }
@@ -422,12 +500,30 @@ public class DBQueryEngine implements QueryEngine
                     return nodes.size() >= options.getSkipCount();
                 }
             }
-        });
+        };
+
+        String statement = pickQueryTemplate(options, dbQuery);
+        String resultCacheKey = getResultCacheKey(options, dbQuery);
+        if (resultCacheKey == null)
+        {
+            logger.debug("- query sent to the database");
+            performTmdqSelect(statement, dbQuery, requiredNodes, handler);
+        }
+        else
+        {
+            performCachedTmdqSelect(resultCacheKey, statement, dbQuery, requiredNodes, handler);
+        }
 
         int numberFound = nodes.size();
+        String nextContinuationToken = null;
+        if (dbQuery.getOrderByNodeId())
+        {
+            nextContinuationToken = getNextContinuationToken(options, nodes, quitChecksAtNodeId.get());
+        }
         nodes.removeAll(Collections.singleton(null));
         
         DBResultSet rs =  createResultSet(options, nodes, numberFound);
+        rs.setContinuationToken(nextContinuationToken);
         FilteringResultSet frs = new FilteringResultSet(rs, formInclusionMask(nodes));
         frs.setResultSetMetaData(new SimpleResultSetMetaData(LimitBy.UNLIMITED, PermissionEvaluationMode.EAGER, rs.getResultSetMetaData().getSearchParameters()));
  
@@ -454,7 +550,12 @@ public class DBQueryEngine implements QueryEngine
 
     private void performTmdqSelectPaging(String statement, DBQuery dbQuery, int requiredNodes, ResultHandler<Node> handler)
     {
-        int batchStart = 0;
+        performTmdqSelectPaging(statement, dbQuery, 0, requiredNodes, handler);
+    }
+
+    private void performTmdqSelectPaging(String statement, DBQuery dbQuery, int offset, int requiredNodes, ResultHandler<Node> handler)
+    {
+        int batchStart = offset;
         int batchSize = requiredNodes * 2;
         batchSize = Math.min(Math.max(batchSize, minPagingBatchSize), maxPagingBatchSize);
         DefaultResultContext<Node> resultCtx = new DefaultResultContext<>();
@@ -483,6 +584,362 @@ public class DBQueryEngine implements QueryEngine
         }
     }
 
+    /**
+     * Build the key under which the unfiltered results of a query are cached.  The key is made up of the
+     * query model, the store and the query options that affect which nodes are selected; paging and
+     * permission settings are not part of it as they are applied to the cached results.
+     *
+     * @return                      the key or <tt>null</tt> if the results of the query must not be cached
+     */
+    private String getResultCacheKey(QueryOptions options, DBQuery dbQuery)
+    {
+        if (resultCache == null || commitGeneration == null || !resultCacheEnabled)
+        {
+            return null;
+        }
+        String queryString = options.getQuery();
+        if (queryString == null || dependsOnTime(dbQuery.getConstraint()))
+        {
+            // The results depend on the time at which the query runs
+            return null;
+        }
+        if (options.getQueryParameterDefinitions() != null && !options.getQueryParameterDefinitions().isEmpty())
+        {
+            return null;
+        }
+        if (nodeDAO.getCurrentTransactionId(false) != null)
+        {
+            // The transaction has changed nodes that other transactions cannot see
+            return null;
+        }
+        StringBuilder key = new StringBuilder(queryString.length() * 4);
+        key.append(dbQuery.getStoreId()).append('\n')
+           .append(dbQuery.getSinceTxId()).append('\n')
+           .append(queryString).append('\n')
+           .append(options.getDefaultFieldName()).append('\n')
+           .append(options.getDefaultFTSConnective()).append('\n')
+           .append(options.getDefaultFTSFieldConnective()).append('\n')
+           .append(options.getLocales()).append('\n')
+           .append(options.getMlAnalaysisMode()).append('\n')
+           .append(options.getExcludeTenantFilter()).append('\n')
+           .append(options.getQueryTemplates()).append('\n')
+           .append(dbQuery.getOrderByNodeId()).append('\n')
+           .append(dbQuery.getAfterNodeId()).append('\n')
+           .append(dbQuery);
+        return key.toString();
+    }
+
+    /**
+     * Check whether a constraint compares against a date relative to the time at which the query runs, such as
+     * <tt>NOW</tt>, <tt>NOW/DAY-1DAY</tt> or <tt>TODAY</tt>.
+     */
+    private static boolean dependsOnTime(Constraint constraint)
+    {
+        if (constraint instanceof Conjunction)
+        {
+            return ((Conjunction) constraint).getConstraints().stream().anyMatch(DBQueryEngine::dependsOnTime);
+        }
+        if (constraint instanceof Disjunction)
+        {
+            return ((Disjunction) constraint).getConstraints().stream().anyMatch(DBQueryEngine::dependsOnTime);
+        }
+        if (constraint instanceof FunctionInvokation)
+        {
+            return dependsOnTime(((FunctionInvokation) constraint).getFunctionArguments().values());
+        }
+        return false;
+    }
+
+    private static boolean dependsOnTime(Collection<? extends Argument> arguments)
+    {
+        for (Argument argument : arguments)
+        {
+            if (argument instanceof FunctionInvokation)
+            {
+                if (dependsOnTime(((FunctionInvokation) argument).getFunctionArguments().values()))
+                {
+                    return true;
+                }
+            }
+            else if (argument instanceof ListArgument)
+            {
+                if (dependsOnTime(((ListArgument) argument).getArguments()))
+                {
+                    return true;
+                }
+            }
+            else if (argument instanceof LiteralArgument)
+            {
+                Serializable value = argument.getValue(null);
+                if (value instanceof String && RELATIVE_DATE.matcher(((String) value).trim()).matches())
+                {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Select the nodes for a query, replaying the node IDs of a previous execution if nothing has been
+     * committed since.  Only the raw database results are cached; the handler still applies the permission
+     * checks and paging of the current query.
+     * <p>
+     * The commit generation is taken before the database is read.  Any transaction that commits after that
+     * point, whether or not the query saw its changes, replaces the generation and so the results recorded
+     * here are never replayed against a later generation.
+     */
+    private void performCachedTmdqSelect(String resultCacheKey, String statement, DBQuery dbQuery, int requiredNodes, ResultHandler<Node> handler)
+    {
+        String generation = commitGeneration.getGeneration();
+        CachedQueryResult cachedResult = resultCache.get(resultCacheKey);
+        if (cachedResult != null && !generation.equals(cachedResult.getGeneration()))
+        {
+            // Transactions have been committed since the results were cached
+            resultCache.remove(resultCacheKey);
+            cachedResult = null;
+        }
+        List<Node> cachedNodes = (cachedResult == null) ? null : getCachedNodes(cachedResult);
+        if (cachedNodes != null)
+        {
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("- replaying " + cachedNodes.size() + " cached node IDs" + (cachedResult.isComplete() ? "" : " (partial)"));
+            }
+            DefaultResultContext<Node> resultCtx = new DefaultResultContext<>();
+            for (Node node : cachedNodes)
+            {
+                resultCtx.nextResultObject(node);
+                handler.handleResult(resultCtx);
+                if (resultCtx.isStopped())
+                {
+                    return;
+                }
+            }
+            if (!cachedResult.isComplete())
+            {
+                logger.debug("- query sent to the database for the remaining results");
+                performTmdqSelectFrom(statement, dbQuery, cachedNodes.size(), requiredNodes, handler);
+            }
+            return;
+        }
+
+        logger.debug("- query sent to the database");
+        RecordingResultHandler recorder = new RecordingResultHandler(handler, resultCacheMaxNodeIds);
+        performTmdqSelect(statement, dbQuery, requiredNodes, recorder);
+        resultCache.put(resultCacheKey, recorder.getResult(generation));
+    }
+
+    /**
+     * Run the query, passing on the results after the given number of rows.
+     */
+    private void performTmdqSelectFrom(String statement, DBQuery dbQuery, int offset, int requiredNodes, ResultHandler<Node> handler)
+    {
+        if (usePagingQuery)
+        {
+            performTmdqSelectPaging(statement, dbQuery, offset, requiredNodes, handler);
+        }
+        else
+        {
+            performTmdqSelectStreaming(statement, dbQuery, new ResultHandler<Node>()
+            {
+                private int skipped = 0;
+
+                @Override
+                public void handleResult(ResultContext<? extends Node> context)
+                {
+                    if (skipped < offset)
+                    {
+                        skipped++;
+                        return;
+                    }
+                    handler.handleResult(context);
+                }
+            });
+        }
+    }
+
+    /**
+     * @return                      the nodes of a cached result, in order, or <tt>null</tt> if any of them is
+     *                              no longer available
+     */
+    private List<Node> getCachedNodes(CachedQueryResult cachedResult)
+    {
+        List<Long> nodeIds = cachedResult.getNodeIds();
+        nodeDAO.cacheNodesById(nodeIds);
+        List<Node> nodes = new ArrayList<>(nodeIds.size());
+        for (Long nodeId : nodeIds)
+        {
+            Node node = nodesCache.getValue(nodeId);
+            if (node == null)
+            {
+                return null;
+            }
+            nodes.add(node);
+        }
+        return nodes;
+    }
+
+    /**
+     * Passes results on to another handler, keeping the IDs of the nodes for the result cache.
+     */
+    private static class RecordingResultHandler implements ResultHandler<Node>
+    {
+        private final ResultHandler<Node> handler;
+        private final int maxNodeIds;
+        private final List<Long> nodeIds = new ArrayList<>();
+        private boolean complete = true;
+
+        private RecordingResultHandler(ResultHandler<Node> handler, int maxNodeIds)
+        {
+            this.handler = handler;
+            this.maxNodeIds = maxNodeIds;
+        }
+
+        @Override
+        public void handleResult(ResultContext<? extends Node> context)
+        {
+            if (nodeIds.size() < maxNodeIds)
+            {
+                nodeIds.add(context.getResultObject().getId());
+            }
+            else
+            {
+                complete = false;
+            }
+            handler.handleResult(context);
+            if (context.isStopped())
+            {
+                // The remaining rows were never read
+                complete = false;
+            }
+        }
+
+        private CachedQueryResult getResult(String generation)
+        {
+            return new CachedQueryResult(nodeIds, complete, generation);
+        }
+    }
+
+    /**
+     * The node IDs selected by a query, before any permission checks, and the commit generation at the
+     * point the query was run.
+     *
+     * @since 23.3
+     */
+    public static class CachedQueryResult implements Serializable
+    {
+        private static final long serialVersionUID = 2874385934226213457L;
+
+        private final long[] nodeIds;
+        private final boolean complete;
+        private final String generation;
+
+        private CachedQueryResult(List<Long> nodeIds, boolean complete, String generation)
+        {
+            this.nodeIds = new long[nodeIds.size()];
+            for (int i = 0; i < this.nodeIds.length; i++)
+            {
+                this.nodeIds[i] = nodeIds.get(i);
+            }
+            this.complete = complete;
+            this.generation = generation;
+        }
+
+        public List<Long> getNodeIds()
+        {
+            List<Long> result = new ArrayList<>(nodeIds.length);
+            for (long nodeId : nodeIds)
+            {
+                result.add(nodeId);
+            }
+            return result;
+        }
+
+        /**
+         * @return                  <tt>true</tt> if these are all the nodes selected by the query
+         */
+        public boolean isComplete()
+        {
+            return complete;
+        }
+
+        public String getGeneration()
+        {
+            return generation;
+        }
+    }
+
+    /**
+     * Work out where the page after this one starts.  This is the last node of the page or, if the permission checks
+     * were cut short, the last node that was checked.
+     *
+     * @param nodes                 the nodes selected so far, in node ID order
+     * @param quitChecksAtNodeId    the node at which permission checks were cut short, or -1
+     * @return                      the continuation token or <tt>null</tt> if there are no more results
+     */
+    private String getNextContinuationToken(QueryOptions options, List<Node> nodes, long quitChecksAtNodeId)
+    {
+        int maxItems = options.getMaxItems();
+        if (maxItems <= 0 || maxItems == Integer.MAX_VALUE)
+        {
+            // Everything has been returned
+            return null;
+        }
+        int pageEnd = options.getSkipCount() + maxItems;
+        if (nodes.size() > pageEnd)
+        {
+            return encodeContinuationToken(options, nodes.get(pageEnd - 1).getId());
+        }
+        else if (quitChecksAtNodeId >= 0)
+        {
+            return encodeContinuationToken(options, quitChecksAtNodeId);
+        }
+        return null;
+    }
+
+    /**
+     * The token holds the ID of the last node returned.  The query is hashed into it so that a token cannot be
+     * used to page through a different query by mistake.
+     */
+    static String encodeContinuationToken(QueryOptions options, long nodeId)
+    {
+        String token = CONTINUATION_TOKEN_VERSION + ":" + nodeId + ":" + getContinuationTokenHash(options);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return                      the ID of the node after which the page starts, or <tt>null</tt> for the first page
+     */
+    static Long decodeContinuationToken(QueryOptions options, String continuationToken)
+    {
+        if (continuationToken.isEmpty())
+        {
+            return null;
+        }
+        try
+        {
+            String token = new String(Base64.getUrlDecoder().decode(continuationToken), StandardCharsets.UTF_8);
+            String[] parts = token.split(":");
+            if (parts.length == 3
+                    && CONTINUATION_TOKEN_VERSION.equals(parts[0])
+                    && getContinuationTokenHash(options).equals(parts[2]))
+            {
+                return Long.valueOf(parts[1]);
+            }
+        }
+        catch (IllegalArgumentException e)
+        {
+            // Includes NumberFormatException
+        }
+        throw new QueryModelException("Invalid continuation token for query: " + continuationToken);
+    }
+
+    private static String getContinuationTokenHash(QueryOptions options)
+    {
+        return Integer.toHexString(Objects.hash(options.getQuery(), options.getStores()));
+    }
+
     private DBResultSet createResultSet(QueryOptions options, List<Node> nodes, int numberFound)
     {
         DBResultSet dbResultSet = new DBResultSet(options.getAsSearchParmeters(), nodes, nodeDAO, nodeService, tenantService, Integer.MAX_VALUE);
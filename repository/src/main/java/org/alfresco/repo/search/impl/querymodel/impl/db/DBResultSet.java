@@ -63,6 +63,8 @@ public class DBResultSet extends AbstractResultSet
     
     private int numberFound;
     
+    private String continuationToken;
+    
     public DBResultSet(SearchParameters searchParameters, List<Node> nodes, NodeDAO nodeDao,  NodeService nodeService, TenantService tenantService, int maximumResultsFromUnlimitedQuery)
     {
         this.nodeDao = nodeDao;
@@ -122,6 +124,20 @@ public class DBResultSet extends AbstractResultSet
         return numberFound;
     }
 
+    public void setContinuationToken(String continuationToken)
+    {
+        this.continuationToken = continuationToken;
+    }
+
+    /* (non-Javadoc)
+     * @see org.alfresco.service.cmr.search.ResultSetSPI#getContinuationToken()
+     */
+    @Override
+    public String getContinuationToken()
+    {
+        return continuationToken;
+    }
+
     /* (non-Javadoc)
      * @see org.alfresco.service.cmr.search.ResultSetSPI#getNodeRef(int)
      */
@@ -0,0 +1,233 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.search.impl.querymodel.impl.db;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.alfresco.repo.domain.qname.QNameDAO;
+import org.alfresco.service.transaction.TransactionService;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.util.Pair;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.mybatis.spring.SqlSessionTemplate;
+
+/**
+ * Counts of nodes per type, aspect and property, used to estimate how many nodes a query will select.
+ * <p>
+ * The counts are collected with a <tt>group by</tt> over the node, aspect and property tables.  As that
+ * reads whole tables, it is only ever done by {@link QueryCardinalityStatisticsJob} and never by a thread
+ * serving a request: until the first counts have been collected {@link #isAvailable()} returns <tt>false</tt>
+ * and callers must carry on without them.  The counts are refreshed, at most, once per refresh interval.
+ * They are estimates only: they include nodes of every store and are not updated as nodes are created or
+ * deleted.
+ *
+ * @since 23.3
+ */
+public class QueryCardinalityStatistics
+{
+    private static final Log logger = LogFactory.getLog(QueryCardinalityStatistics.class);
+
+    private static final String SELECT_TYPE_CARDINALITY = "alfresco.metadata.query.select_TypeCardinality";
+    private static final String SELECT_ASPECT_CARDINALITY = "alfresco.metadata.query.select_AspectCardinality";
+    private static final String SELECT_PROPERTY_CARDINALITY = "alfresco.metadata.query.select_PropertyCardinality";
+
+    public static final long DEFAULT_REFRESH_INTERVAL_SECONDS = 3600L;
+
+    private static final Snapshot EMPTY_SNAPSHOT = new Snapshot(0L, 0L, Collections.<QName, Long>emptyMap(),
+            Collections.<QName, Long>emptyMap(), Collections.<QName, Long>emptyMap());
+
+    private SqlSessionTemplate template;
+    private QNameDAO qnameDAO;
+    private TransactionService transactionService;
+    private long refreshIntervalMs = DEFAULT_REFRESH_INTERVAL_SECONDS * 1000L;
+
+    private final ReentrantLock refreshLock = new ReentrantLock();
+    private volatile Snapshot snapshot;
+
+    public final void setSqlSessionTemplate(SqlSessionTemplate sqlSessionTemplate)
+    {
+        this.template = sqlSessionTemplate;
+    }
+
+    public void setQnameDAO(QNameDAO qnameDAO)
+    {
+        this.qnameDAO = qnameDAO;
+    }
+
+    public void setTransactionService(TransactionService transactionService)
+    {
+        this.transactionService = transactionService;
+    }
+
+    /**
+     * @param refreshIntervalSeconds    how old the counts may get before they are collected again
+     */
+    public void setRefreshIntervalSeconds(long refreshIntervalSeconds)
+    {
+        this.refreshIntervalMs = refreshIntervalSeconds * 1000L;
+    }
+
+    /**
+     * @return              Returns <tt>true</tt> if the counts have been collected
+     */
+    public boolean isAvailable()
+    {
+        return snapshot != null;
+    }
+
+    /**
+     * @return              Returns the total number of nodes
+     */
+    public long getNodeCount()
+    {
+        return getSnapshot().nodeCount;
+    }
+
+    /**
+     * @return              Returns the number of nodes of exactly the given type
+     */
+    public long getTypeCardinality(QName typeQName)
+    {
+        return getCardinality(getSnapshot().types, typeQName);
+    }
+
+    /**
+     * @return              Returns the number of nodes with exactly the given aspect
+     */
+    public long getAspectCardinality(QName aspectQName)
+    {
+        return getCardinality(getSnapshot().aspects, aspectQName);
+    }
+
+    /**
+     * @return              Returns the number of nodes with a value for the given property
+     */
+    public long getPropertyCardinality(QName propertyQName)
+    {
+        return getCardinality(getSnapshot().properties, propertyQName);
+    }
+
+    /**
+     * Collect the counts if there are none yet or they are older than the refresh interval.  Nothing is done
+     * if another thread is already collecting them.
+     */
+    public void refresh()
+    {
+        if (!refreshLock.tryLock())
+        {
+            return;
+        }
+        try
+        {
+            Snapshot current = snapshot;
+            if ((current == null) || (System.currentTimeMillis() - current.collectedAt >= refreshIntervalMs))
+            {
+                snapshot = transactionService.getRetryingTransactionHelper().doInTransaction(() -> collect(), true);
+            }
+        }
+        finally
+        {
+            refreshLock.unlock();
+        }
+    }
+
+    /**
+     * Discard the counts.  Callers carry on without them until they are next {@link #refresh() refreshed}.
+     */
+    public void invalidate()
+    {
+        snapshot = null;
+    }
+
+    private static long getCardinality(Map<QName, Long> cardinalities, QName qname)
+    {
+        Long cardinality = cardinalities.get(qname);
+        return (cardinality == null) ? 0L : cardinality;
+    }
+
+    private Snapshot getSnapshot()
+    {
+        Snapshot current = snapshot;
+        return (current == null) ? EMPTY_SNAPSHOT : current;
+    }
+
+    private Snapshot collect()
+    {
+        long start = System.currentTimeMillis();
+        Map<QName, Long> types = select(SELECT_TYPE_CARDINALITY);
+        Map<QName, Long> aspects = select(SELECT_ASPECT_CARDINALITY);
+        Map<QName, Long> properties = select(SELECT_PROPERTY_CARDINALITY);
+        long nodeCount = 0L;
+        for (Long cardinality : types.values())
+        {
+            nodeCount += cardinality;
+        }
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Collected query cardinality statistics for " + nodeCount + " nodes, " + types.size() + " types, " +
+                    aspects.size() + " aspects and " + properties.size() + " properties in " + (System.currentTimeMillis() - start) + "ms");
+        }
+        return new Snapshot(start, nodeCount, types, aspects, properties);
+    }
+
+    private Map<QName, Long> select(String statement)
+    {
+        List<CardinalityEntity> entities = template.selectList(statement);
+        Map<QName, Long> cardinalities = new HashMap<QName, Long>(entities.size() * 2);
+        for (CardinalityEntity entity : entities)
+        {
+            Pair<Long, QName> qnamePair = qnameDAO.getQName(entity.getQnameId());
+            if (qnamePair != null)
+            {
+                cardinalities.put(qnamePair.getSecond(), entity.getCardinality());
+            }
+        }
+        return Collections.unmodifiableMap(cardinalities);
+    }
+
+    private static class Snapshot
+    {
+        private final long collectedAt;
+        private final long nodeCount;
+        private final Map<QName, Long> types;
+        private final Map<QName, Long> aspects;
+        private final Map<QName, Long> properties;
+
+        private Snapshot(long collectedAt, long nodeCount, Map<QName, Long> types, Map<QName, Long> aspects, Map<QName, Long> properties)
+        {
+            this.collectedAt = collectedAt;
+            this.nodeCount = nodeCount;
+            this.types = types;
+            this.aspects = aspects;
+            this.properties = properties;
+        }
+    }
+}
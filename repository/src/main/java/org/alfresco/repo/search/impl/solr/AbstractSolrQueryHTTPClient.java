@@ -2,7 +2,7 @@
  * #%L
  * Alfresco Repository
  * %%
- * Copyright (C) 2005 - 2023 Alfresco Software Limited
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
  * %%
  * This file is part of the Alfresco software. 
  * If the software was purchased under a paid Alfresco license, the terms of 
@@ -108,9 +108,10 @@ public abstract class AbstractSolrQueryHTTPClient
                     httpClient.executeMethod(post);
                 }
             }
-            String responseBodyStr = post.getResponseBodyAsString();
             if (post.getStatusCode() != HttpServletResponse.SC_OK)
             {
+                // Only an error response is buffered; results are parsed straight from the connection
+                String responseBodyStr = post.getResponseBodyAsString();
                 String trace = null;
                 try
                 {
@@ -140,6 +141,7 @@ public abstract class AbstractSolrQueryHTTPClient
             Reader reader = new BufferedReader(new InputStreamReader(post.getResponseBodyAsStream(), post.getResponseCharSet()));
             // TODO - replace with streaming-based solution e.g. SimpleJSON ContentHandler
             JSONObject json = new JSONObject(new JSONTokener(reader));
+            checkPartialResults(json, url);
             return json;
         }
         finally
@@ -148,6 +150,24 @@ public abstract class AbstractSolrQueryHTTPClient
         }
     }
 
+    /**
+     * Warn when SOLR returned only part of the results, as it does when a query runs out of
+     * <tt>timeAllowed</tt> or a shard fails while <tt>shards.tolerant</tt> is set.
+     *
+     * @return <tt>true</tt> if the results are partial
+     * @since 23.3
+     */
+    protected boolean checkPartialResults(JSONObject json, String url)
+    {
+        JSONObject responseHeader = json.optJSONObject("responseHeader");
+        boolean partialResults = (responseHeader != null) && responseHeader.optBoolean("partialResults", false);
+        if (partialResults)
+        {
+            LOGGER.warn("Solr returned partial results (time allowed exceeded or shards failed): " + url);
+        }
+        return partialResults;
+    }
+
     /** Helper method that can be overridden by unit tests. */
     protected PostMethod createNewPostMethod(String url)
     {
@@ -0,0 +1,233 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.search.impl.solr;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.alfresco.util.MaxSizeMap;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A bounded cache of the SOLR responses to faceted queries.
+ * <p>
+ * Responses are keyed by the full request: the URL, which carries the query parameters and the
+ * facet configuration, and the body, which carries the query and the authorities of the caller.
+ * Each response is stored with the transaction watermark of the index, the <tt>lastIndexedTx</tt>
+ * that SOLR returned with it.  The cache keeps the highest watermark returned by any query, and a
+ * cached response is only reused while the index has not moved past the watermark it was stored with:
+ * until then SOLR would return the same results again.  The watermark is learned from the responses
+ * to all queries, so a cached response may be reused for a while after the index moves on if no
+ * other query is sent; <tt>maxAgeSeconds</tt> bounds that time, and also the time that changes to
+ * permissions, which do not move the watermark, take to show.
+ *
+ * @since 23.3
+ */
+public class FacetResponseCache
+{
+    private static final Log logger = LogFactory.getLog(FacetResponseCache.class);
+
+    public static final int DEFAULT_MAX_ITEMS = 1000;
+    public static final int DEFAULT_MAX_AGE_SECONDS = 60;
+
+    private boolean enabled = false;
+    private int maxItems = DEFAULT_MAX_ITEMS;
+    private int maxAgeSeconds = DEFAULT_MAX_AGE_SECONDS;
+    private Map<String, CachedResponse> responses;
+    private final AtomicLong indexWatermark = new AtomicLong(-1L);
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param enabled <tt>true</tt> to cache the responses to faceted queries
+     */
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @param maxItems the maximum number of responses to keep
+     */
+    public void setMaxItems(int maxItems)
+    {
+        this.maxItems = maxItems;
+    }
+
+    /**
+     * @param maxAgeSeconds the longest time a response is reused for, even if the index does not seem to have moved on
+     */
+    public void setMaxAgeSeconds(int maxAgeSeconds)
+    {
+        this.maxAgeSeconds = maxAgeSeconds;
+    }
+
+    public void init()
+    {
+        responses = new MaxSizeMap<String, CachedResponse>(Math.max(maxItems, 1), true);
+    }
+
+    public boolean isEnabled()
+    {
+        return enabled && maxItems > 0 && maxAgeSeconds > 0;
+    }
+
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    /**
+     * @return the highest transaction watermark returned by the index so far, or <tt>-1</tt> if none has been returned
+     */
+    public long getIndexWatermark()
+    {
+        return indexWatermark.get();
+    }
+
+    public void clear()
+    {
+        synchronized (responses)
+        {
+            responses.clear();
+        }
+    }
+
+    /**
+     * Note the transaction watermark of the index returned with the response to any query.
+     *
+     * @param json the response
+     * @return the watermark of the response or <tt>-1</tt> if it has none
+     */
+    public long indexed(JSONObject json)
+    {
+        long lastIndexedTxId = json.optLong("lastIndexedTx", -1L);
+        if (lastIndexedTxId >= 0)
+        {
+            indexWatermark.accumulateAndGet(lastIndexedTxId, Math::max);
+        }
+        return lastIndexedTxId;
+    }
+
+    /**
+     * @param key the URL and body of the request
+     * @return a copy of the cached response, or <tt>null</tt> if there is none or it is out of date
+     */
+    public JSONObject get(String key)
+    {
+        CachedResponse cached;
+        synchronized (responses)
+        {
+            cached = responses.get(key);
+        }
+        if (cached != null)
+        {
+            if (cached.isCurrent(indexWatermark.get(), System.currentTimeMillis() - maxAgeSeconds * 1000L))
+            {
+                try
+                {
+                    JSONObject json = new JSONObject(cached.response);
+                    hits.incrementAndGet();
+                    return json;
+                }
+                catch (JSONException e)
+                {
+                    // It was valid JSON when it was cached; fall through and ask SOLR again
+                }
+            }
+            synchronized (responses)
+            {
+                responses.remove(key);
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Cache a response, unless it came from a part of the index that is behind the rest.
+     *
+     * @param key the URL and body of the request
+     * @param json the response
+     */
+    public void put(String key, JSONObject json)
+    {
+        long lastIndexedTxId = indexed(json);
+        if (lastIndexedTxId < 0)
+        {
+            return;
+        }
+        JSONObject responseHeader = json.optJSONObject("responseHeader");
+        if (responseHeader != null && responseHeader.optBoolean("partialResults", false))
+        {
+            // SOLR ran out of time or lost a shard; the next request may do better
+            return;
+        }
+        if (lastIndexedTxId < indexWatermark.get())
+        {
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Not caching facet response, the index is behind: " + lastIndexedTxId + " < " + indexWatermark.get());
+            }
+            return;
+        }
+        CachedResponse cached = new CachedResponse(json.toString(), lastIndexedTxId, System.currentTimeMillis());
+        synchronized (responses)
+        {
+            responses.put(key, cached);
+        }
+    }
+
+    private static class CachedResponse
+    {
+        private final String response;
+        private final long lastIndexedTxId;
+        private final long cachedAt;
+
+        private CachedResponse(String response, long lastIndexedTxId, long cachedAt)
+        {
+            this.response = response;
+            this.lastIndexedTxId = lastIndexedTxId;
+            this.cachedAt = cachedAt;
+        }
+
+        /**
+         * The response is current if the index has not moved past it and it is not too old.
+         */
+        private boolean isCurrent(long currentIndexWatermark, long oldestCachedAt)
+        {
+            return lastIndexedTxId >= currentIndexWatermark && cachedAt >= oldestCachedAt;
+        }
+    }
+}
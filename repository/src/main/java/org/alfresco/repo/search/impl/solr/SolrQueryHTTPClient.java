@@ -2,7 +2,7 @@
  * #%L
  * Alfresco Repository
  * %%
- * Copyright (C) 2005 - 2023 Alfresco Software Limited
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
  * %%
  * This file is part of the Alfresco software. 
  * If the software was purchased under a paid Alfresco license, the terms of 
@@ -42,6 +42,7 @@ import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.Set;
 import java.util.StringJoiner;
+import java.util.TreeSet;
 
 import jakarta.servlet.http.HttpServletResponse;
 
@@ -146,6 +147,12 @@ public class SolrQueryHTTPClient extends AbstractSolrQueryHTTPClient implements
 
     private PermissionService permissionService;
 
+    private int timeAllowedMs = 0;
+
+    private boolean shardsTolerant = false;
+
+    private FacetResponseCache facetResponseCache;
+
     public SolrQueryHTTPClient()
     {
     }
@@ -272,6 +279,35 @@ public class SolrQueryHTTPClient extends AbstractSolrQueryHTTPClient implements
         this.defaultShardedFacetLimit = defaultShardedFacetLimit;
     }
 
+    /**
+     * @param timeAllowedMs the time, in milliseconds, SOLR may spend searching for the results of a query
+     *            before it returns what it has found so far (0 for no limit)
+     * @since 23.3
+     */
+    public void setTimeAllowedMs(int timeAllowedMs)
+    {
+        this.timeAllowedMs = timeAllowedMs;
+    }
+
+    /**
+     * @param shardsTolerant <tt>true</tt> to return the results of the shards that responded when
+     *            other shards of a sharded query fail or cannot be reached
+     * @since 23.3
+     */
+    public void setShardsTolerant(boolean shardsTolerant)
+    {
+        this.shardsTolerant = shardsTolerant;
+    }
+
+    /**
+     * @param facetResponseCache the cache for the responses to faceted queries (optional)
+     * @since 23.3
+     */
+    public void setFacetResponseCache(FacetResponseCache facetResponseCache)
+    {
+        this.facetResponseCache = facetResponseCache;
+    }
+
     /**
      * Executes a solr query for statistics
      * 
@@ -360,11 +396,31 @@ public class SolrQueryHTTPClient extends AbstractSolrQueryHTTPClient implements
         {
             url.append("&shards=");
             buildShards(url, searchParameters.getStores());
+            buildShardParameters(url);
         }
         
         return url.toString();
     }
 
+    /**
+     * Add the parameters that control how SOLR fans a sharded query out to its shards.  The shards are
+     * queried in parallel by SOLR; these bound the time SOLR may spend searching and whether a failed
+     * shard fails the whole query.
+     *
+     * @since 23.3
+     */
+    protected void buildShardParameters(StringBuilder url)
+    {
+        if (timeAllowedMs > 0)
+        {
+            url.append("&timeAllowed=").append(timeAllowedMs);
+        }
+        if (shardsTolerant)
+        {
+            url.append("&shards.tolerant=true");
+        }
+    }
+
     protected void buildShards(StringBuilder url, List<StoreRef> storeRefs)
     {
         boolean requiresSeparator = false;
@@ -484,6 +540,7 @@ public class SolrQueryHTTPClient extends AbstractSolrQueryHTTPClient implements
                     url.append(storeMapping.getShards());
 
                 }
+                buildShardParameters(url);
             }
 
             buildUrlParameters(searchParameters, mapping.isSharded(), encoder, url);
@@ -508,8 +565,9 @@ public class SolrQueryHTTPClient extends AbstractSolrQueryHTTPClient implements
             Set<String> allAuthorisations = permissionService.getAuthorisations();
             boolean includeGroups = includeGroupsForRoleAdmin ? true : !allAuthorisations.contains(PermissionService.ADMINISTRATOR_AUTHORITY);
             
+            // Sorted so that the same authorities always give the same request
             JSONArray authorities = new JSONArray();
-            for (String authority : allAuthorisations)
+            for (String authority : new TreeSet<String>(allAuthorisations))
             {
                 if(includeGroups)
                 {
@@ -575,11 +633,16 @@ public class SolrQueryHTTPClient extends AbstractSolrQueryHTTPClient implements
             body.put("textAttributes", textAttributes);
 
             final int maximumResults = maxResults;  //just needed for the final parameter
-            
-            return (ResultSet) postSolrQuery(httpClient, url.toString(), body, json ->
+            SolrJsonProcessor<SolrJSONResultSet> jsonProcessor = json ->
             {
                 return new SolrJSONResultSet(json, searchParameters, nodeService, nodeDAO, limitBy, maximumResults);
-            }, spellCheckQueryStr);
+            };
+
+            if (spellCheckQueryStr == null && isFacetResponseCacheable(searchParameters))
+            {
+                return postCachedSolrQuery(httpClient, url.toString(), body, jsonProcessor);
+            }
+            return (ResultSet) postSolrQuery(httpClient, url.toString(), body, jsonProcessor, spellCheckQueryStr);
         }
         catch (UnsupportedEncodingException e)
         {
@@ -1098,6 +1161,39 @@ public class SolrQueryHTTPClient extends AbstractSolrQueryHTTPClient implements
         }
     }
 
+    /**
+     * Faceted queries are repeated on every page view of a search, so their responses are worth caching.
+     */
+    private boolean isFacetResponseCacheable(SearchParameters searchParameters)
+    {
+        if (facetResponseCache == null || !facetResponseCache.isEnabled())
+        {
+            return false;
+        }
+        return !searchParameters.getFieldFacets().isEmpty()
+                || !searchParameters.getFacetQueries().isEmpty()
+                || (searchParameters.getPivots() != null && !searchParameters.getPivots().isEmpty())
+                || (searchParameters.getRanges() != null && !searchParameters.getRanges().isEmpty())
+                || searchParameters.getInterval() != null;
+    }
+
+    private SolrJSONResultSet postCachedSolrQuery(HttpClient httpClient, String url, JSONObject body, SolrJsonProcessor<SolrJSONResultSet> jsonProcessor)
+                throws IOException, JSONException
+    {
+        String key = url + '\n' + body.toString();
+        JSONObject json = facetResponseCache.get(key);
+        if (json == null)
+        {
+            json = postQuery(httpClient, url, body);
+            facetResponseCache.put(key, json);
+        }
+        else if (s_logger.isDebugEnabled())
+        {
+            s_logger.debug("Using cached facet response for: " + url);
+        }
+        return jsonProcessor.getResult(json);
+    }
+
     protected SearchEngineResultMetadata postSolrQuery(HttpClient httpClient, String url, JSONObject body, SolrJsonProcessor<?> jsonProcessor)
                 throws UnsupportedEncodingException, IOException, HttpException, URIException,
                 JSONException
@@ -1110,6 +1206,11 @@ public class SolrQueryHTTPClient extends AbstractSolrQueryHTTPClient implements
                 JSONException
     {
         JSONObject json = postQuery(httpClient, url, body);
+        if (facetResponseCache != null && facetResponseCache.isEnabled())
+        {
+            // Every response tells the cache how far the index has got
+            facetResponseCache.indexed(json);
+        }
         if (spellCheckParams != null)
         {
             SpellCheckDecisionManager manager = new SpellCheckDecisionManager(json, url, body, spellCheckParams);
@@ -1248,6 +1349,7 @@ public class SolrQueryHTTPClient extends AbstractSolrQueryHTTPClient implements
             {
                 url.append("&shards=");
                 url.append(mapping.getShards());
+                buildShardParameters(url);
             }
 
             // PostMethod post = new PostMethod(url.toString());
@@ -1273,9 +1375,10 @@ public class SolrQueryHTTPClient extends AbstractSolrQueryHTTPClient implements
                     throw new QueryParserException("Request failed " + get.getStatusCode() + " " + url.toString());
                 }
 
-                Reader reader = new BufferedReader(new InputStreamReader(get.getResponseBodyAsStream()));
+                Reader reader = new BufferedReader(new InputStreamReader(get.getResponseBodyAsStream(), get.getResponseCharSet()));
                 // TODO - replace with streaming-based solution e.g. SimpleJSON ContentHandler
                 JSONObject json = new JSONObject(new JSONTokener(reader));
+                checkPartialResults(json, url.toString());
                 return json;
             }
             finally
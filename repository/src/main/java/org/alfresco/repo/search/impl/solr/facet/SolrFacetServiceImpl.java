@@ -54,6 +54,7 @@ import org.alfresco.repo.model.Repository;
 import org.alfresco.repo.node.NodeServicePolicies;
 import org.alfresco.repo.node.NodeServicePolicies.BeforeDeleteNodePolicy;
 import org.alfresco.repo.node.NodeServicePolicies.OnCreateNodePolicy;
+import org.alfresco.repo.node.NodeServicePolicies.OnUpdatePropertiesPolicy;
 import org.alfresco.repo.policy.BehaviourFilter;
 import org.alfresco.repo.policy.JavaBehaviour;
 import org.alfresco.repo.policy.PolicyComponent;
@@ -94,6 +95,7 @@ import org.springframework.extensions.surf.util.AbstractLifecycleBean;
 public class SolrFacetServiceImpl extends AbstractLifecycleBean
                                   implements SolrFacetService,
                                              NodeServicePolicies.OnCreateNodePolicy,
+                                             NodeServicePolicies.OnUpdatePropertiesPolicy,
                                              NodeServicePolicies.BeforeDeleteNodePolicy
 {
     private static final Log logger = LogFactory.getLog(SolrFacetServiceImpl.class);
@@ -126,6 +128,8 @@ public class SolrFacetServiceImpl extends AbstractLifecycleBean
     private SimpleCache<String, Object> singletonCache; // eg. for facetsHomeNodeRef
     private final String KEY_FACETS_HOME_NODEREF = "key.facetshome.noderef";
     private SimpleCache<String, NodeRef> facetNodeRefCache; // for filterID to nodeRef lookup
+    private final String KEY_FACETS = "key.facets";
+    private SimpleCache<String, List<SolrFacetProperties>> facetsCache; // for the merged and sorted facets
     private ConcurrentMap<String, SolrFacetProperties> defaultFacetsMap = new ConcurrentHashMap<>(10);
 
     /**
@@ -241,6 +245,16 @@ public class SolrFacetServiceImpl extends AbstractLifecycleBean
         this.facetNodeRefCache = facetNodeRefCache;
     }
 
+    /**
+     * @param facetsCache the cache holding the facets in display order, rebuilt only when a facet
+     *            or the facet order changes (optional)
+     * @since 23.3
+     */
+    public void setFacetsCache(SimpleCache<String, List<SolrFacetProperties>> facetsCache)
+    {
+        this.facetsCache = facetsCache;
+    }
+
     @Override
     public boolean isSearchAdmin(String userName)
     {
@@ -254,6 +268,20 @@ public class SolrFacetServiceImpl extends AbstractLifecycleBean
 
     @Override
     public List<SolrFacetProperties> getFacets()
+    {
+        List<SolrFacetProperties> facets = (facetsCache == null) ? null : facetsCache.get(KEY_FACETS);
+        if (facets == null)
+        {
+            facets = loadFacets();
+            if (facetsCache != null)
+            {
+                facetsCache.put(KEY_FACETS, facets);
+            }
+        }
+        return new ArrayList<>(facets);
+    }
+
+    private List<SolrFacetProperties> loadFacets()
     {
         // Sort the facets into display order
         final SolrFacetComparator comparator = new SolrFacetComparator(getFacetOrder());
@@ -411,6 +439,17 @@ public class SolrFacetServiceImpl extends AbstractLifecycleBean
         return fp;
     }
 
+    /**
+     * Drops the facets held in display order, so that the next call to {@link #getFacets()} rebuilds them.
+     */
+    private void invalidateFacets()
+    {
+        if (facetsCache != null)
+        {
+            facetsCache.remove(KEY_FACETS);
+        }
+    }
+
     private <T> T getDefaultIfNull(T defaultValue, T newValue)
     {
         return (newValue == null) ? defaultValue : newValue;
@@ -638,6 +677,12 @@ public class SolrFacetServiceImpl extends AbstractLifecycleBean
                     SolrFacetModel.TYPE_FACET_FIELD,
                     new JavaBehaviour(this, "beforeDeleteNode"));
 
+        // Filter update
+        this.policyComponent.bindClassBehaviour(
+                    OnUpdatePropertiesPolicy.QNAME,
+                    SolrFacetModel.TYPE_FACET_FIELD,
+                    new JavaBehaviour(this, "onUpdateProperties"));
+
         Map<String, SolrFacetProperties> mergedMap = new HashMap<>(100);
         // Loaded facets
         Map<String, SolrFacetProperties> defaultFP = facetConfig.getDefaultFacets();
@@ -757,6 +802,7 @@ public class SolrFacetServiceImpl extends AbstractLifecycleBean
     {
         SolrFacetProperties fp = getFacetProperties(childAssocRef.getChildRef());
         this.facetNodeRefCache.put(fp.getFilterID(), childAssocRef.getChildRef());
+        invalidateFacets();
 
         // We must also add the new filterID to the facetOrder property.
         final NodeRef facetsRoot = getFacetsRoot();
@@ -778,11 +824,18 @@ public class SolrFacetServiceImpl extends AbstractLifecycleBean
         nodeService.setProperty(facetsRoot, SolrFacetModel.PROP_FACET_ORDER, facetOrder);
     }
 
+    @Override
+    public void onUpdateProperties(NodeRef nodeRef, Map<QName, Serializable> before, Map<QName, Serializable> after)
+    {
+        invalidateFacets();
+    }
+
     @Override
     public void beforeDeleteNode(NodeRef nodeRef)
     {
         String filterID = (String) nodeService.getProperty(nodeRef, ContentModel.PROP_NAME);
         this.facetNodeRefCache.remove(filterID);
+        invalidateFacets();
 
         // We must also remove the filterID from the facetOrder property.
         final NodeRef facetsRoot = getFacetsRoot();
@@ -886,6 +939,7 @@ public class SolrFacetServiceImpl extends AbstractLifecycleBean
                 facetsRoot = createFacetsRootFolder();
             }
             nodeService.setProperty(facetsRoot, SolrFacetModel.PROP_FACET_ORDER, serializableProp);
+            invalidateFacets();
         }
     }
 
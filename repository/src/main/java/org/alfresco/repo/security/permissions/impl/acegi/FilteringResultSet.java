@@ -377,4 +377,10 @@ public class FilteringResultSet extends ACLEntryAfterInvocationProvider implemen
     {
         return unfiltered.getSpellCheckResult();
     }
+
+    @Override
+    public String getContinuationToken()
+    {
+        return unfiltered.getContinuationToken();
+    }
 }
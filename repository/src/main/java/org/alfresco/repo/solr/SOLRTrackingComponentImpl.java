@@ -33,11 +33,16 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.zip.CRC32;
 
 import org.alfresco.error.AlfrescoRuntimeException;
@@ -58,6 +63,7 @@ import org.alfresco.repo.search.TypeIndexFilter;
 import org.alfresco.repo.search.impl.QueryParserUtils;
 import org.alfresco.repo.security.authentication.AuthenticationUtil;
 import org.alfresco.repo.tenant.TenantService;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
 import org.alfresco.repo.version.Version2Model;
 import org.alfresco.repo.version.VersionModel;
 import org.alfresco.repo.version.common.VersionUtil;
@@ -78,6 +84,7 @@ import org.alfresco.service.cmr.security.OwnableService;
 import org.alfresco.service.cmr.security.PermissionService;
 import org.alfresco.service.namespace.NamespaceService;
 import org.alfresco.service.namespace.QName;
+import org.alfresco.service.transaction.TransactionService;
 import org.alfresco.util.Pair;
 import org.alfresco.util.PropertyCheck;
 import org.apache.commons.logging.Log;
@@ -105,6 +112,9 @@ public class SOLRTrackingComponentImpl implements SearchTrackingComponent
     private AspectIndexFilter aspectIndexFilter;
     private ShardRegistry shardRegistry;
     private NamespaceService namespaceService;
+    private TransactionService transactionService;
+    private ThreadPoolExecutor metadataThreadPool;
+    private int metadataBatchSize = 100;
 
     private static Log logger = LogFactory.getLog(SOLRTrackingComponentImpl.class);
     
@@ -194,6 +204,29 @@ public class SOLRTrackingComponentImpl implements SearchTrackingComponent
         this.namespaceService = namespaceService;
     }
 
+    public void setTransactionService(TransactionService transactionService)
+    {
+        this.transactionService = transactionService;
+    }
+
+    /**
+     * @param metadataThreadPool    optional pool used to fetch node metadata in parallel batches.
+     *                              When absent, or when a request fits in one batch, metadata is
+     *                              fetched on the calling thread.
+     */
+    public void setMetadataThreadPool(ThreadPoolExecutor metadataThreadPool)
+    {
+        this.metadataThreadPool = metadataThreadPool;
+    }
+
+    /**
+     * @param metadataBatchSize     the number of nodes fetched by each parallel worker (default 100)
+     */
+    public void setMetadataBatchSize(int metadataBatchSize)
+    {
+        this.metadataBatchSize = metadataBatchSize;
+    }
+
     /**
      * Initialize
      */    
@@ -211,6 +244,14 @@ public class SOLRTrackingComponentImpl implements SearchTrackingComponent
         PropertyCheck.mandatory(this, "typeIndexFilter", typeIndexFilter);
         PropertyCheck.mandatory(this, "aspectIndexFilter", aspectIndexFilter);
         PropertyCheck.mandatory(this, "namespaceService", namespaceService);
+        if (metadataThreadPool != null)
+        {
+            PropertyCheck.mandatory(this, "transactionService", transactionService);
+            if (metadataBatchSize < 1)
+            {
+                throw new AlfrescoRuntimeException("metadataBatchSize must be greater than zero: " + metadataBatchSize);
+            }
+        }
     }
     
     @Override
@@ -586,7 +627,7 @@ public class SOLRTrackingComponentImpl implements SearchTrackingComponent
     }
     
     
-    private List<Long> preCacheNodes(NodeMetaDataParameters nodeMetaDataParameters)
+    private List<Long> getNodeIds(NodeMetaDataParameters nodeMetaDataParameters)
     {
         int maxResults = nodeMetaDataParameters.getMaxResults();
         boolean isLimitSet = (maxResults != 0 && maxResults != Integer.MAX_VALUE);
@@ -616,7 +657,11 @@ public class SOLRTrackingComponentImpl implements SearchTrackingComponent
                 nodeIds.add(nodeId);
             }
         }
-        
+        return nodeIds;
+    }
+
+    private void cacheNodes(List<Long> nodeIds)
+    {
         // Pre-evaluate ancestors so we can bulk load them
         List<Long> ancestors;
         if(cacheAncestors)
@@ -631,26 +676,34 @@ public class SOLRTrackingComponentImpl implements SearchTrackingComponent
         nodeDAO.setCheckNodeConsistency();
         // bulk load nodes and their ancestors      
         nodeDAO.cacheNodesById(ancestors);
-        
-        return nodeIds;
     }
     
     /**
-     * Does a 'breadth first' search of ancestors, caching as it goes
+     * Does a 'breadth first' search of ancestors, caching as it goes.  Each level of the
+     * hierarchy is bulk loaded, along with its parent associations, before it is visited.
      * @param nodeIds initial list of nodes to visit
      * @return all visited nodes, in no particular order
      */
     private List<Long> cacheAncestors(List<Long> nodeIds)
     {
-        final LinkedList<Long> toVisit = new LinkedList<Long>(nodeIds);
-        Set<Long> visited = new TreeSet<Long>();
-        Long nodeId;
-        nodeDAO.cacheNodesById(toVisit);
-        Long lastCached = toVisit.peekLast();
-        while ((nodeId = toVisit.pollFirst()) != null)
-        {
-            if (visited.add(nodeId) && (nodeDAO.getNodeIdStatus(nodeId) != null) && (false == nodeDAO.getNodeIdStatus(nodeId).isDeleted()))
+        Set<Long> visited = new HashSet<Long>(nodeIds.size() * 2);
+        List<Long> toVisit = new ArrayList<Long>(new LinkedHashSet<Long>(nodeIds));
+        while (!toVisit.isEmpty())
+        {
+            nodeDAO.cacheNodesById(toVisit);
+            nodeDAO.cacheParentAssocsById(toVisit);
+            final Set<Long> nextLevel = new LinkedHashSet<Long>();
+            for (Long nodeId : toVisit)
             {
+                if (!visited.add(nodeId))
+                {
+                    continue;
+                }
+                Status status = nodeDAO.getNodeIdStatus(nodeId);
+                if (status == null || status.isDeleted())
+                {
+                    continue;
+                }
                 nodeDAO.getParentAssocs(nodeId, null, null, null, new ChildAssocRefQueryCallback()
                 {
                     @Override
@@ -669,7 +722,7 @@ public class SOLRTrackingComponentImpl implements SearchTrackingComponent
                     public boolean handle(Pair<Long, ChildAssociationRef> childAssocPair,
                             Pair<Long, NodeRef> parentNodePair, Pair<Long, NodeRef> childNodePair)
                     {
-                        toVisit.add(parentNodePair.getFirst());
+                        nextLevel.add(parentNodePair.getFirst());
                         return true;
                     }
 
@@ -679,13 +732,8 @@ public class SOLRTrackingComponentImpl implements SearchTrackingComponent
                     }
                 });
             }
-            final boolean nodeIdEqualsLastCached = (nodeId == null && lastCached == null) ||
-                                                   (nodeId != null && nodeId.equals(lastCached));
-            if (nodeIdEqualsLastCached && !toVisit.isEmpty())
-            {
-                nodeDAO.cacheNodesById(toVisit);
-                lastCached = toVisit.peekLast();
-            }
+            nextLevel.removeAll(visited);
+            toVisit = new ArrayList<Long>(nextLevel);
         }
         return new ArrayList<Long>(visited);
     }    
@@ -784,352 +832,454 @@ public class SOLRTrackingComponentImpl implements SearchTrackingComponent
         }
                 
         NodeMetaDataQueryRowHandler rowHandler = new NodeMetaDataQueryRowHandler(callback);
-        boolean includeType = (resultFilter == null ? true : resultFilter.getIncludeType());
-        boolean includeProperties = (resultFilter == null ? true : resultFilter.getIncludeProperties());
-        boolean includeAspects = (resultFilter == null ? true : resultFilter.getIncludeAspects());
-        boolean includePaths = (resultFilter == null ? true : resultFilter.getIncludePaths());
-        boolean includeNodeRef = (resultFilter == null ? true : resultFilter.getIncludeNodeRef());
-        boolean includeParentAssociations = (resultFilter == null ? true : resultFilter.getIncludeParentAssociations());
-        boolean includeChildAssociations = (resultFilter == null ? true : resultFilter.getIncludeChildAssociations());
-        boolean includeOwner = (resultFilter == null ? true : resultFilter.getIncludeOwner());
-        boolean includeChildIds = (resultFilter == null ? true : resultFilter.getIncludeChildIds());
-        boolean includeTxnId = (resultFilter == null ? true : resultFilter.getIncludeTxnId());
+        NodeMetaDataRequest request = new NodeMetaDataRequest(resultFilter);
         
-        List<Long> nodeIds = preCacheNodes(nodeMetaDataParameters);
+        List<Long> nodeIds = getNodeIds(nodeMetaDataParameters);
+        if (metadataThreadPool != null && nodeIds.size() > metadataBatchSize)
+        {
+            getNodesMetadataInParallel(nodeIds, request, rowHandler);
+            return;
+        }
 
+        cacheNodes(nodeIds);
         for(Long nodeId : nodeIds)
         {
-            Status status = nodeDAO.getNodeIdStatus(nodeId);
-            if (status == null)
-            {
-                // We've been called with the ID of a purged node, probably due to processing a transaction with a
-                // cascading delete. Fine to skip and assume it will be processed in a transaction.
-                // See org.alfresco.solr.tracker.CoreTracker.updateDescendantAuxDocs(NodeMetaData, boolean, SolrIndexSearcher)
-                continue;
-            }
-            NodeRef nodeRef = status.getNodeRef();
-            
-            NodeRef unversionedNodeRef = null;
-            if(isVersionNodeRef(nodeRef))
+            NodeMetaData nodeMetaData = getNodeMetaData(nodeId, request);
+            if (nodeMetaData != null)
             {
-            	unversionedNodeRef = convertVersionNodeRefToVersionedNodeRef(VersionUtil.convertNodeRef(nodeRef));
+                rowHandler.processResult(nodeMetaData);
             }
-          
-            NodeMetaData nodeMetaData = new NodeMetaData();
-            nodeMetaData.setNodeId(nodeId);
-  
-            if(includeNodeRef)
+        }
+    }
+
+    /**
+     * Splits the nodes into batches that are fetched by the metadata thread pool, each in its own
+     * read-only transaction.  Results are passed to the row handler in the original node order and
+     * only a pool's worth of batches is held in memory at any time.
+     */
+    private void getNodesMetadataInParallel(List<Long> nodeIds, final NodeMetaDataRequest request, NodeMetaDataQueryRowHandler rowHandler)
+    {
+        final String runAsUser = AuthenticationUtil.getRunAsUser();
+        int maxInFlight = Math.max(1, metadataThreadPool.getMaximumPoolSize());
+        LinkedList<Future<List<NodeMetaData>>> inFlight = new LinkedList<Future<List<NodeMetaData>>>();
+        int nextBatchStart = 0;
+        try
+        {
+            while (nextBatchStart < nodeIds.size() || !inFlight.isEmpty())
             {
-                nodeMetaData.setNodeRef(tenantService.getBaseName(nodeRef, true));
+                while (nextBatchStart < nodeIds.size() && inFlight.size() < maxInFlight)
+                {
+                    int batchEnd = Math.min(nextBatchStart + metadataBatchSize, nodeIds.size());
+                    final List<Long> batch = new ArrayList<Long>(nodeIds.subList(nextBatchStart, batchEnd));
+                    nextBatchStart = batchEnd;
+                    inFlight.add(metadataThreadPool.submit(() -> AuthenticationUtil.runAs(() -> fetchNodeMetaDataBatch(batch, request), runAsUser)));
+                }
+                Future<List<NodeMetaData>> next = inFlight.removeFirst();
+                for (NodeMetaData nodeMetaData : next.get())
+                {
+                    rowHandler.processResult(nodeMetaData);
+                }
+                if (!rowHandler.isMore())
+                {
+                    break;
+                }
             }
-            
-            if(includeTxnId)
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new AlfrescoRuntimeException("Interrupted while fetching node metadata", e);
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
             {
-                nodeMetaData.setTxnId(status.getDbTxnId());
+                throw (RuntimeException) cause;
             }
-            
-            if(status.isDeleted())
+            throw new AlfrescoRuntimeException("Failed to fetch node metadata", cause);
+        }
+        finally
+        {
+            for (Future<List<NodeMetaData>> future : inFlight)
             {
-                rowHandler.processResult(nodeMetaData);
-                continue;
+                future.cancel(true);
             }
-            
-            Map<QName, Serializable> props = null;
-            Set<QName> aspects = null;
+        }
+    }
 
-            Status unversionedStatus = null;
-            if(unversionedNodeRef != null)
+    private List<NodeMetaData> fetchNodeMetaDataBatch(final List<Long> batch, final NodeMetaDataRequest request)
+    {
+        RetryingTransactionCallback<List<NodeMetaData>> callback = new RetryingTransactionCallback<List<NodeMetaData>>()
+        {
+            @Override
+            public List<NodeMetaData> execute() throws Throwable
             {
-            	unversionedStatus = nodeDAO.getNodeRefStatus(unversionedNodeRef);
+                cacheNodes(batch);
+                List<NodeMetaData> results = new ArrayList<NodeMetaData>(batch.size());
+                for (Long nodeId : batch)
+                {
+                    NodeMetaData nodeMetaData = getNodeMetaData(nodeId, request);
+                    if (nodeMetaData != null)
+                    {
+                        results.add(nodeMetaData);
+                    }
+                }
+                return results;
             }
+        };
+        List<NodeMetaData> results = transactionService.getRetryingTransactionHelper().doInTransaction(callback, true, true);
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Fetched metadata for " + results.size() + " of " + batch.size() + " nodes starting at node " + batch.get(0));
+        }
+        return results;
+    }
 
-            if(unversionedStatus != null)
+    /**
+     * @return              the metadata for the node or <tt>null</tt> if the node has been purged
+     */
+    private NodeMetaData getNodeMetaData(Long nodeId, NodeMetaDataRequest request)
+    {
+        boolean includeType = request.includeType;
+        boolean includeProperties = request.includeProperties;
+        boolean includeAspects = request.includeAspects;
+        boolean includePaths = request.includePaths;
+        boolean includeNodeRef = request.includeNodeRef;
+        boolean includeParentAssociations = request.includeParentAssociations;
+        boolean includeChildAssociations = request.includeChildAssociations;
+        boolean includeOwner = request.includeOwner;
+        boolean includeChildIds = request.includeChildIds;
+        boolean includeTxnId = request.includeTxnId;
+
+        Status status = nodeDAO.getNodeIdStatus(nodeId);
+        if (status == null)
+        {
+            // We've been called with the ID of a purged node, probably due to processing a transaction with a
+            // cascading delete. Fine to skip and assume it will be processed in a transaction.
+            // See org.alfresco.solr.tracker.CoreTracker.updateDescendantAuxDocs(NodeMetaData, boolean, SolrIndexSearcher)
+            return null;
+        }
+        NodeRef nodeRef = status.getNodeRef();
+        
+        NodeRef unversionedNodeRef = null;
+        if(isVersionNodeRef(nodeRef))
+        {
+        	unversionedNodeRef = convertVersionNodeRefToVersionedNodeRef(VersionUtil.convertNodeRef(nodeRef));
+        }
+      
+        NodeMetaData nodeMetaData = new NodeMetaData();
+        nodeMetaData.setNodeId(nodeId);
+  
+        if(includeNodeRef)
+        {
+            nodeMetaData.setNodeRef(tenantService.getBaseName(nodeRef, true));
+        }
+        
+        if(includeTxnId)
+        {
+            nodeMetaData.setTxnId(status.getDbTxnId());
+        }
+        
+        if(status.isDeleted())
+        {
+            return nodeMetaData;
+        }
+        
+        Map<QName, Serializable> props = null;
+        Set<QName> aspects = null;
+
+        Status unversionedStatus = null;
+        if(unversionedNodeRef != null)
+        {
+        	unversionedStatus = nodeDAO.getNodeRefStatus(unversionedNodeRef);
+        }
+
+        if(unversionedStatus != null)
+        {
+        	nodeMetaData.setAclId(nodeDAO.getNodeAclId(unversionedStatus.getDbId()));
+        }
+        else
+        {
+        	nodeMetaData.setAclId(nodeDAO.getNodeAclId(nodeId));
+        }
+
+        
+        if(includeType)
+        {
+            QName nodeType = getNodeType(nodeId);
+            if(nodeType != null)
             {
-            	nodeMetaData.setAclId(nodeDAO.getNodeAclId(unversionedStatus.getDbId()));
+                nodeMetaData.setNodeType(nodeType);
             }
             else
             {
-            	nodeMetaData.setAclId(nodeDAO.getNodeAclId(nodeId));
-            }
+                QName typeQName = null;
+                TypeDefinition typeDefinition = null;
+                
+                String errorMessage = "NodeId " + nodeId + " with nodeRef " + nodeRef;
 
-            
-            if(includeType)
-            {
-                QName nodeType = getNodeType(nodeId);
-                if(nodeType != null)
+                typeQName = nodeDAO.getNodeType(nodeId);
+                if (typeQName != null)
                 {
-                    nodeMetaData.setNodeType(nodeType);
+                    errorMessage += " has type " + typeQName + ", but this type is not registered in DictionaryService.";
                 }
                 else
                 {
-                    QName typeQName = null;
-                    TypeDefinition typeDefinition = null;
-                    
-                    String errorMessage = "NodeId " + nodeId + " with nodeRef " + nodeRef;
-
-                    typeQName = nodeDAO.getNodeType(nodeId);
-                    if (typeQName != null)
-                    {
-                        errorMessage += " has type " + typeQName + ", but this type is not registered in DictionaryService.";
-                    }
-                    else
-                    {
-                        errorMessage += " has no type.";
-                    }
-                    
-                    throw new AlfrescoRuntimeException(errorMessage + " It will be ignored by SOLR.");
+                    errorMessage += " has no type.";
                 }
+                
+                throw new AlfrescoRuntimeException(errorMessage + " It will be ignored by SOLR.");
             }
+        }
 
-            if(includeProperties)
-            {
-                if(props == null)
-                {
-                    props = getProperties(nodeId);
-                }
-                nodeMetaData.setProperties(props);
-            }
-            else
+        if(includeProperties)
+        {
+            if(props == null)
             {
-                nodeMetaData.setProperties(Collections.<QName, Serializable>emptyMap());
+                props = getProperties(nodeId);
             }
+            nodeMetaData.setProperties(props);
+        }
+        else
+        {
+            nodeMetaData.setProperties(Collections.<QName, Serializable>emptyMap());
+        }
 
-            if(includeAspects || includePaths || includeParentAssociations)
-            {
-                aspects = getNodeAspects(nodeId);
-            }
-            nodeMetaData.setAspects(aspects);
+        if(includeAspects || includePaths || includeParentAssociations)
+        {
+            aspects = getNodeAspects(nodeId);
+        }
+        nodeMetaData.setAspects(aspects);
 
-            boolean ignoreLargeMetadata = (typeIndexFilter.shouldBeIgnored(getNodeType(nodeId)) || aspectIndexFilter.shouldBeIgnored(getNodeAspects(nodeId)));
+        boolean ignoreLargeMetadata = (typeIndexFilter.shouldBeIgnored(getNodeType(nodeId)) || aspectIndexFilter.shouldBeIgnored(getNodeAspects(nodeId)));
 
-            CategoryPaths categoryPaths = new CategoryPaths(new ArrayList<Pair<Path, QName>>(), new ArrayList<ChildAssociationRef>());
-            if(!ignoreLargeMetadata && (includePaths || includeParentAssociations))
+        CategoryPaths categoryPaths = new CategoryPaths(new ArrayList<Pair<Path, QName>>(), new ArrayList<ChildAssociationRef>());
+        if(!ignoreLargeMetadata && (includePaths || includeParentAssociations))
+        {
+            if(props == null)
             {
-                if(props == null)
-                {
-                    props = getProperties(nodeId);
-                }
-                categoryPaths = getCategoryPaths(status.getNodeRef(), aspects, props);
+                props = getProperties(nodeId);
             }
+            categoryPaths = getCategoryPaths(status.getNodeRef(), aspects, props);
+        }
 
-            if (!ignoreLargeMetadata && (typeIndexFilter.isIgnorePathsForSpecificTypes() || aspectIndexFilter.isIgnorePathsForSpecificAspects() || includeParentAssociations))
+        if (!ignoreLargeMetadata && (typeIndexFilter.isIgnorePathsForSpecificTypes() || aspectIndexFilter.isIgnorePathsForSpecificAspects() || includeParentAssociations))
+        {
+            // check if parent should be ignored
+            final List<Long> parentIds = new LinkedList<Long>();
+            final List<ChildAssociationRef> parentAssocs = new ArrayList<ChildAssociationRef>(100);
+            nodeDAO.getParentAssocs(nodeId, null, null, true, new ChildAssocRefQueryCallback()
             {
-                // check if parent should be ignored
-                final List<Long> parentIds = new LinkedList<Long>();
-                final List<ChildAssociationRef> parentAssocs = new ArrayList<ChildAssociationRef>(100);
-                nodeDAO.getParentAssocs(nodeId, null, null, true, new ChildAssocRefQueryCallback()
+                @Override
+                public boolean preLoadNodes()
                 {
-                    @Override
-                    public boolean preLoadNodes()
-                    {
-                        return false;
-                    }
-
-                    @Override
-                    public boolean orderResults()
-                    {
-                        return false;
-                    }
-
-                    @Override
-                    public boolean handle(Pair<Long, ChildAssociationRef> childAssocPair, Pair<Long, NodeRef> parentNodePair, Pair<Long, NodeRef> childNodePair)
-                    {
-                        parentIds.add(parentNodePair.getFirst());
-                        parentAssocs.add(tenantService.getBaseName(childAssocPair.getSecond(), true));
-                        return false;
-                    }
+                    return false;
+                }
 
-                    @Override
-                    public void done()
-                    {
-                    }
-                });
+                @Override
+                public boolean orderResults()
+                {
+                    return false;
+                }
 
-                if (!parentIds.isEmpty())
+                @Override
+                public boolean handle(Pair<Long, ChildAssociationRef> childAssocPair, Pair<Long, NodeRef> parentNodePair, Pair<Long, NodeRef> childNodePair)
                 {
-                    Long parentId = parentIds.iterator().next();
-                    if (typeIndexFilter.isIgnorePathsForSpecificTypes())
-                    {
-                        QName parentType = getNodeType(parentId);
-                        ignoreLargeMetadata = typeIndexFilter.shouldBeIgnored(parentType);
-                    }
-                    if (!ignoreLargeMetadata && aspectIndexFilter.isIgnorePathsForSpecificAspects())
-                    {
-                        ignoreLargeMetadata = aspectIndexFilter.shouldBeIgnored(getNodeAspects(parentId));
-                    }
+                    parentIds.add(parentNodePair.getFirst());
+                    parentAssocs.add(tenantService.getBaseName(childAssocPair.getSecond(), true));
+                    return false;
                 }
 
-                if (includeParentAssociations)
+                @Override
+                public void done()
                 {
-                    for(ChildAssociationRef ref : categoryPaths.getCategoryParents())
-                    {
-                        parentAssocs.add(tenantService.getBaseName(ref, true));
-                    }
+                }
+            });
 
-                    CRC32 crc = new CRC32();
-                    for(ChildAssociationRef car : parentAssocs)
-                    {
-                        try
-                        {
-                            crc.update(car.toString().getBytes("UTF-8"));
-                        }
-                        catch (UnsupportedEncodingException e)
-                        {
-                            throw new RuntimeException("UTF-8 encoding is not supported");
-                        }
-                    }
-                    nodeMetaData.setParentAssocs(parentAssocs, crc.getValue());
+            if (!parentIds.isEmpty())
+            {
+                Long parentId = parentIds.iterator().next();
+                if (typeIndexFilter.isIgnorePathsForSpecificTypes())
+                {
+                    QName parentType = getNodeType(parentId);
+                    ignoreLargeMetadata = typeIndexFilter.shouldBeIgnored(parentType);
+                }
+                if (!ignoreLargeMetadata && aspectIndexFilter.isIgnorePathsForSpecificAspects())
+                {
+                    ignoreLargeMetadata = aspectIndexFilter.shouldBeIgnored(getNodeAspects(parentId));
                 }
             }
 
-            nodeMetaData.setTenantDomain(tenantService.getDomain(nodeRef.getStoreRef().getIdentifier()));
-            
-            if(includeChildAssociations || includeChildIds)
+            if (includeParentAssociations)
             {
-                final List<ChildAssociationRef> childAssocs = new ArrayList<ChildAssociationRef>(100);
-                final List<Long> childIds = new ArrayList<Long>(100);
-                nodeDAO.getChildAssocs(nodeId, null, null, null, null, null, new ChildAssocRefQueryCallback()
+                for(ChildAssociationRef ref : categoryPaths.getCategoryParents())
                 {
-                    @Override
-                    public boolean preLoadNodes()
-                    {
-                        return false;
-                    }
-                    
-                    @Override
-                    public boolean orderResults()
-                    {
-                        return false;
-                    }
+                    parentAssocs.add(tenantService.getBaseName(ref, true));
+                }
 
-                    @Override
-                    public boolean handle(Pair<Long, ChildAssociationRef> childAssocPair, Pair<Long, NodeRef> parentNodePair,
-                            Pair<Long, NodeRef> childNodePair)
+                CRC32 crc = new CRC32();
+                for(ChildAssociationRef car : parentAssocs)
+                {
+                    try
                     {
-                        QName nodeType = nodeDAO.getNodeType(childNodePair.getFirst());
-                        if (includeChildAssociations)
-                        {
-                            boolean addCurrentChildAssoc = true;
-                            if (typeIndexFilter.isIgnorePathsForSpecificTypes())
-                            {
-                                addCurrentChildAssoc = !typeIndexFilter.shouldBeIgnored(nodeType);
-                            }
-                            if (!addCurrentChildAssoc && aspectIndexFilter.isIgnorePathsForSpecificAspects())
-                            {
-                                addCurrentChildAssoc = !aspectIndexFilter.shouldBeIgnored(getNodeAspects(childNodePair.getFirst()));
-                            }
-                            if (addCurrentChildAssoc)
-                            {
-                                childAssocs.add(tenantService.getBaseName(childAssocPair.getSecond(), true));
-                            }
-                        }
-
-                        if (includeChildIds)
-                        {
-                            boolean addCurrentId = true;
-                            if (typeIndexFilter.isIgnorePathsForSpecificTypes())
-                            {
-                                addCurrentId = !typeIndexFilter.shouldBeIgnored(nodeType);
-                            }
-                            if (!addCurrentId)
-                            {
-                                addCurrentId = !aspectIndexFilter.shouldBeIgnored(getNodeAspects(childNodePair.getFirst()));
-                            }
-                            if (addCurrentId)
-                            {
-                                childIds.add(childNodePair.getFirst());
-                            }
-                        }
-                        return true;
+                        crc.update(car.toString().getBytes("UTF-8"));
                     }
-                    
-                    @Override
-                    public void done()
+                    catch (UnsupportedEncodingException e)
                     {
+                        throw new RuntimeException("UTF-8 encoding is not supported");
                     }
-                });
-                nodeMetaData.setChildAssocs(childAssocs);
-                nodeMetaData.setChildIds(childIds);
+                }
+                nodeMetaData.setParentAssocs(parentAssocs, crc.getValue());
             }
+        }
 
-            if (includePaths && !ignoreLargeMetadata)
+        nodeMetaData.setTenantDomain(tenantService.getDomain(nodeRef.getStoreRef().getIdentifier()));
+        
+        if(includeChildAssociations || includeChildIds)
+        {
+            final List<ChildAssociationRef> childAssocs = new ArrayList<ChildAssociationRef>(100);
+            final List<Long> childIds = new ArrayList<Long>(100);
+            nodeDAO.getChildAssocs(nodeId, null, null, null, null, null, new ChildAssocRefQueryCallback()
             {
-                List<Path> directPaths = nodeDAO.getPaths(new Pair<Long, NodeRef>(nodeId, status.getNodeRef()), false);
-                Collection<Pair<Path, QName>> paths = new ArrayList<Pair<Path, QName>>(directPaths.size() + categoryPaths.getPaths().size());
-
-                for (Path path : directPaths)
-                {
-                    paths.add(new Pair<Path, QName>(path.getBaseNamePath(tenantService), null));
-                }
-                for (Pair<Path, QName> catPair : categoryPaths.getPaths())
+                @Override
+                public boolean preLoadNodes()
                 {
-                    paths.add(new Pair<Path, QName>(catPair.getFirst().getBaseNamePath(tenantService), catPair.getSecond()));
+                    return false;
                 }
-                if(unversionedStatus !=  null)
+                
+                @Override
+                public boolean orderResults()
                 {
-                    List<Path>  unversionedPaths = nodeDAO.getPaths(new Pair<Long, NodeRef>(unversionedStatus.getDbId(), unversionedStatus.getNodeRef()), false);
-                    for (Path path : unversionedPaths)
-                    {
-                        paths.add(new Pair<Path, QName>(path.getBaseNamePath(tenantService), null));
-                    }
+                    return false;
                 }
 
-                nodeMetaData.setPaths(paths);
-
-                // Calculate name path
-                Collection<Collection<String>> namePaths = new ArrayList<Collection<String>>(2);
-                nodeMetaData.setNamePaths(namePaths);
-                for (Pair<Path, QName>  catPair : paths)
+                @Override
+                public boolean handle(Pair<Long, ChildAssociationRef> childAssocPair, Pair<Long, NodeRef> parentNodePair,
+                        Pair<Long, NodeRef> childNodePair)
                 {
-                    Path path = catPair.getFirst();
-
-                    boolean added = false;
-                    List<String> namePath = new ArrayList<String>(path.size());
-                    NEXT_ELEMENT: for (Path.Element pathElement : path)
+                    QName nodeType = nodeDAO.getNodeType(childNodePair.getFirst());
+                    if (includeChildAssociations)
                     {
-                        if (!(pathElement instanceof ChildAssocElement))
+                        boolean addCurrentChildAssoc = true;
+                        if (typeIndexFilter.isIgnorePathsForSpecificTypes())
                         {
-                            // This is some path element that is terminal to a cm:name path
-                            break;
+                            addCurrentChildAssoc = !typeIndexFilter.shouldBeIgnored(nodeType);
                         }
-                        ChildAssocElement pathChildAssocElement = (ChildAssocElement) pathElement;
-                        NodeRef childNodeRef = pathChildAssocElement.getRef().getChildRef();
-                        Pair<Long, NodeRef> childNodePair = nodeDAO.getNodePair(childNodeRef);
-                        if (childNodePair == null)
+                        if (!addCurrentChildAssoc && aspectIndexFilter.isIgnorePathsForSpecificAspects())
                         {
-                            // Gone
-                            break;
+                            addCurrentChildAssoc = !aspectIndexFilter.shouldBeIgnored(getNodeAspects(childNodePair.getFirst()));
                         }
-                        Long childNodeId = childNodePair.getFirst();
-                        String childNodeName = (String) nodeDAO.getNodeProperty(childNodeId, ContentModel.PROP_NAME);
-                        if (childNodeName == null)
+                        if (addCurrentChildAssoc)
                         {
-                            // We have hit a non-name node, which acts as a root for cm:name
-                            // DH: There is no particular constraint here.  This is just a decision made.
-                            namePath.clear();
-                            // We have to continue down the path as there could be a name path lower down
-                            continue NEXT_ELEMENT;
+                            childAssocs.add(tenantService.getBaseName(childAssocPair.getSecond(), true));
                         }
-                        // We can finally add the name to the path
-                        namePath.add(childNodeName);
-                        // Add the path if this is the first entry in the name path
-                        if (!added)
+                    }
+
+                    if (includeChildIds)
+                    {
+                        boolean addCurrentId = true;
+                        if (typeIndexFilter.isIgnorePathsForSpecificTypes())
                         {
-                            namePaths.add(namePath);
-                            added = true;
+                            addCurrentId = !typeIndexFilter.shouldBeIgnored(nodeType);
+                        }
+                        if (!addCurrentId)
+                        {
+                            addCurrentId = !aspectIndexFilter.shouldBeIgnored(getNodeAspects(childNodePair.getFirst()));
+                        }
+                        if (addCurrentId)
+                        {
+                            childIds.add(childNodePair.getFirst());
                         }
                     }
+                    return true;
+                }
+                
+                @Override
+                public void done()
+                {
+                }
+            });
+            nodeMetaData.setChildAssocs(childAssocs);
+            nodeMetaData.setChildIds(childIds);
+        }
+
+        if (includePaths && !ignoreLargeMetadata)
+        {
+            List<Path> directPaths = nodeDAO.getPaths(new Pair<Long, NodeRef>(nodeId, status.getNodeRef()), false);
+            Collection<Pair<Path, QName>> paths = new ArrayList<Pair<Path, QName>>(directPaths.size() + categoryPaths.getPaths().size());
+
+            for (Path path : directPaths)
+            {
+                paths.add(new Pair<Path, QName>(path.getBaseNamePath(tenantService), null));
+            }
+            for (Pair<Path, QName> catPair : categoryPaths.getPaths())
+            {
+                paths.add(new Pair<Path, QName>(catPair.getFirst().getBaseNamePath(tenantService), catPair.getSecond()));
+            }
+            if(unversionedStatus !=  null)
+            {
+                List<Path>  unversionedPaths = nodeDAO.getPaths(new Pair<Long, NodeRef>(unversionedStatus.getDbId(), unversionedStatus.getNodeRef()), false);
+                for (Path path : unversionedPaths)
+                {
+                    paths.add(new Pair<Path, QName>(path.getBaseNamePath(tenantService), null));
                 }
             }
 
-            if(includeOwner)
+            nodeMetaData.setPaths(paths);
+
+            // Calculate name path
+            Collection<Collection<String>> namePaths = new ArrayList<Collection<String>>(2);
+            nodeMetaData.setNamePaths(namePaths);
+            for (Pair<Path, QName>  catPair : paths)
             {
-                // cached in OwnableService
-                nodeMetaData.setOwner(ownableService.getOwner(status.getNodeRef()));
+                Path path = catPair.getFirst();
+
+                boolean added = false;
+                List<String> namePath = new ArrayList<String>(path.size());
+                NEXT_ELEMENT: for (Path.Element pathElement : path)
+                {
+                    if (!(pathElement instanceof ChildAssocElement))
+                    {
+                        // This is some path element that is terminal to a cm:name path
+                        break;
+                    }
+                    ChildAssocElement pathChildAssocElement = (ChildAssocElement) pathElement;
+                    NodeRef childNodeRef = pathChildAssocElement.getRef().getChildRef();
+                    Pair<Long, String> childNodeIdAndName = request.getNodeIdAndName(childNodeRef);
+                    if (childNodeIdAndName == GONE)
+                    {
+                        // Gone
+                        break;
+                    }
+                    String childNodeName = childNodeIdAndName.getSecond();
+                    if (childNodeName == null)
+                    {
+                        // We have hit a non-name node, which acts as a root for cm:name
+                        // DH: There is no particular constraint here.  This is just a decision made.
+                        namePath.clear();
+                        // We have to continue down the path as there could be a name path lower down
+                        continue NEXT_ELEMENT;
+                    }
+                    // We can finally add the name to the path
+                    namePath.add(childNodeName);
+                    // Add the path if this is the first entry in the name path
+                    if (!added)
+                    {
+                        namePaths.add(namePath);
+                        added = true;
+                    }
+                }
             }
- 
-            rowHandler.processResult(nodeMetaData);
         }
+
+        if(includeOwner)
+        {
+            // cached in OwnableService
+            nodeMetaData.setOwner(ownableService.getOwner(status.getNodeRef()));
+        }
+ 
+        return nodeMetaData;
     }
 
     private boolean isVersionNodeRef(NodeRef nodeRef)
@@ -1335,6 +1485,71 @@ public class SOLRTrackingComponentImpl implements SearchTrackingComponent
             
             more = callback.handleNodeMetaData(row);
         }
+
+        public boolean isMore()
+        {
+            return more;
+        }
+    }
+
+    /** Marks a node that no longer exists in {@link NodeMetaDataRequest#getNodeIdAndName(NodeRef)} */
+    private static final Pair<Long, String> GONE = new Pair<Long, String>(null, null);
+
+    /**
+     * The options of a single metadata request, along with the names of the ancestors seen while
+     * building name paths.  Sibling nodes share most of their ancestors so the names are looked up
+     * once per request, by whichever thread gets there first.
+     */
+    private class NodeMetaDataRequest
+    {
+        private final boolean includeType;
+        private final boolean includeProperties;
+        private final boolean includeAspects;
+        private final boolean includePaths;
+        private final boolean includeNodeRef;
+        private final boolean includeParentAssociations;
+        private final boolean includeChildAssociations;
+        private final boolean includeOwner;
+        private final boolean includeChildIds;
+        private final boolean includeTxnId;
+        private final ConcurrentMap<NodeRef, Pair<Long, String>> nodeIdsAndNames = new ConcurrentHashMap<NodeRef, Pair<Long, String>>();
+
+        private NodeMetaDataRequest(MetaDataResultsFilter resultFilter)
+        {
+            includeType = (resultFilter == null ? true : resultFilter.getIncludeType());
+            includeProperties = (resultFilter == null ? true : resultFilter.getIncludeProperties());
+            includeAspects = (resultFilter == null ? true : resultFilter.getIncludeAspects());
+            includePaths = (resultFilter == null ? true : resultFilter.getIncludePaths());
+            includeNodeRef = (resultFilter == null ? true : resultFilter.getIncludeNodeRef());
+            includeParentAssociations = (resultFilter == null ? true : resultFilter.getIncludeParentAssociations());
+            includeChildAssociations = (resultFilter == null ? true : resultFilter.getIncludeChildAssociations());
+            includeOwner = (resultFilter == null ? true : resultFilter.getIncludeOwner());
+            includeChildIds = (resultFilter == null ? true : resultFilter.getIncludeChildIds());
+            includeTxnId = (resultFilter == null ? true : resultFilter.getIncludeTxnId());
+        }
+
+        /**
+         * @return              the node ID and <b>cm:name</b> (which may be <tt>null</tt>) or {@link #GONE}
+         */
+        private Pair<Long, String> getNodeIdAndName(NodeRef nodeRef)
+        {
+            Pair<Long, String> nodeIdAndName = nodeIdsAndNames.get(nodeRef);
+            if (nodeIdAndName == null)
+            {
+                Pair<Long, NodeRef> nodePair = nodeDAO.getNodePair(nodeRef);
+                if (nodePair == null)
+                {
+                    nodeIdAndName = GONE;
+                }
+                else
+                {
+                    String name = (String) nodeDAO.getNodeProperty(nodePair.getFirst(), ContentModel.PROP_NAME);
+                    nodeIdAndName = new Pair<Long, String>(nodePair.getFirst(), name);
+                }
+                nodeIdsAndNames.putIfAbsent(nodeRef, nodeIdAndName);
+            }
+            return nodeIdAndName;
+        }
     }
 
     @Override
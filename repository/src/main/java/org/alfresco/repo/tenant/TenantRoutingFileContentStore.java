@@ -35,6 +35,7 @@ import org.alfresco.repo.content.ContentLimitProvider.NoLimitProvider;
 import org.alfresco.repo.content.ContentStore;
 import org.alfresco.repo.content.filestore.FileContentStore;
 import org.alfresco.repo.content.filestore.FileContentUrlProvider;
+import org.alfresco.repo.content.filestore.MappedFileRegionCache;
 import org.springframework.context.ApplicationContext;
 
 /**
@@ -44,6 +45,7 @@ public class TenantRoutingFileContentStore extends AbstractTenantRoutingContentS
 {
     private ContentLimitProvider contentLimitProvider = new NoLimitProvider();
     private FileContentUrlProvider fileContentUrlProvider;
+    private MappedFileRegionCache mappedFileRegionCache;
     
     /**
      * Sets a new {@link ContentLimitProvider} which will provide a maximum filesize for content.
@@ -59,6 +61,14 @@ public class TenantRoutingFileContentStore extends AbstractTenantRoutingContentS
     public void setFileContentUrlProvider(FileContentUrlProvider fileContentUrlProvider)
     {
         this.fileContentUrlProvider = fileContentUrlProvider;
+    }
+    
+    /**
+     * Sets the {@link MappedFileRegionCache} through which readers can share memory-mapped files.
+     */
+    public void setMappedFileRegionCache(MappedFileRegionCache mappedFileRegionCache)
+    {
+        this.mappedFileRegionCache = mappedFileRegionCache;
     }
     
     protected ContentStore initContentStore(ApplicationContext ctx, String contentRoot)
@@ -81,6 +91,11 @@ public class TenantRoutingFileContentStore extends AbstractTenantRoutingContentS
         {
             fileContentStore.setFileContentUrlProvider(fileContentUrlProvider);
         }
+        
+        if (mappedFileRegionCache != null)
+        {
+            fileContentStore.setMappedFileRegionCache(mappedFileRegionCache);
+        }
         return fileContentStore;
     }
 }
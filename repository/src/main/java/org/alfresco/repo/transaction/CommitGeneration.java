@@ -0,0 +1,98 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.transaction;
+
+import org.alfresco.repo.cache.SimpleCache;
+import org.alfresco.util.GUID;
+import org.alfresco.util.PropertyCheck;
+
+/**
+ * A token that changes every time a transaction that wrote to the database has committed.
+ * <p>
+ * Writers call {@link #bindToTransaction()} and the token is replaced once their transaction
+ * has committed.  Readers take the token <i>before</i> reading from the database and keep it
+ * with anything they derive from what they read: if the token is still the same later on then
+ * no writes have been committed in between.  The token is held in a shared cache that must be
+ * invalidated across the cluster so that commits on other servers are seen as well.
+ * <p>
+ * Checking the token does not touch the database and, unlike the transaction commit times,
+ * it cannot miss a transaction that commits after a later one has already become visible.
+ *
+ * @since 23.3
+ */
+public class CommitGeneration
+{
+    private static final String KEY_GENERATION = "generation";
+
+    private SimpleCache<String, String> generationCache;
+    private final TransactionListenerAdapter afterCommitListener = new AfterCommitListener();
+
+    /**
+     * @param generationCache       the shared cache holding the current token
+     */
+    public void setGenerationCache(SimpleCache<String, String> generationCache)
+    {
+        this.generationCache = generationCache;
+    }
+
+    public void init()
+    {
+        PropertyCheck.mandatory(this, "generationCache", generationCache);
+    }
+
+    /**
+     * @return                      the current token, which is never <tt>null</tt>
+     */
+    public String getGeneration()
+    {
+        String generation = generationCache.get(KEY_GENERATION);
+        if (generation == null)
+        {
+            // Nothing is known about previous commits, so start a new generation
+            generation = GUID.generate();
+            generationCache.put(KEY_GENERATION, generation);
+        }
+        return generation;
+    }
+
+    /**
+     * Replace the token when the current transaction commits.  This can be called any number of
+     * times within the same transaction.
+     */
+    public void bindToTransaction()
+    {
+        AlfrescoTransactionSupport.bindListener(afterCommitListener);
+    }
+
+    private class AfterCommitListener extends TransactionListenerAdapter
+    {
+        @Override
+        public void afterCommit()
+        {
+            generationCache.put(KEY_GENERATION, GUID.generate());
+        }
+    }
+}
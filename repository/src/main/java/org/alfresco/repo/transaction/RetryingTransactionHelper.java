@@ -2,7 +2,7 @@
  * #%L
  * Alfresco Repository
  * %%
- * Copyright (C) 2005 - 2023 Alfresco Software Limited
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
  * %%
  * This file is part of the Alfresco software. 
  * If the software was purchased under a paid Alfresco license, the terms of 
@@ -78,7 +78,11 @@ import org.springframework.jdbc.UncategorizedSQLException;
  * To get details of 'why' transactions are retried use the following log level:<br>
  * <b>Summary: log4j.logger.org.alfresco.repo.transaction.RetryingTransactionHelper=INFO</b><br>
  * <b>Details: log4j.logger.org.alfresco.repo.transaction.RetryingTransactionHelper=DEBUG</b><br>
- * 
+ * <p>
+ * With <b>statisticsEnabled</b> retries are counted per caller and per exception type, see
+ * {@link #getStatistics()}.  With <b>adaptiveBackoff</b> the wait between retries uses decorrelated
+ * jitter, starting from a base wait that grows with the caller's recent conflict rate; the statistics
+ * are then always collected.
  *
  * @author Derek Hulley
  */
@@ -89,6 +93,11 @@ public class RetryingTransactionHelper
     private static final String KEY_ACTIVE_TRANSACTION = "RetryingTransactionHelper.ActiveTxn";
     private static Log    logger = LogFactory.getLog(RetryingTransactionHelper.class);
 
+    /** Retry telemetry shared by all instances */
+    private static final RetryingTransactionStatistics STATISTICS = new RetryingTransactionStatistics();
+    /** How much the base wait grows with the conflict rate when using adaptive backoff */
+    private static final double ADAPTIVE_RATE_FACTOR = 4D;
+
     /**
      * Exceptions that trigger retries.
      */
@@ -203,6 +212,16 @@ public class RetryingTransactionHelper
      */
     private List<Class<?>> extraExceptions;
 
+    /**
+     * Whether retry waits adapt to the observed conflict rate.
+     */
+    private boolean adaptiveBackoff;
+
+    /**
+     * Whether retries are recorded in the {@link #getStatistics() statistics}.
+     */
+    private boolean statisticsEnabled;
+
     /**
      * Callback interface
      * @author Derek Hulley
@@ -301,6 +320,39 @@ public class RetryingTransactionHelper
     {
         this.extraExceptions = extraExceptions;
     }
+
+    /**
+     * Set whether the wait between retries uses decorrelated jitter scaled by the conflict rate
+     * of the caller, rather than a random wait growing with the number of retries.
+     * 
+     * @since 23.3
+     */
+    public void setAdaptiveBackoff(boolean adaptiveBackoff)
+    {
+        this.adaptiveBackoff = adaptiveBackoff;
+    }
+
+    /**
+     * Set whether the attempts and retries of new transactions are recorded in the
+     * {@link #getStatistics() statistics}.  They are off by default as naming the caller costs a
+     * little on every transaction; adaptive backoff records them regardless.
+     * 
+     * @since 23.3
+     */
+    public void setStatisticsEnabled(boolean statisticsEnabled)
+    {
+        this.statisticsEnabled = statisticsEnabled;
+    }
+
+    /**
+     * Get the retry telemetry recorded by all retrying transaction helpers.
+     * 
+     * @since 23.3
+     */
+    public static RetryingTransactionStatistics getStatistics()
+    {
+        return STATISTICS;
+    }
     
     /**
      * Execute a callback in a transaction until it succeeds, fails
@@ -429,13 +481,22 @@ public class RetryingTransactionHelper
             // Track the last exception caught, so that we
             // can throw it if we run out of retries.
             RuntimeException lastException = null;
+            Throwable lastRetryCause = null;
+            boolean recordStatistics = requiresNew && (statisticsEnabled || adaptiveBackoff);
+            String caller = recordStatistics ? RetryingTransactionStatistics.getCallerName(cb) : null;
+            int sleepInterval = 0;
             for (int count = 0; count == 0 || count < maxRetries; count++)
             {
                 UserTransaction txn = null;
+                long attemptStart = System.currentTimeMillis();
                 try
                 {
                     if (requiresNew)
                     {
+                        if (recordStatistics)
+                        {
+                            STATISTICS.recordAttempt(caller);
+                        }
                         txn = txnService.getNonPropagatingUserTransaction(readOnly, forceWritable);
 
                         txn.begin();
@@ -547,13 +608,15 @@ public class RetryingTransactionHelper
                     
                     if (retryCause != null)
                     {
+                        lastRetryCause = retryCause;
                         // Sleep a random amount of time before retrying.
-                        // The sleep interval increases with the number of retries.
-                        int sleepIntervalRandom = (count > 0 &&  retryWaitIncrementMs > 0)
-                                                    ? random.nextInt(count * retryWaitIncrementMs)
-                                                    : minRetryWaitMs;
-                        int sleepInterval = Math.min(maxRetryWaitMs, sleepIntervalRandom);
-                        sleepInterval = Math.max(sleepInterval, minRetryWaitMs);
+                        sleepInterval = getRetryWait(count, sleepInterval, caller);
+                        if (recordStatistics)
+                        {
+                            STATISTICS.recordRetry(
+                                    caller, retryCause,
+                                    System.currentTimeMillis() - attemptStart + sleepInterval);
+                        }
                         if (logger.isInfoEnabled() && !logger.isDebugEnabled())
                         {
                             String msg = String.format(
@@ -584,6 +647,10 @@ public class RetryingTransactionHelper
             }
             // We've worn out our welcome and retried the maximum number of times.
             // So, fail.
+            if (recordStatistics && lastRetryCause != null)
+            {
+                STATISTICS.recordFailure(caller, lastRetryCause);
+            }
             throw lastException;
         }
         finally
@@ -610,6 +677,39 @@ public class RetryingTransactionHelper
         }
     }
 
+    /**
+     * Work out how long to wait before the next retry.
+     * <p>
+     * By default the wait is random and grows with the number of retries.  With adaptive backoff it
+     * uses decorrelated jitter: a random wait between a base and three times the previous wait, where
+     * the base is the minimum wait scaled up by the recent conflict rate of the caller.  The result is
+     * always kept between the minimum and maximum waits.
+     *
+     * @param count             the number of the attempt that failed
+     * @param previousWait      the previous wait or <tt>0</tt> if this is the first retry
+     * @param caller            the caller as recorded in the {@link #getStatistics() statistics}
+     */
+    private int getRetryWait(int count, int previousWait, String caller)
+    {
+        int sleepInterval;
+        if (adaptiveBackoff)
+        {
+            double conflictRate = STATISTICS.getConflictRate(caller);
+            int base = (int) Math.min(maxRetryWaitMs, Math.max(1, minRetryWaitMs) * (1D + ADAPTIVE_RATE_FACTOR * conflictRate));
+            int ceiling = (int) Math.min(maxRetryWaitMs, Math.max(base, previousWait) * 3L);
+            sleepInterval = (ceiling > base) ? base + random.nextInt(ceiling - base + 1) : base;
+        }
+        else
+        {
+            // The sleep interval increases with the number of retries.
+            sleepInterval = (count > 0 &&  retryWaitIncrementMs > 0)
+                                        ? random.nextInt(count * retryWaitIncrementMs)
+                                        : minRetryWaitMs;
+        }
+        sleepInterval = Math.min(maxRetryWaitMs, sleepInterval);
+        return Math.max(sleepInterval, minRetryWaitMs);
+    }
+
     /**
      * Sometimes, the exception means retry and sometimes not.  The stack of exceptions is also checked
      * for any occurence of {@link DoNotRetryException} and, if found, nothing is returned.
@@ -0,0 +1,269 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.transaction;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Retry telemetry shared by all {@link RetryingTransactionHelper} instances.
+ * <p>
+ * Retries are counted per exception type and per caller, where the caller is the class of the
+ * transactional callback.  Each entry records the number of attempts and retries, the number of
+ * transactions that ran out of retries, the time wasted on failed attempts and backoff, and the
+ * message of the most recent conflict, which usually identifies the contended entity.
+ * <p>
+ * The conflict rate of a caller (retries per attempt over roughly the last minute) drives the
+ * adaptive backoff of the {@link RetryingTransactionHelper}.
+ *
+ * @author Alfresco
+ * @since 23.3
+ */
+public class RetryingTransactionStatistics
+{
+    /** Key under which entries are aggregated once the maximum number of keys has been reached */
+    public static final String KEY_OTHER = "<other>";
+
+    private static final int MAX_KEYS = 1000;
+    private static final int MAX_CONFLICT_LENGTH = 256;
+    private static final long WINDOW_MS = 60000L;
+    private static final String LAMBDA_MARKER = "$$Lambda";
+
+    private final ConcurrentMap<String, Entry> callers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Entry> exceptions = new ConcurrentHashMap<>();
+
+    /**
+     * Get the name under which the given callback is recorded.  Lambdas and method references are
+     * recorded against the class that declares them.
+     */
+    public static String getCallerName(Object callback)
+    {
+        String name = callback.getClass().getName();
+        int idx = name.indexOf(LAMBDA_MARKER);
+        return idx > 0 ? name.substring(0, idx) : name;
+    }
+
+    /**
+     * Record an attempt to run the given caller's transaction, whether it is the first one or a retry.
+     */
+    public void recordAttempt(String caller)
+    {
+        Entry entry = getEntry(callers, caller);
+        entry.attempts.increment();
+        entry.windowAttempts.increment();
+    }
+
+    /**
+     * Record a failed attempt that is going to be retried.
+     *
+     * @param caller            the caller as given by {@link #getCallerName(Object)}
+     * @param retryCause        the exception that triggered the retry
+     * @param wastedMs          the time spent on the failed attempt and the following backoff
+     */
+    public void recordRetry(String caller, Throwable retryCause, long wastedMs)
+    {
+        String conflict = getConflict(retryCause);
+        long now = System.currentTimeMillis();
+        getEntry(callers, caller).retry(wastedMs, conflict, now);
+        getEntry(exceptions, retryCause.getClass().getName()).retry(wastedMs, conflict, now);
+    }
+
+    /**
+     * Record a transaction that failed because it ran out of retries.
+     */
+    public void recordFailure(String caller, Throwable retryCause)
+    {
+        getEntry(callers, caller).failures.increment();
+        getEntry(exceptions, retryCause.getClass().getName()).failures.increment();
+    }
+
+    /**
+     * Get the fraction of recent attempts made by the given caller that had to be retried.
+     *
+     * @return                  the conflict rate between 0.0 and 1.0
+     */
+    public double getConflictRate(String caller)
+    {
+        Entry entry = callers.get(caller);
+        return entry == null ? 0D : entry.getConflictRate(System.currentTimeMillis());
+    }
+
+    /**
+     * @return                  a snapshot of the entries recorded per caller
+     */
+    public Map<String, Entry> getCallerStatistics()
+    {
+        return Collections.unmodifiableMap(new HashMap<>(callers));
+    }
+
+    /**
+     * @return                  a snapshot of the entries recorded per retried exception type
+     */
+    public Map<String, Entry> getExceptionStatistics()
+    {
+        return Collections.unmodifiableMap(new HashMap<>(exceptions));
+    }
+
+    /**
+     * Discard all recorded statistics.
+     */
+    public void reset()
+    {
+        callers.clear();
+        exceptions.clear();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "RetryingTransactionStatistics [callers=" + callers + ", exceptions=" + exceptions + "]";
+    }
+
+    private static Entry getEntry(ConcurrentMap<String, Entry> entries, String key)
+    {
+        Entry entry = entries.get(key);
+        if (entry == null)
+        {
+            // Keep the number of distinct keys bounded
+            if (entries.size() >= MAX_KEYS)
+            {
+                key = KEY_OTHER;
+            }
+            entry = entries.computeIfAbsent(key, k -> new Entry());
+        }
+        return entry;
+    }
+
+    private static String getConflict(Throwable retryCause)
+    {
+        String msg = retryCause.getMessage();
+        if (msg != null && msg.length() > MAX_CONFLICT_LENGTH)
+        {
+            msg = msg.substring(0, MAX_CONFLICT_LENGTH);
+        }
+        return msg;
+    }
+
+    /**
+     * Counters recorded against a single caller or exception type.
+     */
+    public static class Entry
+    {
+        private final LongAdder attempts = new LongAdder();
+        private final LongAdder retries = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder wastedMs = new LongAdder();
+        private volatile String lastConflict;
+        private volatile long lastConflictTime;
+
+        // Sliding window used to derive the conflict rate
+        private final LongAdder windowAttempts = new LongAdder();
+        private final LongAdder windowRetries = new LongAdder();
+        private volatile long windowStart = System.currentTimeMillis();
+        private volatile long previousAttempts;
+        private volatile long previousRetries;
+
+        private void retry(long wasted, String conflict, long now)
+        {
+            retries.increment();
+            windowRetries.increment();
+            wastedMs.add(wasted);
+            lastConflict = conflict;
+            lastConflictTime = now;
+        }
+
+        private double getConflictRate(long now)
+        {
+            if (now - windowStart >= WINDOW_MS)
+            {
+                synchronized (this)
+                {
+                    if (now - windowStart >= WINDOW_MS)
+                    {
+                        // Roll the window; the previous one still counts towards the rate
+                        previousAttempts = windowAttempts.sumThenReset();
+                        previousRetries = windowRetries.sumThenReset();
+                        windowStart = now;
+                    }
+                }
+            }
+            long recentAttempts = previousAttempts + windowAttempts.sum();
+            long recentRetries = previousRetries + windowRetries.sum();
+            if (recentAttempts <= 0)
+            {
+                return 0D;
+            }
+            return Math.min(1D, (double) recentRetries / (double) recentAttempts);
+        }
+
+        public long getAttempts()
+        {
+            return attempts.sum();
+        }
+
+        public long getRetries()
+        {
+            return retries.sum();
+        }
+
+        public long getFailures()
+        {
+            return failures.sum();
+        }
+
+        public long getWastedMs()
+        {
+            return wastedMs.sum();
+        }
+
+        /**
+         * @return              the message of the most recent conflict, if any
+         */
+        public String getLastConflict()
+        {
+            return lastConflict;
+        }
+
+        public long getLastConflictTime()
+        {
+            return lastConflictTime;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "[attempts=" + getAttempts() +
+                    ", retries=" + getRetries() +
+                    ", failures=" + getFailures() +
+                    ", wastedMs=" + getWastedMs() +
+                    ", lastConflict=" + lastConflict + "]";
+        }
+    }
+}
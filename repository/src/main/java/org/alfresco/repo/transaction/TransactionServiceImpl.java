@@ -2,7 +2,7 @@
  * #%L
  * Alfresco Repository
  * %%
- * Copyright (C) 2005 - 2023 Alfresco Software Limited
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
  * %%
  * This file is part of the Alfresco software. 
  * If the software was purchased under a paid Alfresco license, the terms of 
@@ -60,6 +60,8 @@ public class TransactionServiceImpl implements TransactionService
     private int minRetryWaitMs = -1;
     private int maxRetryWaitMs = -1;
     private int retryWaitIncrementMs = -1;
+    private boolean adaptiveBackoff;
+    private boolean statisticsEnabled;
     
     private static final Log logger = LogFactory.getLog(TransactionServiceImpl.class);
 
@@ -222,6 +224,22 @@ public class TransactionServiceImpl implements TransactionService
         this.retryWaitIncrementMs = retryWaitIncrementMs;
     }
 
+    /**
+     * @see RetryingTransactionHelper#setAdaptiveBackoff(boolean)
+     */
+    public void setAdaptiveBackoff(boolean adaptiveBackoff)
+    {
+        this.adaptiveBackoff = adaptiveBackoff;
+    }
+
+    /**
+     * @see RetryingTransactionHelper#setStatisticsEnabled(boolean)
+     */
+    public void setStatisticsEnabled(boolean statisticsEnabled)
+    {
+        this.statisticsEnabled = statisticsEnabled;
+    }
+
     /**
      * @see org.springframework.transaction.TransactionDefinition#PROPAGATION_REQUIRED
      */
@@ -330,6 +348,8 @@ public class TransactionServiceImpl implements TransactionService
         {
             helper.setRetryWaitIncrementMs(retryWaitIncrementMs);
         }
+        helper.setAdaptiveBackoff(adaptiveBackoff);
+        helper.setStatisticsEnabled(statisticsEnabled);
         return helper;
     }
 }
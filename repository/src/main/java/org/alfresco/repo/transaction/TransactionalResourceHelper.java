@@ -2,7 +2,7 @@
  * #%L
  * Alfresco Repository
  * %%
- * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
  * %%
  * This file is part of the Alfresco software. 
  * If the software was purchased under a paid Alfresco license, the terms of 
@@ -38,6 +38,9 @@ import org.apache.commons.lang3.mutable.MutableInt;
 /**
  * Helper class that will look up or create transactional resources.
  * This shortcuts some of the "<i>if not existing, then create</i>" code.
+ * <p>
+ * Resources looked up on hot paths should use a {@link org.alfresco.util.transaction.TransactionalResourceSlot}
+ * instead, which avoids the keyed lookup.
  * 
  * @author Derek Hulley
  * @since 3.2
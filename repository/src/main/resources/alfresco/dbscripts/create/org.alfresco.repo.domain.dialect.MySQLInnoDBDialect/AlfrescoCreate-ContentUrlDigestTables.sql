@@ -0,0 +1,31 @@
+--
+-- Title:      Create Content URL Digest tables
+-- Database:   MySQL InnoDB
+-- Since:      V23.3 Schema 19201
+--
+-- Please contact support@alfresco.com if you need assistance with the upgrade.
+--
+
+CREATE TABLE alf_content_url_digest
+(
+   id BIGINT NOT NULL AUTO_INCREMENT,
+   content_url_id BIGINT NOT NULL,
+   algorithm VARCHAR(20) NOT NULL,
+   digest VARCHAR(128) NOT NULL,
+   UNIQUE INDEX idx_alf_cont_dig_url (content_url_id, algorithm),
+   INDEX idx_alf_cont_dig_val (digest, algorithm),
+   CONSTRAINT fk_alf_cont_dig_url FOREIGN KEY (content_url_id) REFERENCES alf_content_url (id) ON DELETE CASCADE,
+   PRIMARY KEY (id)
+) ENGINE=InnoDB;
+
+--
+-- Record script finish
+--
+DELETE FROM alf_applied_patch WHERE id = 'patch.db-V23.3-ContentUrlDigestTables';
+INSERT INTO alf_applied_patch
+  (id, description, fixes_from_schema, fixes_to_schema, applied_to_schema, target_schema, applied_on_date, applied_to_server, was_executed, succeeded, report)
+  VALUES
+  (
+    'patch.db-V23.3-ContentUrlDigestTables', 'Manually executed script upgrade V23.3: Content Url Digest Tables',
+    0, 19200, -1, 19201, null, 'UNKNOWN', ${TRUE}, ${TRUE}, 'Script completed'
+  );
@@ -0,0 +1,32 @@
+--
+-- Title:      Create Content URL Digest tables
+-- Database:   PostgreSQL
+-- Since:      V23.3 Schema 19201
+--
+-- Please contact support@alfresco.com if you need assistance with the upgrade.
+--
+
+CREATE SEQUENCE alf_content_url_digest_seq START WITH 1 INCREMENT BY 1;
+CREATE TABLE alf_content_url_digest
+(
+   id INT8 NOT NULL,
+   content_url_id INT8 NOT NULL,
+   algorithm VARCHAR(20) NOT NULL,
+   digest VARCHAR(128) NOT NULL,
+   CONSTRAINT fk_alf_cont_dig_url FOREIGN KEY (content_url_id) REFERENCES alf_content_url (id) ON DELETE CASCADE,
+   PRIMARY KEY (id)
+);
+CREATE UNIQUE INDEX idx_alf_cont_dig_url ON alf_content_url_digest (content_url_id, algorithm);
+CREATE INDEX idx_alf_cont_dig_val ON alf_content_url_digest (digest, algorithm);
+
+--
+-- Record script finish
+--
+DELETE FROM alf_applied_patch WHERE id = 'patch.db-V23.3-ContentUrlDigestTables';
+INSERT INTO alf_applied_patch
+  (id, description, fixes_from_schema, fixes_to_schema, applied_to_schema, target_schema, applied_on_date, applied_to_server, was_executed, succeeded, report)
+  VALUES
+  (
+    'patch.db-V23.3-ContentUrlDigestTables', 'Manually executed script upgrade V23.3: Content Url Digest Tables',
+    0, 19200, -1, 19201, null, 'UNKNOWN', ${TRUE}, ${TRUE}, 'Script completed'
+  );
@@ -54,6 +54,8 @@ import org.junit.runners.Suite;
     org.alfresco.opencmis.AlfrescoCmisExceptionInterceptorTest.class,
     org.alfresco.repo.admin.Log4JHierarchyInitTest.class,
     org.alfresco.repo.attributes.PropTablesCleanupJobTest.class,
+    org.alfresco.repo.batch.BatchProcessorTest.class,
+    org.alfresco.repo.batch.PrefetchingWorkProviderTest.class,
     org.alfresco.repo.cache.AbstractCacheFactoryTest.class,
     org.alfresco.repo.cache.DefaultCacheFactoryTest.class,
     org.alfresco.repo.cache.DefaultSimpleCacheTest.class,
@@ -137,6 +139,7 @@ import org.junit.runners.Suite;
     org.alfresco.repo.search.impl.querymodel.impl.db.NodePermissionAssessorPermissionsTest.class,
     org.alfresco.repo.search.impl.solr.DbOrIndexSwitchingQueryLanguageTest.class,
     org.alfresco.repo.search.impl.solr.SolrQueryHTTPClientTest.class,
+    org.alfresco.repo.search.impl.solr.FacetResponseCacheTest.class,
     org.alfresco.repo.search.impl.solr.SolrSQLHttpClientTest.class,
     org.alfresco.repo.search.impl.solr.SolrStatsResultTest.class,
     org.alfresco.repo.search.impl.solr.SolrJSONResultTest.class,
@@ -206,6 +209,7 @@ import org.junit.runners.Suite;
     org.alfresco.repo.content.filestore.FileIOTest.class,
     org.alfresco.repo.content.filestore.SpoofedTextContentReaderTest.class,
     org.alfresco.repo.content.ContentDataTest.class,
+    org.alfresco.repo.content.digest.ContentDigestsTest.class,
     org.alfresco.repo.content.replication.AggregatingContentStoreUnitTest.class,
     org.alfresco.service.cmr.repository.TransformationOptionLimitsTest.class,
     org.alfresco.service.cmr.repository.TransformationOptionPairTest.class,
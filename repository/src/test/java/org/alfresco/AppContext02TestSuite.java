@@ -63,6 +63,7 @@ import org.junit.runners.Suite;
     org.alfresco.repo.content.filestore.FileContentStoreTest.class,
     org.alfresco.repo.content.filestore.NoRandomAccessFileContentStoreTest.class,
     org.alfresco.repo.content.filestore.ReadOnlyFileContentStoreTest.class,
+    org.alfresco.repo.content.filestore.PackedContentStoreTest.class,
     org.alfresco.repo.content.RoutingContentStoreTest.class,
 
     org.alfresco.encryption.EncryptionTests.class,
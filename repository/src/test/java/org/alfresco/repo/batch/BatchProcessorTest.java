@@ -0,0 +1,313 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.alfresco.repo.batch.BatchProcessor.BatchProcessWorkerAdaptor;
+import org.alfresco.repo.batch.BatchProcessor.ExecutorType;
+import org.alfresco.repo.batch.PrefetchingWorkProviderTest.ChunkWorkProvider;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.service.transaction.TransactionService;
+import org.alfresco.util.transaction.SpringAwareUserTransaction;
+import org.apache.commons.logging.Log;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+
+/**
+ * Tests for {@link BatchProcessor} under each {@link ExecutorType}, with and without prefetching.
+ * <p>
+ * The transactions are run by a {@link RetryingTransactionHelper} on a transaction manager without resources, so the
+ * transaction listeners of the batches are called as they would be against a database.
+ * 
+ * @author Alfresco
+ * @since 23.3
+ */
+public class BatchProcessorTest
+{
+    private static final Pattern PROGRESS = Pattern.compile(": Processed (\\d+) entries");
+
+    private RetryingTransactionHelper retryingTransactionHelper;
+
+    @Before
+    public void setUp()
+    {
+        NoResourceTransactionManager transactionManager = new NoResourceTransactionManager();
+        TransactionService transactionService = mock(TransactionService.class);
+        when(transactionService.getNonPropagatingUserTransaction(anyBoolean(), anyBoolean())).thenAnswer(invocation ->
+                new SpringAwareUserTransaction(
+                        transactionManager,
+                        invocation.getArgument(0),
+                        TransactionDefinition.ISOLATION_DEFAULT,
+                        TransactionDefinition.PROPAGATION_REQUIRES_NEW,
+                        TransactionDefinition.TIMEOUT_DEFAULT));
+
+        retryingTransactionHelper = new RetryingTransactionHelper();
+        retryingTransactionHelper.setTransactionService(transactionService);
+        retryingTransactionHelper.setMaxRetries(5);
+        retryingTransactionHelper.setMinRetryWaitMs(1);
+        retryingTransactionHelper.setMaxRetryWaitMs(10);
+        retryingTransactionHelper.setRetryWaitIncrementMs(1);
+    }
+
+    @Test
+    public void testErrorAndSuccessCounts()
+    {
+        for (ExecutorType executorType : ExecutorType.values())
+        {
+            for (int prefetchDepth : new int[] {0, 2})
+            {
+                String context = executorType + ", prefetchDepth=" + prefetchDepth;
+                List<String> entries = entries(20);
+                Map<String, AtomicInteger> processed = new ConcurrentHashMap<String, AtomicInteger>();
+                BatchProcessor<String> batchProcessor = newBatchProcessor(chunks(entries, 3), 4, 2, null, 5);
+                batchProcessor.setExecutorType(executorType);
+                batchProcessor.setPrefetchDepth(prefetchDepth);
+
+                batchProcessor.processLong(new BatchProcessWorkerAdaptor<String>()
+                {
+                    @Override
+                    public void process(String entry) throws Throwable
+                    {
+                        processed.computeIfAbsent(entry, key -> new AtomicInteger()).incrementAndGet();
+                        if (entries.indexOf(entry) % 4 == 0)
+                        {
+                            throw new IllegalArgumentException("Failed " + entry);
+                        }
+                    }
+                }, true);
+
+                assertEquals(context, 20, processed.size());
+                for (Map.Entry<String, AtomicInteger> entry : processed.entrySet())
+                {
+                    assertEquals(context + ": " + entry.getKey() + " processed once", 1, entry.getValue().get());
+                }
+                assertEquals(context, 5L, batchProcessor.getTotalErrorsLong());
+                assertEquals(context, 15L, batchProcessor.getSuccessfullyProcessedEntriesLong());
+                assertTrue(context, entries.indexOf(batchProcessor.getLastErrorEntryId()) % 4 == 0);
+                assertNotNull(context, batchProcessor.getLastError());
+                assertNotNull(context, batchProcessor.getEndTime());
+            }
+        }
+    }
+
+    @Test
+    public void testProgressIsLoggedOncePerInterval()
+    {
+        for (ExecutorType executorType : ExecutorType.values())
+        {
+            Log logger = mock(Log.class);
+            when(logger.isInfoEnabled()).thenReturn(true);
+            BatchProcessor<String> batchProcessor = newBatchProcessor(chunks(entries(10), 4), 3, 2, logger, 3);
+            batchProcessor.setExecutorType(executorType);
+            batchProcessor.setPrefetchDepth(1);
+
+            batchProcessor.processLong(new BatchProcessWorkerAdaptor<String>()
+            {
+                @Override
+                public void process(String entry) throws Throwable
+                {
+                }
+            }, true);
+
+            ArgumentCaptor<Object> messages = ArgumentCaptor.forClass(Object.class);
+            verify(logger, atLeastOnce()).info(messages.capture());
+            List<Long> reported = new ArrayList<Long>();
+            for (Object message : messages.getAllValues())
+            {
+                Matcher matcher = PROGRESS.matcher(message.toString());
+                if (matcher.find())
+                {
+                    reported.add(Long.valueOf(matcher.group(1)));
+                }
+            }
+            Collections.sort(reported);
+            // Each interval crossed once, then the final count as it is not on an interval
+            assertEquals(executorType.toString(), Arrays.asList(3L, 6L, 9L, 10L), reported);
+        }
+    }
+
+    @Test
+    public void testRetriedBatchesRunInOrder() throws Exception
+    {
+        for (ExecutorType executorType : ExecutorType.values())
+        {
+            List<String> retried = new CopyOnWriteArrayList<String>();
+            Map<String, AtomicInteger> attempts = new ConcurrentHashMap<String, AtomicInteger>();
+            CountDownLatch firstStarted = new CountDownLatch(1);
+            CountDownLatch lastFailed = new CountDownLatch(1);
+            BatchProcessor<String> batchProcessor = newBatchProcessor(chunks(Arrays.asList("e0", "e1", "e2"), 3), 3, 1, null, 100);
+            batchProcessor.setExecutorType(executorType);
+
+            batchProcessor.processLong(new BatchProcessWorkerAdaptor<String>()
+            {
+                @Override
+                public void process(String entry) throws Throwable
+                {
+                    int attempt = attempts.computeIfAbsent(entry, key -> new AtomicInteger()).incrementAndGet();
+                    if (attempt > 1)
+                    {
+                        retried.add(entry);
+                    }
+                    else if (entry.equals("e0"))
+                    {
+                        // Keep the first batch running until the last one has failed, then fail it too
+                        firstStarted.countDown();
+                        lastFailed.await(10, TimeUnit.SECONDS);
+                        throw new ConcurrencyFailureException("Conflict on " + entry);
+                    }
+                    else if (entry.equals("e2"))
+                    {
+                        firstStarted.await(10, TimeUnit.SECONDS);
+                        lastFailed.countDown();
+                        throw new ConcurrencyFailureException("Conflict on " + entry);
+                    }
+                }
+            }, true);
+
+            assertEquals(executorType.toString(), 0L, batchProcessor.getTotalErrorsLong());
+            assertEquals(executorType.toString(), 3L, batchProcessor.getSuccessfullyProcessedEntriesLong());
+            // The later failed batch waits for the earlier one to be retried
+            assertEquals(executorType.toString(), Arrays.asList("e0", "e2"), retried);
+        }
+    }
+
+    @Test
+    public void testPrefetchFailureIsPassedToCaller()
+    {
+        for (ExecutorType executorType : ExecutorType.values())
+        {
+            IllegalStateException failure = new IllegalStateException("Provider failure");
+            BatchProcessor<String> batchProcessor = newBatchProcessor(
+                    new ChunkWorkProvider(Collections.singletonList(entries(4)), failure), 2, 2, null, 100);
+            batchProcessor.setExecutorType(executorType);
+            batchProcessor.setPrefetchDepth(2);
+            try
+            {
+                batchProcessor.processLong(new BatchProcessWorkerAdaptor<String>()
+                {
+                    @Override
+                    public void process(String entry) throws Throwable
+                    {
+                    }
+                }, true);
+                fail(executorType + ": the failure of the work provider should be passed to the caller");
+            }
+            catch (IllegalStateException e)
+            {
+                assertSame(executorType.toString(), failure, e);
+            }
+            // The batch queued before the failure still completes; the last one is not queued
+            assertEquals(executorType.toString(), 2L, batchProcessor.getSuccessfullyProcessedEntriesLong());
+        }
+    }
+
+    private BatchProcessor<String> newBatchProcessor(BatchProcessWorkProvider<String> workProvider,
+            int workerThreads, int batchSize, Log logger, int loggingInterval)
+    {
+        return new BatchProcessor<String>(
+                "BatchProcessorTest",
+                retryingTransactionHelper,
+                workProvider,
+                workerThreads, batchSize,
+                null, logger, loggingInterval);
+    }
+
+    private static List<String> entries(int count)
+    {
+        List<String> entries = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++)
+        {
+            entries.add("e" + i);
+        }
+        return entries;
+    }
+
+    private static BatchProcessWorkProvider<String> chunks(List<String> entries, int chunkSize)
+    {
+        List<List<String>> chunks = new ArrayList<List<String>>();
+        for (int i = 0; i < entries.size(); i += chunkSize)
+        {
+            chunks.add(entries.subList(i, Math.min(i + chunkSize, entries.size())));
+        }
+        return new ChunkWorkProvider(chunks, null);
+    }
+
+    /**
+     * A transaction manager that only drives the transaction synchronizations.
+     */
+    @SuppressWarnings("serial")
+    private static class NoResourceTransactionManager extends AbstractPlatformTransactionManager
+    {
+        @Override
+        protected Object doGetTransaction()
+        {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition)
+        {
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status)
+        {
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status)
+        {
+        }
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link PrefetchingWorkProvider}.
+ * 
+ * @author Alfresco
+ * @since 23.3
+ */
+public class PrefetchingWorkProviderTest
+{
+    private final AtomicReference<Thread> prefetchThread = new AtomicReference<Thread>();
+    private final ThreadFactory threadFactory = runnable ->
+    {
+        Thread thread = new Thread(runnable, "PrefetchingWorkProviderTest");
+        thread.setDaemon(true);
+        prefetchThread.set(thread);
+        return thread;
+    };
+
+    @Test
+    public void testWorkIsHandedOverInOrder()
+    {
+        List<List<String>> chunks = Arrays.asList(Arrays.asList("a", "b"), Arrays.asList("c"), Arrays.asList("d", "e"));
+        PrefetchingWorkProvider<String> provider = new PrefetchingWorkProvider<String>(new ChunkWorkProvider(chunks, null), 2, threadFactory, null);
+        try
+        {
+            for (List<String> chunk : chunks)
+            {
+                assertEquals(chunk, provider.getNextWork());
+            }
+            assertTrue(provider.getNextWork().isEmpty());
+            assertTrue("No more work once the provider is exhausted", provider.getNextWork().isEmpty());
+        }
+        finally
+        {
+            provider.close();
+        }
+    }
+
+    @Test
+    public void testProviderExceptionIsRethrown() throws Exception
+    {
+        IllegalStateException failure = new IllegalStateException("Provider failure");
+        List<List<String>> chunks = Collections.singletonList(Arrays.asList("a", "b"));
+        PrefetchingWorkProvider<String> provider = new PrefetchingWorkProvider<String>(new ChunkWorkProvider(chunks, failure), 2, threadFactory, null);
+        try
+        {
+            assertEquals(chunks.get(0), provider.getNextWork());
+            try
+            {
+                provider.getNextWork();
+                fail("The exception of the provider should be passed to the caller");
+            }
+            catch (IllegalStateException e)
+            {
+                assertSame(failure, e);
+            }
+            assertTrue(provider.getNextWork().isEmpty());
+            prefetchThread.get().join(5000L);
+            assertFalse("The prefetch thread should stop after a failure", prefetchThread.get().isAlive());
+        }
+        finally
+        {
+            provider.close();
+        }
+    }
+
+    @Test
+    public void testCloseStopsPrefetchThread() throws Exception
+    {
+        // A provider that never runs out of work keeps the prefetch queue full
+        BatchProcessWorkProvider<String> endless = new ChunkWorkProvider(Collections.<List<String>>emptyList(), null)
+        {
+            @Override
+            public Collection<String> getNextWork()
+            {
+                return Collections.singletonList("a");
+            }
+        };
+        PrefetchingWorkProvider<String> provider = new PrefetchingWorkProvider<String>(endless, 1, threadFactory, null);
+        assertEquals(Collections.singletonList("a"), provider.getNextWork());
+        Thread thread = prefetchThread.get();
+        assertNotNull(thread);
+
+        provider.close();
+
+        assertFalse("The prefetch thread should have stopped when the provider is closed", thread.isAlive());
+    }
+
+    @Test
+    public void testProviderIsNotCalledConcurrently() throws Exception
+    {
+        // Fails if the work size is estimated while work is being fetched
+        BatchProcessWorkProvider<String> provider = new ChunkWorkProvider(Collections.<List<String>>emptyList(), null)
+        {
+            private volatile boolean busy;
+
+            @Override
+            public long getTotalEstimatedWorkSizeLong()
+            {
+                assertFalse("The provider is already in use", busy);
+                return 0L;
+            }
+
+            @Override
+            public Collection<String> getNextWork()
+            {
+                busy = true;
+                try
+                {
+                    Thread.sleep(1L);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                finally
+                {
+                    busy = false;
+                }
+                return Collections.singletonList("a");
+            }
+        };
+        PrefetchingWorkProvider<String> prefetching = new PrefetchingWorkProvider<String>(provider, 1, threadFactory, null);
+        try
+        {
+            for (int i = 0; i < 50; i++)
+            {
+                prefetching.getTotalEstimatedWorkSizeLong();
+                prefetching.getNextWork();
+            }
+        }
+        finally
+        {
+            prefetching.close();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDepthMustBePositive()
+    {
+        new PrefetchingWorkProvider<String>(new ChunkWorkProvider(Collections.<List<String>>emptyList(), null), 0, threadFactory, null);
+    }
+
+    /**
+     * Provides the given chunks of work, then either fails or runs out of work.
+     */
+    static class ChunkWorkProvider implements BatchProcessWorkProvider<String>
+    {
+        private final List<List<String>> chunks;
+        private final RuntimeException failure;
+        private int next;
+
+        ChunkWorkProvider(List<List<String>> chunks, RuntimeException failure)
+        {
+            this.chunks = chunks;
+            this.failure = failure;
+        }
+
+        @Override
+        public int getTotalEstimatedWorkSize()
+        {
+            return (int) getTotalEstimatedWorkSizeLong();
+        }
+
+        @Override
+        public long getTotalEstimatedWorkSizeLong()
+        {
+            return chunks.stream().mapToInt(List::size).sum();
+        }
+
+        @Override
+        public Collection<String> getNextWork()
+        {
+            if (next < chunks.size())
+            {
+                return chunks.get(next++);
+            }
+            if (failure != null)
+            {
+                throw failure;
+            }
+            return Collections.emptyList();
+        }
+    }
+}
@@ -2,7 +2,7 @@
  * #%L
  * Alfresco Repository
  * %%
- * Copyright (C) 2005 - 2023 Alfresco Software Limited
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
  * %%
  * This file is part of the Alfresco software. 
  * If the software was purchased under a paid Alfresco license, the terms of 
@@ -25,15 +25,20 @@
  */
 package org.alfresco.repo.bulkimport.impl;
 
+import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.model.ContentModel;
 import org.alfresco.repo.action.evaluator.NoConditionEvaluator;
 import org.alfresco.repo.action.executer.CopyActionExecuter;
 import org.alfresco.repo.action.executer.MoveActionExecuter;
+import org.alfresco.repo.batch.BatchProcessor;
 import org.alfresco.repo.bulkimport.BulkImportParameters;
+import org.alfresco.repo.bulkimport.DirectoryAnalyser;
+import org.alfresco.repo.bulkimport.ImportableItem;
 import org.alfresco.repo.bulkimport.NodeImporter;
 import org.alfresco.repo.content.MimetypeMap;
 import org.alfresco.service.cmr.action.Action;
 import org.alfresco.service.cmr.action.ActionCondition;
+import org.alfresco.service.cmr.attributes.AttributeService;
 import org.alfresco.service.cmr.model.FileInfo;
 import org.alfresco.service.cmr.repository.ContentReader;
 import org.alfresco.service.cmr.repository.NodeRef;
@@ -63,13 +68,17 @@ import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.zip.GZIPInputStream;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -224,6 +233,332 @@ public class BulkImportTest extends AbstractBulkImportTests
                 });
     }
 
+    @Test
+    public void testCopyImportFastPath() throws Throwable
+    {
+        txn = transactionService.getUserTransaction();
+        txn.begin();
+
+        NodeRef folderNode = topLevelFolder.getNodeRef();
+
+        streamingNodeImporterFactory.setFastPath(true);
+        try
+        {
+            NodeImporter nodeImporter = streamingNodeImporterFactory.getNodeImporter(ResourceUtils.getFile("classpath:bulkimport"));
+            BulkImportParameters bulkImportParameters = new BulkImportParameters();
+            bulkImportParameters.setTarget(folderNode);
+            bulkImportParameters.setReplaceExisting(true);
+            bulkImportParameters.setDisableRulesService(true);
+            bulkImportParameters.setBatchSize(40);
+            bulkImporter.bulkImport(bulkImportParameters, nodeImporter);
+        }
+        catch(Throwable e)
+        {
+            fail(e.getMessage());
+        }
+        finally
+        {
+            streamingNodeImporterFactory.setFastPath(false);
+        }
+
+        checkFiles(folderNode, null, 2, 9,
+                new ExpectedFile[]
+                {
+                    new ExpectedFile("quickImg1.xls", MimetypeMap.MIMETYPE_EXCEL),
+                    new ExpectedFile("quickImg1.doc", MimetypeMap.MIMETYPE_WORD),
+                    new ExpectedFile("quick.txt", MimetypeMap.MIMETYPE_TEXT_PLAIN, "The quick brown fox jumps over the lazy dog"),
+                },
+                new ExpectedFolder[]
+                {
+                    new ExpectedFolder("folder1"),
+                    new ExpectedFolder("folder2")
+                });
+
+        List<FileInfo> folders = getFolders(folderNode, "folder2");
+        assertEquals("", 1, folders.size());
+        folders = getFolders(folders.get(0).getNodeRef(), "folder2.1");
+        assertEquals("", 1, folders.size());
+        checkFiles(folders.get(0).getNodeRef(), null, 0, 17,
+                new ExpectedFile[]
+                {
+                    new ExpectedFile("quick.png", MimetypeMap.MIMETYPE_IMAGE_PNG),
+                    new ExpectedFile("quick.pdf", MimetypeMap.MIMETYPE_PDF),
+                    new ExpectedFile("quick.odt", MimetypeMap.MIMETYPE_OPENDOCUMENT_TEXT),
+                },
+                new ExpectedFolder[]
+                {
+                });
+    }
+
+    @Test
+    public void testCopyImportStripingWithAnalyserPool() throws Throwable
+    {
+        txn = transactionService.getUserTransaction();
+        txn.begin();
+
+        NodeRef folderNode = topLevelFolder.getNodeRef();
+        StripingBulkFilesystemImporter stripingImporter = (StripingBulkFilesystemImporter)bulkImporter;
+
+        stripingImporter.setAnalyserThreads(3);
+        stripingImporter.setPrefetchDepth(2);
+        try
+        {
+            NodeImporter nodeImporter = streamingNodeImporterFactory.getNodeImporter(ResourceUtils.getFile("classpath:bulkimport"));
+            BulkImportParameters bulkImportParameters = new BulkImportParameters();
+            bulkImportParameters.setTarget(folderNode);
+            bulkImportParameters.setReplaceExisting(true);
+            bulkImportParameters.setDisableRulesService(true);
+            bulkImportParameters.setBatchSize(40);
+            bulkImporter.bulkImport(bulkImportParameters, nodeImporter);
+        }
+        catch(Throwable e)
+        {
+            fail(e.getMessage());
+        }
+        finally
+        {
+            stripingImporter.setAnalyserThreads(1);
+            stripingImporter.setPrefetchDepth(0);
+        }
+
+        checkFiles(folderNode, null, 2, 9,
+                new ExpectedFile[]
+                {
+                    new ExpectedFile("quickImg1.xls", MimetypeMap.MIMETYPE_EXCEL),
+                    new ExpectedFile("quickImg1.doc", MimetypeMap.MIMETYPE_WORD),
+                    new ExpectedFile("quick.txt", MimetypeMap.MIMETYPE_TEXT_PLAIN, "The quick brown fox jumps over the lazy dog"),
+                },
+                new ExpectedFolder[]
+                {
+                    new ExpectedFolder("folder1"),
+                    new ExpectedFolder("folder2")
+                });
+
+        List<FileInfo> folders = getFolders(folderNode, "folder2");
+        assertEquals("", 1, folders.size());
+        folders = getFolders(folders.get(0).getNodeRef(), "folder2.1");
+        assertEquals("", 1, folders.size());
+        checkFiles(folders.get(0).getNodeRef(), null, 0, 17,
+                new ExpectedFile[]
+                {
+                    new ExpectedFile("quick.png", MimetypeMap.MIMETYPE_IMAGE_PNG),
+                    new ExpectedFile("quick.pdf", MimetypeMap.MIMETYPE_PDF),
+                    new ExpectedFile("quick.odt", MimetypeMap.MIMETYPE_OPENDOCUMENT_TEXT),
+                },
+                new ExpectedFolder[]
+                {
+                });
+    }
+
+    /**
+     * Directories analysed concurrently and prefetched give the items in the same order, level by level, as
+     * directories analysed on demand.
+     */
+    @Test
+    public void testAnalyserPoolKeepsItemAndLevelOrder() throws Throwable
+    {
+        DirectoryAnalyser directoryAnalyser = (DirectoryAnalyser)ctx.getBean("bfsiDirectoryAnalyser");
+        NodeRef folderNode = topLevelFolder.getNodeRef();
+        File source = ResourceUtils.getFile("classpath:bulkimport");
+
+        List<List<ImportableItem>> expected = readLevels(new StripingFilesystemTracker(directoryAnalyser, folderNode, source, 40), 0);
+        List<List<ImportableItem>> actual = readLevels(new StripingFilesystemTracker(directoryAnalyser, folderNode, source, 40, 3), 2);
+
+        assertTrue("Expected a tree of several levels", expected.size() > 2);
+        assertEquals(toPaths(expected), toPaths(actual));
+        // Every item is read after the level holding its parent directory
+        List<Path> parents = Collections.singletonList(source.toPath());
+        for (List<ImportableItem> level : actual)
+        {
+            List<Path> directories = new ArrayList<Path>();
+            for (ImportableItem item : level)
+            {
+                assertTrue("Parent of " + item + " not in the previous level",
+                        parents.contains(item.getParent().getHeadRevision().getContentFile()));
+                if (ImportableItem.FileType.DIRECTORY.equals(item.getHeadRevision().getContentFileType()))
+                {
+                    directories.add(item.getHeadRevision().getContentFile());
+                }
+            }
+            parents = directories;
+        }
+    }
+
+    @Test
+    public void testAnalyserPoolPassesOnAnalysisFailure() throws Throwable
+    {
+        final DirectoryAnalyser directoryAnalyser = (DirectoryAnalyser)ctx.getBean("bfsiDirectoryAnalyser");
+        final AlfrescoRuntimeException failure = new AlfrescoRuntimeException("Failed to analyse folder2");
+        DirectoryAnalyser failingAnalyser = (directory, filter) ->
+        {
+            if ("folder2".equals(directory.getHeadRevision().getContentFile().getFileName().toString()))
+            {
+                throw failure;
+            }
+            return directoryAnalyser.analyseDirectory(directory, filter);
+        };
+        StripingFilesystemTracker tracker = new StripingFilesystemTracker(failingAnalyser, topLevelFolder.getNodeRef(),
+                ResourceUtils.getFile("classpath:bulkimport"), 40, 3);
+
+        try
+        {
+            readLevels(tracker, 2);
+            fail("The analysis failure should be passed on to the importer");
+        }
+        catch (AlfrescoRuntimeException e)
+        {
+            assertSame(failure, e);
+        }
+    }
+
+    /**
+     * Read the items of the tracker level by level, as the striping importer does.
+     */
+    private List<List<ImportableItem>> readLevels(StripingFilesystemTracker tracker, int prefetchDepth)
+    {
+        final List<List<ImportableItem>> levels = new ArrayList<List<ImportableItem>>();
+        BatchProcessor<ImportableItem> batchProcessor = new BatchProcessor<ImportableItem>(
+                "BulkImportTest",
+                transactionService.getRetryingTransactionHelper(),
+                tracker.getWorkProvider(),
+                1, 10,
+                null, null, 1000);
+        batchProcessor.setPrefetchDepth(prefetchDepth);
+        try
+        {
+            do
+            {
+                final List<ImportableItem> level = new ArrayList<ImportableItem>();
+                batchProcessor.process(new BatchProcessor.BatchProcessWorkerAdaptor<ImportableItem>()
+                {
+                    @Override
+                    public void process(ImportableItem entry) throws Throwable
+                    {
+                        level.add(entry);
+                    }
+                }, true);
+                levels.add(level);
+            }
+            while (tracker.moreLevels());
+        }
+        finally
+        {
+            tracker.close();
+        }
+        return levels;
+    }
+
+    private List<List<Path>> toPaths(List<List<ImportableItem>> levels)
+    {
+        List<List<Path>> paths = new ArrayList<List<Path>>();
+        for (List<ImportableItem> level : levels)
+        {
+            List<Path> levelPaths = new ArrayList<Path>();
+            for (ImportableItem item : level)
+            {
+                levelPaths.add(item.getHeadRevision().getContentFile());
+            }
+            paths.add(levelPaths);
+        }
+        return paths;
+    }
+
+    /**
+     * Subtrees recorded as complete in the checkpoint journal are not imported again, the rest of the source is.
+     */
+    @Test
+    public void testResumeFromCheckpoint() throws Throwable
+    {
+        txn = transactionService.getUserTransaction();
+        txn.begin();
+
+        NodeRef folderNode = topLevelFolder.getNodeRef();
+        File source = ResourceUtils.getFile("classpath:bulkimport");
+        AttributeService attributeService = (AttributeService)ctx.getBean("attributeService");
+
+        // Pretend that a previous run imported folder2 and everything below it
+        ImportableItem folder2 = new ImportableItem();
+        folder2.getHeadRevision().setContentFile(source.toPath().resolve("folder2"));
+        folder2.setNodeRef(folderNode);
+        BulkImportCheckpointJournal checkpointJournal = new BulkImportCheckpointJournal(attributeService,
+                transactionService.getRetryingTransactionHelper(), source.toPath(), folderNode);
+        checkpointJournal.directoryAnalysed(folder2, 0, 0);
+        assertTrue(checkpointJournal.isCompleted(folder2));
+
+        bulkImporter.setCheckpointsEnabled(true);
+        try
+        {
+            NodeImporter nodeImporter = streamingNodeImporterFactory.getNodeImporter(source);
+            BulkImportParameters bulkImportParameters = new BulkImportParameters();
+            bulkImportParameters.setTarget(folderNode);
+            bulkImportParameters.setDisableRulesService(true);
+            bulkImportParameters.setBatchSize(40);
+            bulkImporter.bulkImport(bulkImportParameters, nodeImporter);
+        }
+        catch(Throwable e)
+        {
+            fail(e.getMessage());
+        }
+        finally
+        {
+            bulkImporter.setCheckpointsEnabled(false);
+        }
+
+        checkFiles(folderNode, null, 1, 9, null,
+                new ExpectedFolder[]
+                {
+                    new ExpectedFolder("folder1")
+                });
+
+        List<FileInfo> folders = getFolders(folderNode, "folder1");
+        assertEquals("", 1, folders.size());
+        folders = getFolders(folders.get(0).getNodeRef(), "folder1.1");
+        assertEquals("", 1, folders.size());
+
+        // The journal is cleared once the import succeeds
+        checkpointJournal.load();
+        assertEquals(0, checkpointJournal.getNumberOfCompletedDirectories());
+    }
+
+    /**
+     * A directory is only recorded as complete once its subdirectories are, and its imported items have committed.
+     */
+    @Test
+    public void testCheckpointRequiresCompleteSubtree() throws Throwable
+    {
+        NodeRef folderNode = topLevelFolder.getNodeRef();
+        File source = ResourceUtils.getFile("classpath:bulkimport");
+        AttributeService attributeService = (AttributeService)ctx.getBean("attributeService");
+        BulkImportCheckpointJournal checkpointJournal = new BulkImportCheckpointJournal(attributeService,
+                transactionService.getRetryingTransactionHelper(), source.toPath(), folderNode);
+
+        ImportableItem sourceFolder = new ImportableItem();
+        sourceFolder.getHeadRevision().setContentFile(source.toPath());
+        sourceFolder.setNodeRef(folderNode);
+        final ImportableItem folder1 = new ImportableItem();
+        folder1.getHeadRevision().setContentFile(source.toPath().resolve("folder1"));
+        folder1.setParent(sourceFolder);
+        folder1.setNodeRef(folderNode);
+        try
+        {
+            checkpointJournal.directoryAnalysed(sourceFolder, 0, 1);
+            transactionService.getRetryingTransactionHelper().doInTransaction(() ->
+            {
+                checkpointJournal.itemImported(folder1);
+                return null;
+            }, false, true);
+            assertFalse(checkpointJournal.isCompleted(sourceFolder));
+
+            checkpointJournal.directoryAnalysed(folder1, 0, 0);
+            assertTrue(checkpointJournal.isCompleted(folder1));
+            assertTrue(checkpointJournal.isCompleted(sourceFolder));
+        }
+        finally
+        {
+            checkpointJournal.clear();
+        }
+    }
+
     protected Rule createCopyRule(NodeRef targetNode, boolean isAppliedToChildren)
     {
         Rule rule = new Rule();
@@ -0,0 +1,111 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.digest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+import org.alfresco.repo.content.filestore.FileContentWriter;
+import org.alfresco.util.TempFileProvider;
+import org.apache.commons.codec.binary.Hex;
+import org.junit.Test;
+
+/**
+ * Unit test for the content digest {@link org.alfresco.repo.content.ContentStreamProcessor processors}.
+ *
+ * @since 23.3
+ */
+public class ContentDigestsTest
+{
+    private static final String CONTENT = "The quick brown fox jumps over the lazy dog";
+
+    @Test
+    public void testDigestsComputedWhileWriting() throws Exception
+    {
+        FileContentWriter writer = createWriter();
+        for (String name : List.of("SHA-256", "CRC32C", "SIZE"))
+        {
+            writer.addStreamProcessor(ContentDigests.createProcessor(name));
+        }
+        assertTrue("No results before the content is written", writer.getStreamProcessorResults().isEmpty());
+        writer.putContent(CONTENT);
+
+        Map<String, String> results = writer.getStreamProcessorResults();
+        assertEquals(expectedSha256(), results.get("SHA-256"));
+        assertEquals(expectedCrc32c(), results.get("CRC32C"));
+        assertEquals(Integer.toString(CONTENT.length()), results.get("SIZE"));
+        assertEquals(CONTENT, writer.getReader().getContentString());
+
+        // The same values are computed when reading the content back
+        Map<String, String> recomputed = ContentDigests.compute(writer.getReader(),
+                ContentDigests.createProcessors(List.of("SHA-256", "CRC32C", "SIZE")), null);
+        assertEquals(results, recomputed);
+    }
+
+    @Test
+    public void testDigestsComputedForRandomAccessWrites() throws Exception
+    {
+        FileContentWriter writer = createWriter();
+        writer.addStreamProcessor(ContentDigests.createProcessor("SHA-256"));
+        // Write the end of the content first
+        byte[] bytes = CONTENT.getBytes(StandardCharsets.UTF_8);
+        FileChannel channel = writer.getFileChannel(true);
+        channel.write(ByteBuffer.wrap(bytes, 10, bytes.length - 10), 10);
+        channel.write(ByteBuffer.wrap(bytes, 0, 10), 0);
+        channel.close();
+
+        assertEquals(expectedSha256(), writer.getStreamProcessorResults().get("SHA-256"));
+    }
+
+    private FileContentWriter createWriter()
+    {
+        File file = TempFileProvider.createTempFile(getClass().getSimpleName(), ".txt");
+        file.delete();
+        return new FileContentWriter(file);
+    }
+
+    private String expectedSha256() throws Exception
+    {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        return Hex.encodeHexString(digest.digest(CONTENT.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private String expectedCrc32c()
+    {
+        CRC32C crc = new CRC32C();
+        crc.update(CONTENT.getBytes(StandardCharsets.UTF_8));
+        return String.format("%08x", crc.getValue());
+    }
+}
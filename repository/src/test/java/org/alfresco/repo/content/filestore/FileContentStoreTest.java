@@ -27,6 +27,7 @@ package org.alfresco.repo.content.filestore;
 
 import java.io.File;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Locale;
 
 import org.alfresco.repo.content.AbstractWritableContentStoreTest;
@@ -348,6 +349,45 @@ public class FileContentStoreTest extends AbstractWritableContentStoreTest
         assertEquals(1024L, reader.getContentString().getBytes("UTF-8").length);
     }
     
+    /**
+     * Readers of the same file share one memory mapping, which is released when the file is deleted.
+     */
+    @Test
+    public void testMappedRandomAccess() throws Exception
+    {
+        MappedFileRegionCache mappedFileRegionCache = new MappedFileRegionCache();
+        mappedFileRegionCache.setEnabled(true);
+        mappedFileRegionCache.setMinFileSize(0L);
+        store.setMappedFileRegionCache(mappedFileRegionCache);
+        
+        ContentWriter writer = getWriter();
+        writer.putContent("0123456789ABCDEF");
+        String contentUrl = writer.getContentUrl();
+        
+        FileChannel channel1 = store.getReader(contentUrl).getFileChannel();
+        FileChannel channel2 = store.getReader(contentUrl).getFileChannel();
+        assertEquals("Readers must share the mapping", 1, mappedFileRegionCache.getMappedRegionCount());
+        assertEquals(16L, channel1.size());
+        
+        ByteBuffer buffer = ByteBuffer.allocate(4);
+        channel1.position(10L);
+        assertEquals(4, channel1.read(buffer));
+        assertEquals("ABCD", new String(buffer.array(), "US-ASCII"));
+        buffer.clear();
+        assertEquals(2, channel2.read(buffer, 14L));
+        assertEquals(-1, channel2.read(buffer, 16L));
+        channel1.close();
+        channel2.close();
+        
+        // The idle mapping is reused
+        store.getReader(contentUrl).getContentString();
+        assertEquals(1, mappedFileRegionCache.getMappedRegionCount());
+        
+        store.delete(contentUrl);
+        assertEquals(0, mappedFileRegionCache.getMappedRegionCount());
+        assertEquals(0L, mappedFileRegionCache.getMappedBytes());
+    }
+    
     private void assertDirExists(File root, String dir)
     {
         assertTrue("Directory [" + dir + "] should exist", new File(root, dir).exists());
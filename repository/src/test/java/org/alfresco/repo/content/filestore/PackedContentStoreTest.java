@@ -0,0 +1,205 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.filestore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.alfresco.repo.cache.DefaultSimpleCache;
+import org.alfresco.repo.content.AbstractWritableContentStoreTest;
+import org.alfresco.repo.content.ContentContext;
+import org.alfresco.repo.content.ContentExistsException;
+import org.alfresco.repo.content.ContentStore;
+import org.alfresco.repo.content.SizeRoutingContentStore;
+import org.alfresco.service.cmr.repository.ContentWriter;
+import org.alfresco.test_category.OwnJVMTestsCategory;
+import org.alfresco.util.GUID;
+import org.alfresco.util.TempFileProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Tests read and write functionality for the packed store.
+ *
+ * @see org.alfresco.repo.content.filestore.PackedContentStore
+ */
+@Category(OwnJVMTestsCategory.class)
+public class PackedContentStoreTest extends AbstractWritableContentStoreTest
+{
+    private File storeDir;
+    private PackedContentStore store;
+
+    @Before
+    public void before() throws Exception
+    {
+        storeDir = new File(TempFileProvider.getTempDir(), "PackedContentStoreTest-" + GUID.generate());
+        store = new PackedContentStore(storeDir);
+        // Do not need super class's transactions
+    }
+
+    @After
+    public void after()
+    {
+        store.close();
+    }
+
+    @Override
+    protected ContentStore getStore()
+    {
+        return store;
+    }
+
+    @Test
+    public void testSmallContentSharesSegment() throws Exception
+    {
+        for (int i = 0; i < 100; i++)
+        {
+            ContentWriter writer = store.getWriter(ContentStore.NEW_CONTENT_CONTEXT);
+            writer.putContent("Small content " + i);
+        }
+        assertEquals(1, store.getSegmentCount());
+        assertEquals(1, storeDir.list().length);
+    }
+
+    @Test
+    public void testIndexRebuiltOnRestart() throws Exception
+    {
+        store.setMaxSegmentSize(1024L);
+        List<String> contentUrls = new ArrayList<String>();
+        for (int i = 0; i < 50; i++)
+        {
+            ContentWriter writer = store.getWriter(ContentStore.NEW_CONTENT_CONTEXT);
+            writer.putContent("Content for testIndexRebuiltOnRestart " + i);
+            contentUrls.add(writer.getContentUrl());
+        }
+        store.delete(contentUrls.get(0));
+        store.close();
+
+        store = new PackedContentStore(storeDir);
+        assertFalse(store.exists(contentUrls.get(0)));
+        for (int i = 1; i < 50; i++)
+        {
+            assertEquals("Content for testIndexRebuiltOnRestart " + i, store.getReader(contentUrls.get(i)).getContentString());
+        }
+    }
+
+    @Test
+    public void testCompaction() throws Exception
+    {
+        store.setMaxSegmentSize(1024L);
+        List<String> contentUrls = new ArrayList<String>();
+        for (int i = 0; i < 100; i++)
+        {
+            ContentWriter writer = store.getWriter(ContentStore.NEW_CONTENT_CONTEXT);
+            writer.putContent("Content for testCompaction " + i);
+            contentUrls.add(writer.getContentUrl());
+        }
+        int segmentsBefore = store.getSegmentCount();
+        assertTrue("Expected several segments", segmentsBefore > 2);
+        // Delete all but every tenth item
+        for (int i = 0; i < 100; i++)
+        {
+            if (i % 10 != 0)
+            {
+                store.delete(contentUrls.get(i));
+            }
+        }
+        assertTrue("Expected segments to be compacted", store.compact() > 0);
+        assertTrue(store.getSegmentCount() < segmentsBefore);
+        for (int i = 0; i < 100; i++)
+        {
+            String contentUrl = contentUrls.get(i);
+            if (i % 10 == 0)
+            {
+                assertEquals("Content for testCompaction " + i, store.getReader(contentUrl).getContentString());
+            }
+            else
+            {
+                assertFalse(store.exists(contentUrl));
+            }
+        }
+
+        // Deletions must survive a restart after compaction
+        store.close();
+        store = new PackedContentStore(storeDir);
+        assertEquals(10, store.getEntryCount());
+    }
+
+    @Test
+    public void testAbandonedWriter() throws Exception
+    {
+        String contentUrl = FileContentStore.STORE_PROTOCOL + ContentStore.PROTOCOL_DELIMITER + GUID.generate() + ".bin";
+        // The first writer is never used
+        store.getWriter(new ContentContext(null, contentUrl));
+        try
+        {
+            store.getWriter(new ContentContext(null, contentUrl));
+            fail("Only one writer may be issued per URL");
+        }
+        catch (ContentExistsException e)
+        {
+            // Expected
+        }
+        // Once the writer has timed out, the URL can be written again
+        store.setPendingWriteTimeout(0L);
+        ContentWriter writer = store.getWriter(new ContentContext(null, contentUrl));
+        writer.putContent("Content for testAbandonedWriter");
+        assertEquals("Content for testAbandonedWriter", store.getReader(contentUrl).getContentString());
+    }
+
+    @Test
+    public void testSizeRouting() throws Exception
+    {
+        FileContentStore fileStore = new FileContentStore(ctx, new File(storeDir.getParentFile(), "SizeRouting-" + GUID.generate()));
+        SizeRoutingContentStore routingStore = new SizeRoutingContentStore();
+        routingStore.setSmallStore(store);
+        routingStore.setLargeStore(fileStore);
+        routingStore.setSizeThreshold(64L);
+        routingStore.setStoresCache(new DefaultSimpleCache<>());
+        routingStore.init();
+
+        ContentWriter smallWriter = routingStore.getWriter(ContentStore.NEW_CONTENT_CONTEXT);
+        smallWriter.putContent("Small");
+        ContentWriter largeWriter = routingStore.getWriter(ContentStore.NEW_CONTENT_CONTEXT);
+        String largeContent = "Large content ".repeat(20);
+        largeWriter.putContent(largeContent);
+
+        assertTrue(store.exists(smallWriter.getContentUrl()));
+        assertFalse(fileStore.exists(smallWriter.getContentUrl()));
+        assertTrue(fileStore.exists(largeWriter.getContentUrl()));
+        assertFalse(store.exists(largeWriter.getContentUrl()));
+        assertEquals("Small", routingStore.getReader(smallWriter.getContentUrl()).getContentString());
+        assertEquals(largeContent, routingStore.getReader(largeWriter.getContentUrl()).getContentString());
+    }
+}
@@ -26,24 +26,39 @@
 
 package org.alfresco.repo.content.replication;
 
+import org.alfresco.repo.content.ContentContext;
 import org.alfresco.repo.content.ContentRestoreParams;
 import org.alfresco.repo.content.ContentStore;
+import org.alfresco.repo.content.filestore.FileContentStore;
+import org.alfresco.service.cmr.repository.ContentIOException;
+import org.alfresco.service.cmr.repository.ContentWriter;
+import org.alfresco.util.GUID;
+import org.alfresco.util.TempFileProvider;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.context.ApplicationContext;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThrows;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -69,6 +84,8 @@ public class AggregatingContentStoreUnitTest
     ContentStore primaryStore;
     @Mock
     ContentStore secondaryStore;
+    @Mock
+    ApplicationContext applicationContext;
     
     @InjectMocks
     private AggregatingContentStore objectUnderTest;
@@ -216,4 +233,124 @@ public class AggregatingContentStoreUnitTest
         verify(secondaryStore, times(1)).requestRestoreContentFromArchive(contentUrl, restoreParams);
     }
 
+    @Test
+    public void shouldReplicateWritesToSecondaryStores()
+    {
+        FileContentStore primaryFileStore = createFileStore();
+        FileContentStore secondaryFileStore = createFileStore();
+        objectUnderTest.setPrimaryStore(primaryFileStore);
+        objectUnderTest.setSecondaryStores(List.of(secondaryFileStore));
+        objectUnderTest.setReplicateWrites(true);
+        objectUnderTest.setWriteAcknowledgement(AggregatingContentStore.WriteAcknowledgement.QUORUM);
+
+        ContentWriter writer = objectUnderTest.getWriter(ContentStore.NEW_CONTENT_CONTEXT);
+        writer.putContent("Replicated content");
+
+        String contentUrl = writer.getContentUrl();
+        assertEquals("Replicated content", primaryFileStore.getReader(contentUrl).getContentString());
+        assertEquals("Replicated content", secondaryFileStore.getReader(contentUrl).getContentString());
+        assertEquals("Replicated content", writer.getReader().getContentString());
+
+        objectUnderTest.delete(contentUrl);
+        assertFalse(primaryFileStore.exists(contentUrl));
+        assertFalse(secondaryFileStore.exists(contentUrl));
+    }
+
+    @Test
+    public void shouldQueueFailedReplicationForRetry() throws Exception
+    {
+        FileContentStore primaryFileStore = createFileStore();
+        ReplicationRetryQueue retryQueue = new ReplicationRetryQueue(
+                new File(TempFileProvider.getTempDir(), "AggregatingContentStoreUnitTest-" + GUID.generate() + ".queue").getPath());
+        when(secondaryStore.getWriter(any(ContentContext.class))).thenThrow(new ContentIOException("Store is down"));
+        objectUnderTest.setPrimaryStore(primaryFileStore);
+        objectUnderTest.setReplicateWrites(true);
+        objectUnderTest.setRetryQueue(retryQueue);
+
+        ContentWriter writer = objectUnderTest.getWriter(ContentStore.NEW_CONTENT_CONTEXT);
+        writer.putContent("Content to retry");
+        String contentUrl = writer.getContentUrl();
+        assertTrue(primaryFileStore.exists(contentUrl));
+
+        // The secondary store fails in the background
+        for (int i = 0; i < 100 && retryQueue.size() == 0; i++)
+        {
+            Thread.sleep(50L);
+        }
+        assertEquals(1, retryQueue.size());
+
+        // The store is back
+        FileContentStore secondaryFileStore = createFileStore();
+        objectUnderTest.setSecondaryStores(List.of(secondaryFileStore));
+        assertEquals(1, objectUnderTest.retryFailedReplications());
+        assertEquals(0, retryQueue.size());
+        assertEquals("Content to retry", secondaryFileStore.getReader(contentUrl).getContentString());
+    }
+
+    @Test
+    public void shouldAbandonSlowSecondaryStoreWithoutWaiting() throws Exception
+    {
+        FileContentStore primaryFileStore = createFileStore();
+        CountDownLatch release = new CountDownLatch(1);
+        ContentWriter secondaryWriter = mock(ContentWriter.class);
+        when(secondaryStore.getWriter(any(ContentContext.class))).thenReturn(secondaryWriter);
+        when(secondaryWriter.getWritableChannel()).thenReturn(new WritableByteChannel()
+        {
+            @Override
+            public int write(ByteBuffer src) throws IOException
+            {
+                // A secondary store that does not keep up
+                try
+                {
+                    release.await();
+                }
+                catch (InterruptedException e)
+                {
+                    throw new IOException(e);
+                }
+                int count = src.remaining();
+                src.position(src.limit());
+                return count;
+            }
+
+            @Override
+            public boolean isOpen()
+            {
+                return true;
+            }
+
+            @Override
+            public void close()
+            {
+            }
+        });
+        objectUnderTest.setPrimaryStore(primaryFileStore);
+        objectUnderTest.setReplicateWrites(true);
+        objectUnderTest.setReplicationQueueSize(1);
+        objectUnderTest.setReplicationTimeoutMs(60000L);
+
+        ContentWriter writer = objectUnderTest.getWriter(ContentStore.NEW_CONTENT_CONTEXT);
+        long start = System.currentTimeMillis();
+        try
+        {
+            WritableByteChannel channel = writer.getWritableChannel();
+            for (int i = 0; i < 10; i++)
+            {
+                channel.write(ByteBuffer.wrap("chunk".getBytes(StandardCharsets.UTF_8)));
+            }
+            channel.close();
+        }
+        finally
+        {
+            release.countDown();
+        }
+
+        assertTrue("The primary write should not wait for the secondary store", System.currentTimeMillis() - start < 10000L);
+        assertEquals("chunk".repeat(10), primaryFileStore.getReader(writer.getContentUrl()).getContentString());
+    }
+
+    private FileContentStore createFileStore()
+    {
+        return new FileContentStore(applicationContext, new File(TempFileProvider.getTempDir(), "AggregatingContentStoreUnitTest-" + GUID.generate()));
+    }
 }
@@ -28,6 +28,7 @@ package org.alfresco.repo.domain.contentdata;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
 import junit.framework.TestCase;
 
@@ -283,6 +284,66 @@ public class ContentDataDAOTest extends TestCase
         assertEquals("The content URL does not match.", url, contentUrlEntity.getContentUrl());
     }
     
+    public void testContentUrlDigests() throws Exception
+    {
+        final String url = "store://" + GUID.generate();
+        final String otherUrl = "store://" + GUID.generate();
+        final String digest = GUID.generate();
+        RetryingTransactionCallback<Void> callback = new RetryingTransactionCallback<Void>()
+        {
+            public Void execute() throws Throwable
+            {
+                // Digests are not recorded against unknown URLs
+                assertFalse(contentDataDAO.updateContentUrlDigests(url, Map.of("SHA-256", digest)));
+                assertNull("The content URL must not be created", contentDataDAO.getContentUrl(url));
+
+                contentDataDAO.getOrCreateContentUrl(url, 100L);
+                contentDataDAO.getOrCreateContentUrl(otherUrl, 100L);
+                assertTrue(contentDataDAO.updateContentUrlDigests(url, Map.of("SHA-256", digest, "SIZE", "100")));
+                assertTrue(contentDataDAO.updateContentUrlDigests(otherUrl, Map.of("SHA-256", digest)));
+                // Replace one digest
+                assertTrue(contentDataDAO.updateContentUrlDigests(url, Map.of("SIZE", "101")));
+                return null;
+            }
+        };
+        txnHelper.doInTransaction(callback);
+
+        assertEquals(Map.of("SHA-256", digest, "SIZE", "101"), contentDataDAO.getContentUrlDigests(url));
+        List<String> duplicates = contentDataDAO.getContentUrlsByDigest("SHA-256", digest);
+        assertEquals(2, duplicates.size());
+        assertTrue(duplicates.containsAll(List.of(url, otherUrl)));
+        assertTrue(contentDataDAO.getContentUrlDigests("store://" + GUID.generate()).isEmpty());
+    }
+    
+    public void testBulkGet() throws Exception
+    {
+        final ContentData contentDataOne = getContentData();
+        final ContentData contentDataTwo = getContentData();
+        final Long idOne = create(contentDataOne).getFirst();
+        final Long idTwo = create(contentDataTwo).getFirst();
+        RetryingTransactionCallback<Void> callback = new RetryingTransactionCallback<Void>()
+        {
+            public Void execute() throws Throwable
+            {
+                Map<Long, ContentData> contentDatas = contentDataDAO.getContentData(List.of(idOne, idTwo, -1L));
+                assertEquals("Missing IDs must be left out", 2, contentDatas.size());
+                assertEquals(contentDataOne, contentDatas.get(idOne));
+                assertEquals(contentDataTwo, contentDatas.get(idTwo));
+
+                Long urlIdOne = contentDataDAO.getContentUrl(contentDataOne.getContentUrl()).getId();
+                Long urlIdTwo = contentDataDAO.getContentUrl(contentDataTwo.getContentUrl()).getId();
+                Map<Long, ContentUrlEntity> contentUrls = contentDataDAO.getContentUrls(List.of(urlIdOne, urlIdTwo, -1L));
+                assertEquals("Missing IDs must be left out", 2, contentUrls.size());
+                assertEquals(contentDataOne.getContentUrl(), contentUrls.get(urlIdOne).getContentUrl());
+                assertEquals(contentDataTwo.getContentUrl(), contentUrls.get(urlIdTwo).getContentUrl());
+
+                assertTrue(contentDataDAO.getContentData(List.<Long>of()).isEmpty());
+                return null;
+            }
+        };
+        txnHelper.doInTransaction(callback, true, false);
+    }
+    
     /**
      * Check that orphaned content can be re-instated.
      */
@@ -27,6 +27,7 @@ package org.alfresco.repo.event2;
 
 import static java.lang.Thread.sleep;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
@@ -219,6 +220,77 @@ public class EnqueuingEventSenderUnitTest
         assertEquals("C", recordedEvents.get(1).getId());
     }
 
+    @Test
+    public void shouldPreserveOrderPerPartitionKeyAcrossLanes() throws Exception
+    {
+        EnqueuingEventSender laneSender = newLaneSender(2);
+
+        laneSender.accept("node1", messageWithDelay("A", 300l));
+        laneSender.accept("node1", messageWithDelay("B", 0l));
+        laneSender.accept("node2", messageWithDelay("C", 300l));
+        laneSender.accept("node2", messageWithDelay("D", 0l));
+
+        sleep(950l);
+
+        assertEquals(4, recordedEvents.size());
+        assertTrue(recordedEvents.indexOf(events.get("A")) < recordedEvents.indexOf(events.get("B")));
+        assertTrue(recordedEvents.indexOf(events.get("C")) < recordedEvents.indexOf(events.get("D")));
+        assertEquals(4, laneSender.getSentCount());
+    }
+
+    @Test
+    public void shouldNotStallOtherLanesWhenSendIsSlow() throws Exception
+    {
+        EnqueuingEventSender laneSender = newLaneSender(2);
+        String slowKey = "slow";
+        String fastKey = findKeyInOtherLane(slowKey, 2);
+
+        RepoEvent<?> slowEvent = messageWithDelay("S", 0l).call().get();
+        Mockito.doAnswer(invocation -> {
+            sleep(600l);
+            recordedEvents.add(slowEvent);
+            return null;
+        }).when(bus).send(slowEvent);
+
+        laneSender.accept(slowKey, messageWithDelay("S", 0l));
+        laneSender.accept(fastKey, messageWithDelay("F", 0l));
+
+        sleep(300l);
+
+        // The fast lane has sent its event while the slow lane is still sending
+        assertEquals(1, recordedEvents.size());
+        assertEquals("F", recordedEvents.get(0).getId());
+
+        sleep(600l);
+
+        assertEquals(2, recordedEvents.size());
+        assertEquals(2, laneSender.getLaneDepths().length);
+    }
+
+    private EnqueuingEventSender newLaneSender(int lanes)
+    {
+        EnqueuingEventSender laneSender = new EnqueuingEventSender();
+        laneSender.setEnqueueThreadPoolExecutor(enqueuePool);
+        laneSender.setDequeueThreadPoolExecutor(dequeuePool);
+        laneSender.setEvent2MessageProducer(bus);
+        laneSender.setLaneCount(lanes);
+        laneSender.setBatchSize(10);
+        return laneSender;
+    }
+
+    private String findKeyInOtherLane(String key, int lanes)
+    {
+        int lane = Math.floorMod(key.hashCode(), lanes);
+        for (int i = 0; ; i++)
+        {
+            String other = "node" + i;
+            if (Math.floorMod(other.hashCode(), lanes) != lane)
+            {
+                return other;
+            }
+        }
+    }
+
     private Callable<Optional<RepoEvent<?>>> messageWithDelay(String id, long delay)
     {
         return new Callable<Optional<RepoEvent<?>>>()
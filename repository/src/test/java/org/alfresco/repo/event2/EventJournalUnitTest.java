@@ -0,0 +1,245 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.event2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.repo.event.v1.model.RepoEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Tests for {@link EventJournal} and the relay of {@link JournalingEventSender}.
+ */
+public class EventJournalUnitTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File directory;
+    private ExecutorService relayPool;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        directory = folder.newFolder("journal");
+        relayPool = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown()
+    {
+        relayPool.shutdownNow();
+    }
+
+    @Test
+    public void shouldReadRecordsBackFromAnyOffset()
+    {
+        EventJournal journal = new EventJournal(directory, 20, false);
+        journal.append(Arrays.asList(bytes("a"), bytes("b")));
+        journal.append(Arrays.asList(bytes("c")));
+        // The first segment is full, so these go to a second one
+        journal.append(Arrays.asList(bytes("d"), bytes("e"), bytes("f"), bytes("g")));
+        journal.append(Arrays.asList(bytes("h")));
+
+        assertEquals(Arrays.asList("a", "b", "c"), payloads(journal.read(0, 10)));
+        List<EventJournal.Record> records = journal.read(0, 2);
+        assertEquals(Arrays.asList("a", "b"), payloads(records));
+        long offset = records.get(1).getNextOffset();
+        assertEquals(Arrays.asList("c"), payloads(journal.read(offset, 10)));
+        offset = journal.read(offset, 10).get(0).getNextOffset();
+        assertEquals(Arrays.asList("d", "e", "f", "g"), payloads(journal.read(offset, 10)));
+        assertEquals(0, journal.read(journal.getEndOffset(), 10).size());
+        journal.close();
+    }
+
+    @Test
+    public void shouldRecoverCommittedOffsetAndCutOffTornRecord() throws Exception
+    {
+        EventJournal journal = new EventJournal(directory, 1024, true);
+        journal.append(Arrays.asList(bytes("a"), bytes("b")));
+        long end = journal.getEndOffset();
+        journal.commit(journal.read(0, 1).get(0).getNextOffset());
+        journal.close();
+
+        // Simulate a crash part way through writing a record
+        File segment = directory.listFiles((dir, name) -> name.endsWith(".journal"))[0];
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw"))
+        {
+            file.seek(file.length());
+            file.writeInt(100);
+            file.writeInt(0);
+            file.write(bytes("partial"));
+        }
+
+        journal = new EventJournal(directory, 1024, true);
+        assertEquals(end, journal.getEndOffset());
+        assertEquals(Arrays.asList("b"), payloads(journal.read(journal.getCommittedOffset(), 10)));
+        journal.append(Arrays.asList(bytes("c")));
+        assertEquals(Arrays.asList("b", "c"), payloads(journal.read(journal.getCommittedOffset(), 10)));
+        journal.close();
+    }
+
+    @Test
+    public void shouldDeleteOnlyDeliveredSegments()
+    {
+        EventJournal journal = new EventJournal(directory, 16, false);
+        journal.append(Arrays.asList(bytes("first segment")));
+        journal.append(Arrays.asList(bytes("second segment")));
+        journal.append(Arrays.asList(bytes("third segment")));
+        long secondSegment = journal.read(0, 1).get(0).getNextOffset();
+
+        assertEquals(0, journal.applyRetention(Long.MAX_VALUE));
+
+        journal.commit(secondSegment);
+        assertEquals(1, journal.applyRetention(Long.MAX_VALUE));
+        assertEquals(secondSegment, journal.getStartOffset());
+
+        try
+        {
+            journal.read(0, 1);
+        }
+        catch (AlfrescoRuntimeException e)
+        {
+            // Expected, the segment has been deleted
+            return;
+        }
+        finally
+        {
+            journal.close();
+        }
+        throw new AssertionError("Expected the deleted segment to be unreadable");
+    }
+
+    @Test
+    public void shouldNotOpenAJournalThatIsAlreadyOpen()
+    {
+        EventJournal journal = new EventJournal(directory, 1024, false);
+        try
+        {
+            new EventJournal(directory, 1024, false);
+            throw new AssertionError("Expected the journal to be locked");
+        }
+        catch (AlfrescoRuntimeException e)
+        {
+            // Expected, the journal is locked
+        }
+        journal.close();
+
+        journal = new EventJournal(directory, 1024, false);
+        journal.close();
+    }
+
+    @Test
+    public void shouldRelayEventsAtLeastOnceAndReplay() throws Exception
+    {
+        List<Object> sent = new CopyOnWriteArrayList<>();
+        Event2MessageProducer producer = mock(Event2MessageProducer.class);
+        // The broker is down for the first attempt
+        doThrow(new AlfrescoRuntimeException("broker down"))
+            .doAnswer(invocation -> sent.add(invocation.getArgument(0)))
+            .when(producer).send(any());
+
+        ObjectMapper objectMapper = mock(ObjectMapper.class);
+        RepoEvent<?> event1 = mock(RepoEvent.class);
+        RepoEvent<?> event2 = mock(RepoEvent.class);
+        when(objectMapper.writeValueAsBytes(event1)).thenReturn(bytes("event1"));
+        when(objectMapper.writeValueAsBytes(event2)).thenReturn(bytes("event2"));
+
+        JournalingEventSender sender = new JournalingEventSender();
+        sender.setEvent2MessageProducer(producer);
+        sender.setObjectMapper(objectMapper);
+        sender.setRelayThreadPoolExecutor(relayPool);
+        sender.setJournalDirectory(directory.getAbsolutePath());
+        sender.setNodeName("node1");
+        sender.setFsync(false);
+        sender.setRetryIntervalMs(100);
+        sender.afterPropertiesSet();
+
+        sender.accept(() -> Optional.of(event1));
+        sender.accept(() -> Optional.empty());
+        sender.accept("node", () -> Optional.of(event2));
+
+        awaitSent(sent, 2);
+        assertEquals(Arrays.asList("event1", "event2"), sent);
+        assertEquals(0, sender.getLag());
+
+        sender.replayFrom(sender.getStartOffset());
+        awaitSent(sent, 4);
+        assertEquals(Arrays.asList("event1", "event2", "event1", "event2"), sent);
+
+        sender.destroy();
+        Mockito.verify(producer, Mockito.times(5)).send(any());
+    }
+
+    private static void awaitSent(List<Object> sent, int count) throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+        while (sent.size() < count && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(20);
+        }
+        assertTrue("Expected " + count + " events but got " + sent, sent.size() >= count);
+    }
+
+    private static byte[] bytes(String value)
+    {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<String> payloads(List<EventJournal.Record> records)
+    {
+        String[] payloads = new String[records.size()];
+        for (int i = 0; i < payloads.length; i++)
+        {
+            payloads[i] = records.get(i).getPayloadAsString();
+        }
+        return Arrays.asList(payloads);
+    }
+}
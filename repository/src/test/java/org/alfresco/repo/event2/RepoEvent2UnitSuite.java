@@ -34,6 +34,7 @@ import org.junit.runners.Suite.SuiteClasses;
                 EventConsolidatorUnitTest.class,
                 EventJSONSchemaUnitTest.class,
                 EnqueuingEventSenderUnitTest.class,
+                EventJournalUnitTest.class,
                 NodeResourceHelperUnitTest.class
 })
 public class RepoEvent2UnitSuite
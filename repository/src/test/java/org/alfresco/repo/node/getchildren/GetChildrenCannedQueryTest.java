@@ -2,7 +2,7 @@
  * #%L
  * Alfresco Repository
  * %%
- * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
  * %%
  * This file is part of the Alfresco software. 
  * If the software was purchased under a paid Alfresco license, the terms of 
@@ -28,10 +28,13 @@ package org.alfresco.repo.node.getchildren;
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
 import java.net.URL;
 import java.text.Collator;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -176,24 +179,7 @@ public class GetChildrenCannedQueryTest extends TestCase
         cannedQueryRegistry = new NamedObjectRegistry<CannedQueryFactory>();
         cannedQueryRegistry.setStorageType(CannedQueryFactory.class);
         
-        GetChildrenCannedQueryFactory getChildrenCannedQueryFactory = new GetChildrenCannedQueryFactory();
-        
-        getChildrenCannedQueryFactory.setBeanName("fileFolderGetChildrenCannedQueryFactory");
-        getChildrenCannedQueryFactory.setRegistry(cannedQueryRegistry);
-        
-        getChildrenCannedQueryFactory.setCannedQueryDAO((CannedQueryDAO)ctx.getBean("cannedQueryDAO"));
-        getChildrenCannedQueryFactory.setContentDataDAO((ContentDataDAO)ctx.getBean("contentDataDAO"));
-        getChildrenCannedQueryFactory.setDictionaryService((DictionaryService)ctx.getBean("dictionaryService"));
-        getChildrenCannedQueryFactory.setTenantService((TenantService)ctx.getBean("tenantService"));
-        getChildrenCannedQueryFactory.setLocaleDAO((LocaleDAO)ctx.getBean("localeDAO"));
-        getChildrenCannedQueryFactory.setNodeDAO((NodeDAO)ctx.getBean("nodeDAO"));
-        getChildrenCannedQueryFactory.setNodeService(nodeService);
-        getChildrenCannedQueryFactory.setQnameDAO((QNameDAO)ctx.getBean("qnameDAO"));
-        getChildrenCannedQueryFactory.setHiddenAspect((HiddenAspect)ctx.getBean("hiddenAspect"));
-        
-        getChildrenCannedQueryFactory.setMethodSecurity((MethodSecurityBean<NodeRef>)ctx.getBean("FileFolderService_security_list"));
-        
-        getChildrenCannedQueryFactory.afterPropertiesSet();
+        registerGetChildrenCannedQueryFactory((ContentDataDAO)ctx.getBean("contentDataDAO"));
         
         fiveStarRatingScheme = ratingService.getRatingScheme("fiveStarRatingScheme");
         assertNotNull(fiveStarRatingScheme);
@@ -292,6 +278,29 @@ public class GetChildrenCannedQueryTest extends TestCase
         AuthenticationUtil.setFullyAuthenticatedUser(TEST_USER);
     }
     
+    @SuppressWarnings("unchecked")
+    private void registerGetChildrenCannedQueryFactory(ContentDataDAO contentDataDAO) throws Exception
+    {
+        GetChildrenCannedQueryFactory getChildrenCannedQueryFactory = new GetChildrenCannedQueryFactory();
+        
+        getChildrenCannedQueryFactory.setBeanName(CQ_FACTORY_NAME);
+        getChildrenCannedQueryFactory.setRegistry(cannedQueryRegistry);
+        
+        getChildrenCannedQueryFactory.setCannedQueryDAO((CannedQueryDAO)ctx.getBean("cannedQueryDAO"));
+        getChildrenCannedQueryFactory.setContentDataDAO(contentDataDAO);
+        getChildrenCannedQueryFactory.setDictionaryService((DictionaryService)ctx.getBean("dictionaryService"));
+        getChildrenCannedQueryFactory.setTenantService((TenantService)ctx.getBean("tenantService"));
+        getChildrenCannedQueryFactory.setLocaleDAO((LocaleDAO)ctx.getBean("localeDAO"));
+        getChildrenCannedQueryFactory.setNodeDAO((NodeDAO)ctx.getBean("nodeDAO"));
+        getChildrenCannedQueryFactory.setNodeService(nodeService);
+        getChildrenCannedQueryFactory.setQnameDAO((QNameDAO)ctx.getBean("qnameDAO"));
+        getChildrenCannedQueryFactory.setHiddenAspect((HiddenAspect)ctx.getBean("hiddenAspect"));
+        
+        getChildrenCannedQueryFactory.setMethodSecurity((MethodSecurityBean<NodeRef>)ctx.getBean("FileFolderService_security_list"));
+        
+        getChildrenCannedQueryFactory.afterPropertiesSet();
+    }
+    
     private NodeRef getOrCreateParentTestFolder(String name) throws Exception
     {
         NodeRef testFolder = nodeService.getChildByName(repositoryHelper.getCompanyHome(), ContentModel.ASSOC_CONTAINS, name);
@@ -603,6 +612,55 @@ public class GetChildrenCannedQueryTest extends TestCase
     	return rating;
     }
 
+    /**
+     * Sorting by content size must fetch the ContentData of the page in bulk rather than with
+     * one select per node.
+     */
+    @SuppressWarnings("unchecked")
+    public void testContentDataLoadedInBulk() throws Exception
+    {
+        NodeRef parentNodeRef = getOrCreateParentTestFolder("GetChildrenCannedQueryTest-"+TEST_RUN_ID);
+        
+        // Count the lookups that would each need a select on a cold cache
+        final ContentDataDAO contentDataDAO = (ContentDataDAO)ctx.getBean("contentDataDAO");
+        final List<Collection<Long>> bulkLookups = new ArrayList<Collection<Long>>();
+        final Set<Long> bulkLoadedIds = new HashSet<Long>();
+        final List<Long> singleLookups = new ArrayList<Long>();
+        ContentDataDAO countingContentDataDAO = (ContentDataDAO)Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class<?>[] {ContentDataDAO.class},
+                (proxy, method, args) ->
+                {
+                    if (method.getName().equals("getContentData") && args[0] instanceof Collection)
+                    {
+                        bulkLookups.add((Collection<Long>)args[0]);
+                        bulkLoadedIds.addAll((Collection<Long>)args[0]);
+                    }
+                    else if (method.getName().equals("getContentData") && !bulkLoadedIds.contains(args[0]))
+                    {
+                        singleLookups.add((Long)args[0]);
+                    }
+                    try
+                    {
+                        return method.invoke(contentDataDAO, args);
+                    }
+                    catch (InvocationTargetException e)
+                    {
+                        throw e.getCause();
+                    }
+                });
+        registerGetChildrenCannedQueryFactory(countingContentDataDAO);
+        
+        List<Pair<QName, Boolean>> sortPairs = new ArrayList<Pair<QName, Boolean>>(1);
+        sortPairs.add(new Pair<QName, Boolean>(GetChildrenCannedQuery.SORT_QNAME_CONTENT_SIZE, true));
+        PagingResults<NodeRef> results = list(parentNodeRef, -1, -1, 0, null, sortPairs);
+        assertTrue(results.getPage().size() > 3);
+        
+        assertEquals("Expected one bulk ContentData lookup for the page", 1, bulkLookups.size());
+        assertTrue("Expected ContentData for several nodes", bulkLookups.get(0).size() > 1);
+        assertTrue("ContentData was looked up one node at a time: " + singleLookups, singleLookups.isEmpty());
+    }
+    
     public void testPropertySorting() throws Exception
     {
         NodeRef parentNodeRef = getOrCreateParentTestFolder("GetChildrenCannedQueryTest-"+TEST_RUN_ID);
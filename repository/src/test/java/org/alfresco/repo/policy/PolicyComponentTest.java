@@ -27,8 +27,12 @@ package org.alfresco.repo.policy;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import junit.framework.TestCase;
 
@@ -361,6 +365,88 @@ public class PolicyComponentTest extends TestCase
     }
 
 
+    public void testClassCacheWithConcurrentBinding() throws Exception
+    {
+        // Register Policy
+        ClassPolicyDelegate<TestClassPolicy> delegate = policyComponent.registerClassPolicy(TestClassPolicy.class);
+        QName policyName = QName.createQName(TEST_NAMESPACE, "test");
+        policyComponent.bindClassBehaviour(policyName, BASE_TYPE, new JavaBehaviour(this, "baseTest"));
+
+        // Invoke the policy continuously while behaviours are bound
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread[] readers = new Thread[4];
+        for (int i = 0; i < readers.length; i++)
+        {
+            readers[i] = new Thread(() -> {
+                try
+                {
+                    while (running.get())
+                    {
+                        delegate.get(FILE_TYPE).test("file");
+                        delegate.getList(FOLDER_TYPE);
+                    }
+                }
+                catch (Throwable e)
+                {
+                    failure.set(e);
+                }
+            });
+            readers[i].start();
+        }
+        try
+        {
+            policyComponent.bindClassBehaviour(policyName, FILE_TYPE, new JavaBehaviour(this, "fileTest"));
+            policyComponent.bindClassBehaviour(policyName, FOLDER_TYPE, new JavaBehaviour(this, "folderTest"));
+        }
+        finally
+        {
+            running.set(false);
+            for (Thread reader : readers)
+            {
+                reader.join();
+            }
+        }
+        assertNull(failure.get());
+
+        // No policy built from the behaviours before the binding is left in the cache
+        assertEquals("File: file", delegate.get(FILE_TYPE).test("file"));
+        assertEquals(2, delegate.getList(FOLDER_TYPE).size());
+    }
+
+
+    public void testClassDispatchTable()
+    {
+        // Register Policy
+        ClassPolicyDelegate<TestClassPolicy> delegate = policyComponent.registerClassPolicy(TestClassPolicy.class);
+        QName policyName = QName.createQName(TEST_NAMESPACE, "test");
+        policyComponent.bindClassBehaviour(policyName, BASE_TYPE, new JavaBehaviour(this, "baseTest"));
+        policyComponent.bindClassBehaviour(policyName, TEST_ASPECT, new JavaBehaviour(this, "aspectTest"));
+
+        Set<QName> classes = new HashSet<QName>();
+        classes.add(FILE_TYPE);
+        classes.add(TEST_ASPECT);
+
+        // The behaviours of all the classes are flattened into a single cached table
+        TestClassPolicy policy = delegate.get(classes);
+        assertTrue(policy instanceof PolicyList);
+        assertEquals(2, ((PolicyList<?>)policy).getPolicies().size());
+        assertTrue(policy == delegate.get(new HashSet<QName>(classes)));
+
+        // Binding a behaviour rebuilds the table
+        policyComponent.bindClassBehaviour(policyName, FILE_TYPE, new JavaBehaviour(this, "fileTest"));
+        TestClassPolicy policy2 = delegate.get(classes);
+        assertTrue(policy2 != policy);
+        assertEquals(3, ((PolicyList<?>)policy2).getPolicies().size());
+
+        // The table holds the behaviours themselves, not the policies of each class
+        for (Object wrapped : ((PolicyList<?>)policy2).getPolicies())
+        {
+            assertFalse(wrapped instanceof PolicyList);
+        }
+    }
+
+
     public void testPropertyDelegate()
     {
         // Register Policy
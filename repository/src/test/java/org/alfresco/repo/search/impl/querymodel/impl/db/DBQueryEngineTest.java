@@ -26,6 +26,7 @@
 package org.alfresco.repo.search.impl.querymodel.impl.db;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
@@ -33,19 +34,29 @@ import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+import org.alfresco.repo.cache.MemoryCache;
 import org.alfresco.repo.cache.lookup.EntityLookupCache;
 import org.alfresco.repo.domain.node.Node;
 import org.alfresco.repo.domain.node.NodeDAO;
 import org.alfresco.repo.domain.node.StoreEntity;
+import org.alfresco.repo.search.impl.querymodel.Argument;
+import org.alfresco.repo.search.impl.querymodel.FunctionalConstraint;
+import org.alfresco.repo.search.impl.querymodel.QueryModelException;
 import org.alfresco.repo.search.impl.querymodel.QueryOptions;
+import org.alfresco.repo.search.impl.querymodel.impl.BaseLiteralArgument;
 import org.alfresco.repo.security.permissions.impl.acegi.FilteringResultSet;
+import org.alfresco.repo.transaction.CommitGeneration;
+import org.alfresco.service.cmr.dictionary.DataTypeDefinition;
 import org.alfresco.service.cmr.repository.StoreRef;
 import org.alfresco.service.cmr.search.ResultSet;
 import org.alfresco.service.cmr.search.SearchParameters;
@@ -68,6 +79,7 @@ public class DBQueryEngineTest
     private ResultContext<Node> resultContext;
     private QueryOptions options;
     private NodeDAO nodeDAO;
+    private CommitGeneration commitGeneration;
 
     @SuppressWarnings("unchecked")
     @Before
@@ -86,6 +98,7 @@ public class DBQueryEngineTest
 
         nodeDAO = mock(NodeDAO.class);
         engine.setNodeDAO(nodeDAO);
+        commitGeneration = mock(CommitGeneration.class);
         mockStores();
     }
     
@@ -211,6 +224,133 @@ public class DBQueryEngineTest
         verify(resultContext).stop();
     }
     
+    @Test
+    public void shouldReplayCachedResultsWithoutQueryingTheDatabase()
+    {
+        List<Node> nodes = withResultCache("TYPE:'cm:content'", "g1");
+        prepareTemplate(dbQuery, nodes);
+        when(assessor.isIncluded(any(Node.class))).thenReturn(true);
+
+        engine.acceleratedNodeSelection(options, dbQuery, assessor);
+        FilteringResultSet result = engine.acceleratedNodeSelection(options, dbQuery, assessor);
+
+        verify(template, times(1)).select(eq(SQL_TEMPLATE_PATH), eq(dbQuery), any());
+        assertEquals(5, result.length());
+        assertNodePresent(0, result);
+        assertNodePresent(4, result);
+    }
+
+    @Test
+    public void shouldQueryTheDatabaseAgainWhenTransactionsHaveBeenCommitted()
+    {
+        List<Node> nodes = withResultCache("TYPE:'cm:content'", "g1");
+        prepareTemplate(dbQuery, nodes);
+        when(assessor.isIncluded(any(Node.class))).thenReturn(true);
+
+        engine.acceleratedNodeSelection(options, dbQuery, assessor);
+        when(commitGeneration.getGeneration()).thenReturn("g2");
+        engine.acceleratedNodeSelection(options, dbQuery, assessor);
+
+        verify(template, times(2)).select(eq(SQL_TEMPLATE_PATH), eq(dbQuery), any());
+    }
+
+    @Test
+    public void shouldNotCacheResultsOfTimeDependentQueries()
+    {
+        List<Node> nodes = withResultCache("cm:created:[NOW/DAY TO MAX]", "g1");
+        withLiteralConstraint("NOW/DAY");
+        prepareTemplate(dbQuery, nodes);
+        when(assessor.isIncluded(any(Node.class))).thenReturn(true);
+
+        engine.acceleratedNodeSelection(options, dbQuery, assessor);
+        engine.acceleratedNodeSelection(options, dbQuery, assessor);
+
+        verify(template, times(2)).select(eq(SQL_TEMPLATE_PATH), eq(dbQuery), any());
+    }
+
+    @Test
+    public void shouldCacheResultsOfQueriesMentioningNowInAWord()
+    {
+        List<Node> nodes = withResultCache("cm:name:KNOWN", "g1");
+        withLiteralConstraint("KNOWN");
+        prepareTemplate(dbQuery, nodes);
+        when(assessor.isIncluded(any(Node.class))).thenReturn(true);
+
+        engine.acceleratedNodeSelection(options, dbQuery, assessor);
+        engine.acceleratedNodeSelection(options, dbQuery, assessor);
+
+        verify(template, times(1)).select(eq(SQL_TEMPLATE_PATH), eq(dbQuery), any());
+    }
+
+    @Test
+    public void shouldReturnContinuationTokenForTheLastNodeOfThePage()
+    {
+        withMaxItems(5);
+        when(options.getQuery()).thenReturn("TYPE:'cm:content'");
+        when(dbQuery.getOrderByNodeId()).thenReturn(true);
+        prepareTemplate(dbQuery, createNodes(20));
+        when(assessor.isIncluded(any(Node.class))).thenReturn(true);
+
+        FilteringResultSet result = engine.acceleratedNodeSelection(options, dbQuery, assessor);
+
+        assertEquals(Long.valueOf(4L), DBQueryEngine.decodeContinuationToken(options, result.getContinuationToken()));
+    }
+
+    @Test
+    public void shouldNotReturnContinuationTokenForTheLastPage()
+    {
+        withMaxItems(5);
+        when(options.getQuery()).thenReturn("TYPE:'cm:content'");
+        when(dbQuery.getOrderByNodeId()).thenReturn(true);
+        prepareTemplate(dbQuery, createNodes(5));
+        when(assessor.isIncluded(any(Node.class))).thenReturn(true);
+
+        FilteringResultSet result = engine.acceleratedNodeSelection(options, dbQuery, assessor);
+
+        assertNull(result.getContinuationToken());
+    }
+
+    @Test
+    public void shouldStartAtTheFirstNodeForAnEmptyContinuationToken()
+    {
+        assertNull(DBQueryEngine.decodeContinuationToken(options, ""));
+    }
+
+    @Test(expected = QueryModelException.class)
+    public void shouldRejectContinuationTokenOfAnotherQuery()
+    {
+        when(options.getQuery()).thenReturn("TYPE:'cm:content'");
+        String token = DBQueryEngine.encodeContinuationToken(options, 42L);
+
+        QueryOptions otherOptions = createQueryOptions();
+        when(otherOptions.getQuery()).thenReturn("TYPE:'cm:folder'");
+        DBQueryEngine.decodeContinuationToken(otherOptions, token);
+    }
+
+    private List<Node> withResultCache(String query, String generation)
+    {
+        engine.setResultCache(new MemoryCache<>());
+        engine.setCommitGeneration(commitGeneration);
+        withMaxItems(-1);
+        when(options.getQuery()).thenReturn(query);
+        when(commitGeneration.getGeneration()).thenReturn(generation);
+        List<Node> nodes = createNodes(5);
+        for (int i = 0; i < nodes.size(); i++)
+        {
+            when(engine.nodesCache.getValue((long) i)).thenReturn(nodes.get(i));
+        }
+        return nodes;
+    }
+
+    private void withLiteralConstraint(String value)
+    {
+        FunctionalConstraint constraint = mock(FunctionalConstraint.class);
+        Map<String, Argument> arguments = new HashMap<>();
+        arguments.put("value", new BaseLiteralArgument("value", DataTypeDefinition.TEXT, value));
+        when(constraint.getFunctionArguments()).thenReturn(arguments);
+        when(dbQuery.getConstraint()).thenReturn(constraint);
+    }
+
     private void prepareTemplate(DBQuery dbQuery, List<Node> nodes)
     {
         doAnswer(invocation -> {
@@ -26,8 +26,11 @@
 package org.alfresco.repo.search.impl.solr;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -85,6 +88,37 @@ public class AbstractSolrQueryHTTPClientTest
         assertEquals("Unexpected JSON response received.", "{}", response.toString());
     }
 
+    /** Check that a successful response is parsed from the stream without first being buffered. */
+    @Test
+    public void testPostQuery_successIsNotBuffered() throws Exception
+    {
+        when(body.toString()).thenReturn("Example body");
+        when(postMethod.getStatusCode()).thenReturn(HttpServletResponse.SC_OK);
+        when(postMethod.getResponseBodyAsStream()).thenReturn(convertStringToInputStream("{\"response\": {\"numFound\": 0}}"));
+
+        JSONObject response = abstractSolrQueryHTTPClient.postQuery(httpClient, URL, body);
+
+        assertEquals("Unexpected JSON response received.", 0, response.getJSONObject("response").getInt("numFound"));
+        verify(postMethod, never()).getResponseBodyAsString();
+        verify(postMethod).releaseConnection();
+    }
+
+    /** Check that partial results, e.g. after timeAllowed ran out, are detected. */
+    @Test
+    public void testPostQuery_partialResults() throws Exception
+    {
+        when(body.toString()).thenReturn("Example body");
+        when(postMethod.getStatusCode()).thenReturn(HttpServletResponse.SC_OK);
+        when(postMethod.getResponseBodyAsStream()).thenReturn(
+                    convertStringToInputStream("{\"responseHeader\": {\"partialResults\": true}, \"response\": {\"numFound\": 1}}"));
+
+        JSONObject response = abstractSolrQueryHTTPClient.postQuery(httpClient, URL, body);
+
+        verify(abstractSolrQueryHTTPClient).checkPartialResults(response, URL);
+        assertTrue(abstractSolrQueryHTTPClient.checkPartialResults(response, URL));
+        assertFalse(abstractSolrQueryHTTPClient.checkPartialResults(new JSONObject("{\"responseHeader\": {}}"), URL));
+    }
+
     /** Check that the status code is usually passed through from Solr. */
     @Test
     public void testPostQuery_failure() throws Exception
@@ -28,26 +28,37 @@ package org.alfresco.repo.search.impl.solr;
 import static junit.framework.TestCase.assertEquals;
 import static junit.framework.TestCase.assertTrue;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.mockito.hamcrest.MockitoHamcrest.argThat;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import org.alfresco.model.ContentModel;
 import org.alfresco.repo.domain.node.Node;
 import org.alfresco.repo.domain.solr.SearchDAO;
+import org.alfresco.repo.search.SearchEngineResultSet;
 import org.alfresco.repo.search.impl.DbOrIndexSwitchingQueryLanguage;
 import org.alfresco.repo.search.impl.DisabledFeatureException;
+import org.alfresco.repo.search.impl.QueryPlanner;
+import org.alfresco.repo.search.impl.QueryPlanner.QueryPlan;
 import org.alfresco.repo.search.impl.lucene.LuceneQueryLanguageSPI;
 import org.alfresco.repo.search.impl.querymodel.QueryModelException;
+import org.alfresco.repo.search.impl.querymodel.impl.db.QueryCardinalityStatistics;
 import org.alfresco.repo.solr.NodeParameters;
+import org.alfresco.service.cmr.dictionary.DictionaryService;
 import org.alfresco.service.cmr.repository.ChildAssociationRef;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.search.QueryConsistency;
 import org.alfresco.service.cmr.search.ResultSet;
 import org.alfresco.service.cmr.search.SearchParameters;
+import org.alfresco.service.namespace.NamespaceService;
 import org.alfresco.util.testing.category.LuceneTests;
 import org.hamcrest.BaseMatcher;
 import org.hamcrest.Description;
@@ -70,6 +81,9 @@ public class DbOrIndexSwitchingQueryLanguageTest
     private @Mock SolrJSONResultSet indexResults;
     private @Mock ResultSet dbResults;
     private @Mock SearchDAO solrDAO;
+    private @Mock QueryCardinalityStatistics statistics;
+    private @Mock DictionaryService dictionaryService;
+    private @Mock NamespaceService namespaceService;
     private List<Node> changedNodes;
     
     @Before
@@ -170,6 +184,216 @@ public class DbOrIndexSwitchingQueryLanguageTest
     }
 
 
+    @Test
+    public void plannerUsesDatabaseForSelectiveMetadataQuery()
+    {
+        QueryPlanner planner = createPlanner();
+        when(statistics.getNodeCount()).thenReturn(1000000L);
+        when(namespaceService.getNamespaceURI("cm")).thenReturn(NamespaceService.CONTENT_MODEL_1_0_URI);
+        when(dictionaryService.getSubTypes(ContentModel.TYPE_FOLDER, true)).thenReturn(Collections.emptyList());
+        when(statistics.getTypeCardinality(ContentModel.TYPE_FOLDER)).thenReturn(50L);
+        when(dbQueryLang.executeQuery(any())).thenReturn(dbResults);
+
+        searchParameters.setQuery("TYPE:\"cm:folder\"");
+        searchParameters.setQueryConsistency(QueryConsistency.EVENTUAL);
+        assertEquals(dbResults, queryLang.executeQuery(searchParameters));
+
+        verify(indexQueryLang, never()).executeQuery(any());
+        assertEquals(1, planner.getDecisionCount(QueryPlan.DB));
+    }
+
+    @Test
+    public void plannerKeepsDefaultPlanUntilStatisticsAreCollected()
+    {
+        QueryPlanner planner = new QueryPlanner();
+        planner.setStatistics(statistics);
+        planner.setEnabled(true);
+
+        searchParameters.setQuery("TYPE:\"cm:folder\"");
+        assertNull(planner.plan(searchParameters, searchParameters.getQuery(), true));
+
+        verify(statistics, never()).getNodeCount();
+        assertEquals(1, planner.getUndecidedCount());
+    }
+
+    @Test
+    public void plannerUsesIndexForFullTextQuery()
+    {
+        QueryPlanner planner = createPlanner();
+        when(statistics.getNodeCount()).thenReturn(1000000L);
+        when(indexQueryLang.executeQuery(any())).thenReturn(indexResults);
+
+        searchParameters.setQuery("banana");
+        searchParameters.setQueryConsistency(QueryConsistency.TRANSACTIONAL_IF_POSSIBLE);
+        assertEquals(indexResults, queryLang.executeQuery(searchParameters));
+
+        verify(dbQueryLang, never()).executeQuery(any());
+        assertEquals(1, planner.getDecisionCount(QueryPlan.INDEX));
+    }
+
+    @Test
+    public void plannerSplitsLargeMetadataQuery()
+    {
+        QueryPlanner planner = createPlanner();
+        when(statistics.getNodeCount()).thenReturn(1000000L);
+        when(namespaceService.getNamespaceURI("cm")).thenReturn(NamespaceService.CONTENT_MODEL_1_0_URI);
+        when(dictionaryService.getSubTypes(ContentModel.TYPE_CONTENT, true)).thenReturn(Collections.emptyList());
+        when(statistics.getTypeCardinality(ContentModel.TYPE_CONTENT)).thenReturn(500000L);
+        when(indexQueryLang.executeQuery(any())).thenReturn(indexResults);
+        when(indexResults.getLastIndexedTxId()).thenReturn(80L);
+        when(dbQueryLang.executeQuery(any())).thenReturn(dbResults);
+        when(solrDAO.getNodes(argThat(isNodeParamsFromTxnId(81L)), eq(null), eq(null))).thenReturn(changedNodes);
+        List<ChildAssociationRef> indexRefs = new ArrayList<>();
+        indexRefs.add(childAssoc("Car1"));
+        when(indexResults.getChildAssocRefs()).thenReturn(indexRefs);
+        List<ChildAssociationRef> dbRefs = new ArrayList<>();
+        dbRefs.add(childAssoc("Car2"));
+        when(dbResults.getChildAssocRefs()).thenReturn(dbRefs);
+
+        searchParameters.setQuery("TYPE:\"cm:content\"");
+        searchParameters.setQueryConsistency(QueryConsistency.TRANSACTIONAL_IF_POSSIBLE);
+        ResultSet results = queryLang.executeQuery(searchParameters);
+
+        assertEquals(2, results.length());
+        verify(dbQueryLang).executeQuery(argThat(isSearchParamsSinceTxId(80L)));
+        assertNull(searchParameters.getSinceTxId());
+        assertEquals(1, planner.getDecisionCount(QueryPlan.SPLIT));
+    }
+
+    @Test
+    public void plannerDoesNotSplitPagedQuery()
+    {
+        QueryPlanner planner = createPlanner();
+        when(statistics.getNodeCount()).thenReturn(1000000L);
+        when(namespaceService.getNamespaceURI("cm")).thenReturn(NamespaceService.CONTENT_MODEL_1_0_URI);
+        when(dictionaryService.getSubTypes(ContentModel.TYPE_CONTENT, true)).thenReturn(Collections.emptyList());
+        when(statistics.getTypeCardinality(ContentModel.TYPE_CONTENT)).thenReturn(500000L);
+        when(indexQueryLang.executeQuery(any())).thenReturn(indexResults);
+
+        searchParameters.setQuery("TYPE:\"cm:content\"");
+        searchParameters.setQueryConsistency(QueryConsistency.TRANSACTIONAL_IF_POSSIBLE);
+        searchParameters.setMaxItems(10);
+        assertEquals(indexResults, queryLang.executeQuery(searchParameters));
+
+        verify(dbQueryLang, never()).executeQuery(any());
+        assertEquals(1, planner.getDecisionCount(QueryPlan.INDEX));
+    }
+
+    @Test
+    public void gapFillingCorrectsEventualResults()
+    {
+        queryLang.setGapFillingEnabled(true);
+        when(indexQueryLang.executeQuery(any())).thenReturn(indexResults);
+        when(indexResults.getLastIndexedTxId()).thenReturn(80L);
+        when(solrDAO.getNodes(argThat(isNodeParamsFromTxnId(81L)), eq(null), eq(null))).thenReturn(changedNodes);
+        when(dbQueryLang.executeQuery(argThat(isSearchParamsSinceTxId(80L)))).thenReturn(dbResults);
+
+        List<ChildAssociationRef> indexRefs = new ArrayList<>();
+        indexRefs.add(childAssoc("Car1"));
+        indexRefs.add(childAssoc("Car2")); // Updated so that it no longer matches
+        indexRefs.add(childAssoc("Car3")); // Updated but still matches
+        indexRefs.add(childAssoc("Car4"));
+        when(indexResults.getChildAssocRefs()).thenReturn(indexRefs);
+        when(indexResults.getNumberFound()).thenReturn(4L);
+        List<ChildAssociationRef> dbRefs = new ArrayList<>();
+        dbRefs.add(childAssoc("Car3"));
+        dbRefs.add(childAssoc("Car5")); // Created since the last indexed transaction
+        when(dbResults.getChildAssocRefs()).thenReturn(dbRefs);
+        changedNodes.add(node("Car2"));
+        changedNodes.add(node("Car3"));
+        changedNodes.add(node("Car5"));
+
+        searchParameters.setQueryConsistency(QueryConsistency.EVENTUAL);
+        ResultSet results = queryLang.executeQuery(searchParameters);
+
+        List<ChildAssociationRef> expected = new ArrayList<>();
+        expected.add(childAssoc("Car1"));
+        expected.add(childAssoc("Car4"));
+        expected.add(childAssoc("Car3"));
+        expected.add(childAssoc("Car5"));
+        assertEquals(expected, results.getChildAssocRefs());
+        assertEquals(4, results.getNumberFound());
+        assertFalse(results.hasMore());
+        assertEquals(80L, ((SearchEngineResultSet) results).getLastIndexedTxId());
+        // The caller's parameters are left alone
+        assertEquals(null, searchParameters.getSinceTxId());
+    }
+
+    @Test
+    public void gapFillingAddsDatabaseResultsAfterTheLastIndexPage()
+    {
+        // Car2 no longer matches, Car3 still matches and was found by the index for the second page
+        List<ChildAssociationRef> indexRefs = new ArrayList<>();
+        indexRefs.add(childAssoc("Car1"));
+        indexRefs.add(childAssoc("Car2"));
+        ResultSet firstPage = fillGapForPage(0, indexRefs);
+
+        assertEquals(Collections.singletonList(childAssoc("Car1")), firstPage.getChildAssocRefs());
+        assertEquals(4, firstPage.getNumberFound());
+        assertTrue(firstPage.hasMore());
+    }
+
+    @Test
+    public void gapFillingPagesTheDatabaseResults()
+    {
+        List<ChildAssociationRef> indexRefs = new ArrayList<>();
+        indexRefs.add(childAssoc("Car3"));
+        ResultSet secondPage = fillGapForPage(2, indexRefs);
+
+        assertEquals(Collections.singletonList(childAssoc("Car3")), secondPage.getChildAssocRefs());
+        assertTrue(secondPage.hasMore());
+    }
+
+    @Test
+    public void gapFillingReturnsDatabaseResultsBeyondTheIndexResults()
+    {
+        ResultSet lastPage = fillGapForPage(4, new ArrayList<>());
+
+        assertEquals(Collections.singletonList(childAssoc("Car5")), lastPage.getChildAssocRefs());
+        assertFalse(lastPage.hasMore());
+    }
+
+    /**
+     * Fill the gap in a page of two results.  The index found Car1, Car2 and Car3; since then Car2 has been
+     * changed so that it no longer matches, Car3 has been changed but still matches and Car5 has been created.
+     */
+    private ResultSet fillGapForPage(int skipCount, List<ChildAssociationRef> indexRefs)
+    {
+        queryLang.setGapFillingEnabled(true);
+        when(indexQueryLang.executeQuery(any())).thenReturn(indexResults);
+        when(indexResults.getLastIndexedTxId()).thenReturn(80L);
+        when(indexResults.getNumberFound()).thenReturn(3L);
+        when(indexResults.getChildAssocRefs()).thenReturn(indexRefs);
+        when(solrDAO.getNodes(argThat(isNodeParamsFromTxnId(81L)), eq(null), eq(null))).thenReturn(changedNodes);
+        when(dbQueryLang.executeQuery(argThat(isSearchParamsSinceTxId(80L)))).thenReturn(dbResults);
+        List<ChildAssociationRef> dbRefs = new ArrayList<>();
+        dbRefs.add(childAssoc("Car3"));
+        dbRefs.add(childAssoc("Car5"));
+        when(dbResults.getChildAssocRefs()).thenReturn(dbRefs);
+        changedNodes.add(node("Car2"));
+        changedNodes.add(node("Car3"));
+        changedNodes.add(node("Car5"));
+
+        searchParameters.setQueryConsistency(QueryConsistency.EVENTUAL);
+        searchParameters.setSkipCount(skipCount);
+        searchParameters.setMaxItems(2);
+        return queryLang.executeQuery(searchParameters);
+    }
+
+    @Test
+    public void gapFillingSkippedWhenIndexIsUpToDate()
+    {
+        queryLang.setGapFillingEnabled(true);
+        when(indexQueryLang.executeQuery(any())).thenReturn(indexResults);
+        when(indexResults.getLastIndexedTxId()).thenReturn(80L);
+        when(solrDAO.getNodes(argThat(isNodeParamsFromTxnId(81L)), eq(null), eq(null))).thenReturn(changedNodes);
+
+        searchParameters.setQueryConsistency(QueryConsistency.EVENTUAL);
+        assertEquals(indexResults, queryLang.executeQuery(searchParameters));
+
+        verify(dbQueryLang, never()).executeQuery(any());
+    }
+
     @Test
     public void findAfts() throws Exception
     {
@@ -255,6 +479,18 @@ public class DbOrIndexSwitchingQueryLanguageTest
         };
     }
 
+    private QueryPlanner createPlanner()
+    {
+        QueryPlanner planner = new QueryPlanner();
+        planner.setDictionaryService(dictionaryService);
+        planner.setNamespaceService(namespaceService);
+        planner.setStatistics(statistics);
+        planner.setEnabled(true);
+        queryLang.setQueryPlanner(planner);
+        when(statistics.isAvailable()).thenReturn(true);
+        return planner;
+    }
+
     private ChildAssociationRef childAssoc(String id)
     {
         return new ChildAssociationRef(
@@ -0,0 +1,108 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.search.impl.solr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Tests for the {@link FacetResponseCache}. */
+public class FacetResponseCacheTest
+{
+    private static final String KEY = "http://localhost:8983/solr/alfresco/afts?wt=json&facet=true\n{\"query\":\"cm:name:test\"}";
+    private static final String RESPONSE = "{\"lastIndexedTx\":100,\"response\":{\"numFound\":3}}";
+
+    private FacetResponseCache cache;
+
+    @Before
+    public void setUp()
+    {
+        cache = new FacetResponseCache();
+        cache.setEnabled(true);
+        cache.setMaxItems(10);
+        cache.init();
+    }
+
+    /** Check a response is reused until the index moves on. */
+    @Test
+    public void testResponseReusedUntilIndexMovesOn() throws Exception
+    {
+        assertNull(cache.get(KEY));
+        cache.put(KEY, new JSONObject(RESPONSE));
+
+        JSONObject cached = cache.get(KEY);
+        assertNotNull("Expected the response to be cached.", cached);
+        assertEquals(3, cached.getJSONObject("response").getInt("numFound"));
+        assertEquals(1, cache.getHits());
+
+        // Commits to the repository only matter once the index has caught up with them
+        cache.indexed(new JSONObject("{\"lastIndexedTx\":100}"));
+        assertNotNull("Expected the response to be reused while the index has not moved on.", cache.get(KEY));
+
+        cache.indexed(new JSONObject("{\"lastIndexedTx\":101}"));
+        assertNull("Expected the response to be invalidated once the index moved on.", cache.get(KEY));
+        assertEquals(101L, cache.getIndexWatermark());
+    }
+
+    /** Check a response from a part of the index that is behind the rest is not cached. */
+    @Test
+    public void testResponseNotCachedWhenIndexIsBehind() throws Exception
+    {
+        cache.indexed(new JSONObject("{\"lastIndexedTx\":120}"));
+        cache.put(KEY, new JSONObject(RESPONSE));
+
+        assertNull("Expected a response from a lagging index not to be cached.", cache.get(KEY));
+        assertEquals(120L, cache.getIndexWatermark());
+    }
+
+    /** Check responses without a watermark or with partial results are not cached. */
+    @Test
+    public void testIncompleteResponsesNotCached() throws Exception
+    {
+        cache.put(KEY, new JSONObject("{\"response\":{\"numFound\":3}}"));
+        assertNull(cache.get(KEY));
+
+        cache.put(KEY, new JSONObject("{\"lastIndexedTx\":100,\"responseHeader\":{\"partialResults\":true}}"));
+        assertNull(cache.get(KEY));
+    }
+
+    /** Check the callers get their own copy of the cached response. */
+    @Test
+    public void testCachedResponseIsCopied() throws Exception
+    {
+        cache.put(KEY, new JSONObject(RESPONSE));
+        cache.get(KEY).put("spellcheck", "changed");
+
+        assertFalse(cache.get(KEY).has("spellcheck"));
+        assertTrue(cache.isEnabled());
+    }
+}
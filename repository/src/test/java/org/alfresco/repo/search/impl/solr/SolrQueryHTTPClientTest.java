@@ -180,6 +180,23 @@ public class SolrQueryHTTPClientTest
     }
 
 
+    @Test
+    public void testBuildShardParameters()
+    {
+        SolrQueryHTTPClient shardedClient = new SolrQueryHTTPClient();
+        StringBuilder urlBuilder = new StringBuilder();
+        shardedClient.buildShardParameters(urlBuilder);
+        assertEquals("", urlBuilder.toString());
+
+        shardedClient.setTimeAllowedMs(1500);
+        shardedClient.setShardsTolerant(true);
+        urlBuilder = new StringBuilder();
+        shardedClient.buildShardParameters(urlBuilder);
+        String url = urlBuilder.toString();
+        assertTrue(url.contains("&timeAllowed=1500"));
+        assertTrue(url.contains("&shards.tolerant=true"));
+    }
+
     @Test
     public void testBuildTimezone() throws UnsupportedEncodingException
     {
@@ -418,6 +418,64 @@ public class SolrFacetServiceImplTest
         }
     }
 
+    @Test
+    public void getFacetsReflectsUpdates()
+    {
+        final String filterName = getFilterName();
+        final SolrFacetProperties facetProps = new SolrFacetProperties.Builder()
+                    .filterID(filterName)
+                    .facetQName(QName.createQName("{http://www.alfresco.org/model/content/1.0}test4"))
+                    .displayName("faceted-search.facet-menu.facet.test4")
+                    .displayControl("alfresco/search/FacetFilters")
+                    .maxFilters(5)
+                    .hitThreshold(1)
+                    .minFilterValueLength(2)
+                    .sortBy("ALPHABETICALLY")
+                    .isEnabled(true)
+                    .scope("ALL").build();
+
+        // Read the facets before and after the facet is created, as the facets are cached
+        final int facetCount = TRANSACTION_HELPER.doInTransaction(new RetryingTransactionCallback<Integer>()
+        {
+            @Override
+            public Integer execute() throws Throwable
+            {
+                return SOLR_FACET_SERVICE.getFacets().size();
+            }
+        });
+        this.createFacet(facetProps);
+
+        TRANSACTION_HELPER.doInTransaction(new RetryingTransactionCallback<Void>()
+        {
+            @Override
+            public Void execute() throws Throwable
+            {
+                assertEquals(facetCount + 1, SOLR_FACET_SERVICE.getFacets().size());
+
+                SOLR_FACET_SERVICE.updateFacet(new SolrFacetProperties.Builder(facetProps).maxFilters(10).build());
+                return null;
+            }
+        });
+
+        TRANSACTION_HELPER.doInTransaction(new RetryingTransactionCallback<Void>()
+        {
+            @Override
+            public Void execute() throws Throwable
+            {
+                for (SolrFacetProperties fp : SOLR_FACET_SERVICE.getFacets())
+                {
+                    if (filterName.equals(fp.getFilterID()))
+                    {
+                        assertEquals(10, fp.getMaxFilters());
+                        return null;
+                    }
+                }
+                fail("The [" + filterName + "] facet is missing.");
+                return null;
+            }
+        });
+    }
+
     private List<String> getExistingFacetIds()
     {
         final List<SolrFacetProperties> facetProps = SOLR_FACET_SERVICE.getFacets();
@@ -2,7 +2,7 @@
  * #%L
  * Alfresco Repository
  * %%
- * Copyright (C) 2005 - 2023 Alfresco Software Limited
+ * Copyright (C) 2005 - 2024 Alfresco Software Limited
  * %%
  * This file is part of the Alfresco software.
  * If the software was purchased under a paid Alfresco license, the terms of
@@ -276,6 +276,63 @@ public class RetryingTransactionHelperTest extends BaseSpringTest
         assertEquals("Only one increment expected", 1, txnValue);
     }
 
+    /**
+     * Check that retries are recorded per caller and exception type when using adaptive backoff
+     */
+    @Test
+    public void testRetryStatisticsWithAdaptiveBackoff()
+    {
+        RetryingTransactionCallback<Long> callback = new RetryingTransactionCallback<Long>()
+        {
+            private int callCount = 0;
+            public Long execute() throws Throwable
+            {
+                callCount++;
+                Long checkValue = incrementCheckValue();
+                if (callCount == 3)
+                {
+                    return checkValue;
+                }
+                throw new ConcurrencyFailureException("Conflict on " + workingNodeRef);
+            }
+        };
+        txnHelper.setAdaptiveBackoff(true);
+        txnHelper.setMinRetryWaitMs(10);
+        txnHelper.setMaxRetryWaitMs(50);
+        long txnValue = txnHelper.doInTransaction(callback);
+        assertEquals("Only one increment expected", 1, txnValue);
+
+        String caller = RetryingTransactionStatistics.getCallerName(callback);
+        RetryingTransactionStatistics.Entry entry = RetryingTransactionHelper.getStatistics().getCallerStatistics().get(caller);
+        assertNotNull("No statistics for " + caller, entry);
+        assertEquals(3, entry.getAttempts());
+        assertEquals(2, entry.getRetries());
+        assertEquals(0, entry.getFailures());
+        assertTrue("Backoff should count as wasted time", entry.getWastedMs() >= 20);
+        assertEquals("Conflict on " + workingNodeRef, entry.getLastConflict());
+        assertTrue(RetryingTransactionHelper.getStatistics().getConflictRate(caller) > 0.5D);
+        assertNotNull(RetryingTransactionHelper.getStatistics().getExceptionStatistics().get(ConcurrencyFailureException.class.getName()));
+    }
+
+    /**
+     * Check that no statistics are recorded unless they are enabled
+     */
+    @Test
+    public void testRetryStatisticsDisabledByDefault()
+    {
+        RetryingTransactionCallback<Long> callback = new RetryingTransactionCallback<Long>()
+        {
+            public Long execute() throws Throwable
+            {
+                return incrementCheckValue();
+            }
+        };
+        txnHelper.doInTransaction(callback);
+
+        String caller = RetryingTransactionStatistics.getCallerName(callback);
+        assertNull(RetryingTransactionHelper.getStatistics().getCallerStatistics().get(caller));
+    }
+
     /**
      * Checks that a non-retrying exception is passed out and that the transaction is rolled back.
      */